@@ -0,0 +1,81 @@
+package com.sqtext.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sqtext.compression.AdvancedCompressor;
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+import com.sqtext.compression.BrotliCompressor;
+import com.sqtext.compression.GZipCompressor;
+import com.sqtext.compression.ZstdCompressor;
+
+/**
+ * Сжатие и распаковка каждым алгоритмом на уровне по умолчанию: текст - Base64,
+ * как в форматах SqText, без конверта
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AlgorithmBenchmark {
+
+    @Param({"GZIP", "ZSTD", "BROTLI", "STORED"})
+    public Algorithm algorithm;
+
+    @Param({"chat", "java"})
+    public String source;
+
+    /** Размер входа в байтах UTF-8 */
+    @Param({"100", "10000", "1000000", "100000000"})
+    public int size;
+
+    private String text;
+    private int plainBytes;
+    private int level;
+    private String compressed;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Corpus.text(source, size);
+        plainBytes = text.getBytes(StandardCharsets.UTF_8).length;
+        level = AdvancedCompressor.defaultLevel(algorithm);
+        compressed = AdvancedCompressor.compressWithAlgorithm(text, algorithm, level);
+    }
+
+    @Benchmark
+    public String compress(ProcessedBytes counter) throws IOException {
+        counter.bytes += plainBytes;
+        return AdvancedCompressor.compressWithAlgorithm(text, algorithm, level);
+    }
+
+    @Benchmark
+    public String decompress(ProcessedBytes counter) throws IOException {
+        counter.bytes += plainBytes;
+        switch (algorithm) {
+            case ZSTD:
+                return ZstdCompressor.decompress(compressed);
+            case BROTLI:
+                return BrotliCompressor.decompress(compressed);
+            case STORED:
+                return new String(Base64.getDecoder().decode(compressed), StandardCharsets.UTF_8);
+            default:
+                return GZipCompressor.decompress(compressed);
+        }
+    }
+}
\ No newline at end of file
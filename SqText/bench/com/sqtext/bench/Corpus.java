@@ -0,0 +1,101 @@
+package com.sqtext.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Входные данные бенчмарков из самого репозитория: переписка ("1 сессия/" и "Last 6/")
+ * или исходники SqText, склеенные и повторенные до нужного размера в байтах UTF-8.
+ * Повтор делает большие входы избыточнее настоящих - на 100 МБ выигрывают кодеки
+ * с длинным окном
+ */
+final class Corpus {
+    /** Корень репозитория; без него ищется вверх от рабочего каталога */
+    static final String ROOT_PROPERTY = "sqtext.corpus";
+
+    private static final Map<String, byte[]> LOADED = new HashMap<>();
+
+    private Corpus() {
+    }
+
+    /**
+     * Текст не длиннее size байт UTF-8 (конец не режет символ пополам)
+     * @param source "chat" - переписка, "java" - исходники
+     */
+    static String text(String source, int size) throws IOException {
+        byte[] base = load(source);
+        byte[] data = new byte[size];
+        for (int pos = 0; pos < size; pos += base.length) {
+            System.arraycopy(base, 0, data, pos, Math.min(base.length, size - pos));
+        }
+        int end = size;
+        while (end > 0 && (base[end % base.length] & 0xC0) == 0x80) {
+            end--;
+        }
+        return new String(data, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static synchronized byte[] load(String source) throws IOException {
+        byte[] data = LOADED.get(source);
+        if (data != null) {
+            return data;
+        }
+        Path root = root();
+        List<Path> dirs;
+        String suffix;
+        switch (source) {
+            case "chat":
+                dirs = List.of(root.resolve("1 сессия"), root.resolve("Last 6"));
+                suffix = ".md";
+                break;
+            case "java":
+                dirs = List.of(root.resolve("SqText").resolve("src"));
+                suffix = ".java";
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный корпус: " + source + " (есть: chat, java)");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Path dir : dirs) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(dir)) {
+                files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                out.write(Files.readAllBytes(file));
+                out.write('\n');
+            }
+        }
+        if (out.size() == 0) {
+            throw new IOException("Корпус пуст: " + dirs);
+        }
+        data = out.toByteArray();
+        LOADED.put(source, data);
+        return data;
+    }
+
+    private static Path root() throws IOException {
+        String configured = System.getProperty(ROOT_PROPERTY);
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        for (Path dir = Paths.get("").toAbsolutePath(); dir != null; dir = dir.getParent()) {
+            if (Files.isDirectory(dir.resolve("Last 6"))) {
+                return dir;
+            }
+        }
+        throw new IOException("Не найден корень репозитория с \"Last 6/\"; укажите -D" + ROOT_PROPERTY + "=путь");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.sqtext.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sqtext.compression.GZipCompressor;
+
+/**
+ * Распознавание GZIP+Base64: полная проверка isCompressed (декодирует весь Base64)
+ * против looksCompressed по окну с начала и конца
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DetectBenchmark {
+
+    /** compressed - GZIP+Base64 от текста, plain - сам текст */
+    @Param({"compressed", "plain"})
+    public String input;
+
+    @Param({"chat", "java"})
+    public String source;
+
+    /** Размер несжатого текста в байтах UTF-8 */
+    @Param({"100", "10000", "1000000", "100000000"})
+    public int size;
+
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Corpus.text(source, size);
+        if (input.equals("compressed")) {
+            text = GZipCompressor.compress(text);
+        }
+    }
+
+    @Benchmark
+    public boolean isCompressed() {
+        return GZipCompressor.isCompressed(text);
+    }
+
+    @Benchmark
+    public boolean looksCompressed() {
+        return GZipCompressor.looksCompressed(text);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.sqtext.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sqtext.compression.AdvancedCompressor;
+import com.sqtext.compression.AlgorithmOracle;
+import com.sqtext.compression.ChatCompressor;
+import com.sqtext.compression.Envelope;
+import com.sqtext.compression.NeuroCompressor;
+import com.sqtext.compression.TextEncoding;
+
+/**
+ * Полный путь текстовых форматов: выбор алгоритма, сжатие, кодировка и JSON-конверт;
+ * распаковка - разбор конверта и декодирование, как в окне и командной строке
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EnvelopeBenchmark {
+
+    @Param({"chat", "neuro", "ultra", "smart"})
+    public String format;
+
+    @Param({"chat", "java"})
+    public String source;
+
+    /** Размер входа в байтах UTF-8 */
+    @Param({"100", "10000", "1000000", "100000000"})
+    public int size;
+
+    private String text;
+    private int plainBytes;
+    private String envelope;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Corpus.text(source, size);
+        plainBytes = text.getBytes(StandardCharsets.UTF_8).length;
+        envelope = compress(format, text);
+    }
+
+    @Benchmark
+    public String compress(ProcessedBytes counter) throws IOException {
+        counter.bytes += plainBytes;
+        return compress(format, text);
+    }
+
+    @Benchmark
+    public String decompress(ProcessedBytes counter) throws IOException {
+        counter.bytes += plainBytes;
+        return Envelope.parse(envelope).decode();
+    }
+
+    private static String compress(String format, String text) throws IOException {
+        switch (format) {
+            case "chat":
+                return ChatCompressor.compress(text);
+            case "neuro":
+                return NeuroCompressor.compressForNeuro(text, 1, "GZIP");
+            case "ultra":
+                return AdvancedCompressor.compressUltraCompactV2(text);
+            case "smart":
+                AlgorithmOracle.Decision decision = AlgorithmOracle.choose(text, AlgorithmOracle.DEFAULT_BUDGET_MILLIS);
+                return AdvancedCompressor.compressSmart(text, decision.getAlgorithm(), decision.getLevel(),
+                    TextEncoding.BASE64);
+            default:
+                throw new IllegalArgumentException("Неизвестный формат: " + format);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+#!/bin/sh
+# Бенчмарки JMH для SqText без системы сборки: jar-файлы JMH скачиваются один раз
+# в кэш (~/.cache/sqtext-jmh), исходники src/ и bench/ компилируются в bench/target/.
+#
+#   bench/run.sh                                   - все бенчмарки с профилировщиком GC
+#   bench/run.sh AlgorithmBenchmark -p size=100,10000 -prof gc
+#   bench/run.sh EnvelopeBenchmark.decompress -p format=smart -p source=chat
+#   bench/run.sh DetectBenchmark -bm sample -rf json -rff detect.json
+#
+# Аргументы передаются org.openjdk.jmh.Main как есть (-h - список). Корень с текстами
+# для входов задает SQTEXT_CORPUS (по умолчанию - каталог над SqText/).
+set -e
+
+JMH_VERSION=1.37
+REPO=https://repo1.maven.org/maven2
+
+BENCH=$(cd "$(dirname "$0")" && pwd)
+PROJECT=$(dirname "$BENCH")
+CORPUS=${SQTEXT_CORPUS:-$(dirname "$PROJECT")}
+CACHE=${SQTEXT_JMH_CACHE:-$HOME/.cache/sqtext-jmh}
+TARGET=$BENCH/target
+
+case "$(uname -s)" in
+    MINGW*|MSYS*|CYGWIN*) SEP=';' ;;
+    *) SEP=':' ;;
+esac
+
+if command -v sha256sum >/dev/null 2>&1; then
+    SHA256='sha256sum'
+else
+    SHA256='shasum -a 256'
+fi
+
+mkdir -p "$CACHE"
+CLASSPATH_JARS=
+# Путь в репозитории и SHA-256 jar-файла (совпадает с .sha256 на Maven Central):
+# скачанный файл с другой суммой в кэш не попадает
+while read -r artifact sum; do
+    jar=$CACHE/$(basename "$artifact")
+    if [ ! -f "$jar" ]; then
+        echo "Загрузка $(basename "$artifact")" >&2
+        curl -fsSL -o "$jar.part" "$REPO/$artifact"
+        actual=$($SHA256 "$jar.part" | cut -d' ' -f1)
+        if [ "$actual" != "$sum" ]; then
+            rm -f "$jar.part"
+            echo "Контрольная сумма $(basename "$artifact") не совпала: $actual вместо $sum" >&2
+            exit 1
+        fi
+        mv "$jar.part" "$jar"
+    fi
+    CLASSPATH_JARS=$CLASSPATH_JARS$SEP$jar
+done <<EOF
+org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar dc0eaf2bbf0036a70b60798c785d6e03a9daf06b68b8edb0f1ba9eb3421baeb3
+org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar 6a5604b5b804e0daca1145df1077609321687734a8b49387e49f10557c186c77
+net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar df26cc58f235f477db07f753ba5a3ab243ebe5789d9f89ecf68dd62ea9a66c28
+org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar 1e56d7b058d28b65abd256b8458e3885b674c1d588fa43cd7d1cbb9c7ef2b308
+EOF
+CLASSPATH_JARS=${CLASSPATH_JARS#"$SEP"}
+
+rm -rf "$TARGET/classes"
+mkdir -p "$TARGET/classes"
+find "$PROJECT/src" "$BENCH" -name '*.java' > "$TARGET/sources.txt"
+javac -encoding UTF-8 -cp "$CLASSPATH_JARS" -d "$TARGET/classes" @"$TARGET/sources.txt"
+# Словари и прочие ресурсы лежат рядом с исходниками
+(cd "$PROJECT/src" && find . -type f ! -name '*.java') | while read -r file; do
+    mkdir -p "$TARGET/classes/$(dirname "$file")"
+    cp "$PROJECT/src/$file" "$TARGET/classes/$file"
+done
+
+if [ $# -eq 0 ]; then
+    set -- -prof gc
+fi
+exec java -Dsqtext.corpus="$CORPUS" -cp "$TARGET/classes$SEP$CLASSPATH_JARS" org.openjdk.jmh.Main "$@"
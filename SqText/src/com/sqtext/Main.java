@@ -1,10 +1,15 @@
 package com.sqtext;
 
+import com.sqtext.cli.CommandLine;
 import com.sqtext.gui.MainWindow;
 
 public class Main {
     public static void main(String[] args) {
-        // Просто запускаем главное окно
+        if (args.length > 0) {
+            // С параметрами - консольный режим без окна (sqtext --help)
+            System.exit(CommandLine.run(args));
+        }
+        // Без параметров запускаем главное окно
         MainWindow.main(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package com.sqtext.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Пакетная обработка файлов пулом потоков: каждый файл - отдельная задача, результат
+ * пишется во временный файл рядом и переименовывается только после успеха, итоги
+ * выдаются в порядке готовности
+ */
+final class BatchRunner {
+
+    /** Что обработать и куда записать */
+    static final class Job {
+        final Path input;
+        final Path output;
+
+        Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    /** Итог по одному файлу; error == null - успех */
+    static final class Result {
+        final Job job;
+        String algorithm = "";
+        long inputBytes;
+        long outputBytes;
+        long nanos;
+        String error;
+
+        Result(Job job) {
+            this.job = job;
+        }
+
+        /** Объем несжатой стороны: вход при сжатии, выход при распаковке */
+        long plainBytes(boolean decompress) {
+            return decompress ? outputBytes : inputBytes;
+        }
+    }
+
+    private final Options options;
+
+    BatchRunner(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * Обрабатывает все задания; onResult вызывается в вызывающем потоке по мере готовности
+     */
+    List<Result> run(List<Job> jobs, Consumer<Result> onResult) throws InterruptedException {
+        List<Result> results = new ArrayList<>(jobs.size());
+        if (jobs.isEmpty()) {
+            return results;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.jobs, jobs.size()), r -> {
+            Thread thread = new Thread(r, "sqtext-cli-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(pool);
+            for (Job job : jobs) {
+                completion.submit(() -> process(job));
+            }
+            for (int i = 0; i < jobs.size(); i++) {
+                try {
+                    Result result = completion.take().get();
+                    results.add(result);
+                    onResult.accept(result);
+                } catch (ExecutionException e) {
+                    // process() ловит все сам; сюда попадают только Error
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    Result process(Job job) {
+        Result result = new Result(job);
+        Path part = job.output.resolveSibling(job.output.getFileName() + ".part");
+        long start = System.nanoTime();
+        try {
+            if (!options.force && Files.exists(job.output)) {
+                throw new IOException("файл уже есть, перезапись - с --force: " + job.output);
+            }
+            Path parent = job.output.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            if (options.decompress) {
+                result.algorithm = OutputFormat.decompress(job.input, part, options);
+            } else {
+                options.format.compress(job.input, part, options);
+                result.algorithm = options.format.algorithmName(options);
+            }
+            Files.move(part, job.output, StandardCopyOption.REPLACE_EXISTING);
+            result.inputBytes = Files.size(job.input);
+            result.outputBytes = Files.size(job.output);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+                // остаток .part не мешает следующим файлам
+            }
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,314 @@
+package com.sqtext.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import com.sqtext.compression.Envelope;
+import com.sqtext.compression.TextEncoding;
+
+/**
+ * Консольный режим без окна: сжатие и распаковка файлов, масок и каталогов пулом
+ * потоков или фильтр stdin -> stdout. По каждому файлу и в конце печатается
+ * статистика - колонками через табуляцию или JSON по строке на запись (--json).
+ * Код выхода: 0 - все успешно, 1 - были ошибки по файлам, 2 - ошибка параметров.
+ * С --serve вместо обработки файлов запускается служба (см. ServiceServer)
+ */
+public final class CommandLine {
+    private static final String CONTAINER_EXTENSION = ".sqz";
+    private static final String TEXT_EXTENSION = ".sqz.txt";
+
+    private final Options options;
+    private final PrintStream report;
+
+    private CommandLine(Options options, PrintStream report) {
+        this.options = options;
+        this.report = report;
+    }
+
+    public static int run(String[] args) {
+        return run(args, System.in, System.out, System.err);
+    }
+
+    static int run(String[] args, InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            stderr.println("sqtext: " + e.getMessage());
+            stderr.println("Справка: sqtext --help");
+            return 2;
+        }
+        if (options.help) {
+            printUsage(stdout);
+            return 0;
+        }
+        try {
+            if (options.serve) {
+                return ServiceServer.serve(options, stderr);
+            }
+            if (options.isFilter()) {
+                // stdout занят данными - статистика в stderr
+                return new CommandLine(options, stderr).filter(stdin, stdout);
+            }
+            return new CommandLine(options, stdout).batch(stderr);
+        } catch (IOException e) {
+            stderr.println("sqtext: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /**
+     * Фильтр: stdin во временный файл, обработка, результат в stdout
+     */
+    private int filter(InputStream stdin, PrintStream stdout) throws IOException {
+        Path dir = Files.createTempDirectory("sqtext-");
+        try {
+            Path input = dir.resolve("stdin");
+            Files.copy(stdin, input);
+            BatchRunner.Job job = new BatchRunner.Job(input, dir.resolve("stdout"));
+            long start = System.nanoTime();
+            BatchRunner.Result result = new BatchRunner(options).process(job);
+            if (result.error == null) {
+                Files.copy(job.output, stdout);
+                stdout.flush();
+            }
+            printResult(result);
+            printSummary(List.of(result), System.nanoTime() - start);
+            return result.error == null ? 0 : 1;
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    private int batch(PrintStream stderr) throws IOException, InterruptedException {
+        List<BatchRunner.Job> jobs = new ArrayList<>();
+        int missing = 0;
+        for (String input : options.inputs) {
+            if (!collect(input, jobs)) {
+                stderr.println("sqtext: нет файлов: " + input);
+                missing++;
+            }
+        }
+        long start = System.nanoTime();
+        List<BatchRunner.Result> results = new BatchRunner(options).run(jobs, this::printResult);
+        printSummary(results, System.nanoTime() - start);
+        for (BatchRunner.Result r : results) {
+            if (r.error != null) {
+                missing++;
+            }
+        }
+        return missing == 0 ? 0 : 1;
+    }
+
+    /**
+     * Добавляет задания для файла, каталога (с -r) или маски
+     * @return false, если ничего не найдено
+     */
+    private boolean collect(String input, List<BatchRunner.Job> jobs) throws IOException {
+        int before = jobs.size();
+        Path path = isGlob(input) ? null : Paths.get(input);
+        if (path != null && Files.isRegularFile(path)) {
+            jobs.add(new BatchRunner.Job(path, outputFor(path, null)));
+        } else if (path != null && Files.isDirectory(path)) {
+            if (!options.recursive) {
+                throw new IOException(input + " - каталог, для обхода нужен -r");
+            }
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile).filter(this::wanted).sorted()
+                    .forEach(file -> jobs.add(new BatchRunner.Job(file, outputFor(file, path))));
+            }
+        } else if (path == null) {
+            collectGlob(input, jobs);
+        }
+        return jobs.size() > before;
+    }
+
+    /**
+     * Маска вида dir/*.txt или src/**.java: обход начинается с части пути без
+     * спецсимволов, глубина ограничена числом уровней маски (без **)
+     */
+    private void collectGlob(String glob, List<BatchRunner.Job> jobs) throws IOException {
+        String[] parts = glob.split("[/\\\\]");
+        int fixed = 0;
+        while (fixed < parts.length - 1 && !isGlob(parts[fixed])) {
+            fixed++;
+        }
+        Path root = Paths.get(String.join("/", java.util.Arrays.copyOf(parts, fixed)));
+        if (!Files.isDirectory(root.toString().isEmpty() ? Paths.get(".") : root)) {
+            return;
+        }
+        int depth = glob.contains("**") ? Integer.MAX_VALUE : parts.length - fixed;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> files = Files.walk(root, depth)) {
+            files.filter(p -> matcher.matches(p) && Files.isRegularFile(p)).sorted()
+                .forEach(file -> jobs.add(new BatchRunner.Job(file, outputFor(file, root))));
+        }
+    }
+
+    /** При обходе каталога берем только то, что еще не сжато (или только сжатое - при распаковке) */
+    private boolean wanted(Path file) {
+        String name = file.getFileName().toString();
+        boolean packed = name.endsWith(CONTAINER_EXTENSION) || name.endsWith(TEXT_EXTENSION);
+        return options.decompress == packed && !name.endsWith(".part");
+    }
+
+    /**
+     * Имя результата: рядом с исходным или в -o (с сохранением структуры каталогов от root)
+     */
+    private Path outputFor(Path input, Path root) {
+        String name = input.getFileName().toString();
+        if (!options.decompress) {
+            name += options.format.getExtension();
+        } else if (name.endsWith(TEXT_EXTENSION)) {
+            name = name.substring(0, name.length() - TEXT_EXTENSION.length());
+        } else if (name.endsWith(CONTAINER_EXTENSION)) {
+            name = name.substring(0, name.length() - CONTAINER_EXTENSION.length());
+        } else {
+            name += ".out";
+        }
+        if (options.outputDir == null) {
+            return input.resolveSibling(name);
+        }
+        Path relative = root != null ? root.relativize(input) : input.getFileName();
+        return options.outputDir.resolve(relative).resolveSibling(name);
+    }
+
+    private static boolean isGlob(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0 || s.indexOf('[') >= 0 || s.indexOf('{') >= 0;
+    }
+
+    private void printResult(BatchRunner.Result r) {
+        if (options.quiet) {
+            return;
+        }
+        double millis = r.nanos / 1e6;
+        // в режиме фильтра пути - временные файлы, показываем "-"
+        String input = options.isFilter() ? "-" : r.job.input.toString();
+        String output = options.isFilter() ? "-" : r.job.output.toString();
+        if (options.json) {
+            Envelope.Writer json = new Envelope.Writer("", 256, false)
+                .field("file", input)
+                .field("output", output)
+                .field("operation", options.decompress ? "decompress" : "compress")
+                .field("status", r.error == null ? "ok" : "error");
+            if (r.error != null) {
+                json.field("error", r.error);
+            } else {
+                json.field("algorithm", r.algorithm)
+                    .field("in", r.inputBytes)
+                    .field("out", r.outputBytes)
+                    .field("ratio", ratio(r.inputBytes, r.outputBytes), 4)
+                    .field("mbps", mbps(r.plainBytes(options.decompress), r.nanos), 2);
+            }
+            report.println(json.field("ms", millis, 3).finish());
+        } else if (r.error != null) {
+            report.println("ERROR\t" + input + "\t" + r.error);
+        } else {
+            report.println(String.format(Locale.ROOT, "OK\t%s\t%d\t%d\t%.4f\t%.3f\t%.2f\t%s\t%s",
+                r.algorithm, r.inputBytes, r.outputBytes, ratio(r.inputBytes, r.outputBytes),
+                millis, mbps(r.plainBytes(options.decompress), r.nanos), input, output));
+        }
+    }
+
+    private void printSummary(List<BatchRunner.Result> results, long wallNanos) {
+        if (options.quiet) {
+            return;
+        }
+        long in = 0;
+        long out = 0;
+        long plain = 0;
+        long busyNanos = 0;
+        int failed = 0;
+        for (BatchRunner.Result r : results) {
+            if (r.error != null) {
+                failed++;
+                continue;
+            }
+            in += r.inputBytes;
+            out += r.outputBytes;
+            plain += r.plainBytes(options.decompress);
+            busyNanos += r.nanos;
+        }
+        if (options.json) {
+            report.println(new Envelope.Writer("", 256, false)
+                .field("summary", true)
+                .field("operation", options.decompress ? "decompress" : "compress")
+                .field("files", results.size())
+                .field("failed", failed)
+                .field("in", in)
+                .field("out", out)
+                .field("ratio", ratio(in, out), 4)
+                .field("wall_ms", wallNanos / 1e6, 3)
+                .field("busy_ms", busyNanos / 1e6, 3)
+                .field("mbps", mbps(plain, wallNanos), 2)
+                .field("jobs", options.jobs)
+                .finish());
+        } else {
+            report.println(String.format(Locale.ROOT, "TOTAL\tfiles=%d\tfailed=%d\t%d\t%d\t%.4f\t%.3f\t%.2f\tjobs=%d",
+                results.size(), failed, in, out, ratio(in, out), wallNanos / 1e6, mbps(plain, wallNanos), options.jobs));
+        }
+    }
+
+    private static double ratio(long in, long out) {
+        return in == 0 ? 0 : (double) out / in;
+    }
+
+    /** МБ/с по несжатому объему (десятичные мегабайты) */
+    private static double mbps(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes * 1000.0 / nanos;
+    }
+
+    private static void printUsage(PrintStream out) {
+        StringBuilder encodings = new StringBuilder();
+        for (TextEncoding e : TextEncoding.values()) {
+            encodings.append(encodings.length() == 0 ? "" : ", ").append(e.getName());
+        }
+        out.println("Использование: sqtext [параметры] [файлы, каталоги, маски...]");
+        out.println("Без файлов (или с \"-\") читает stdin и пишет результат в stdout.");
+        out.println();
+        out.println("  -c, --compress        сжать (по умолчанию)");
+        out.println("  -d, --decompress      распаковать; формат определяется по содержимому");
+        out.println("  -f, --format ФОРМАТ   " + OutputFormat.names() + " (по умолчанию sqz)");
+        out.println("  -a, --algorithm АЛГ   кодек для sqz, smart и words: gzip, zstd, brotli, raw");
+        out.println("  -l, --level N         уровень кодека (по умолчанию - свой для каждого)");
+        out.println("      --depth N         глубина gzip-rec и neuro; при распаковке - число проходов GZIP");
+        out.println("  -e, --encoding ИМЯ    кодировка данных smart, neuro, neuro-dict, ultra, chat, chat-dict, java, words: " + encodings);
+        out.println("      --base ФАЙЛ       прежняя версия для delta (по умолчанию - самая похожая из недавних)");
+        out.println("  -r, --recursive       обходить каталоги");
+        out.println("  -o, --output КАТАЛОГ  куда писать результаты (по умолчанию рядом с исходными)");
+        out.println("  -j, --jobs N          число потоков (по умолчанию - число ядер)");
+        out.println("      --force           перезаписывать существующие файлы");
+        out.println("      --json            статистика в JSON, по строке на файл и итог");
+        out.println("  -q, --quiet           без статистики");
+        out.println("  -h, --help            эта справка");
+        out.println();
+        out.println("Служба (для других программ, без запуска JVM на каждый вызов):");
+        out.println("      --serve           запустить службу; по умолчанию HTTP на 127.0.0.1:" + ServiceServer.DEFAULT_PORT);
+        out.println("      --http ПОРТ       HTTP: POST /compress?format=..., /decompress, /detect; GET /formats");
+        out.println("      --socket ПУТЬ     сокет Unix с кадрами длина+данные, запросы можно слать подряд");
+        out.println();
+        out.println("Статистика без --json - колонки через табуляцию:");
+        out.println("  OK  алгоритм  вход  выход  коэфф.  мс  МБ/с  файл  результат");
+        out.println("  ERROR  файл  сообщение");
+        out.println("  TOTAL  files=N  failed=N  вход  выход  коэфф.  мс  МБ/с  jobs=N");
+        out.println("Код выхода: 0 - успешно, 1 - ошибки по файлам, 2 - неверные параметры.");
+    }
+}
\ No newline at end of file
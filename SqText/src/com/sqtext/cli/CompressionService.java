@@ -0,0 +1,133 @@
+package com.sqtext.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.sqtext.compression.Envelope;
+import com.sqtext.compression.GZipCompressor;
+import com.sqtext.compression.SqzContainer;
+
+/**
+ * Операции службы над телом запроса: compress, decompress и detect. Формат и параметры -
+ * как в командной строке; исключения - IllegalArgumentException (неверный запрос)
+ * и IOException (данные не разобрать).
+ * Потоком, без загрузки тела в память, идут контейнер sqz и gzip (GZIP+Base64; в службе
+ * он принимает любые байты, не только UTF-8). Остальные текстовые форматы - конверты и
+ * gzip-rec - работают со строкой целиком, поэтому их тело ограничено Payload.TEXT_LIMIT
+ */
+final class CompressionService {
+
+    /** Ответ: тело, тип содержимого и распознанный или использованный формат */
+    static final class Reply {
+        final Payload body;
+        final String contentType;
+        final String format;
+
+        Reply(Payload body, String contentType, String format) {
+            this.body = body;
+            this.contentType = contentType;
+            this.format = format;
+        }
+    }
+
+    static final String BINARY = "application/octet-stream";
+    static final String TEXT = "text/plain; charset=utf-8";
+    static final String JSON = "application/json; charset=utf-8";
+
+    private CompressionService() {
+    }
+
+    static Reply execute(String operation, Options params, Payload input) throws IOException {
+        switch (operation) {
+            case "compress":
+                return compress(params, input);
+            case "decompress":
+                return decompress(params, input);
+            case "detect":
+                return detect(input);
+            default:
+                throw new IllegalArgumentException("Неизвестная операция: " + operation
+                    + " (есть: compress, decompress, detect)");
+        }
+    }
+
+    private static Reply compress(Options params, Payload input) throws IOException {
+        OutputFormat format = params.format;
+        if (format.writesFile()) {
+            Path output = Files.createTempFile("sqtext-reply-", OutputFormat.SQZ.getExtension());
+            try (InputStream in = input.open()) {
+                OutputFormat.writeContainer(in, output, params);
+                return new Reply(Payload.ofFile(output), BINARY, format.algorithmName(params));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(output);
+                throw e;
+            }
+        }
+        if (format == OutputFormat.GZIP) {
+            Payload compressed = Payload.collect(out -> {
+                try (InputStream in = input.open()) {
+                    GZipCompressor.compress(in, out, params.level);
+                }
+            });
+            return new Reply(compressed, TEXT, format.algorithmName(params));
+        }
+        byte[] compressed = format.compressBytes(input.bytes(), params);
+        return new Reply(Payload.of(compressed), TEXT, format.algorithmName(params));
+    }
+
+    private static Reply decompress(Options params, Payload input) throws IOException {
+        if (SqzContainer.isContainer(input.head(4))) {
+            Path output = Files.createTempFile("sqtext-reply-", ".bin");
+            try {
+                String format = OutputFormat.decompress(input.file(), output, params);
+                return new Reply(Payload.ofFile(output), BINARY, format);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(output);
+                throw e;
+            }
+        }
+        if (params.depth <= 1 && looksGzip(input)) {
+            Payload decompressed = Payload.collect(out -> {
+                try (InputStream in = input.open()) {
+                    GZipCompressor.decompress(in, out);
+                }
+            });
+            return new Reply(decompressed, TEXT, OutputFormat.GZIP.getName());
+        }
+        byte[] data = input.bytes();
+        String[] format = new String[1];
+        Payload decompressed = Payload.collect(out -> format[0] = OutputFormat.decompressText(data, params, out));
+        return new Reply(decompressed, TEXT, format[0]);
+    }
+
+    /**
+     * GZIP+Base64 по началу и концу тела (GZipCompressor.looksCompressed), без чтения целиком
+     */
+    private static boolean looksGzip(Payload input) throws IOException {
+        int window = GZipCompressor.DETECT_WINDOW;
+        if (input.length() <= 2L * window) {
+            return GZipCompressor.looksCompressed(new String(input.head(2 * window), StandardCharsets.ISO_8859_1));
+        }
+        return GZipCompressor.looksCompressed(new String(input.head(window), StandardCharsets.ISO_8859_1),
+            new String(input.tail(window), StandardCharsets.ISO_8859_1), input.length());
+    }
+
+    /**
+     * Формат без распаковки; контейнер определяется по сигнатуре, текст - по конверту
+     * или признакам GZIP+Base64
+     */
+    private static Reply detect(Payload input) throws IOException {
+        byte[] head = input.head(4);
+        String format = SqzContainer.isContainer(head) ? OutputFormat.SQZ.getName()
+            : looksGzip(input) ? OutputFormat.GZIP.getName() : OutputFormat.detect(input.bytes());
+        String json = new Envelope.Writer("", 64, false)
+            .field("format", format)
+            .field("compressed", !format.equals("plain"))
+            .field("length", input.length())
+            .finish();
+        return new Reply(Payload.of(json.getBytes(StandardCharsets.UTF_8)), JSON, format);
+    }
+}
\ No newline at end of file
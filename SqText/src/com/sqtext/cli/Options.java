@@ -0,0 +1,171 @@
+package com.sqtext.cli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.sqtext.compression.AdvancedCompressor;
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+import com.sqtext.compression.TextEncoding;
+
+/**
+ * Параметры командной строки. Ошибки разбора - IllegalArgumentException с текстом для пользователя
+ */
+final class Options {
+    boolean decompress;
+    OutputFormat format = OutputFormat.SQZ;
+    /** null - по умолчанию для формата (smart выбирает сам) */
+    Algorithm algorithm;
+    /** -1 - по умолчанию для алгоритма */
+    int level = -1;
+    /** 0 - не задана: при распаковке значит один проход GZIP */
+    int depth;
+    TextEncoding encoding = TextEncoding.BASE64;
+    /** Базовая версия для delta; null - из недавних версий */
+    Path basePath;
+    boolean recursive;
+    Path outputDir;
+    int jobs = Runtime.getRuntime().availableProcessors();
+    boolean force;
+    boolean json;
+    boolean quiet;
+    boolean help;
+    /** Режим службы: HTTP на localhost и/или сокет Unix */
+    boolean serve;
+    int httpPort = -1;
+    Path socketPath;
+    final List<String> inputs = new ArrayList<>();
+
+    /** Параметры запроса службы - те же, что в командной строке */
+    private static final List<String> REQUEST_PARAMETERS = List.of("format", "algorithm", "level", "depth", "encoding");
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+        boolean onlyFiles = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (onlyFiles || !arg.startsWith("-") || arg.equals("-")) {
+                options.inputs.add(arg);
+                continue;
+            }
+            switch (arg) {
+                case "--":
+                    onlyFiles = true;
+                    break;
+                case "-c": case "--compress":
+                    options.decompress = false;
+                    break;
+                case "-d": case "--decompress":
+                    options.decompress = true;
+                    break;
+                case "-f": case "--format":
+                    options.format = OutputFormat.forName(value(args, ++i, arg));
+                    break;
+                case "-a": case "--algorithm":
+                    try {
+                        options.algorithm = Algorithm.forName(value(args, ++i, arg));
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException(e.getMessage());
+                    }
+                    break;
+                case "-l": case "--level":
+                    options.level = number(args, ++i, arg, 0, 22);
+                    break;
+                case "--depth":
+                    options.depth = number(args, ++i, arg, 1, 10);
+                    break;
+                case "-e": case "--encoding":
+                    try {
+                        options.encoding = TextEncoding.forName(value(args, ++i, arg));
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException(e.getMessage());
+                    }
+                    break;
+                case "--base":
+                    options.basePath = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-r": case "--recursive":
+                    options.recursive = true;
+                    break;
+                case "-o": case "--output":
+                    options.outputDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-j": case "--jobs":
+                    options.jobs = number(args, ++i, arg, 1, 1024);
+                    break;
+                case "--force":
+                    options.force = true;
+                    break;
+                case "--json":
+                    options.json = true;
+                    break;
+                case "-q": case "--quiet":
+                    options.quiet = true;
+                    break;
+                case "-h": case "--help":
+                    options.help = true;
+                    break;
+                case "--serve":
+                    options.serve = true;
+                    break;
+                case "--http":
+                    options.httpPort = number(args, ++i, arg, 0, 65535);
+                    break;
+                case "--socket":
+                    options.socketPath = Paths.get(value(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Параметры одного запроса службы (format, algorithm, level, depth, encoding)
+     */
+    static Options fromParameters(Map<String, String> parameters) {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> e : parameters.entrySet()) {
+            if (!REQUEST_PARAMETERS.contains(e.getKey())) {
+                throw new IllegalArgumentException("Неизвестный параметр запроса: " + e.getKey());
+            }
+            args.add("--" + e.getKey());
+            args.add(e.getValue());
+        }
+        return parse(args.toArray(new String[0]));
+    }
+
+    /** Уровень для алгоритма: заданный или по умолчанию */
+    int levelFor(Algorithm algorithm) {
+        return level >= 0 ? level : AdvancedCompressor.defaultLevel(algorithm);
+    }
+
+    /** Чтение и запись идут через stdin/stdout */
+    boolean isFilter() {
+        return inputs.isEmpty() || (inputs.size() == 1 && inputs.get(0).equals("-"));
+    }
+
+    private static String value(String[] args, int i, String name) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Нет значения для " + name);
+        }
+        return args[i];
+    }
+
+    private static int number(String[] args, int i, String name, int min, int max) {
+        String value = value(args, i, name);
+        try {
+            int n = Integer.parseInt(value);
+            if (n < min || n > max) {
+                throw new IllegalArgumentException(name + ": допустимо от " + min + " до " + max);
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": ожидается число, а не " + value);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,334 @@
+package com.sqtext.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import com.sqtext.compression.AdvancedCompressor;
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+import com.sqtext.compression.AlgorithmOracle;
+import com.sqtext.compression.ChatCompressor;
+import com.sqtext.compression.ChunkStore;
+import com.sqtext.compression.DedupCompressor;
+import com.sqtext.compression.DeltaCompressor;
+import com.sqtext.compression.Envelope;
+import com.sqtext.compression.GZipCompressor;
+import com.sqtext.compression.NeuroCompressor;
+import com.sqtext.compression.SqzContainer;
+import com.sqtext.compression.WordCompressor;
+
+/**
+ * Форматы сжатия командной строки: двоичный контейнер .sqz и текстовые форматы окна
+ * (GZIP+Base64 и JSON-конверты). Распаковка формат не спрашивает - определяет сама
+ */
+enum OutputFormat {
+    /** Двоичный контейнер с блоками и CRC32C; файл читается потоком, без загрузки целиком */
+    SQZ("sqz", ".sqz") {
+        @Override
+        String algorithmName(Options options) {
+            return algorithmOf(options).getName();
+        }
+
+        @Override
+        void compress(Path input, Path output, Options options) throws IOException {
+            try (InputStream in = Files.newInputStream(input)) {
+                writeContainer(in, output, options);
+            }
+        }
+    },
+    /** GZIP+Base64, как кнопка "Сжать"; кодировка всегда Base64 */
+    GZIP("gzip", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            if (options.level < 0) {
+                return GZipCompressor.compress(text);
+            }
+            return Base64.getEncoder().encodeToString(GZipCompressor.compressToBytes(
+                text.getBytes(StandardCharsets.UTF_8), options.level));
+        }
+    },
+    GZIP_RECURSIVE("gzip-rec", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            return GZipCompressor.compressRecursive(text, Math.max(1, options.depth));
+        }
+    },
+    /** sqz-smart: алгоритм из -a или выбранный пробным сжатием */
+    SMART("smart", ".sqz.txt") {
+        @Override
+        String algorithmName(Options options) {
+            return options.algorithm != null ? options.algorithm.getName() : "auto";
+        }
+
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            if (options.algorithm != null) {
+                return AdvancedCompressor.compressSmart(text, options.algorithm,
+                    options.levelFor(options.algorithm), options.encoding);
+            }
+            return AdvancedCompressor.compressSmart(text,
+                AlgorithmOracle.choose(text, AlgorithmOracle.DEFAULT_BUDGET_MILLIS), options.encoding);
+        }
+    },
+    NEURO("neuro", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            return NeuroCompressor.compressForNeuro(text, Math.max(1, options.depth), "GZIP", options.encoding);
+        }
+    },
+    /** Конверт для нейросети со встроенным словарем: меньше, но распаковывается только SqText */
+    NEURO_DICTIONARY("neuro-dict", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            return NeuroCompressor.compressForNeuro(text, 1, NeuroCompressor.ALGORITHM_DICTIONARY, options.encoding);
+        }
+    },
+    ULTRA("ultra", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            return AdvancedCompressor.compressUltraCompactV2(text, options.encoding);
+        }
+    },
+    CHAT("chat", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) {
+            return ChatCompressor.compress(text, ChatCompressor.Mode.BYTES, options.encoding);
+        }
+    },
+    CHAT_TOKENS("chat-tok", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) {
+            return ChatCompressor.compress(text, ChatCompressor.Mode.TOKENS, options.encoding);
+        }
+    },
+    /** chat_v1 со встроенным словарем: меньше на коротких текстах, распаковывается только SqText */
+    CHAT_DICTIONARY("chat-dict", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) {
+            return ChatCompressor.compress(text, ChatCompressor.Mode.DICTIONARY, options.encoding);
+        }
+    },
+    /** sqz-dedup: фрагменты прежних сообщений - ссылками в хранилище sqtext_chunks */
+    DEDUP("dedup", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            return DedupCompressor.compress(text, ChunkStore.getDefault(), options.encoding);
+        }
+    },
+    /** sqz-delta: правки к базе из --base или к самой похожей недавней версии (sqtext_bases) */
+    DELTA("delta", ".sqz.txt") {
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            if (options.basePath != null) {
+                return DeltaCompressor.compress(text, readBase(options), options.encoding);
+            }
+            return DeltaCompressor.compress(text, options.encoding);
+        }
+    },
+    /** sqz-words: частые слова заменены кодами встроенного словаря и словаря документа */
+    WORDS("words", ".sqz.txt") {
+        @Override
+        String algorithmName(Options options) {
+            return "words+" + algorithmOf(options).getName();
+        }
+
+        @Override
+        String compressText(String text, Options options) throws IOException {
+            Algorithm algorithm = algorithmOf(options);
+            return WordCompressor.compress(text, algorithm, options.levelFor(algorithm), options.encoding);
+        }
+    };
+
+    private final String name;
+    private final String extension;
+
+    OutputFormat(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    String getName() { return name; }
+    String getExtension() { return extension; }
+
+    /** Имя алгоритма для статистики */
+    String algorithmName(Options options) {
+        return name;
+    }
+
+    /** Результат - только файл (двоичный контейнер), в памяти не собирается */
+    boolean writesFile() {
+        return this == SQZ;
+    }
+
+    /**
+     * Сжимает файл input в output (output перезаписывается)
+     */
+    void compress(Path input, Path output, Options options) throws IOException {
+        Files.write(output, compressBytes(Files.readAllBytes(input), options));
+    }
+
+    /**
+     * Сжатие текстового формата в памяти: вход - текст в UTF-8, выход - сжатый текст в UTF-8
+     */
+    byte[] compressBytes(byte[] data, Options options) throws IOException {
+        return compressText(decodeText(data), options).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Сжатие в текст; форматы, которые пишут только файл (writesFile), его не поддерживают
+     */
+    String compressText(String text, Options options) throws IOException {
+        throw new IOException("Формат " + name + " - двоичный файл, в текст не сжимается");
+    }
+
+    /**
+     * Пишет поток в контейнер .sqz блоками, не загружая вход целиком
+     */
+    static void writeContainer(InputStream in, Path output, Options options) throws IOException {
+        Algorithm algorithm = algorithmOf(options);
+        byte[] buffer = new byte[SqzContainer.DEFAULT_BLOCK_SIZE];
+        try (SqzContainer.Writer writer = new SqzContainer.Writer(output, algorithm,
+                options.levelFor(algorithm), SqzContainer.DEFAULT_BLOCK_SIZE)) {
+            int n;
+            while ((n = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                writer.write(buffer, 0, n);
+            }
+        }
+    }
+
+    static OutputFormat forName(String name) {
+        for (OutputFormat f : values()) {
+            if (f.name.equalsIgnoreCase(name)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный формат: " + name + " (есть: " + names() + ")");
+    }
+
+    static String names() {
+        StringBuilder sb = new StringBuilder();
+        for (OutputFormat f : values()) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(f.name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Распаковывает файл любого формата SqText: контейнер .sqz, JSON-конверт или
+     * GZIP+Base64 (с --depth - рекурсивный)
+     * @return имя распознанного формата - для статистики
+     */
+    static String decompress(Path input, Path output, Options options) throws IOException {
+        if (SqzContainer.isContainer(input)) {
+            try (SqzContainer container = SqzContainer.open(input);
+                    OutputStream out = Files.newOutputStream(output)) {
+                for (int i = 0; i < container.getBlockCount(); i++) {
+                    out.write(container.readBlock(i));
+                }
+                return SQZ.name + ":" + container.getAlgorithm().getName();
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(output)) {
+            return decompressText(Files.readAllBytes(input), options, out);
+        }
+    }
+
+    /**
+     * Распаковывает текстовый формат (конверт или GZIP+Base64) из памяти; результат
+     * пишется в out только целиком, после успешной распаковки
+     * @return имя распознанного формата
+     */
+    static String decompressText(byte[] data, Options options, OutputStream out) throws IOException {
+        String text = decodeText(data).trim();
+        String result;
+        String format;
+        Envelope envelope = Envelope.tryParse(text);
+        if (envelope != null && envelope.getFormat() == Envelope.Format.SQZ_DELTA && options.basePath != null) {
+            result = DeltaCompressor.decompress(text, readBase(options));
+            format = DELTA.name;
+        } else if (envelope != null) {
+            result = envelope.decode();
+            format = envelopeName(envelope);
+        } else if (options.depth > 1) {
+            result = GZipCompressor.decompressRecursive(text, options.depth);
+            format = GZIP_RECURSIVE.name;
+        } else if (GZipCompressor.looksCompressed(text)) {
+            result = GZipCompressor.decompress(text);
+            format = GZIP.name;
+        } else {
+            throw new IOException("Формат не распознан: это не контейнер .sqz, не конверт SqText и не GZIP+Base64");
+        }
+        out.write(result.getBytes(StandardCharsets.UTF_8));
+        return format;
+    }
+
+    /**
+     * Формат данных без распаковки: "sqz", имя конверта, "gzip" или "plain"
+     */
+    static String detect(byte[] data) {
+        if (SqzContainer.isContainer(data)) {
+            return SQZ.name;
+        }
+        String text = new String(data, StandardCharsets.UTF_8).trim();
+        Envelope envelope = Envelope.tryParse(text);
+        if (envelope != null) {
+            return envelopeName(envelope);
+        }
+        return GZipCompressor.looksCompressed(text) ? GZIP.name : "plain";
+    }
+
+    /** Имя конверта как имя формата командной строки, которым он получен */
+    private static String envelopeName(Envelope envelope) {
+        switch (envelope.getFormat()) {
+            case CHAT_V1:
+                return CHAT.name;
+            case SQZ:
+                return NEURO.name;
+            case SQZ_SMART:
+                return SMART.name;
+            case SQZ_DEDUP:
+                return DEDUP.name;
+            case SQZ_DELTA:
+                return DELTA.name;
+            case SQZ_JAVA:
+                // Формата -f java нет (см. JavaCompressor), но такие конверты распаковываются
+                return "java";
+            case SQZ_WORDS:
+                return WORDS.name;
+            default:
+                return ULTRA.name;
+        }
+    }
+
+    /** Базовая версия для sqz-delta из файла --base */
+    private static String readBase(Options options) throws IOException {
+        return decodeText(Files.readAllBytes(options.basePath));
+    }
+
+    private static Algorithm algorithmOf(Options options) {
+        return options.algorithm != null ? options.algorithm : Algorithm.GZIP;
+    }
+
+    /**
+     * Текст в строгом UTF-8: текстовые форматы сжимают строку, и двоичные данные
+     * при перекодировании испортились бы молча
+     */
+    static String decodeText(byte[] data) throws IOException {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(data))
+                .toString();
+        } catch (CharacterCodingException e) {
+            throw new IOException("Данные не в UTF-8; двоичные данные сжимает только формат sqz");
+        }
+    }
+}
\ No newline at end of file
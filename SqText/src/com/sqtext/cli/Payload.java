@@ -0,0 +1,233 @@
+package com.sqtext.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Тело запроса или ответа службы: небольшое - в памяти, большое - во временном файле,
+ * куда оно пишется потоком по мере чтения (read) или записи (collect). close() удаляет
+ * временный файл
+ */
+final class Payload implements Closeable {
+    /** Больше этого тело уходит на диск */
+    static final int MEMORY_LIMIT = 8 << 20;
+    /** Предел bytes(): текстовые форматы, кроме gzip, работают со строкой целиком */
+    static final long TEXT_LIMIT = 64L << 20;
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private byte[] bytes;
+    private Path file;
+    private final long length;
+
+    private Payload(byte[] bytes, Path file, long length) {
+        this.bytes = bytes;
+        this.file = file;
+        this.length = length;
+    }
+
+    static Payload of(byte[] bytes) {
+        return new Payload(bytes, null, bytes.length);
+    }
+
+    /** Временный файл переходит во владение Payload */
+    static Payload ofFile(Path file) throws IOException {
+        return new Payload(null, file, Files.size(file));
+    }
+
+    /** Пишет тело в поток; collect сохраняет записанное */
+    interface Producer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Тело, которое producer пишет потоком: до MEMORY_LIMIT - в памяти, дальше - во
+     * временном файле. При ошибке файл удаляется
+     */
+    static Payload collect(Producer producer) throws IOException {
+        Spill out = new Spill();
+        try {
+            producer.writeTo(out);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            out.discard();
+            throw e;
+        }
+        return out.file != null ? new Payload(null, out.file, out.total) : of(out.memory.toByteArray());
+    }
+
+    /**
+     * Читает ровно length байт или, если length < 0, до конца потока
+     */
+    static Payload read(InputStream in, long length) throws IOException {
+        int first = (int) (length < 0 ? MEMORY_LIMIT : Math.min(length, MEMORY_LIMIT));
+        ByteArrayOutputStream memory = new ByteArrayOutputStream(length < 0 ? BUFFER_SIZE : first);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (memory.size() < first) {
+            int n = in.read(buffer, 0, Math.min(buffer.length, first - memory.size()));
+            if (n < 0) {
+                break;
+            }
+            memory.write(buffer, 0, n);
+            remaining -= n;
+        }
+        if (length >= 0 && remaining > 0 && memory.size() < first) {
+            throw new EOFException("Тело запроса короче заявленного");
+        }
+        if (remaining == 0 || (length < 0 && memory.size() < first)) {
+            return of(memory.toByteArray());
+        }
+        // Не помещается в память: уже прочитанное и остаток - в файл
+        Path file = Files.createTempFile("sqtext-body-", ".bin");
+        long total = memory.size();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            memory.writeTo(out);
+            memory = null;
+            while (length < 0 || remaining > 0) {
+                int n = in.read(buffer, 0, length < 0 ? buffer.length : (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    if (length >= 0) {
+                        throw new EOFException("Тело запроса короче заявленного");
+                    }
+                    break;
+                }
+                out.write(buffer, 0, n);
+                total += n;
+                remaining -= n;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new Payload(null, file, total);
+    }
+
+    long length() {
+        return length;
+    }
+
+    /** Первые байты (для определения формата) */
+    byte[] head(int count) throws IOException {
+        if (bytes != null) {
+            return bytes.length <= count ? bytes : java.util.Arrays.copyOf(bytes, count);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readNBytes(count);
+        }
+    }
+
+    /** Последние байты (с начала, если тело короче count) */
+    byte[] tail(int count) throws IOException {
+        if (bytes != null) {
+            return bytes.length <= count ? bytes : java.util.Arrays.copyOfRange(bytes, bytes.length - count, bytes.length);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            in.skipNBytes(Math.max(0, length - count));
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Все байты в памяти (текстовые форматы работают со строкой целиком), не больше TEXT_LIMIT
+     */
+    byte[] bytes() throws IOException {
+        if (bytes == null) {
+            if (length > TEXT_LIMIT) {
+                throw new IOException("Тело " + length + " байт больше " + (TEXT_LIMIT >> 20)
+                    + " МБ: этот формат работает со строкой целиком; потоком идут только gzip и sqz");
+            }
+            bytes = Files.readAllBytes(file);
+        }
+        return bytes;
+    }
+
+    /** Данные в файле (контейнеру .sqz нужен файл); небольшое тело записывается во временный */
+    Path file() throws IOException {
+        if (file == null) {
+            file = Files.createTempFile("sqtext-body-", ".bin");
+            Files.write(file, bytes);
+        }
+        return file;
+    }
+
+    InputStream open() throws IOException {
+        return bytes != null ? new ByteArrayInputStream(bytes) : Files.newInputStream(file);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        if (bytes != null) {
+            out.write(bytes);
+        } else {
+            Files.copy(file, out);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+            file = null;
+        }
+    }
+
+    /**
+     * Поток для collect: копит в памяти, после MEMORY_LIMIT переписывает накопленное
+     * во временный файл и дальше пишет туда
+     */
+    private static final class Spill extends OutputStream {
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream(BUFFER_SIZE);
+        private Path file;
+        private OutputStream disk;
+        private long total;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (disk == null && memory.size() + len > MEMORY_LIMIT) {
+                file = Files.createTempFile("sqtext-reply-", ".bin");
+                disk = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+                memory.writeTo(disk);
+                memory = null;
+            }
+            (disk != null ? disk : memory).write(b, off, len);
+            total += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (disk != null) {
+                disk.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (disk != null) {
+                disk.close();
+            }
+        }
+
+        /** Запись не удалась: файл (если начат) удаляется */
+        void discard() throws IOException {
+            if (file != null) {
+                try {
+                    close();
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
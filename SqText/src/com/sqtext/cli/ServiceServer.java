@@ -0,0 +1,333 @@
+package com.sqtext.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URLDecoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import com.sqtext.compression.Envelope;
+
+/**
+ * Локальная служба сжатия: HTTP на 127.0.0.1 и/или сокет Unix. Каждое соединение
+ * обслуживает свой поток из общего пула, тела больше Payload.MEMORY_LIMIT
+ * принимаются и отдаются потоком через временный файл. Форматы sqz и gzip сжимаются
+ * и распаковываются потоком; остальные текстовые - в памяти, до Payload.TEXT_LIMIT.
+ *
+ * <pre>
+ * HTTP:  POST /compress?format=smart&amp;algorithm=zstd, POST /decompress, POST /detect,
+ *        GET /formats. Ответ - результат, формат в заголовке X-Sqtext-Format,
+ *        ошибка - 400 (неверный запрос) или 422 (данные не разобрать) с текстом
+ * Сокет: кадры big-endian, запросы можно слать подряд, не дожидаясь ответов
+ *        (ответы идут в том же порядке; читать их клиент должен, не дожидаясь конца отправки):
+ *        запрос  - длина заголовка (4) | заголовок | длина тела (8) | тело
+ *        ответ   - статус (4, 0 - успех) | длина заголовка (4) | заголовок | длина тела (8) | тело
+ *        Заголовок - строка запроса UTF-8: "op=compress&amp;format=gzip" в запросе,
+ *        "format=gzip&amp;micros=123" в ответе; тело ошибки - текст сообщения
+ * </pre>
+ */
+final class ServiceServer {
+    static final int DEFAULT_PORT = 8765;
+    static final int STATUS_OK = 0;
+    static final int STATUS_BAD_REQUEST = 1;
+    static final int STATUS_BAD_DATA = 2;
+    private static final int MAX_HEADER = 64 << 10;
+
+    private final ExecutorService pool;
+    private HttpServer http;
+    private ServerSocketChannel socket;
+    private Path socketPath;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    ServiceServer() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Поток на соединение; в Java 21 сюда подойдет Executors.newVirtualThreadPerTaskExecutor()
+        pool = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "sqtext-service-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запускает службу по параметрам --http и --socket и ждет остановки (Ctrl+C)
+     */
+    static int serve(Options options, PrintStream log) throws IOException, InterruptedException {
+        ServiceServer server = new ServiceServer();
+        int port = options.httpPort >= 0 || options.socketPath != null ? options.httpPort : DEFAULT_PORT;
+        if (port >= 0) {
+            log.println("SqText: HTTP на http://127.0.0.1:" + server.startHttp(port));
+        }
+        if (options.socketPath != null) {
+            server.startSocket(options.socketPath);
+            log.println("SqText: сокет " + options.socketPath);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "sqtext-service-stop"));
+        server.stopped.await();
+        return 0;
+    }
+
+    /** @return фактический порт (при port = 0 - выбранный системой) */
+    int startHttp(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 64);
+        http.setExecutor(pool);
+        http.createContext("/", this::handleHttp);
+        http.start();
+        return http.getAddress().getPort();
+    }
+
+    void startSocket(Path path) throws IOException {
+        removeStaleSocket(path);
+        socket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        socket.bind(UnixDomainSocketAddress.of(path));
+        socketPath = path;
+        Thread acceptor = new Thread(this::acceptLoop, "sqtext-service-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Удаляет сокет, оставшийся от прежнего запуска. Файл, каталог или сокет, который
+     * еще слушает другая служба, не трогаем - запуск отменяется
+     */
+    private static void removeStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        if (!isSocket(path)) {
+            throw new IOException("По пути " + path + " уже есть файл, а не сокет - укажите другой --socket");
+        }
+        boolean listening;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            listening = probe.isConnected();
+        } catch (IOException e) {
+            // соединения нет - сокет брошен
+            listening = false;
+        }
+        if (listening) {
+            throw new IOException("Сокет " + path + " уже слушает другая служба");
+        }
+        Files.delete(path);
+    }
+
+    private static boolean isSocket(Path path) throws IOException {
+        try {
+            // Тип файла из st_mode: S_IFSOCK
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            return (mode & 0170000) == 0140000;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Нет представления unix (Windows): сокет - "прочий" файл
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+    }
+
+    void stop() {
+        if (http != null) {
+            http.stop(1);
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+                Files.deleteIfExists(socketPath);
+            } catch (IOException e) {
+                // служба и так останавливается
+            }
+        }
+        pool.shutdownNow();
+        stopped.countDown();
+    }
+
+    // ------------------------------------------------------------------ HTTP
+
+    private void handleHttp(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/formats")) {
+                reply(exchange, 200, CompressionService.JSON, formatsJson().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405, CompressionService.TEXT, "Нужен POST".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String operation = path.startsWith("/") ? path.substring(1) : path;
+            String lengthHeader = exchange.getRequestHeaders().getFirst("Content-Length");
+            long length = lengthHeader != null ? Long.parseLong(lengthHeader.trim()) : -1;
+            long start = System.nanoTime();
+            try (Payload input = Payload.read(exchange.getRequestBody(), length)) {
+                CompressionService.Reply reply = CompressionService.execute(operation,
+                    Options.fromParameters(parseQuery(exchange.getRequestURI().getRawQuery())), input);
+                try (Payload body = reply.body) {
+                    exchange.getResponseHeaders().set("Content-Type", reply.contentType);
+                    exchange.getResponseHeaders().set("X-Sqtext-Format", reply.format);
+                    exchange.getResponseHeaders().set("X-Sqtext-Micros", String.valueOf((System.nanoTime() - start) / 1000));
+                    exchange.sendResponseHeaders(200, body.length() == 0 ? -1 : body.length());
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        body.writeTo(out);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            reply(exchange, 400, CompressionService.TEXT, message(e));
+        } catch (IOException | RuntimeException e) {
+            reply(exchange, 422, CompressionService.TEXT, message(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void reply(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String formatsJson() {
+        Envelope.Writer json = new Envelope.Writer("", 256, false)
+            .field("operations", "compress,decompress,detect");
+        StringBuilder names = new StringBuilder();
+        for (OutputFormat f : OutputFormat.values()) {
+            names.append(names.length() == 0 ? "" : ",").append(f.getName());
+        }
+        return json.field("formats", names).field("algorithms", "gzip,zstd,brotli,raw").finish();
+    }
+
+    // ------------------------------------------------------------------ сокет Unix
+
+    private void acceptLoop() {
+        while (socket.isOpen()) {
+            try {
+                SocketChannel channel = socket.accept();
+                pool.execute(() -> serveConnection(channel));
+            } catch (IOException e) {
+                // сокет закрыт при остановке
+                return;
+            }
+        }
+    }
+
+    /**
+     * Кадры одного соединения по порядку. Ответы буферизуются и отправляются, когда
+     * входных данных больше нет, - пачка мелких запросов уходит пачкой ответов
+     */
+    private void serveConnection(SocketChannel channel) {
+        try (channel;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 << 10));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 << 10))) {
+            while (true) {
+                int headerLength;
+                try {
+                    headerLength = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (headerLength < 0 || headerLength > MAX_HEADER) {
+                    writeFrame(out, STATUS_BAD_REQUEST, "", message(new IllegalArgumentException(
+                        "Неверная длина заголовка: " + headerLength)));
+                    out.flush();
+                    return;
+                }
+                byte[] header = in.readNBytes(headerLength);
+                long bodyLength = in.readLong();
+                if (header.length < headerLength || bodyLength < 0) {
+                    return;
+                }
+                serveFrame(new String(header, StandardCharsets.UTF_8), in, bodyLength, out);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // клиент закрыл соединение
+        }
+    }
+
+    private void serveFrame(String header, InputStream in, long bodyLength, DataOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        // тело читается всегда, даже если заголовок неверный: иначе собьются следующие кадры;
+        // ошибка чтения здесь - обрыв соединения, а не ошибка запроса
+        Payload input = Payload.read(in, bodyLength);
+        try (input) {
+            Map<String, String> parameters = parseQuery(header);
+            String operation = parameters.remove("op");
+            if (operation == null) {
+                throw new IllegalArgumentException("В заголовке нет op");
+            }
+            CompressionService.Reply reply = CompressionService.execute(operation, Options.fromParameters(parameters), input);
+            try (Payload body = reply.body) {
+                String replyHeader = "format=" + reply.format + "&micros=" + (System.nanoTime() - start) / 1000;
+                byte[] replyBytes = replyHeader.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(STATUS_OK);
+                out.writeInt(replyBytes.length);
+                out.write(replyBytes);
+                out.writeLong(body.length());
+                body.writeTo(out);
+            }
+        } catch (IllegalArgumentException e) {
+            writeFrame(out, STATUS_BAD_REQUEST, "", message(e));
+        } catch (IOException | RuntimeException e) {
+            writeFrame(out, STATUS_BAD_DATA, "", message(e));
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, int status, String header, byte[] body) throws IOException {
+        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(status);
+        out.writeInt(headerBytes.length);
+        out.write(headerBytes);
+        out.writeLong(body.length);
+        out.write(body);
+    }
+
+    // ------------------------------------------------------------------ общее
+
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            parameters.put(key, value);
+        }
+        return parameters;
+    }
+
+    private static byte[] message(Exception e) {
+        String text = e.getMessage() != null ? e.getMessage() : e.toString();
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -3,8 +3,8 @@ package com.sqtext.compression;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 public class AdvancedCompressor {
@@ -12,7 +12,8 @@ public class AdvancedCompressor {
     public enum Algorithm {
         GZIP("gzip", "H4s"),
         ZSTD("zstd", "\u28B5\u2FFD"),  // Маркер Zstd
-        BROTLI("brotli", "\u00FF\u06FF"); // Маркер Brotli
+        BROTLI("brotli", "\u00FF\u06FF"), // Маркер Brotli
+        STORED("raw", ""); // Несжимаемые данные: просто Base64
         
         private final String name;
         private final String marker;
@@ -24,29 +25,75 @@ public class AdvancedCompressor {
         
         public String getName() { return name; }
         public String getMarker() { return marker; }
+        
+        /**
+         * Алгоритм по имени ("gzip", "zstd", "brotli", "raw")
+         */
+        public static Algorithm forName(String name) throws IOException {
+            for (Algorithm a : values()) {
+                if (a.name.equalsIgnoreCase(name)) {
+                    return a;
+                }
+            }
+            throw new IOException("Неизвестный алгоритм: " + name);
+        }
     }
     
     /**
-     * Определяет лучший алгоритм для данного текста
+     * Уровень по умолчанию в шкале алгоритма
      */
-    public static Algorithm findBestAlgorithm(String text) {
-        int length = text.length();
-        
-        if (length < 1000) {
-            return Algorithm.GZIP; // Для коротких текстов GZIP лучше
-        } else if (length < 10000) {
-            return Algorithm.ZSTD; // Для средних текстов
-        } else {
-            return Algorithm.BROTLI; // Для длинных текстов
+    public static int defaultLevel(Algorithm algorithm) {
+        switch (algorithm) {
+            case ZSTD:
+                return ZstdCompressor.DEFAULT_LEVEL;
+            case BROTLI:
+                return BrotliCompressor.DEFAULT_QUALITY;
+            case STORED:
+                return 0;
+            default:
+                return 6;
         }
     }
     
     /**
-     * Сжимает текст с автоматическим выбором алгоритма
+     * Определяет лучший алгоритм для данного текста (пробным сжатием выборки)
+     */
+    public static Algorithm findBestAlgorithm(String text) {
+        return AlgorithmOracle.choose(text, AlgorithmOracle.DEFAULT_BUDGET_MILLIS).getAlgorithm();
+    }
+    
+    /**
+     * Сжимает текст с автоматическим выбором алгоритма в конверт sqz-smart (Base64):
+     * выбранный алгоритм и уровень записаны в JSON, распаковка - Envelope.parse(...).decode()
      */
     public static String compressSmart(String text) throws IOException {
-        Algorithm bestAlgo = findBestAlgorithm(text);
-        return compressWithAlgorithm(text, bestAlgo);
+        return compressSmart(text, AlgorithmOracle.choose(text, AlgorithmOracle.DEFAULT_BUDGET_MILLIS),
+            TextEncoding.BASE64);
+    }
+    
+    /**
+     * Формат sqz-smart по решению AlgorithmOracle.choose(text, ...) для этого же текста.
+     * Если оракул пробовал весь текст, его проба и есть сжатые данные - второй раз не сжимаем
+     */
+    public static String compressSmart(String text, AlgorithmOracle.Decision decision, TextEncoding encoding)
+            throws IOException {
+        long startTime = System.currentTimeMillis();
+        byte[] packed = compressBytes(text, decision);
+        String compressed = encoding.encode(packed);
+        return toSmartEnvelope(text, compressed, decision.getAlgorithm(), decision.getLevel(), encoding,
+            decision.page, System.currentTimeMillis() - startTime);
+    }
+    
+    /**
+     * Сжатые байты текста по решению оракула: готовая проба или сжатие в его кодовой странице
+     */
+    private static byte[] compressBytes(String text, AlgorithmOracle.Decision decision) throws IOException {
+        if (decision.output != null) {
+            return decision.output;
+        }
+        byte[] bytes = decision.page != null
+            ? decision.page.encode(text.toCharArray()) : text.getBytes(StandardCharsets.UTF_8);
+        return compressBytes(bytes, decision.getAlgorithm(), decision.getLevel());
     }
     
     /**
@@ -60,116 +107,192 @@ public class AdvancedCompressor {
                 return compressZstd(text);
             case BROTLI:
                 return compressBrotli(text);
+            case STORED:
+                return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
             default:
                 return GZipCompressor.compress(text);
         }
     }
     
     /**
-     * Zstandard сжатие
+     * Сжимает текст указанным алгоритмом и уровнем (уровень в шкале самого алгоритма)
      */
-    private static String compressZstd(String text) throws IOException {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            
-            // Используем ZstdCompressorOutputStream из Apache Commons Compress
-            Class<?> zstdClass = Class.forName("org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream");
-            Object zstdStream = zstdClass.getConstructor(OutputStream.class).newInstance(baos);
-            
-            Method writeMethod = zstdStream.getClass().getMethod("write", byte[].class);
-            writeMethod.invoke(zstdStream, text.getBytes("UTF-8"));
-            
-            Method closeMethod = zstdStream.getClass().getMethod("close");
-            closeMethod.invoke(zstdStream);
-            
-            byte[] compressed = baos.toByteArray();
-            return Base64.getEncoder().encodeToString(compressed);
-            
-        } catch (Exception e) {
-            // Если Zstd не доступен, используем GZIP
-            System.err.println("Zstd не доступен, использую GZIP: " + e.getMessage());
-            return GZipCompressor.compress(text);
+    public static String compressWithAlgorithm(String text, Algorithm algorithm, int level) throws IOException {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        byte[] packed = compressBytes(text.getBytes(StandardCharsets.UTF_8), algorithm, level);
+        return Base64.getEncoder().encodeToString(packed);
+    }
+    
+    static byte[] compressBytes(byte[] data, Algorithm algorithm, int level) throws IOException {
+        switch (algorithm) {
+            case ZSTD:
+                return ZstdCompressor.compressToBytes(data, level, false);
+            case BROTLI:
+                return BrotliCompressor.compressToBytes(data, level);
+            case STORED:
+                return data;
+            default:
+                return GZipCompressor.compressToBytes(data, level);
         }
     }
     
     /**
-     * Brotli сжатие (на 30% лучше GZIP)
+     * Zstandard сжатие (собственный кодек, без внешних библиотек)
+     */
+    private static String compressZstd(String text) throws IOException {
+        return ZstdCompressor.compress(text);
+    }
+    
+    /**
+     * Brotli сжатие (собственный кодек со статическим словарем, без внешних библиотек)
      */
     private static String compressBrotli(String text) throws IOException {
-        try {
-            // Используем встроенный GZIP, если нет библиотеки Brotli
-            // В реальности нужно: new BrotliOutputStream()
-            return GZipCompressor.compress(text);
-        } catch (Exception e) {
-            throw new IOException("Brotli compression not available: " + e.getMessage());
+        return BrotliCompressor.compress(text);
+    }
+    
+    /**
+     * Формат sqz-smart заданным алгоритмом: алгоритм, уровень и кодировка записаны
+     * в JSON, поэтому распаковка не зависит от настроек
+     */
+    public static String compressSmart(String text, Algorithm algorithm, int level, TextEncoding encoding)
+            throws IOException {
+        long startTime = System.currentTimeMillis();
+        char[] chars = text.toCharArray();
+        CodePage page = CodePage.choose(chars);
+        byte[] bytes = page != null ? page.encode(chars) : text.getBytes(StandardCharsets.UTF_8);
+        String compressed = encoding.encode(compressBytes(bytes, algorithm, level));
+        return toSmartEnvelope(text, compressed, algorithm, level, encoding, page, System.currentTimeMillis() - startTime);
+    }
+    
+    /**
+     * Конверт sqz-smart для уже сжатых и закодированных данных
+     */
+    public static String toSmartEnvelope(String text, String compressed, Algorithm algorithm, int level,
+            TextEncoding encoding, long timeMillis) {
+        return toSmartEnvelope(text, compressed, algorithm, level, encoding, null, timeMillis);
+    }
+    
+    /**
+     * То же, когда перед сжатием текст переведен в однобайтовую кодовую страницу (поле codepage)
+     */
+    static String toSmartEnvelope(String text, String compressed, Algorithm algorithm, int level,
+            TextEncoding encoding, CodePage page, long timeMillis) {
+        Envelope.Writer json = new Envelope.Writer("", compressed.length() + 512, true)
+            .field("format", "sqz-smart")
+            .field("algorithm", algorithm.getName())
+            .field("level", level);
+        if (encoding != TextEncoding.BASE64) {
+            json.field("encoding", encoding.getName());
+        }
+        if (page != null) {
+            json.field("codepage", page.getName());
         }
+        return json.field("original", text.length())
+            .field("compressed", compressed.length())
+            .field("ratio", text.isEmpty() ? 0 : (double) compressed.length() / text.length(), 2)
+            .field("time_ms", timeMillis)
+            .field("data", compressed)
+            .finish();
     }
     
     /**
      * Ultra-compact формат v2
      */
     public static String compressUltraCompactV2(String text) throws IOException {
+        return compressUltraCompactV2(text, TextEncoding.BASE64);
+    }
+    
+    /**
+     * Ultra-compact формат v2 с заданной кодировкой данных (поле "e", без него - Base64)
+     */
+    public static String compressUltraCompactV2(String text, TextEncoding encoding) throws IOException {
         // 1. Выбираем лучший алгоритм
-        Algorithm algo = findBestAlgorithm(text);
+        AlgorithmOracle.Decision decision = AlgorithmOracle.choose(text, AlgorithmOracle.DEFAULT_BUDGET_MILLIS);
+        Algorithm algo = decision.getAlgorithm();
         
-        // 2. Сжимаем
-        String compressed = compressWithAlgorithm(text, algo);
+        // 2. Сжимаем (или берем пробу оракула); русский текст - в однобайтовой кодовой странице (поле "c")
+        CodePage page = decision.page;
+        String compressed = encoding.encode(compressBytes(text, decision));
         
         // 3. Создаем минимальный JSON
-        return String.format("{\"a\":\"%s\",\"d\":\"%s\"}", 
-            algo.getName(), compressed);
+        Envelope.Writer json = new Envelope.Writer("", compressed.length() + 288, false)
+            .field("a", algo.getName());
+        if (encoding != TextEncoding.BASE64) {
+            json.field("e", encoding.getName());
+        }
+        if (page != null) {
+            json.field("c", page.getName());
+        }
+        return json.field("d", compressed).finish();
     }
     
     /**
      * Распаковывает ultra-compact v2
      */
     public static String decompressUltraCompactV2(String json) throws IOException {
-        // Извлекаем алгоритм и данные
-        int algoStart = json.indexOf("\"a\":\"");
-        int dataStart = json.indexOf("\"d\":\"");
-        
-        if (algoStart == -1 || dataStart == -1) {
-            throw new IOException("Invalid ultra-compact v2 format");
+        return decompressUltraCompact(Envelope.parse(json));
+    }
+    
+    /**
+     * Распаковывает ultra-compact v1 или v2 (v1 - только поле "d")
+     */
+    static String decompressUltraCompact(Envelope envelope) throws IOException {
+        CharSequence data = envelope.getData();
+        TextEncoding encoding = TextEncoding.forName(envelope.get("e"));
+        if (envelope.getFormat() == Envelope.Format.ULTRA_COMPACT_V1) {
+            return decompressUltraCompactV1(encoding.decode(data));
         }
-        
-        algoStart += 5;
-        dataStart += 5;
-        
-        int algoEnd = json.indexOf("\"", algoStart);
-        int dataEnd = json.indexOf("\"", dataStart);
-        
-        String algoName = json.substring(algoStart, algoEnd);
-        String data = json.substring(dataStart, dataEnd);
-        
-        Algorithm algo = Algorithm.GZIP;
-        for (Algorithm a : Algorithm.values()) {
-            if (a.getName().equals(algoName)) {
-                algo = a;
-                break;
-            }
+        Algorithm algo = algorithmByName(envelope.get("a"));
+        // Старые версии писали под метками zstd и brotli обычный GZIP - такие данные тоже читаем.
+        // Поток Brotli с таким началом означал бы одиночный мета-блок до 64 КБ с окном 16 МБ -
+        // наш кодер такого не пишет
+        if ((algo == Algorithm.ZSTD || algo == Algorithm.BROTLI) && encoding == TextEncoding.BASE64
+                && Envelope.startsWith(data, Algorithm.GZIP.getMarker())) {
+            algo = Algorithm.GZIP;
         }
-        
-        // Распаковываем в зависимости от алгоритма
-        switch (algo) {
-            case GZIP:
-                return GZipCompressor.decompress(data);
+        return toText(decompressBytes(encoding.decode(data), algo), envelope.get("c"));
+    }
+    
+    /**
+     * Распаковывает формат sqz-smart: алгоритм и уровень записаны в JSON
+     */
+    static String decompressSmart(Envelope envelope) throws IOException {
+        TextEncoding encoding = TextEncoding.forName(envelope.get("encoding"));
+        byte[] packed = encoding.decode(envelope.getData());
+        Algorithm algo = algorithmByName(envelope.get("algorithm"));
+        return toText(decompressBytes(packed, algo), envelope.get("codepage"));
+    }
+    
+    /** Текст из распакованных байт: UTF-8 или кодовая страница из конверта */
+    private static String toText(byte[] data, String codePage) throws IOException {
+        if (codePage == null) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        return CodePage.forName(codePage).decode(data);
+    }
+    
+    static byte[] decompressBytes(byte[] data, Algorithm algorithm) throws IOException {
+        switch (algorithm) {
             case ZSTD:
-                return decompressZstd(data);
+                return ZstdCompressor.decompressBytes(data);
             case BROTLI:
-                return decompressBrotli(data);
+                return BrotliCompressor.decompressBytes(data);
+            case STORED:
+                return data;
             default:
-                return GZipCompressor.decompress(data);
+                return GZipCompressor.decompressBytes(data);
         }
     }
     
-    private static String decompressZstd(String data) throws IOException {
-        // Заглушка - в реальности используй ZstdDecompressorInputStream
-        return GZipCompressor.decompress(data);
-    }
-    
-    private static String decompressBrotli(String data) throws IOException {
-        // Заглушка - в реальности используй BrotliInputStream
-        return GZipCompressor.decompress(data);
+    private static Algorithm algorithmByName(String name) {
+        for (Algorithm a : Algorithm.values()) {
+            if (a.getName().equals(name)) {
+                return a;
+            }
+        }
+        return Algorithm.GZIP;
     }
     
     /**
@@ -214,37 +337,10 @@ public class AdvancedCompressor {
      * Ultra-Compact распаковка (старая версия)
      */
     public static String decompressUltraCompact(String json) throws IOException {
-        // Пробуем распарсить как v2
-        try {
-            if (json.contains("\"a\":") && json.contains("\"d\":")) {
-                return decompressUltraCompactV2(json);
-            }
-        } catch (Exception e) {
-            // Пробуем как v1
-        }
-        
-        // Пробуем как v1 формат
-        return decompressUltraCompactV1(json);
+        return decompressUltraCompact(Envelope.parse(json));
     }
     
-    private static String decompressUltraCompactV1(String json) throws IOException {
-        // Извлекаем данные из JSON вида {"d":"base64"}
-        int start = json.indexOf("\"d\":\"");
-        if (start == -1) {
-            throw new IOException("Неверный формат Ultra-Compact v1");
-        }
-        
-        start += 5;
-        int end = json.indexOf("\"", start);
-        if (end == -1) {
-            throw new IOException("Неверный формат Ultra-Compact v1");
-        }
-        
-        String base64 = json.substring(start, end);
-        
-        // Декодируем Base64
-        byte[] data = Base64.getDecoder().decode(base64);
-        
+    private static String decompressUltraCompactV1(byte[] data) throws IOException {
         // Пробуем распаковать как GZIP
         try {
             return decompressBinary(data);
@@ -253,13 +349,12 @@ public class AdvancedCompressor {
             try {
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 ByteArrayInputStream bais = new ByteArrayInputStream(data);
+                java.util.zip.Inflater inflater = CodecPool.borrowInflater(false);
                 try (java.util.zip.InflaterInputStream inflaterIn = 
-                     new java.util.zip.InflaterInputStream(bais)) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = inflaterIn.read(buffer)) != -1) {
-                        baos.write(buffer, 0, len);
-                    }
+                     new java.util.zip.InflaterInputStream(bais, inflater)) {
+                    TextStreams.copy(inflaterIn, baos);
+                } finally {
+                    CodecPool.releaseInflater(inflater, false);
                 }
                 byte[] gzipData = baos.toByteArray();
                 return decompressBinary(gzipData);
@@ -275,12 +370,8 @@ public class AdvancedCompressor {
         ByteArrayInputStream bais = new ByteArrayInputStream(compressedData);
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         
-        try (java.util.zip.GZIPInputStream gzipIn = new java.util.zip.GZIPInputStream(bais)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = gzipIn.read(buffer)) != -1) {
-                baos.write(buffer, 0, len);
-            }
+        try (InputStream gzipIn = new PooledGzipInputStream(bais)) {
+            TextStreams.copy(gzipIn, baos);
         }
         
         return baos.toString("UTF-8");
@@ -0,0 +1,236 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+
+/**
+ * Выбор алгоритма и уровня по содержимому, а не по длине текста.
+ * Берется выборка (начало, середина, конец - до 64 КБ), по ней оценивается энтропия
+ * и пробно сжимается кандидатами от быстрых к медленным, пока не кончится бюджет времени.
+ * Бюджет растет с размером входа: короткому сообщению долгие пробы не окупаются.
+ * Из уложившихся в бюджет выбирается самый плотный; несжимаемые данные хранятся как есть.
+ * Если выборка - весь вход, проба победителя и есть результат: повторно не сжимаем
+ */
+public class AlgorithmOracle {
+
+    /** Бюджет по умолчанию: пробы плюс сжатие всего текста (верхний предел, см. budgetFor) */
+    public static final long DEFAULT_BUDGET_MILLIS = 250;
+    /** Бюджет на вход любого размера и прибавка к нему на каждые BUDGET_BYTES_PER_MILLI байт */
+    private static final long MIN_BUDGET_MILLIS = 5;
+    private static final int BUDGET_BYTES_PER_MILLI = 10 * 1024;
+
+    private static final int SAMPLE_SLICE = 16 * 1024;
+    private static final int MAX_SAMPLE = 4 * SAMPLE_SLICE;
+
+    /** Энтропия выше - данные уже сжаты или случайны, пробовать нечего (бит на байт) */
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.9;
+    /** Выигрыш меньше 2% не стоит распаковки */
+    private static final double INCOMPRESSIBLE_RATIO = 0.98;
+
+    /**
+     * Кандидаты в порядке роста стоимости. Стоимость - время относительно GZIP 6 на входах
+     * 100 Б - 64 КБ (исходники Java и русский текст): по ней пропускаются кандидаты, не
+     * влезающие в остаток бюджета. У Zstd заметная постоянная часть, поэтому на коротких
+     * входах он дороже GZIP 9. Brotli стоит от 5x (русский текст) до 70x (Java); BROTLI 5
+     * в наших кодеках не быстрее 9 и 11, а сжимает хуже, поэтому не пробуется
+     */
+    private static final Candidate[] CANDIDATES = {
+        new Candidate(Algorithm.GZIP, 6, 1),
+        new Candidate(Algorithm.GZIP, 9, 1.5),
+        new Candidate(Algorithm.ZSTD, 3, 2),
+        new Candidate(Algorithm.ZSTD, 9, 2.5),
+        new Candidate(Algorithm.ZSTD, 19, 3),
+        new Candidate(Algorithm.BROTLI, 9, 30),
+        new Candidate(Algorithm.BROTLI, 11, 30),
+    };
+
+    private static final class Candidate {
+        final Algorithm algorithm;
+        final int level;
+        final double cost;
+
+        Candidate(Algorithm algorithm, int level, double cost) {
+            this.algorithm = algorithm;
+            this.level = level;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Результат выбора с прогнозом для всего входа
+     */
+    public static final class Decision {
+        private final Algorithm algorithm;
+        private final int level;
+        private final double predictedRatio;
+        private final double predictedMBps;
+        private final double entropy;
+        private final int sampleBytes;
+        private final int trials;
+        /** Кодовая страница, в которой сжимается текст (choose(String)); null - UTF-8 */
+        final CodePage page;
+        /** Проба победителя, если выборкой был весь вход - готовый результат; иначе null */
+        final byte[] output;
+
+        Decision(Algorithm algorithm, int level, double predictedRatio, double predictedMBps,
+                 double entropy, int sampleBytes, int trials) {
+            this(algorithm, level, predictedRatio, predictedMBps, entropy, sampleBytes, trials, null, null);
+        }
+
+        private Decision(Algorithm algorithm, int level, double predictedRatio, double predictedMBps,
+                 double entropy, int sampleBytes, int trials, CodePage page, byte[] output) {
+            this.algorithm = algorithm;
+            this.level = level;
+            this.predictedRatio = predictedRatio;
+            this.predictedMBps = predictedMBps;
+            this.entropy = entropy;
+            this.sampleBytes = sampleBytes;
+            this.trials = trials;
+            this.page = page;
+            this.output = output;
+        }
+
+        private Decision withPage(CodePage page) {
+            return new Decision(algorithm, level, predictedRatio, predictedMBps, entropy, sampleBytes, trials, page, output);
+        }
+
+        public Algorithm getAlgorithm() { return algorithm; }
+        public int getLevel() { return level; }
+        /** Ожидаемое отношение сжатый/исходный (до Base64) */
+        public double getPredictedRatio() { return predictedRatio; }
+        /** Ожидаемая скорость сжатия, МБ/с (0 - не измерялась) */
+        public double getPredictedMBps() { return predictedMBps; }
+        /** Энтропия выборки нулевого порядка, бит на байт */
+        public double getEntropy() { return entropy; }
+        public int getSampleBytes() { return sampleBytes; }
+        public int getTrials() { return trials; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s/%d: прогноз %.3f, %.1f МБ/с (энтропия %.2f бит, %d проб по %d байт)",
+                algorithm.getName(), level, predictedRatio, predictedMBps, entropy, trials, sampleBytes);
+        }
+    }
+
+    /**
+     * Выбор для текста в том виде, в каком его сжимает sqz-smart: русский текст - в
+     * однобайтовой кодовой странице. Решение передается в AdvancedCompressor.compressSmart
+     */
+    public static Decision choose(String text, long budgetMillis) {
+        char[] chars = text.toCharArray();
+        CodePage page = CodePage.choose(chars);
+        byte[] data = page != null ? page.encode(chars) : text.getBytes(StandardCharsets.UTF_8);
+        return choose(data, budgetMillis).withPage(page);
+    }
+
+    /**
+     * Выбирает алгоритм для data, укладываясь в бюджет на пробы и итоговое сжатие:
+     * budgetMillis, но не больше budgetFor(data.length)
+     */
+    public static Decision choose(byte[] data, long budgetMillis) {
+        long start = System.nanoTime();
+        long budget = Math.min(Math.max(1, budgetMillis), budgetFor(data.length)) * 1_000_000L;
+        if (data.length == 0) {
+            return new Decision(Algorithm.GZIP, 6, 1.0, 0, 0, 0, 0);
+        }
+        byte[] sample = sample(data);
+        boolean whole = sample == data;
+        double entropy = entropy(sample);
+        if (entropy >= INCOMPRESSIBLE_ENTROPY) {
+            return new Decision(Algorithm.STORED, 0, 1.0, 0, entropy, sample.length, 0, null, whole ? data : null);
+        }
+
+        Algorithm bestAlgorithm = null;
+        int bestLevel = 0;
+        byte[] bestOutput = null;
+        double bestRatio = Double.MAX_VALUE;
+        double bestSpeed = 0;
+        int trials = 0;
+        double baseNanosPerByte = 0;
+        for (Candidate candidate : CANDIDATES) {
+            long remaining = budget - (System.nanoTime() - start);
+            if (trials > 0) {
+                // Проба (и сжатие всего входа, если выборка - не весь вход) по прогнозу от первого замера
+                double work = whole ? sample.length : (double) sample.length + data.length;
+                if (baseNanosPerByte * candidate.cost * work > remaining) {
+                    continue;
+                }
+            }
+            long t0 = System.nanoTime();
+            byte[] output;
+            try {
+                output = AdvancedCompressor.compressBytes(sample, candidate.algorithm, candidate.level);
+            } catch (IOException e) {
+                continue;
+            }
+            long elapsed = Math.max(1, System.nanoTime() - t0);
+            double nanosPerByte = (double) elapsed / sample.length;
+            if (trials++ == 0) {
+                baseNanosPerByte = nanosPerByte / candidate.cost;
+            }
+            double ratio = (double) output.length / sample.length;
+            // Сжатие всего входа должно уложиться в остаток бюджета (первый кандидат - всегда)
+            boolean fits = whole || nanosPerByte * data.length <= budget - (System.nanoTime() - start);
+            if (bestAlgorithm == null || fits && ratio < bestRatio) {
+                bestAlgorithm = candidate.algorithm;
+                bestLevel = candidate.level;
+                bestOutput = output;
+                bestRatio = ratio;
+                bestSpeed = 1000.0 / nanosPerByte;
+            }
+        }
+        if (bestAlgorithm == null || bestRatio >= INCOMPRESSIBLE_RATIO) {
+            return new Decision(Algorithm.STORED, 0, 1.0, 0, entropy, sample.length, trials, null, whole ? data : null);
+        }
+        return new Decision(bestAlgorithm, bestLevel, bestRatio, bestSpeed, entropy, sample.length, trials,
+            null, whole ? bestOutput : null);
+    }
+
+    /**
+     * Бюджет для входа из size байт, мс: MIN_BUDGET_MILLIS плюс миллисекунда на каждые
+     * BUDGET_BYTES_PER_MILLI байт
+     */
+    static long budgetFor(long size) {
+        return MIN_BUDGET_MILLIS + size / BUDGET_BYTES_PER_MILLI;
+    }
+
+    /**
+     * Энтропия Шеннона нулевого порядка, бит на байт
+     */
+    public static double entropy(byte[] data) {
+        if (data.length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (byte b : data) {
+            counts[b & 0xFF]++;
+        }
+        double bits = 0;
+        for (int c : counts) {
+            if (c != 0) {
+                double p = (double) c / data.length;
+                bits -= p * Math.log(p);
+            }
+        }
+        return bits / Math.log(2);
+    }
+
+    /**
+     * Выборка: весь вход, если он мал, иначе куски из начала, двух внутренних точек и конца
+     */
+    private static byte[] sample(byte[] data) {
+        if (data.length <= MAX_SAMPLE) {
+            return data;
+        }
+        byte[] sample = new byte[MAX_SAMPLE];
+        int slices = MAX_SAMPLE / SAMPLE_SLICE;
+        for (int i = 0; i < slices; i++) {
+            long from = (long) (data.length - SAMPLE_SLICE) * i / (slices - 1);
+            System.arraycopy(data, (int) from, sample, i * SAMPLE_SLICE, SAMPLE_SLICE);
+        }
+        return sample;
+    }
+}
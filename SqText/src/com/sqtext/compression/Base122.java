@@ -0,0 +1,104 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base-122 (схема Kevin Albertson): поток режется на 7-битные куски, каждый становится
+ * однобайтовым символом UTF-8. Шесть "опасных" значений (NUL, \n, \r, ", &amp;, \) вместе
+ * со следующим куском уходят в двухбайтовый символ. В байтах UTF-8 это около +14%
+ * вместо +33% у Base64. Управляющие символы в выходе остаются, поэтому внутри строгого
+ * JSON они экранируются и выигрыш пропадает - кодировка для полей, которые считают байты
+ */
+final class Base122 {
+
+    private static final int[] ILLEGALS = {0, 10, 13, 34, 38, 92};
+    /** Номер "опасного" значения 7: последний кусок короче 7 бит, пары у него нет */
+    private static final int SHORTENED = 7;
+    private static final byte[] ILLEGAL_INDEX = new byte[128];
+
+    static {
+        Arrays.fill(ILLEGAL_INDEX, (byte) -1);
+        for (int i = 0; i < ILLEGALS.length; i++) {
+            ILLEGAL_INDEX[ILLEGALS[i]] = (byte) i;
+        }
+    }
+
+    private Base122() {
+    }
+
+    static String encode(byte[] data) {
+        long totalBits = (long) data.length * 8;
+        char[] out = new char[(int) ((totalBits + 6) / 7)];
+        int n = 0;
+        long bit = 0;
+        while (bit < totalBits) {
+            int bits = sevenBits(data, bit);
+            bit += 7;
+            int illegal = ILLEGAL_INDEX[bits];
+            if (illegal < 0) {
+                out[n++] = (char) bits;
+                continue;
+            }
+            int next;
+            if (bit < totalBits) {
+                next = sevenBits(data, bit);
+                bit += 7;
+            } else {
+                next = bits;
+                illegal = SHORTENED;
+            }
+            // Кодовая точка 110sss1f 10ffffff в UTF-8: sss - номер, f... - следующие 7 бит
+            out[n++] = (char) (illegal << 8 | 0x80 | next);
+        }
+        return new String(out, 0, n);
+    }
+
+    static byte[] decode(CharSequence text) throws IOException {
+        byte[] out = new byte[(int) ((long) text.length() * 14 / 8) + 1];
+        int n = 0;
+        int current = 0;
+        int filled = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            int second = -1;
+            if (c >= 0x80) {
+                if (c >= 0x800) {
+                    throw new IOException("Недопустимый символ Base122: U+" + Integer.toHexString(c));
+                }
+                int illegal = c >>> 8 & 7;
+                second = c & 0x7F;
+                if (illegal == SHORTENED) {
+                    c = second;
+                    second = -1;
+                } else if (illegal < ILLEGALS.length) {
+                    c = ILLEGALS[illegal];
+                } else {
+                    throw new IOException("Недопустимый символ Base122: U+" + Integer.toHexString(c));
+                }
+            }
+            for (int k = 0; k < 2; k++) {
+                int bits = k == 0 ? c : second;
+                if (bits < 0) {
+                    break;
+                }
+                // Дописываем 7 бит; полный байт уходит в выход, неполный хвост в конце - выравнивание
+                current = current << 7 | bits;
+                filled += 7;
+                if (filled >= 8) {
+                    filled -= 8;
+                    out[n++] = (byte) (current >>> filled);
+                    current &= (1 << filled) - 1;
+                }
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int sevenBits(byte[] data, long bit) {
+        int index = (int) (bit >>> 3);
+        int offset = (int) (bit & 7);
+        int word = (data[index] & 0xFF) << 8 | (index + 1 < data.length ? data[index + 1] & 0xFF : 0);
+        return word >>> (9 - offset) & 0x7F;
+    }
+}
@@ -0,0 +1,105 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base32768: 15 бит на символ - для полей, где ограничено число символов, а не байт
+ * (в байтах UTF-8 это хуже Base64). Алфавит - иероглифы CJK и слоги хангыля: буквы
+ * из одного символа UTF-16, устойчивые к нормализации NFC и переносу строк.
+ * Таблица своя, с qntm/base32768 не совместима. Последний символ при остатке не больше
+ * 7 бит берется из отдельного алфавита на 128 символов; выравнивание - единичные биты
+ */
+final class Base32768 {
+
+    private static final int[] RANGES = {
+        0x4E00, 0x9FFF - 0x4E00 + 1,  // CJK Unified Ideographs
+        0x3400, 0x4DBF - 0x3400 + 1,  // CJK Extension A
+        0xAC00, 5184,                 // Слоги хангыля (начало)
+    };
+    /** 7-битные символы: продолжение слогов хангыля */
+    private static final int SHORT_BASE = 0xAC00 + 5184;
+
+    private static final char[] TABLE = new char[1 << 15];
+    /** Обратная таблица: значение + 1 для 15-битных символов, -(значение + 1) для 7-битных */
+    private static final int[] DECODE = new int[0x10000];
+
+    static {
+        int value = 0;
+        for (int r = 0; r < RANGES.length; r += 2) {
+            for (int i = 0; i < RANGES[r + 1]; i++, value++) {
+                TABLE[value] = (char) (RANGES[r] + i);
+                DECODE[RANGES[r] + i] = value + 1;
+            }
+        }
+        for (int i = 0; i < 128; i++) {
+            DECODE[SHORT_BASE + i] = -(i + 1);
+        }
+    }
+
+    private Base32768() {
+    }
+
+    static String encode(byte[] data) {
+        char[] out = new char[(int) (((long) data.length * 8 + 14) / 15)];
+        int n = 0;
+        int acc = 0;
+        int bits = 0;
+        for (byte b : data) {
+            acc = acc << 8 | (b & 0xFF);
+            bits += 8;
+            if (bits >= 15) {
+                bits -= 15;
+                out[n++] = TABLE[acc >>> bits & 0x7FFF];
+                acc &= (1 << bits) - 1;
+            }
+        }
+        if (bits > 0) {
+            if (bits <= 7) {
+                int pad = 7 - bits;
+                out[n++] = (char) (SHORT_BASE + (acc << pad | (1 << pad) - 1));
+            } else {
+                int pad = 15 - bits;
+                out[n++] = TABLE[acc << pad | (1 << pad) - 1];
+            }
+        }
+        return new String(out, 0, n);
+    }
+
+    static byte[] decode(CharSequence text) throws IOException {
+        byte[] out = new byte[(int) ((long) text.length() * 15 / 8) + 1];
+        int n = 0;
+        int acc = 0;
+        int bits = 0;
+        boolean ended = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int entry = DECODE[c];
+            if (entry == 0 || ended) {
+                throw new IOException(ended
+                    ? "Данные Base32768 после завершающего символа"
+                    : "Недопустимый символ Base32768: U+" + Integer.toHexString(c));
+            }
+            if (entry > 0) {
+                acc = acc << 15 | (entry - 1);
+                bits += 15;
+            } else {
+                acc = acc << 7 | (-entry - 1);
+                bits += 7;
+                ended = true;
+            }
+            while (bits >= 8) {
+                bits -= 8;
+                out[n++] = (byte) (acc >>> bits);
+            }
+            acc &= (1 << bits) - 1;
+        }
+        if (acc != (1 << bits) - 1) {
+            throw new IOException("Некорректное выравнивание Base32768");
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
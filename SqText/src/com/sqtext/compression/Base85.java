@@ -0,0 +1,141 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base85: 4 байта в 5 символов (+25% вместо +33% у Base64).
+ * Два алфавита: Z85 (ZeroMQ, безопасен в JSON и XML) и классический Ascii85 ('!'..'u',
+ * 'z' вместо четырех нулевых байт). Неполная последняя группа из n байт кодируется
+ * n + 1 символами, как в Ascii85, поэтому длина входа не обязана делиться на 4
+ */
+final class Base85 {
+
+    private static final char[] Z85 =
+        "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ.-:+=^!/*?&<>()[]{}@%$#".toCharArray();
+    private static final char[] ASCII85 = new char[85];
+    private static final byte[] Z85_DECODE = new byte[128];
+    private static final byte[] ASCII85_DECODE = new byte[128];
+
+    static {
+        Arrays.fill(Z85_DECODE, (byte) -1);
+        Arrays.fill(ASCII85_DECODE, (byte) -1);
+        for (int i = 0; i < 85; i++) {
+            ASCII85[i] = (char) ('!' + i);
+            Z85_DECODE[Z85[i]] = (byte) i;
+            ASCII85_DECODE['!' + i] = (byte) i;
+        }
+    }
+
+    private Base85() {
+    }
+
+    static String encodeZ85(byte[] data) {
+        return encode(data, Z85, false);
+    }
+
+    static String encodeAscii85(byte[] data) {
+        return encode(data, ASCII85, true);
+    }
+
+    static byte[] decodeZ85(CharSequence text) throws IOException {
+        return decode(text, Z85_DECODE, false);
+    }
+
+    static byte[] decodeAscii85(CharSequence text) throws IOException {
+        return decode(text, ASCII85_DECODE, true);
+    }
+
+    private static String encode(byte[] data, char[] alphabet, boolean zeroGroups) {
+        char[] out = new char[(data.length + 3) / 4 * 5];
+        int n = 0;
+        int i = 0;
+        for (; i + 4 <= data.length; i += 4) {
+            long value = (data[i] & 0xFFL) << 24 | (data[i + 1] & 0xFF) << 16
+                | (data[i + 2] & 0xFF) << 8 | (data[i + 3] & 0xFF);
+            if (zeroGroups && value == 0) {
+                out[n++] = 'z';
+                continue;
+            }
+            for (int k = 4; k >= 0; k--) {
+                out[n + k] = alphabet[(int) (value % 85)];
+                value /= 85;
+            }
+            n += 5;
+        }
+        int tail = data.length - i;
+        if (tail > 0) {
+            long value = 0;
+            for (int k = 0; k < 4; k++) {
+                value = value << 8 | (k < tail ? data[i + k] & 0xFF : 0);
+            }
+            char[] group = new char[5];
+            for (int k = 4; k >= 0; k--) {
+                group[k] = alphabet[(int) (value % 85)];
+                value /= 85;
+            }
+            System.arraycopy(group, 0, out, n, tail + 1);
+            n += tail + 1;
+        }
+        return new String(out, 0, n);
+    }
+
+    private static byte[] decode(CharSequence text, byte[] table, boolean zeroGroups) throws IOException {
+        byte[] out = new byte[text.length() / 5 * 4 + 4];
+        int n = 0;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c <= ' ') {
+                continue;
+            }
+            if (zeroGroups && c == 'z' && digits == 0) {
+                if (n + 4 > out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                n += 4;
+                continue;
+            }
+            int digit = c < 128 ? table[c] : -1;
+            if (digit < 0) {
+                throw new IOException("Недопустимый символ Base85: '" + c + "'");
+            }
+            value = value * 85 + digit;
+            if (++digits == 5) {
+                if (value > 0xFFFFFFFFL) {
+                    throw new IOException("Группа Base85 больше 2^32");
+                }
+                if (n + 4 > out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                out[n++] = (byte) (value >>> 24);
+                out[n++] = (byte) (value >>> 16);
+                out[n++] = (byte) (value >>> 8);
+                out[n++] = (byte) value;
+                value = 0;
+                digits = 0;
+            }
+        }
+        if (digits == 1) {
+            throw new IOException("Оборванная группа Base85");
+        }
+        if (digits > 1) {
+            // Дополняем старшей цифрой: отброшенные байты кодировщика были нулями
+            int tail = digits - 1;
+            if (n + 4 > out.length) {
+                out = Arrays.copyOf(out, n + 4);
+            }
+            for (; digits < 5; digits++) {
+                value = value * 85 + 84;
+            }
+            if (value > 0xFFFFFFFFL) {
+                throw new IOException("Группа Base85 больше 2^32");
+            }
+            for (int k = 0; k < tail; k++) {
+                out[n++] = (byte) (value >>> (24 - 8 * k));
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+}
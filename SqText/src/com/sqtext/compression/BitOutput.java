@@ -0,0 +1,109 @@
+package com.sqtext.compression;
+
+import java.util.Arrays;
+
+/**
+ * Запись битов в порядке "младший бит первым" (так пишут Zstandard и Brotli)
+ */
+final class BitOutput {
+
+    private byte[] buf;
+    private int pos;
+    private long acc;
+    private int bitCount;
+
+    BitOutput(int initialCapacity) {
+        buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Дописывает n младших бит значения, n от 0 до 56
+     */
+    void addBits(long value, int n) {
+        acc |= (value & ((1L << n) - 1)) << bitCount;
+        bitCount += n;
+        if (bitCount >= 8) {
+            flushBytes();
+        }
+    }
+
+    /**
+     * Закрывающий бит-маркер Zstandard и выравнивание до байта
+     */
+    void closeWithMarker() {
+        addBits(1, 1);
+        alignToByte();
+    }
+
+    void alignToByte() {
+        if (bitCount > 0) {
+            bitCount = 8;
+            flushBytes();
+        }
+    }
+
+    void writeByte(int b) {
+        alignToByte();
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    void writeBytes(byte[] src, int off, int len) {
+        alignToByte();
+        ensure(len);
+        System.arraycopy(src, off, buf, pos, len);
+        pos += len;
+    }
+
+    long bitLength() {
+        return pos * 8L + bitCount;
+    }
+
+    /**
+     * Размер в байтах с учетом неполного последнего байта
+     */
+    int size() {
+        return pos + (bitCount > 0 ? 1 : 0);
+    }
+
+    byte[] toByteArray() {
+        alignToByte();
+        return Arrays.copyOf(buf, pos);
+    }
+
+    void writeTo(ByteSink out) {
+        alignToByte();
+        out.write(buf, 0, pos);
+    }
+
+    /**
+     * Дописывает все биты (без выравнивания) в другой поток
+     */
+    void appendTo(BitOutput other) {
+        for (int i = 0; i < pos; i++) {
+            other.addBits(buf[i], 8);
+        }
+        other.addBits(acc, bitCount);
+    }
+
+    void reset() {
+        pos = 0;
+        acc = 0;
+        bitCount = 0;
+    }
+
+    private void flushBytes() {
+        ensure(8);
+        while (bitCount >= 8) {
+            buf[pos++] = (byte) acc;
+            acc >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    private void ensure(int extra) {
+        if (pos + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+}
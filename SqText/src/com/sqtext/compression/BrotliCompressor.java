@@ -0,0 +1,58 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Brotli (RFC 7932) без внешних библиотек: качество 0..11 и встроенный статический словарь.
+ * Выход совместим с утилитой brotli и браузерами (Content-Encoding: br)
+ */
+public class BrotliCompressor {
+
+    public static final int MIN_QUALITY = BrotliEncoder.MIN_QUALITY;
+    public static final int MAX_QUALITY = BrotliEncoder.MAX_QUALITY;
+    public static final int DEFAULT_QUALITY = BrotliEncoder.DEFAULT_QUALITY;
+
+    /**
+     * Сжимает текст качеством по умолчанию и кодирует в Base64
+     */
+    public static String compress(String text) throws IOException {
+        return compress(text, DEFAULT_QUALITY);
+    }
+
+    /**
+     * Сжимает текст с указанным качеством (0..11)
+     */
+    public static String compress(String text, int quality) throws IOException {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        return Base64.getEncoder().encodeToString(compressToBytes(data, quality));
+    }
+
+    /**
+     * Распаковывает текст, сжатый методом compress()
+     */
+    public static String decompress(String compressedText) throws IOException {
+        if (compressedText == null || compressedText.isEmpty()) {
+            return "";
+        }
+        byte[] data;
+        try {
+            data = Base64.getMimeDecoder().decode(compressedText);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректные Base64 данные: " + e.getMessage(), e);
+        }
+        return new String(decompressBytes(data), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] compressToBytes(byte[] data, int quality) throws IOException {
+        return new BrotliEncoder(quality).compress(data, 0, data.length);
+    }
+
+    public static byte[] decompressBytes(byte[] data) throws IOException {
+        return new BrotliDecoder().decompress(data, 0, data.length);
+    }
+}
@@ -0,0 +1,725 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+
+/**
+ * Декодер Brotli (RFC 7932) на чистой Java: все типы мета-блоков, переключение блоков,
+ * контекстное моделирование, кольцо последних расстояний и статический словарь
+ */
+final class BrotliDecoder {
+
+    static final int[] INSERT_BASE = {
+        0, 1, 2, 3, 4, 5, 6, 8, 10, 14, 18, 26, 34, 50, 66, 98, 130, 194, 322, 578, 1090, 2114, 6210, 22594,
+    };
+    static final int[] INSERT_EXTRA = {
+        0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 12, 14, 24,
+    };
+    static final int[] COPY_BASE = {
+        2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 18, 22, 30, 38, 54, 70, 102, 134, 198, 326, 582, 1094, 2118,
+    };
+    static final int[] COPY_EXTRA = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 24,
+    };
+    /** Начала диапазонов кодов вставки и копирования для ячеек команд 128..703 */
+    static final int[] INSERT_RANGE = {0, 0, 8, 8, 0, 16, 8, 16, 16};
+    static final int[] COPY_RANGE = {0, 8, 0, 8, 16, 0, 16, 8, 16};
+
+    private static final int[] BLOCK_LENGTH_BASE = {
+        1, 5, 9, 13, 17, 25, 33, 41, 49, 65, 81, 97, 113, 145, 177, 209, 241, 305, 369, 497,
+        753, 1265, 2289, 4337, 8433, 16625,
+    };
+    private static final int[] BLOCK_LENGTH_EXTRA = {
+        2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 6, 6, 7, 8, 9, 10, 11, 12, 13, 24,
+    };
+
+    static final int NUM_COMMAND_SYMBOLS = 704;
+    static final int NUM_BLOCK_LENGTH_SYMBOLS = 26;
+    static final int LITERAL_CONTEXT_BITS = 6;
+    static final int DISTANCE_CONTEXT_BITS = 2;
+
+    /** Порядок длин кодов длин и фиксированный код для них (RFC 7932, раздел 3.5) */
+    static final int[] CODE_LENGTH_ORDER = {1, 2, 3, 4, 0, 5, 17, 6, 16, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+    private static final int[] CODE_LENGTH_PREFIX_LENGTH = {2, 2, 2, 3, 2, 2, 2, 4, 2, 2, 2, 3, 2, 2, 2, 4};
+    private static final int[] CODE_LENGTH_PREFIX_VALUE = {0, 4, 3, 2, 0, 4, 3, 1, 0, 4, 3, 2, 0, 4, 3, 5};
+
+    /** Короткие коды расстояний 0..15: от какого из последних расстояний и с какой поправкой */
+    static final int[] SHORT_CODE_INDEX = {0, 1, 2, 3, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1};
+    static final int[] SHORT_CODE_DELTA = {0, 0, 0, 0, -1, 1, -2, 2, -3, 3, -1, 1, -2, 2, -3, 3};
+
+    static final int CONTEXT_LSB6 = 0;
+    static final int CONTEXT_MSB6 = 1;
+    static final int CONTEXT_UTF8 = 2;
+    static final int CONTEXT_SIGNED = 3;
+
+    /**
+     * Таблицы контекста литералов: для режима m контекст равен
+     * LOOKUP[m*512 + p1] | LOOKUP[m*512 + 256 + p2], где p1, p2 - два предыдущих байта
+     */
+    static final int[] CONTEXT_LOOKUP = new int[2048];
+
+    private static final String UTF8_LOOKUP_P1 =
+        "0000000001100100000000000000000023433534673383"
+        + "93bbbbbbbbbb886a733cdddcdddcdddddcdddddcddddd637333efffefffefffffefffffefffff63730";
+    private static final String UTF8_LOOKUP_P2 =
+        "0000000000000000000000000000000001111111111111112222222222111111"
+        + "1222222222222222222222222221111113333333333333333333333333311110";
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            CONTEXT_LOOKUP[CONTEXT_LSB6 * 512 + i] = i & 0x3F;
+            CONTEXT_LOOKUP[CONTEXT_MSB6 * 512 + i] = i >>> 2;
+            if (i < 128) {
+                CONTEXT_LOOKUP[CONTEXT_UTF8 * 512 + i] = Character.digit(UTF8_LOOKUP_P1.charAt(i), 16) * 4;
+                CONTEXT_LOOKUP[CONTEXT_UTF8 * 512 + 256 + i] = UTF8_LOOKUP_P2.charAt(i) - '0';
+            } else {
+                // Байты продолжения UTF-8 (0x80..0xBF) и ведущие байты (0xC0..0xFF)
+                CONTEXT_LOOKUP[CONTEXT_UTF8 * 512 + i] = (i < 0xC0 ? 0 : 2) + (i & 1);
+                CONTEXT_LOOKUP[CONTEXT_UTF8 * 512 + 256 + i] = i < 0xE0 ? 0 : 2;
+            }
+            int signed = signedClass(i);
+            CONTEXT_LOOKUP[CONTEXT_SIGNED * 512 + i] = signed << 3;
+            CONTEXT_LOOKUP[CONTEXT_SIGNED * 512 + 256 + i] = signed;
+        }
+    }
+
+    private static int signedClass(int b) {
+        if (b == 0) {
+            return 0;
+        }
+        if (b < 16) {
+            return 1;
+        }
+        if (b < 64) {
+            return 2;
+        }
+        if (b < 128) {
+            return 3;
+        }
+        if (b < 192) {
+            return 4;
+        }
+        if (b < 240) {
+            return 5;
+        }
+        return b < 255 ? 6 : 7;
+    }
+
+    /** Корневая часть таблиц Хаффмана: 8 бит, длинные коды - через вторичные таблицы */
+    private static final int ROOT_BITS = 8;
+    private static final int MAX_CODE_LENGTH = 15;
+
+    // Битовый поток (младший бит первым)
+    private byte[] src;
+    private int pos;
+    private int end;
+    private long acc;
+    private int bitCount;
+    private int padBytes;
+
+    private ByteSink out;
+    private int maxBackwardDistance;
+    private final int[] distRing = new int[4];
+    private int distRingIndex;
+
+    // Таблицы Хаффмана текущего мета-блока: все деревья в одном массиве
+    private int[] tables = new int[4096];
+    private int tablesSize;
+
+    // Переключение блоков: [0] литералы, [1] команды, [2] расстояния
+    private final int[] blockTypes = new int[3];
+    private final int[] blockTypeTree = new int[3];
+    private final int[] blockCountTree = new int[3];
+    private final int[] blockRemaining = new int[3];
+    private final int[] currentType = new int[3];
+    private final int[] previousType = new int[3];
+
+    BrotliDecoder() {
+    }
+
+    /**
+     * Распаковывает поток Brotli целиком
+     */
+    byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        this.src = data;
+        this.pos = offset;
+        this.end = offset + length;
+        this.acc = 0;
+        this.bitCount = 0;
+        this.padBytes = 0;
+        this.out = new ByteSink(Math.max(64, length * 4));
+        distRing[0] = 16;
+        distRing[1] = 15;
+        distRing[2] = 11;
+        distRing[3] = 4;
+        distRingIndex = 0;
+
+        int windowBits = readWindowBits();
+        maxBackwardDistance = (1 << windowBits) - 16;
+
+        boolean last = false;
+        while (!last) {
+            last = readBits(1) == 1;
+            if (last && readBits(1) == 1) {
+                break;
+            }
+            int nibbles = readBits(2);
+            if (nibbles == 3) {
+                skipMetadata();
+                continue;
+            }
+            int metaLength = readBits((nibbles + 4) * 4) + 1;
+            boolean uncompressed = !last && readBits(1) == 1;
+            int metaStart = pos;
+            if (uncompressed) {
+                copyUncompressed(metaLength);
+            } else {
+                decodeMetaBlock(metaLength);
+            }
+            checkNotOverrun();
+            Progress.advance(pos - metaStart);
+        }
+        checkNotOverrun();
+        byte[] result = out.toByteArray();
+        this.src = null;
+        this.out = null;
+        return result;
+    }
+
+    private int readWindowBits() throws IOException {
+        if (readBits(1) == 0) {
+            return 16;
+        }
+        int n = readBits(3);
+        if (n != 0) {
+            return 17 + n;
+        }
+        int m = readBits(3);
+        if (m == 1) {
+            throw new IOException("Brotli: большое окно (large window) не поддерживается");
+        }
+        return m == 0 ? 17 : 8 + m;
+    }
+
+    private void skipMetadata() throws IOException {
+        if (readBits(1) != 0) {
+            throw new IOException("Brotli: ненулевой зарезервированный бит");
+        }
+        int skipBytes = readBits(2);
+        int skipLength = 0;
+        if (skipBytes > 0) {
+            skipLength = readBits(8 * skipBytes) + 1;
+        }
+        alignToByte();
+        for (int i = 0; i < skipLength; i++) {
+            readBits(8);
+        }
+    }
+
+    private void copyUncompressed(int length) throws IOException {
+        alignToByte();
+        // Сначала байты, уже загруженные в аккумулятор, затем напрямую из входа
+        while (length > 0 && bitCount >= 8) {
+            out.write(readBits(8));
+            length--;
+        }
+        checkNotOverrun();
+        if (length > end - pos) {
+            throw new IOException("Brotli: неожиданный конец данных");
+        }
+        out.write(src, pos, length);
+        pos += length;
+    }
+
+    // ------------------------------------------------------------------ мета-блок
+
+    private void decodeMetaBlock(int metaLength) throws IOException {
+        tablesSize = 0;
+        for (int category = 0; category < 3; category++) {
+            int types = readVarLength();
+            blockTypes[category] = types;
+            currentType[category] = 0;
+            previousType[category] = 1;
+            if (types >= 2) {
+                blockTypeTree[category] = readPrefixCode(types + 2);
+                blockCountTree[category] = readPrefixCode(NUM_BLOCK_LENGTH_SYMBOLS);
+                blockRemaining[category] = readBlockLength(blockCountTree[category]);
+            } else {
+                blockRemaining[category] = Integer.MAX_VALUE;
+            }
+        }
+
+        int postfixBits = readBits(2);
+        int directCodes = readBits(4) << postfixBits;
+        int postfixMask = (1 << postfixBits) - 1;
+        int distanceAlphabet = 16 + directCodes + (48 << postfixBits);
+
+        int literalTypes = blockTypes[0];
+        int[] contextModes = new int[literalTypes];
+        for (int i = 0; i < literalTypes; i++) {
+            contextModes[i] = readBits(2);
+        }
+        int literalTrees = readVarLength();
+        byte[] literalMap = readContextMap(literalTypes << LITERAL_CONTEXT_BITS, literalTrees);
+        int distanceTrees = readVarLength();
+        byte[] distanceMap = readContextMap(blockTypes[2] << DISTANCE_CONTEXT_BITS, distanceTrees);
+
+        int[] literalTree = new int[literalTrees];
+        for (int i = 0; i < literalTrees; i++) {
+            literalTree[i] = readPrefixCode(256);
+        }
+        int[] commandTree = new int[blockTypes[1]];
+        for (int i = 0; i < commandTree.length; i++) {
+            commandTree[i] = readPrefixCode(NUM_COMMAND_SYMBOLS);
+        }
+        int[] distanceTree = new int[distanceTrees];
+        for (int i = 0; i < distanceTrees; i++) {
+            distanceTree[i] = readPrefixCode(distanceAlphabet);
+        }
+
+        ByteSink output = out;
+        int remaining = metaLength;
+        int size = output.size();
+        int p1 = size > 0 ? output.buffer()[size - 1] & 0xFF : 0;
+        int p2 = size > 1 ? output.buffer()[size - 2] & 0xFF : 0;
+        int literalMapOffset = 0;
+        int contextOffset = contextModes[0] * 512;
+
+        while (remaining > 0) {
+            if (blockRemaining[1] == 0) {
+                switchBlock(1);
+            }
+            blockRemaining[1]--;
+            int command = readSymbol(commandTree[currentType[1]]);
+            int insertCode;
+            int copyCode;
+            if (command < 128) {
+                insertCode = (command >>> 3) & 7;
+                copyCode = (command & 7) + (command >= 64 ? 8 : 0);
+            } else {
+                int cell = (command >>> 6) - 2;
+                insertCode = INSERT_RANGE[cell] + ((command >>> 3) & 7);
+                copyCode = COPY_RANGE[cell] + (command & 7);
+            }
+            int insertLength = INSERT_BASE[insertCode] + readBits(INSERT_EXTRA[insertCode]);
+            int copyLength = COPY_BASE[copyCode] + readBits(COPY_EXTRA[copyCode]);
+
+            if (insertLength > remaining) {
+                throw new IOException("Brotli: вставка выходит за мета-блок");
+            }
+            for (int i = 0; i < insertLength; i++) {
+                if (blockRemaining[0] == 0) {
+                    switchBlock(0);
+                    literalMapOffset = currentType[0] << LITERAL_CONTEXT_BITS;
+                    contextOffset = contextModes[currentType[0]] * 512;
+                }
+                blockRemaining[0]--;
+                int context = CONTEXT_LOOKUP[contextOffset + p1] | CONTEXT_LOOKUP[contextOffset + 256 + p2];
+                int literal = readSymbol(literalTree[literalMap[literalMapOffset + context] & 0xFF]);
+                output.write(literal);
+                p2 = p1;
+                p1 = literal;
+            }
+            remaining -= insertLength;
+            if (remaining == 0) {
+                break;
+            }
+
+            int distanceCode;
+            if (command < 128) {
+                distanceCode = 0;
+            } else {
+                if (blockRemaining[2] == 0) {
+                    switchBlock(2);
+                }
+                blockRemaining[2]--;
+                int context = copyLength > 4 ? 3 : copyLength - 2;
+                int tree = distanceMap[(currentType[2] << DISTANCE_CONTEXT_BITS) + context] & 0xFF;
+                distanceCode = readSymbol(distanceTree[tree]);
+            }
+            int distance = translateDistance(distanceCode, directCodes, postfixBits, postfixMask);
+
+            int maxDistance = Math.min(maxBackwardDistance, output.size());
+            if (distance > maxDistance) {
+                remaining -= copyFromDictionary(distance - maxDistance - 1, copyLength, remaining);
+            } else {
+                if (copyLength > remaining) {
+                    throw new IOException("Brotli: копирование выходит за мета-блок");
+                }
+                if (distanceCode != 0) {
+                    distRing[distRingIndex & 3] = distance;
+                    distRingIndex++;
+                }
+                output.copyMatch(distance, copyLength);
+                remaining -= copyLength;
+            }
+            size = output.size();
+            p1 = output.buffer()[size - 1] & 0xFF;
+            p2 = size > 1 ? output.buffer()[size - 2] & 0xFF : 0;
+        }
+    }
+
+    private int translateDistance(int code, int directCodes, int postfixBits, int postfixMask) throws IOException {
+        if (code < 16) {
+            int base = distRing[(distRingIndex - 1 - SHORT_CODE_INDEX[code]) & 3];
+            int distance = base + SHORT_CODE_DELTA[code];
+            if (distance <= 0) {
+                throw new IOException("Brotli: некорректное расстояние");
+            }
+            return distance;
+        }
+        if (code < 16 + directCodes) {
+            return code - 15;
+        }
+        int d = code - directCodes - 16;
+        int extraBits = 1 + (d >>> (postfixBits + 1));
+        int high = (d >>> postfixBits) & 1;
+        long offset = ((2L + high) << extraBits) - 4;
+        long distance = ((offset + readBits(extraBits)) << postfixBits) + (d & postfixMask) + directCodes + 1;
+        if (distance > Integer.MAX_VALUE) {
+            throw new IOException("Brotli: некорректное расстояние");
+        }
+        return (int) distance;
+    }
+
+    private int copyFromDictionary(int wordId, int length, int remaining) throws IOException {
+        if (length < BrotliDictionary.MIN_WORD_LENGTH || length > BrotliDictionary.MAX_WORD_LENGTH) {
+            throw new IOException("Brotli: некорректная ссылка в словарь");
+        }
+        int bits = BrotliDictionary.SIZE_BITS_BY_LENGTH[length];
+        int index = wordId & ((1 << bits) - 1);
+        int transform = wordId >>> bits;
+        if (transform >= BrotliDictionary.NUM_TRANSFORMS) {
+            throw new IOException("Brotli: некорректное преобразование словаря");
+        }
+        byte[] word = new byte[64];
+        int n = BrotliDictionary.transformWord(word, 0, length, index, transform);
+        if (n > remaining) {
+            throw new IOException("Brotli: слово словаря выходит за мета-блок");
+        }
+        out.write(word, 0, n);
+        return n;
+    }
+
+    private void switchBlock(int category) throws IOException {
+        int types = blockTypes[category];
+        int symbol = readSymbol(blockTypeTree[category]);
+        int type;
+        if (symbol == 0) {
+            type = previousType[category];
+        } else if (symbol == 1) {
+            type = currentType[category] + 1;
+        } else {
+            type = symbol - 2;
+        }
+        if (type >= types) {
+            type -= types;
+        }
+        previousType[category] = currentType[category];
+        currentType[category] = type;
+        blockRemaining[category] = readBlockLength(blockCountTree[category]);
+    }
+
+    private int readBlockLength(int tree) throws IOException {
+        int code = readSymbol(tree);
+        return BLOCK_LENGTH_BASE[code] + readBits(BLOCK_LENGTH_EXTRA[code]);
+    }
+
+    /**
+     * Число 1..256 в коде переменной длины (NBLTYPES, NTREES)
+     */
+    private int readVarLength() throws IOException {
+        if (readBits(1) == 0) {
+            return 1;
+        }
+        int n = readBits(3);
+        return n == 0 ? 2 : (1 << n) + readBits(n) + 1;
+    }
+
+    private byte[] readContextMap(int size, int trees) throws IOException {
+        byte[] map = new byte[size];
+        if (trees < 2) {
+            return map;
+        }
+        int maxRunLengthPrefix = readBits(1) == 1 ? readBits(4) + 1 : 0;
+        int tree = readPrefixCode(trees + maxRunLengthPrefix);
+        int i = 0;
+        while (i < size) {
+            int code = readSymbol(tree);
+            if (code == 0) {
+                map[i++] = 0;
+            } else if (code <= maxRunLengthPrefix) {
+                int run = (1 << code) + readBits(code);
+                if (i + run > size) {
+                    throw new IOException("Brotli: повтор выходит за карту контекстов");
+                }
+                i += run;
+            } else {
+                map[i++] = (byte) (code - maxRunLengthPrefix);
+            }
+        }
+        if (readBits(1) == 1) {
+            inverseMoveToFront(map);
+        }
+        return map;
+    }
+
+    private static void inverseMoveToFront(byte[] map) {
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            mtf[i] = (byte) i;
+        }
+        for (int i = 0; i < map.length; i++) {
+            int index = map[i] & 0xFF;
+            byte value = mtf[index];
+            map[i] = value;
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = value;
+        }
+    }
+
+    // ------------------------------------------------------------------ префиксные коды
+
+    /**
+     * Читает описание префиксного кода и строит таблицу.
+     * @return смещение таблицы в tables
+     */
+    private int readPrefixCode(int alphabetSize) throws IOException {
+        int[] lengths = new int[alphabetSize];
+        int skip = readBits(2);
+        if (skip == 1) {
+            int count = readBits(2) + 1;
+            int alphabetBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+            int[] symbols = new int[count];
+            for (int i = 0; i < count; i++) {
+                symbols[i] = readBits(alphabetBits);
+                if (symbols[i] >= alphabetSize) {
+                    throw new IOException("Brotli: символ вне алфавита");
+                }
+                for (int j = 0; j < i; j++) {
+                    if (symbols[j] == symbols[i]) {
+                        throw new IOException("Brotli: повтор символа в простом коде");
+                    }
+                }
+            }
+            switch (count) {
+                case 1:
+                    return buildTable(lengths, alphabetSize, symbols[0]);
+                case 2:
+                    lengths[symbols[0]] = 1;
+                    lengths[symbols[1]] = 1;
+                    break;
+                case 3:
+                    lengths[symbols[0]] = 1;
+                    lengths[symbols[1]] = 2;
+                    lengths[symbols[2]] = 2;
+                    break;
+                default:
+                    if (readBits(1) == 0) {
+                        for (int s : symbols) {
+                            lengths[s] = 2;
+                        }
+                    } else {
+                        lengths[symbols[0]] = 1;
+                        lengths[symbols[1]] = 2;
+                        lengths[symbols[2]] = 3;
+                        lengths[symbols[3]] = 3;
+                    }
+                    break;
+            }
+            return buildTable(lengths, alphabetSize, -1);
+        }
+
+        // Сложный код: сначала длины кода длин, затем длины символов с повторами 16/17
+        int[] codeLengthLengths = new int[18];
+        int space = 32;
+        int codes = 0;
+        int single = 0;
+        for (int i = skip; i < 18 && space > 0; i++) {
+            int p = peekBits(4);
+            int value = CODE_LENGTH_PREFIX_VALUE[p];
+            dropBits(CODE_LENGTH_PREFIX_LENGTH[p]);
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = value;
+            if (value != 0) {
+                space -= 32 >> value;
+                codes++;
+                single = CODE_LENGTH_ORDER[i];
+            }
+        }
+        if (codes != 1 && space != 0) {
+            throw new IOException("Brotli: некорректный код длин");
+        }
+        int lengthTree = buildTable(codeLengthLengths, 18, codes == 1 ? single : -1);
+
+        int symbol = 0;
+        int previous = 8;
+        int repeat = 0;
+        int repeatLength = 0;
+        space = 1 << 15;
+        while (symbol < alphabetSize && space > 0) {
+            int code = readSymbol(lengthTree);
+            if (code < 16) {
+                lengths[symbol++] = code;
+                repeat = 0;
+                if (code != 0) {
+                    previous = code;
+                    space -= 32768 >> code;
+                }
+                continue;
+            }
+            int extraBits = code == 16 ? 2 : 3;
+            int newLength = code == 16 ? previous : 0;
+            if (repeatLength != newLength) {
+                repeat = 0;
+                repeatLength = newLength;
+            }
+            int oldRepeat = repeat;
+            if (repeat > 0) {
+                repeat = (repeat - 2) << extraBits;
+            }
+            repeat += readBits(extraBits) + 3;
+            int delta = repeat - oldRepeat;
+            if (symbol + delta > alphabetSize) {
+                throw new IOException("Brotli: повтор длин выходит за алфавит");
+            }
+            for (int i = 0; i < delta; i++) {
+                lengths[symbol++] = repeatLength;
+            }
+            if (repeatLength != 0) {
+                space -= delta * (32768 >> repeatLength);
+            }
+        }
+        if (space != 0) {
+            throw new IOException("Brotli: неполный префиксный код");
+        }
+        return buildTable(lengths, alphabetSize, -1);
+    }
+
+    /**
+     * Строит таблицу декодирования. Запись: (длина << 16) | символ; в корне длина > 8 означает
+     * ссылку на вторичную таблицу (длина - 8 бит индекса, смещение в младших 16 битах).
+     * single >= 0 - код из одного символа, который не занимает ни одного бита
+     */
+    private int buildTable(int[] lengths, int alphabetSize, int single) {
+        int base = tablesSize;
+        ensureTables(base + (1 << ROOT_BITS));
+        tablesSize += 1 << ROOT_BITS;
+        if (single >= 0) {
+            for (int i = 0; i < 1 << ROOT_BITS; i++) {
+                tables[base + i] = single;
+            }
+            return base;
+        }
+
+        int[] codes = PrefixCodes.canonicalCodes(lengths, alphabetSize);
+        int[] subBits = new int[1 << ROOT_BITS];
+        for (int s = 0; s < alphabetSize; s++) {
+            int len = lengths[s];
+            if (len == 0) {
+                continue;
+            }
+            int reversed = PrefixCodes.reverseBits(codes[s], len);
+            if (len <= ROOT_BITS) {
+                for (int i = reversed; i < 1 << ROOT_BITS; i += 1 << len) {
+                    tables[base + i] = len << 16 | s;
+                }
+            } else {
+                int prefix = reversed & ((1 << ROOT_BITS) - 1);
+                subBits[prefix] = Math.max(subBits[prefix], len - ROOT_BITS);
+            }
+        }
+        for (int prefix = 0; prefix < 1 << ROOT_BITS; prefix++) {
+            if (subBits[prefix] == 0) {
+                continue;
+            }
+            int offset = tablesSize - base;
+            ensureTables(tablesSize + (1 << subBits[prefix]));
+            tablesSize += 1 << subBits[prefix];
+            tables[base + prefix] = (ROOT_BITS + subBits[prefix]) << 16 | offset;
+        }
+        for (int s = 0; s < alphabetSize; s++) {
+            int len = lengths[s];
+            if (len <= ROOT_BITS) {
+                continue;
+            }
+            int reversed = PrefixCodes.reverseBits(codes[s], len);
+            int link = tables[base + (reversed & ((1 << ROOT_BITS) - 1))];
+            int sub = base + (link & 0xFFFF);
+            int size = 1 << ((link >>> 16) - ROOT_BITS);
+            for (int i = reversed >>> ROOT_BITS; i < size; i += 1 << (len - ROOT_BITS)) {
+                tables[sub + i] = (len - ROOT_BITS) << 16 | s;
+            }
+        }
+        return base;
+    }
+
+    private void ensureTables(int size) {
+        if (size > tables.length) {
+            tables = java.util.Arrays.copyOf(tables, Math.max(size, tables.length * 2));
+        }
+    }
+
+    private int readSymbol(int table) throws IOException {
+        if (bitCount < MAX_CODE_LENGTH) {
+            fill();
+        }
+        int bits = (int) acc;
+        int entry = tables[table + (bits & ((1 << ROOT_BITS) - 1))];
+        int len = entry >>> 16;
+        if (len > ROOT_BITS) {
+            dropBits(ROOT_BITS);
+            entry = tables[table + (entry & 0xFFFF) + ((bits >>> ROOT_BITS) & ((1 << (len - ROOT_BITS)) - 1))];
+            len = entry >>> 16;
+        }
+        dropBits(len);
+        return entry & 0xFFFF;
+    }
+
+    // ------------------------------------------------------------------ биты
+
+    private void fill() {
+        while (bitCount <= 56) {
+            if (pos < end) {
+                acc |= (long) (src[pos++] & 0xFF) << bitCount;
+            } else {
+                // За концом входа читаются нули; перерасход проверяется в checkNotOverrun
+                padBytes++;
+            }
+            bitCount += 8;
+        }
+    }
+
+    private int readBits(int n) throws IOException {
+        if (n == 0) {
+            return 0;
+        }
+        if (bitCount < n) {
+            fill();
+        }
+        int v = (int) (acc & ((1L << n) - 1));
+        acc >>>= n;
+        bitCount -= n;
+        return v;
+    }
+
+    private int peekBits(int n) {
+        if (bitCount < n) {
+            fill();
+        }
+        return (int) (acc & ((1L << n) - 1));
+    }
+
+    private void dropBits(int n) {
+        acc >>>= n;
+        bitCount -= n;
+    }
+
+    private void alignToByte() {
+        dropBits(bitCount & 7);
+    }
+
+    private void checkNotOverrun() throws IOException {
+        if (padBytes * 8 > bitCount) {
+            throw new IOException("Brotli: неожиданный конец данных");
+        }
+    }
+}
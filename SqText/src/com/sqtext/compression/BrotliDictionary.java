@@ -0,0 +1,271 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Встроенный статический словарь Brotli (RFC 7932, приложения A и B):
+ * 122 784 байта слов длиной 4..24 и 121 преобразование слова.
+ * Сам словарь лежит ресурсом рядом с классом и читается один раз при первом обращении
+ */
+final class BrotliDictionary {
+
+    static final int MIN_WORD_LENGTH = 4;
+    static final int MAX_WORD_LENGTH = 24;
+    static final int NUM_TRANSFORMS = 121;
+
+    /** Сколько бит индекса слова отведено под каждую длину */
+    static final int[] SIZE_BITS_BY_LENGTH = {
+        0, 0, 0, 0, 10, 10, 11, 11, 10, 10, 10, 10, 10, 9, 9, 8, 7, 7, 8, 7, 7, 6, 6, 5, 5,
+    };
+    static final int[] OFFSETS_BY_LENGTH = new int[MAX_WORD_LENGTH + 2];
+
+    private static final int DATA_SIZE = 122784;
+    private static final String RESOURCE = "brotli-dictionary.bin";
+
+    // Типы преобразований
+    private static final int OMIT_LAST_9 = 9;
+    private static final int UPPERCASE_FIRST = 10;
+    private static final int UPPERCASE_ALL = 11;
+    private static final int OMIT_FIRST_1 = 12;
+
+    private static final String[] PREFIX = {
+        "", "", " ", "", "", "", " ", "s ", "", "",
+        "", "", "", ", ", "", " ", "", "", "e ", "",
+        "", "", "", "", "", "", "", "", "", "",
+        " ", "", ".", " ", "", "", "", "", "", "",
+        "", " the ", "", "", "", "", "", "", "", "",
+        "", "", " ", "", "", "", "", "", "", "",
+        "", "", " the ", "", "", " ", "", ".", "", "",
+        "", " ", ".com/", " the ", "", "", "", ".", "", "",
+        "", " ", "", " ", "", " ", "", "", "", " ",
+        "", " ", "", "", "", "", " ", "", " ", "",
+        "", "", "\u00A0", " ", "", "", "", "", "", " ",
+        " ", " ", "", "", "", " ", "", " ", " ", " ",
+        " ",
+    };
+    private static final int[] TYPE = {
+        0, 0, 0, 12, 10, 0, 0, 0, 0, 10, 0, 13, 1, 0, 0, 10, 0, 0, 0, 0,
+        0, 0, 0, 3, 0, 0, 14, 2, 0, 0, 10, 0, 0, 0, 15, 0, 0, 0, 0, 16,
+        17, 0, 4, 0, 11, 0, 0, 0, 7, 1, 0, 0, 0, 0, 20, 18, 6, 0, 10, 8,
+        0, 0, 0, 5, 9, 10, 10, 0, 11, 10, 0, 0, 0, 0, 10, 0, 0, 0, 10, 10,
+        0, 0, 0, 11, 0, 11, 0, 11, 10, 0, 0, 10, 0, 0, 11, 0, 10, 11, 0, 10,
+        0, 11, 0, 0, 10, 11, 0, 11, 10, 10, 11, 11, 11, 11, 11, 11, 11, 11, 10, 11,
+        10,
+    };
+    private static final String[] SUFFIX = {
+        "", " ", " ", "", " ", " the ", "", " ",
+        " of ", "", " and ", "", "", " ", ", ", " ",
+        " in ", " to ", " ", "\"", ".", "\">", "\n", "",
+        "]", " for ", "", "", " a ", " that ", "", ". ",
+        "", ", ", "", " with ", "'", " from ", " by ", "",
+        "", "", "", ". The ", "", " on ", " as ", " is ",
+        "", "ing ", "\n\t", ":", ". ", "ed ", "", "",
+        "", "(", ", ", "", " at ", "ly ", " of ", "",
+        "", ", ", "\"", "(", " ", "\">", "=\"", ".",
+        "", " of the ", "'", ". This ", ",", " ", "(", ".",
+        " not ", "=\"", "er ", " ", "al ", "", "='", "\"",
+        ". ", "(", "ful ", ". ", "ive ", "less ", "'", "est ",
+        ".", "\">", "='", ",", "ize ", ".", "", ",",
+        "=\"", "=\"", "ous ", ", ", "='", ",", "=\"", ", ",
+        ",", "(", ". ", ".", "='", ". ", "=\"", "='",
+        "='",
+    };
+
+    private static final byte[][] PREFIX_BYTES = new byte[NUM_TRANSFORMS][];
+    private static final byte[][] SUFFIX_BYTES = new byte[NUM_TRANSFORMS][];
+
+    static {
+        for (int length = MIN_WORD_LENGTH; length <= MAX_WORD_LENGTH; length++) {
+            OFFSETS_BY_LENGTH[length + 1] = OFFSETS_BY_LENGTH[length] + (length << SIZE_BITS_BY_LENGTH[length]);
+        }
+        for (int i = 0; i < NUM_TRANSFORMS; i++) {
+            PREFIX_BYTES[i] = PREFIX[i].getBytes(StandardCharsets.UTF_8);
+            SUFFIX_BYTES[i] = SUFFIX[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static volatile byte[] data;
+
+    private BrotliDictionary() {
+    }
+
+    /**
+     * Байты словаря (загружаются из ресурса при первом вызове)
+     */
+    static byte[] data() throws IOException {
+        byte[] d = data;
+        if (d == null) {
+            synchronized (BrotliDictionary.class) {
+                d = data;
+                if (d == null) {
+                    d = load();
+                    data = d;
+                }
+            }
+        }
+        return d;
+    }
+
+    private static byte[] load() throws IOException {
+        try (InputStream in = BrotliDictionary.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Brotli: не найден ресурс словаря " + RESOURCE);
+            }
+            byte[] d = in.readAllBytes();
+            if (d.length != DATA_SIZE) {
+                throw new IOException("Brotli: поврежден словарь (" + d.length + " байт)");
+            }
+            return d;
+        }
+    }
+
+    /**
+     * Пишет в dst слово (length, index) с преобразованием transform.
+     * @return число записанных байт (не больше 38)
+     */
+    static int transformWord(byte[] dst, int dstOffset, int length, int index, int transform) throws IOException {
+        byte[] dict = data();
+        int pos = dstOffset;
+        byte[] prefix = PREFIX_BYTES[transform];
+        System.arraycopy(prefix, 0, dst, pos, prefix.length);
+        pos += prefix.length;
+
+        int type = TYPE[transform];
+        int wordOffset = OFFSETS_BY_LENGTH[length] + index * length;
+        int wordLength = length;
+        if (type >= OMIT_FIRST_1) {
+            int skip = Math.min(type - OMIT_FIRST_1 + 1, wordLength);
+            wordOffset += skip;
+            wordLength -= skip;
+        } else if (type <= OMIT_LAST_9) {
+            wordLength = Math.max(0, wordLength - type);
+        }
+        System.arraycopy(dict, wordOffset, dst, pos, wordLength);
+        if (type == UPPERCASE_FIRST) {
+            toUpperCase(dst, pos, wordLength);
+        } else if (type == UPPERCASE_ALL) {
+            int i = 0;
+            while (i < wordLength) {
+                i += toUpperCase(dst, pos + i, wordLength - i);
+            }
+        }
+        pos += wordLength;
+
+        byte[] suffix = SUFFIX_BYTES[transform];
+        System.arraycopy(suffix, 0, dst, pos, suffix.length);
+        return pos + suffix.length - dstOffset;
+    }
+
+    /**
+     * Упрощенный верхний регистр из RFC 7932: работает по байтам UTF-8, а не по таблицам Unicode
+     */
+    private static int toUpperCase(byte[] b, int pos, int available) {
+        int c = b[pos] & 0xFF;
+        if (c < 0xC0) {
+            if (c >= 'a' && c <= 'z') {
+                b[pos] ^= 32;
+            }
+            return 1;
+        }
+        if (c < 0xE0) {
+            if (available > 1) {
+                b[pos + 1] ^= 32;
+            }
+            return Math.min(2, available);
+        }
+        if (available > 2) {
+            b[pos + 2] ^= 5;
+        }
+        return Math.min(3, available);
+    }
+
+    // ------------------------------------------------------------------ поиск слов для кодера
+
+    private static final int INDEX_HASH_BITS = 15;
+    private static volatile int[][] index;
+
+    /**
+     * Ищет самое длинное слово словаря (не длиннее maxLength), совпадающее с src[pos..].
+     * upperFirst - искать слово, у которого в тексте первая буква заглавная (преобразование UppercaseFirst).
+     * @return (длина << 16) | номер слова, или -1
+     */
+    static int findWord(byte[] src, int pos, int maxLength, boolean upperFirst) throws IOException {
+        if (maxLength < MIN_WORD_LENGTH) {
+            return -1;
+        }
+        byte[] dict = data();
+        int[][] idx = wordIndex(dict);
+        int first = src[pos] & 0xFF;
+        if (upperFirst) {
+            if (first < 'A' || first > 'Z') {
+                return -1;
+            }
+            first ^= 32;
+        }
+        int h = hash4(first, src[pos + 1], src[pos + 2], src[pos + 3]);
+        int[] head = idx[0];
+        int[] next = idx[1];
+        int[] words = idx[2];
+        for (int w = head[h]; w != 0; w = next[w]) {
+            int word = words[w];
+            int length = word >>> 16;
+            if (length > maxLength) {
+                continue;
+            }
+            int offset = OFFSETS_BY_LENGTH[length] + (word & 0xFFFF) * length;
+            if ((dict[offset] & 0xFF) != first) {
+                continue;
+            }
+            int i = 1;
+            while (i < length && dict[offset + i] == src[pos + i]) {
+                i++;
+            }
+            if (i == length) {
+                // Слова в цепочке идут от длинных к коротким - первое совпадение самое длинное
+                return word;
+            }
+        }
+        return -1;
+    }
+
+    private static int[][] wordIndex(byte[] dict) {
+        int[][] idx = index;
+        if (idx != null) {
+            return idx;
+        }
+        synchronized (BrotliDictionary.class) {
+            if (index != null) {
+                return index;
+            }
+            int total = 0;
+            for (int length = MIN_WORD_LENGTH; length <= MAX_WORD_LENGTH; length++) {
+                total += 1 << SIZE_BITS_BY_LENGTH[length];
+            }
+            int[] head = new int[1 << INDEX_HASH_BITS];
+            int[] next = new int[total + 1];
+            int[] words = new int[total + 1];
+            int n = 1;
+            // Короткие слова добавляются первыми и оказываются в конце цепочек
+            for (int length = MIN_WORD_LENGTH; length <= MAX_WORD_LENGTH; length++) {
+                int count = 1 << SIZE_BITS_BY_LENGTH[length];
+                for (int i = 0; i < count; i++) {
+                    int offset = OFFSETS_BY_LENGTH[length] + i * length;
+                    int h = hash4(dict[offset] & 0xFF, dict[offset + 1], dict[offset + 2], dict[offset + 3]);
+                    words[n] = length << 16 | i;
+                    next[n] = head[h];
+                    head[h] = n;
+                    n++;
+                }
+            }
+            index = new int[][] {head, next, words};
+            return index;
+        }
+    }
+
+    private static int hash4(int b0, byte b1, byte b2, byte b3) {
+        int v = b0 | (b1 & 0xFF) << 8 | (b2 & 0xFF) << 16 | (b3 & 0xFF) << 24;
+        return (v * 0x1E35A7BD) >>> (32 - INDEX_HASH_BITS);
+    }
+}
@@ -0,0 +1,805 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Кодер Brotli (RFC 7932) на чистой Java.
+ * LZ77 по хеш-цепочкам с учетом кольца последних расстояний, ссылки в статический словарь,
+ * на высоких уровнях - контекстное моделирование литералов (UTF8) с кластеризацией гистограмм.
+ * Каждый мета-блок использует один тип блока на категорию; несжимаемые мета-блоки пишутся как есть
+ */
+final class BrotliEncoder {
+
+    static final int MIN_QUALITY = 0;
+    static final int MAX_QUALITY = 11;
+    static final int DEFAULT_QUALITY = 9;
+
+    private static final int MAX_METABLOCK_SIZE = 1 << 20;
+    private static final int DISTANCE_ALPHABET = 64;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int MIN_DICTIONARY_OUTPUT = 5;
+
+    /** {windowBits, hashLog, chainLog, searchDepth, lazy, literalClusters, dictionary} */
+    private static final int[][] QUALITIES = {
+        {18, 14, 14, 1, 0, 1, 0},
+        {18, 15, 15, 2, 0, 1, 0},
+        {19, 16, 16, 4, 0, 1, 0},
+        {20, 16, 16, 6, 1, 1, 0},
+        {21, 17, 17, 12, 1, 2, 1},
+        {22, 17, 18, 16, 1, 4, 1},
+        {22, 18, 18, 24, 1, 4, 1},
+        {22, 18, 19, 32, 2, 6, 1},
+        {22, 19, 20, 64, 2, 8, 1},
+        {22, 20, 20, 96, 2, 8, 1},
+        {24, 20, 21, 256, 2, 12, 1},
+        {24, 21, 22, 1024, 2, 16, 1},
+    };
+
+    /** Преобразования словаря, которые ищет кодер: {номер, пробел перед словом, заглавная первая, пробел после} */
+    private static final int[][] DICTIONARY_TRANSFORMS = {
+        {0, 0, 0, 0},
+        {1, 0, 0, 1},
+        {9, 0, 1, 0},
+        {4, 0, 1, 1},
+        {6, 1, 0, 0},
+        {2, 1, 0, 1},
+        {30, 1, 1, 0},
+        {15, 1, 1, 1},
+    };
+
+    private final int windowBits;
+    private final int hashLog;
+    private final int chainLog;
+    private final int searchDepth;
+    private final int lazy;
+    private final int literalClusters;
+    private final boolean useDictionary;
+
+    private byte[] src;
+    private int srcStart;
+    private int maxBackward;
+    private HashChainMatcher matcher;
+    private final int[] distRing = new int[4];
+    private int distRingIndex;
+
+    // Команды текущего мета-блока
+    private int nbCommands;
+    private int[] cmdInsert = new int[1024];
+    private int[] cmdCopy = new int[1024];
+    private int[] cmdDistance = new int[1024];
+    /** Код расстояния: 0..15 - короткий, 16.. - прямой, -1 - неявный ноль */
+    private int[] cmdDistanceCode = new int[1024];
+    private int[] cmdAdvance = new int[1024];
+
+    // Результат поиска в текущей позиции
+    private int foundLength;
+    private int foundAdvance;
+    private int foundDistance;
+    private int foundCode;
+    private int foundScore;
+    private boolean foundInDictionary;
+
+    BrotliEncoder(int quality) {
+        int[] p = QUALITIES[Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, quality))];
+        this.windowBits = p[0];
+        this.hashLog = p[1];
+        this.chainLog = p[2];
+        this.searchDepth = p[3];
+        this.lazy = p[4];
+        this.literalClusters = p[5];
+        this.useDictionary = p[6] != 0;
+    }
+
+    /**
+     * Сжимает данные в один поток Brotli
+     */
+    byte[] compress(byte[] data, int offset, int length) throws IOException {
+        // Окно не больше, чем нужно для данных: меньше памяти у декодера
+        int bits = 10;
+        while (bits < windowBits && (1 << bits) - 16 < length) {
+            bits++;
+        }
+        this.src = data;
+        this.srcStart = offset;
+        this.maxBackward = (1 << bits) - 16;
+        this.matcher = new HashChainMatcher(data, offset, offset + length, maxBackward, hashLog, chainLog);
+        distRing[0] = 16;
+        distRing[1] = 15;
+        distRing[2] = 11;
+        distRing[3] = 4;
+        distRingIndex = 0;
+
+        BitOutput out = new BitOutput(length / 3 + 64);
+        writeWindowBits(out, bits);
+        BitOutput block = new BitOutput(Math.min(length, MAX_METABLOCK_SIZE) / 3 + 64);
+        for (int start = offset; start < offset + length; start += MAX_METABLOCK_SIZE) {
+            int end = Math.min(offset + length, start + MAX_METABLOCK_SIZE);
+            Progress.advance(end - start);
+            int[] savedRing = distRing.clone();
+            int savedIndex = distRingIndex;
+
+            parse(start, end);
+            block.reset();
+            encodeMetaBlock(block, start, end);
+            if (block.bitLength() < (end - start) * 8L) {
+                block.appendTo(out);
+            } else {
+                // Сжатие не помогло: мета-блок без сжатия, кольцо расстояний - как до него
+                System.arraycopy(savedRing, 0, distRing, 0, 4);
+                distRingIndex = savedIndex;
+                writeMetaBlockHeader(out, end - start);
+                out.addBits(1, 1);
+                out.writeBytes(data, start, end - start);
+            }
+        }
+        // Последний пустой мета-блок: ISLAST = 1, ISLASTEMPTY = 1
+        out.addBits(3, 2);
+        this.src = null;
+        this.matcher = null;
+        return out.toByteArray();
+    }
+
+    private static void writeWindowBits(BitOutput out, int bits) {
+        if (bits == 16) {
+            out.addBits(0, 1);
+        } else if (bits == 17) {
+            out.addBits(1, 7);
+        } else if (bits > 17) {
+            out.addBits(1 | (bits - 17) << 1, 4);
+        } else {
+            out.addBits(1 | (bits - 8) << 4, 7);
+        }
+    }
+
+    /**
+     * ISLAST = 0, MNIBBLES и MLEN - 1 (бит ISUNCOMPRESSED пишет вызывающий)
+     */
+    private static void writeMetaBlockHeader(BitOutput out, int length) {
+        int nibbles = 4;
+        while (nibbles < 6 && (length - 1) >>> (nibbles * 4) != 0) {
+            nibbles++;
+        }
+        out.addBits(0, 1);
+        out.addBits(nibbles - 4, 2);
+        out.addBits(length - 1, nibbles * 4);
+    }
+
+    // ------------------------------------------------------------------ разбор
+
+    private void parse(int start, int end) throws IOException {
+        nbCommands = 0;
+        int anchor = start;
+        int pos = start;
+        while (pos + HashChainMatcher.MIN_MATCH <= end) {
+            if (!findMatch(pos, end)) {
+                pos++;
+                continue;
+            }
+            int length = foundLength;
+            int advance = foundAdvance;
+            int distance = foundDistance;
+            int code = foundCode;
+            int score = foundScore;
+            boolean dictionary = foundInDictionary;
+
+            for (int step = 0; step < lazy && pos + 1 + HashChainMatcher.MIN_MATCH <= end; step++) {
+                if (!findMatch(pos + 1, end) || foundScore <= score + 7) {
+                    break;
+                }
+                pos++;
+                length = foundLength;
+                advance = foundAdvance;
+                distance = foundDistance;
+                code = foundCode;
+                score = foundScore;
+                dictionary = foundInDictionary;
+            }
+
+            // Ссылки в словарь и код 0 не попадают в кольцо расстояний - так же, как в декодере
+            addCommand(pos - anchor, length, distance, code, advance, code > 0 && !dictionary);
+            pos += advance;
+            anchor = pos;
+        }
+        if (anchor < end) {
+            // Хвост литералов: копирование после него декодер уже не выполнит
+            addCommand(end - anchor, 2, 0, -1, 0, false);
+        }
+    }
+
+    /**
+     * Лучшая ссылка в позиции pos: кольцо расстояний, хеш-цепочки, словарь.
+     * Результат в found*; оценка - 8 бит на байт минус примерная цена расстояния
+     */
+    private boolean findMatch(int pos, int end) throws IOException {
+        int maxLength = end - pos;
+        int available = Math.min(pos - srcStart, maxBackward);
+        foundScore = 0;
+        foundLength = 0;
+
+        int shortCodes = searchDepth < 4 ? 4 : 16;
+        for (int code = 0; code < shortCodes; code++) {
+            int distance = shortCodeDistance(code);
+            if (distance <= 0 || distance > available) {
+                continue;
+            }
+            int len = matcher.matchLength(pos - distance, pos, maxLength);
+            int score = len * 8 - (code == 0 ? 0 : code < 4 ? 3 : 5);
+            if (len >= (code == 0 ? 3 : 4) && score > foundScore) {
+                setFound(len, len, distance, code, score, false);
+            }
+        }
+
+        int len = matcher.findLongest(pos, maxLength, Math.max(foundLength, HashChainMatcher.MIN_MATCH - 1), searchDepth);
+        if (len > 0) {
+            int distance = matcher.matchDistance;
+            int score = len * 8 - distanceCost(distance);
+            if (distance <= available && score > foundScore) {
+                setFound(len, len, distance, directCode(distance), score, false);
+            }
+        }
+
+        if (useDictionary && foundLength < BrotliDictionary.MAX_WORD_LENGTH) {
+            findDictionaryWord(pos, end, available);
+        }
+        return foundScore > 0;
+    }
+
+    private void findDictionaryWord(int pos, int end, int available) throws IOException {
+        for (int[] t : DICTIONARY_TRANSFORMS) {
+            int wordPos = pos + t[1];
+            if (t[1] == 1 && src[pos] != ' ') {
+                continue;
+            }
+            int maxWord = end - wordPos - t[3];
+            if (maxWord < BrotliDictionary.MIN_WORD_LENGTH) {
+                continue;
+            }
+            int word = BrotliDictionary.findWord(src, wordPos, Math.min(maxWord, BrotliDictionary.MAX_WORD_LENGTH), t[2] == 1);
+            if (word < 0) {
+                continue;
+            }
+            int wordLength = word >>> 16;
+            if (t[3] == 1 && src[wordPos + wordLength] != ' ') {
+                continue;
+            }
+            int advance = t[1] + wordLength + t[3];
+            if (advance < MIN_DICTIONARY_OUTPUT) {
+                continue;
+            }
+            int wordId = t[0] << BrotliDictionary.SIZE_BITS_BY_LENGTH[wordLength] | (word & 0xFFFF);
+            int distance = available + 1 + wordId;
+            int score = advance * 8 - distanceCost(distance) - 4;
+            if (score > foundScore) {
+                setFound(wordLength, advance, distance, directCode(distance), score, true);
+            }
+        }
+    }
+
+    private void setFound(int length, int advance, int distance, int code, int score, boolean dictionary) {
+        foundLength = length;
+        foundAdvance = advance;
+        foundDistance = distance;
+        foundCode = code;
+        foundScore = score;
+        foundInDictionary = dictionary;
+    }
+
+    private int shortCodeDistance(int code) {
+        int base = distRing[(distRingIndex - 1 - BrotliDecoder.SHORT_CODE_INDEX[code]) & 3];
+        return base + BrotliDecoder.SHORT_CODE_DELTA[code];
+    }
+
+    private static int distanceCost(int distance) {
+        return 2 * (31 - Integer.numberOfLeadingZeros(distance + 3)) + 4;
+    }
+
+    /**
+     * Прямой код расстояния при NPOSTFIX = 0, NDIRECT = 0
+     */
+    private static int directCode(int distance) {
+        int x = distance + 3;
+        int extraBits = 31 - Integer.numberOfLeadingZeros(x) - 1;
+        int high = (x >>> extraBits) & 1;
+        return 16 + (extraBits - 1) * 2 + high;
+    }
+
+    private void addCommand(int insert, int copy, int distance, int code, int advance, boolean pushDistance) {
+        if (nbCommands == cmdInsert.length) {
+            int n = nbCommands * 2;
+            cmdInsert = Arrays.copyOf(cmdInsert, n);
+            cmdCopy = Arrays.copyOf(cmdCopy, n);
+            cmdDistance = Arrays.copyOf(cmdDistance, n);
+            cmdDistanceCode = Arrays.copyOf(cmdDistanceCode, n);
+            cmdAdvance = Arrays.copyOf(cmdAdvance, n);
+        }
+        if (pushDistance) {
+            distRing[distRingIndex & 3] = distance;
+            distRingIndex++;
+        }
+        cmdInsert[nbCommands] = insert;
+        cmdCopy[nbCommands] = copy;
+        cmdDistance[nbCommands] = distance;
+        cmdDistanceCode[nbCommands] = code;
+        cmdAdvance[nbCommands] = advance;
+        nbCommands++;
+    }
+
+    // ------------------------------------------------------------------ запись мета-блока
+
+    private void encodeMetaBlock(BitOutput out, int start, int end) {
+        // Гистограммы
+        int[][] literalCounts = new int[64][256];
+        int[] commandCounts = new int[BrotliDecoder.NUM_COMMAND_SYMBOLS];
+        int[] distanceCounts = new int[DISTANCE_ALPHABET];
+        int[] commandSymbols = new int[nbCommands];
+        int contextOffset = BrotliDecoder.CONTEXT_UTF8 * 512;
+        boolean modelContexts = literalClusters > 1;
+
+        int pos = start;
+        for (int i = 0; i < nbCommands; i++) {
+            int insert = cmdInsert[i];
+            for (int j = 0; j < insert; j++) {
+                int context = modelContexts ? literalContext(pos + j, contextOffset) : 0;
+                literalCounts[context][src[pos + j] & 0xFF]++;
+            }
+            int code = cmdDistanceCode[i];
+            int symbol = commandSymbol(insertCode(insert), copyCode(cmdCopy[i]), code);
+            commandSymbols[i] = symbol;
+            commandCounts[symbol]++;
+            if (symbol >= 128 && cmdAdvance[i] > 0) {
+                distanceCounts[code < 0 ? 0 : code]++;
+            }
+            pos += insert + cmdAdvance[i];
+        }
+
+        int[] contextMap = new int[64];
+        int[][] clusters = clusterLiterals(literalCounts, contextMap, modelContexts ? literalClusters : 1);
+        int trees = clusters.length;
+
+        writeMetaBlockHeader(out, end - start);
+        out.addBits(0, 1);
+        // По одному типу блока для литералов, команд и расстояний
+        out.addBits(0, 3);
+        // NPOSTFIX = 0, NDIRECT = 0
+        out.addBits(0, 6);
+        out.addBits(modelContexts ? BrotliDecoder.CONTEXT_UTF8 : BrotliDecoder.CONTEXT_LSB6, 2);
+        writeVarLength(out, trees);
+        if (trees > 1) {
+            writeContextMap(out, contextMap, trees);
+        }
+        writeVarLength(out, 1);
+
+        int[][] literalLengths = new int[trees][256];
+        int[][] literalCodes = new int[trees][];
+        for (int t = 0; t < trees; t++) {
+            literalCodes[t] = writePrefixCode(out, clusters[t], 256, literalLengths[t]);
+        }
+        int[] commandLengths = new int[BrotliDecoder.NUM_COMMAND_SYMBOLS];
+        int[] commandCodes = writePrefixCode(out, commandCounts, BrotliDecoder.NUM_COMMAND_SYMBOLS, commandLengths);
+        int[] distanceLengths = new int[DISTANCE_ALPHABET];
+        int[] distanceCodes = writePrefixCode(out, distanceCounts, DISTANCE_ALPHABET, distanceLengths);
+
+        pos = start;
+        for (int i = 0; i < nbCommands; i++) {
+            int insert = cmdInsert[i];
+            int copy = cmdCopy[i];
+            int symbol = commandSymbols[i];
+            out.addBits(commandCodes[symbol], commandLengths[symbol]);
+            int ic = insertCode(insert);
+            int cc = copyCode(copy);
+            out.addBits(insert - BrotliDecoder.INSERT_BASE[ic], BrotliDecoder.INSERT_EXTRA[ic]);
+            out.addBits(copy - BrotliDecoder.COPY_BASE[cc], BrotliDecoder.COPY_EXTRA[cc]);
+            for (int j = 0; j < insert; j++) {
+                int literal = src[pos + j] & 0xFF;
+                int tree = modelContexts ? contextMap[literalContext(pos + j, contextOffset)] : 0;
+                out.addBits(literalCodes[tree][literal], literalLengths[tree][literal]);
+            }
+            if (symbol >= 128 && cmdAdvance[i] > 0) {
+                int code = Math.max(cmdDistanceCode[i], 0);
+                out.addBits(distanceCodes[code], distanceLengths[code]);
+                if (code >= 16) {
+                    int x = cmdDistance[i] + 3;
+                    int extraBits = 31 - Integer.numberOfLeadingZeros(x) - 1;
+                    out.addBits(x - ((2 + ((x >>> extraBits) & 1)) << extraBits), extraBits);
+                }
+            }
+            pos += insert + cmdAdvance[i];
+        }
+    }
+
+    private int literalContext(int pos, int contextOffset) {
+        int p1 = pos > srcStart ? src[pos - 1] & 0xFF : 0;
+        int p2 = pos > srcStart + 1 ? src[pos - 2] & 0xFF : 0;
+        return BrotliDecoder.CONTEXT_LOOKUP[contextOffset + p1] | BrotliDecoder.CONTEXT_LOOKUP[contextOffset + 256 + p2];
+    }
+
+    private static int insertCode(int insert) {
+        int code = BrotliDecoder.INSERT_BASE.length - 1;
+        while (BrotliDecoder.INSERT_BASE[code] > insert) {
+            code--;
+        }
+        return code;
+    }
+
+    private static int copyCode(int copy) {
+        int code = BrotliDecoder.COPY_BASE.length - 1;
+        while (BrotliDecoder.COPY_BASE[code] > copy) {
+            code--;
+        }
+        return code;
+    }
+
+    /**
+     * Символ команды; неявный код расстояния 0 (символы 0..127) - если позволяют диапазоны
+     */
+    private static int commandSymbol(int insertCode, int copyCode, int distanceCode) {
+        if (distanceCode <= 0 && insertCode < 8 && copyCode < 16) {
+            return (copyCode >= 8 ? 64 : 0) | (insertCode & 7) << 3 | (copyCode & 7);
+        }
+        int insertRange = insertCode & ~7;
+        int copyRange = copyCode & ~7;
+        for (int cell = 0; cell < BrotliDecoder.INSERT_RANGE.length; cell++) {
+            if (BrotliDecoder.INSERT_RANGE[cell] == insertRange && BrotliDecoder.COPY_RANGE[cell] == copyRange) {
+                return (cell + 2) << 6 | (insertCode & 7) << 3 | (copyCode & 7);
+            }
+        }
+        throw new IllegalStateException("нет ячейки команды");
+    }
+
+    /**
+     * Жадно объединяет гистограммы контекстов, пока кластеров больше лимита
+     * или объединение уменьшает оценку размера
+     */
+    private static int[][] clusterLiterals(int[][] counts, int[] contextMap, int maxClusters) {
+        int n = counts.length;
+        int[][] histograms = new int[n][];
+        double[] cost = new double[n];
+        int[] owner = new int[n];
+        int alive = 0;
+        for (int c = 0; c < n; c++) {
+            owner[c] = -1;
+        }
+        for (int c = 0; c < n; c++) {
+            if (maxClusters == 1) {
+                if (histograms[0] == null) {
+                    histograms[0] = new int[256];
+                    alive = 1;
+                }
+                for (int s = 0; s < 256; s++) {
+                    histograms[0][s] += counts[c][s];
+                }
+                owner[c] = 0;
+                continue;
+            }
+            if (isEmpty(counts[c])) {
+                continue;
+            }
+            histograms[c] = counts[c].clone();
+            cost[c] = histogramCost(histograms[c]);
+            owner[c] = c;
+            alive++;
+        }
+        if (alive == 0) {
+            histograms[0] = new int[256];
+            alive = 1;
+        }
+
+        while (alive > 1) {
+            int bestA = -1;
+            int bestB = -1;
+            double bestDelta = Double.MAX_VALUE;
+            int[] merged = new int[256];
+            for (int a = 0; a < n; a++) {
+                if (histograms[a] == null) {
+                    continue;
+                }
+                for (int b = a + 1; b < n; b++) {
+                    if (histograms[b] == null) {
+                        continue;
+                    }
+                    for (int s = 0; s < 256; s++) {
+                        merged[s] = histograms[a][s] + histograms[b][s];
+                    }
+                    double delta = histogramCost(merged) - cost[a] - cost[b];
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (alive <= maxClusters && bestDelta >= 0) {
+                break;
+            }
+            for (int s = 0; s < 256; s++) {
+                histograms[bestA][s] += histograms[bestB][s];
+            }
+            histograms[bestB] = null;
+            cost[bestA] = histogramCost(histograms[bestA]);
+            for (int c = 0; c < n; c++) {
+                if (owner[c] == bestB) {
+                    owner[c] = bestA;
+                }
+            }
+            alive--;
+        }
+
+        // Перенумеровка кластеров по порядку первого появления
+        int[] number = new int[n];
+        Arrays.fill(number, -1);
+        int[][] result = new int[alive][];
+        int next = 0;
+        for (int c = 0; c < n; c++) {
+            int o = owner[c] < 0 ? firstAlive(histograms) : owner[c];
+            if (number[o] < 0) {
+                number[o] = next;
+                result[next++] = histograms[o];
+            }
+            contextMap[c] = number[o];
+        }
+        return next == alive ? result : Arrays.copyOf(result, next);
+    }
+
+    private static int firstAlive(int[][] histograms) {
+        for (int i = 0; i < histograms.length; i++) {
+            if (histograms[i] != null) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isEmpty(int[] histogram) {
+        for (int v : histogram) {
+            if (v != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Оценка в битах: энтропия плюс примерная цена описания дерева
+     */
+    private static double histogramCost(int[] histogram) {
+        long total = 0;
+        int present = 0;
+        for (int v : histogram) {
+            total += v;
+            if (v != 0) {
+                present++;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double bits = 0;
+        double log2Total = Math.log(total) / Math.log(2);
+        for (int v : histogram) {
+            if (v != 0) {
+                bits += v * (log2Total - Math.log(v) / Math.log(2));
+            }
+        }
+        return bits + present * 5 + 40;
+    }
+
+    private static void writeVarLength(BitOutput out, int value) {
+        if (value == 1) {
+            out.addBits(0, 1);
+            return;
+        }
+        int n = 31 - Integer.numberOfLeadingZeros(value - 1);
+        out.addBits(1, 1);
+        out.addBits(n, 3);
+        out.addBits(value - 1 - (1 << n), n);
+    }
+
+    /**
+     * Карта контекстов без RLE и без move-to-front: при 64 элементах это почти ничего не стоит
+     */
+    private static void writeContextMap(BitOutput out, int[] map, int trees) {
+        out.addBits(0, 1);
+        int[] counts = new int[trees];
+        for (int v : map) {
+            counts[v]++;
+        }
+        int[] lengths = new int[trees];
+        int[] codes = writePrefixCode(out, counts, trees, lengths);
+        for (int v : map) {
+            out.addBits(codes[v], lengths[v]);
+        }
+        out.addBits(0, 1);
+    }
+
+    // ------------------------------------------------------------------ префиксные коды
+
+    /**
+     * Пишет описание префиксного кода для частот counts.
+     * @return коды символов (уже развернутые для записи младшим битом вперед); длины - в lengths
+     */
+    static int[] writePrefixCode(BitOutput out, int[] counts, int alphabetSize, int[] lengths) {
+        PrefixCodes.buildLengths(counts, alphabetSize, MAX_CODE_LENGTH, lengths);
+        int[] symbols = new int[4];
+        int present = 0;
+        for (int s = 0; s < alphabetSize && present <= 4; s++) {
+            if (lengths[s] != 0) {
+                if (present < 4) {
+                    symbols[present] = s;
+                }
+                present++;
+            }
+        }
+
+        if (present <= 4) {
+            writeSimplePrefixCode(out, lengths, alphabetSize, symbols, present);
+        } else {
+            writeComplexPrefixCode(out, lengths, alphabetSize);
+        }
+        int[] codes = PrefixCodes.canonicalCodes(lengths, alphabetSize);
+        for (int s = 0; s < alphabetSize; s++) {
+            if (lengths[s] != 0) {
+                codes[s] = PrefixCodes.reverseBits(codes[s], lengths[s]);
+            }
+        }
+        return codes;
+    }
+
+    private static void writeSimplePrefixCode(BitOutput out, int[] lengths, int alphabetSize,
+                                              int[] symbols, int count) {
+        int alphabetBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+        if (count == 0) {
+            // Символы не используются, но дерево обязано быть: один символ 0
+            symbols[0] = 0;
+            count = 1;
+        }
+        out.addBits(1, 2);
+        out.addBits(count - 1, 2);
+        if (count == 1) {
+            lengths[symbols[0]] = 0;
+            out.addBits(symbols[0], alphabetBits);
+            return;
+        }
+        // Декодер раздает длины в порядке перечисления: сначала короткие коды
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = symbols[i];
+        }
+        Arrays.sort(order, (a, b) -> lengths[a] != lengths[b] ? lengths[a] - lengths[b] : a - b);
+        for (int s : order) {
+            out.addBits(s, alphabetBits);
+        }
+        if (count == 4) {
+            out.addBits(lengths[order[0]] == 1 ? 1 : 0, 1);
+        }
+    }
+
+    private static void writeComplexPrefixCode(BitOutput out, int[] lengths, int alphabetSize) {
+        int last = alphabetSize - 1;
+        while (lengths[last] == 0) {
+            last--;
+        }
+        // Длины символов с повторами: 16 - повтор предыдущей ненулевой, 17 - повтор нулей
+        int[] tokens = new int[alphabetSize + 16];
+        int[] extras = new int[alphabetSize + 16];
+        int n = 0;
+        int previous = 8;
+        for (int i = 0; i <= last; ) {
+            int value = lengths[i];
+            int run = 1;
+            while (i + run <= last && lengths[i + run] == value) {
+                run++;
+            }
+            i += run;
+            int from = n;
+            if (value == 0) {
+                if (run == 11) {
+                    tokens[n++] = 0;
+                    run--;
+                }
+                if (run < 3) {
+                    while (run-- > 0) {
+                        tokens[n++] = 0;
+                    }
+                    continue;
+                }
+                run -= 3;
+                from = n;
+                while (true) {
+                    tokens[n] = 17;
+                    extras[n++] = run & 7;
+                    run >>>= 3;
+                    if (run == 0) {
+                        break;
+                    }
+                    run--;
+                }
+            } else {
+                if (previous != value) {
+                    tokens[n++] = value;
+                    run--;
+                }
+                previous = value;
+                if (run == 7) {
+                    tokens[n++] = value;
+                    run--;
+                }
+                if (run < 3) {
+                    while (run-- > 0) {
+                        tokens[n++] = value;
+                    }
+                    continue;
+                }
+                run -= 3;
+                from = n;
+                while (true) {
+                    tokens[n] = 16;
+                    extras[n++] = run & 3;
+                    run >>>= 2;
+                    if (run == 0) {
+                        break;
+                    }
+                    run--;
+                }
+            }
+            reverse(tokens, from, n);
+            reverse(extras, from, n);
+        }
+
+        int[] tokenCounts = new int[18];
+        for (int i = 0; i < n; i++) {
+            tokenCounts[tokens[i]]++;
+        }
+        int[] tokenLengths = new int[18];
+        PrefixCodes.buildLengths(tokenCounts, 18, 5, tokenLengths);
+        int used = 0;
+        for (int v : tokenCounts) {
+            if (v != 0) {
+                used++;
+            }
+        }
+
+        int[] order = BrotliDecoder.CODE_LENGTH_ORDER;
+        int skip = 0;
+        if (tokenLengths[order[0]] == 0 && tokenLengths[order[1]] == 0) {
+            skip = tokenLengths[order[2]] == 0 ? 3 : 2;
+        }
+        int stored = 18;
+        if (used > 1) {
+            while (tokenLengths[order[stored - 1]] == 0) {
+                stored--;
+            }
+        }
+        out.addBits(skip, 2);
+        for (int i = skip; i < stored; i++) {
+            int len = tokenLengths[order[i]];
+            out.addBits(CODE_LENGTH_CODES[len], CODE_LENGTH_CODE_BITS[len]);
+        }
+
+        int[] tokenCodes = PrefixCodes.canonicalCodes(tokenLengths, 18);
+        for (int i = 0; i < n; i++) {
+            int t = tokens[i];
+            // Код из одного символа декодер читает за 0 бит
+            if (used > 1) {
+                out.addBits(PrefixCodes.reverseBits(tokenCodes[t], tokenLengths[t]), tokenLengths[t]);
+            }
+            if (t == 16) {
+                out.addBits(extras[i], 2);
+            } else if (t == 17) {
+                out.addBits(extras[i], 3);
+            }
+        }
+    }
+
+    /** Фиксированный код длин кода длин (RFC 7932, раздел 3.5), биты уже в порядке записи */
+    private static final int[] CODE_LENGTH_CODES = {0, 7, 3, 2, 1, 15};
+    private static final int[] CODE_LENGTH_CODE_BITS = {2, 4, 3, 2, 2, 4};
+
+    private static void reverse(int[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.sqtext.compression;
+
+import java.util.Arrays;
+
+/**
+ * Растущий байтовый буфер без синхронизации (в отличие от ByteArrayOutputStream).
+ * Декодерам нужен прямой доступ к уже записанным байтам для копирования совпадений
+ */
+final class ByteSink {
+
+    private byte[] buf;
+    private int size;
+
+    ByteSink(int initialCapacity) {
+        buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    void write(int b) {
+        ensureCapacity(size + 1);
+        buf[size++] = (byte) b;
+    }
+
+    void write(byte[] src, int off, int len) {
+        ensureCapacity(size + len);
+        System.arraycopy(src, off, buf, size, len);
+        size += len;
+    }
+
+    /**
+     * Копирует length байт, начиная за distance байт до конца; участки могут перекрываться
+     */
+    void copyMatch(int distance, int length) {
+        ensureCapacity(size + length);
+        int from = size - distance;
+        if (distance >= length) {
+            System.arraycopy(buf, from, buf, size, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buf[size + i] = buf[from + i];
+            }
+        }
+        size += length;
+    }
+
+    void fill(byte value, int count) {
+        ensureCapacity(size + count);
+        Arrays.fill(buf, size, size + count, value);
+        size += count;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            if (capacity < 0) {
+                throw new OutOfMemoryError("Буфер больше 2 ГБ");
+            }
+            int grown = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity, buf.length * 2L));
+            buf = Arrays.copyOf(buf, grown);
+        }
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+}
@@ -1,56 +1,213 @@
 package com.sqtext.compression;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CancellationException;
 
 
 public class ChatCompressor {
     
+    // Поле "compression" - кодек и кодировка через '+': "gzip+base64", "zstd+z85" и т.п.
+    private static final String COMPRESSION_GZIP = "gzip";
+    private static final String COMPRESSION_DICTIONARY = "deflate+dict";
+    private static final String COMPRESSION_ZSTD = "zstd";
+    private static final String COMPRESSION_BROTLI = "brotli";
+    
+    /**
+     * Что экономить: байты сжатых данных или токены в контексте чат-бота
+     */
+    public enum Mode {
+        /** Всегда сжатый JSON (как раньше) */
+        BYTES,
+        /** Самое дешевое по токенам: исходный текст, текст без лишних пробелов или сжатый JSON */
+        TOKENS,
+        /**
+         * Сжатый JSON со встроенным словарем SqText (короткие тексты до SMALL_TEXT_LIMIT):
+         * меньше, но распаковать его может только SqText - у чат-бота словаря нет
+         */
+        DICTIONARY
+    }
+    
     /**
      * Сжимает текст в формат, оптимизированный для чат-ботов
      */
     public static String compress(String text) {
+        return compress(text, TextEncoding.BASE64);
+    }
+    
+    /**
+     * Сжимает текст и кодирует данные заданной кодировкой (имя кодировки пишется в JSON).
+     * Всегда обычный GZIP: его распакует и чат-бот, и любая внешняя программа
+     */
+    public static String compress(String text, TextEncoding encoding) {
     try {
-        // Сжимаем текст
-        byte[] gzipData;
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
-            gzip.write(text.getBytes(StandardCharsets.UTF_8));
-            gzip.finish();
-            gzipData = baos.toByteArray();
-        }
+        return envelope(text, COMPRESSION_GZIP, null, GZipCompressor.compressToBytes(text), encoding);
         
-        String base64Data = Base64.getEncoder().encodeToString(gzipData);
+    } catch (CancellationException e) {
+        throw e;
+    } catch (Exception e) {
+        return "Ошибка при сжатии: " + e.getMessage();
+    }
+}
+    
+    /**
+     * Короткие сообщения - с предустановленным словарем (у deflate нет своей истории),
+     * длинные - обычным GZIP
+     */
+    private static String compressWithDictionary(String text, TextEncoding encoding) {
+        try {
+            PresetDictionary dictionary = PresetDictionary.getDefault();
+            if (dictionary == null) {
+                throw new IOException("Встроенный словарь не найден в сборке");
+            }
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > DictionaryCompressor.SMALL_TEXT_LIMIT) {
+                return compress(text, encoding);
+            }
+            return envelope(text, COMPRESSION_DICTIONARY, dictionary, DictionaryCompressor.compressToBytes(utf8, dictionary), encoding);
+            
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            return "Ошибка при сжатии: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Сжимает текст в заданном режиме. В режиме TOKENS результатом может оказаться
+     * сам текст: Base64 режется на токены гораздо мельче обычных слов, и сжатие
+     * окупается только на длинных повторяющихся текстах
+     */
+    public static String compress(String text, Mode mode) {
+        return compress(text, mode, TextEncoding.BASE64);
+    }
+    
+    public static String compress(String text, Mode mode, TextEncoding encoding) {
+        if (mode == Mode.DICTIONARY && text != null && !text.isEmpty()) {
+            return compressWithDictionary(text, encoding);
+        }
+        if (mode != Mode.TOKENS || text == null || text.isEmpty()) {
+            return compress(text, encoding);
+        }
+        try {
+            TokenEstimator tokens = TokenEstimator.getDefault();
+            String best = text;
+            int bestTokens = tokens.count(text);
+            
+            String minified = minify(text);
+            int minifiedTokens = tokens.count(minified);
+            if (minifiedTokens < bestTokens) {
+                best = minified;
+                bestTokens = minifiedTokens;
+            }
+            
+            // Кандидаты без словаря SqText: результат должен распаковываться у чат-бота
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            String[] candidates = {
+                envelope(text, COMPRESSION_GZIP, null, GZipCompressor.compressToBytes(utf8, 9), encoding),
+                envelope(text, COMPRESSION_ZSTD, null, ZstdCompressor.compressToBytes(utf8, 19, false), encoding),
+                envelope(text, COMPRESSION_BROTLI, null,
+                    BrotliCompressor.compressToBytes(utf8, BrotliCompressor.DEFAULT_QUALITY), encoding)
+            };
+            for (String candidate : candidates) {
+                int count = tokens.count(candidate);
+                if (count < bestTokens) {
+                    best = candidate;
+                    bestTokens = count;
+                }
+            }
+            return best;
+            
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            return "Ошибка при сжатии: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Убирает пробелы, которые не меняют смысла для чат-бота: в конце строк, повторные
+     * внутри строки и подряд идущие пустые строки. Отступы в начале строк сохраняются
+     * (важны для кода). Преобразование необратимо
+     */
+    public static String minify(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        boolean previousBlank = false;
+        for (String line : text.split("\r?\n|\r", -1)) {
+            int indent = 0;
+            while (indent < line.length() && (line.charAt(indent) == ' ' || line.charAt(indent) == '\t')) {
+                indent++;
+            }
+            String body = line.substring(indent).replaceAll("[ \\t]+", " ").trim();
+            if (body.isEmpty()) {
+                if (!previousBlank && out.length() > 0) {
+                    out.append('\n');
+                }
+                previousBlank = true;
+                continue;
+            }
+            previousBlank = false;
+            out.append(line, 0, indent).append(body).append('\n');
+        }
+        // Исходный текст без завершающего перевода строки - и результат без него
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end < out.length() && (text.endsWith("\n") || text.endsWith("\r"))) {
+            end++;
+        }
+        out.setLength(end);
+        return out.toString();
+    }
+    
+    /**
+     * JSON с данными и инструкцией для чат-бота
+     */
+    private static String envelope(String text, String compression, PresetDictionary dictionary, byte[] packed,
+                                   TextEncoding encoding) {
+        String encodedData = encoding.encode(packed);
+        String title = encoding.getTitle();
         
-        // Формируем JSON вручную
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("{\n");
-        jsonBuilder.append("  \"sqtext_format\": \"chat_v1\",\n");
-        jsonBuilder.append("  \"compression\": \"gzip+base64\",\n");
-        jsonBuilder.append("  \"original_size\": ").append(text.length()).append(",\n");
-        jsonBuilder.append("  \"compressed_size\": ").append(base64Data.length()).append(",\n");
-        jsonBuilder.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
-        jsonBuilder.append("  \"data\": \"").append(base64Data).append("\"\n");
-        jsonBuilder.append("}");
+        String instruction;
+        switch (compression) {
+            case COMPRESSION_DICTIONARY:
+                instruction = "// 1. This is " + title + "+zlib data with preset dictionary " + dictionary.getIdHex() + "\n" +
+                              "// 2. Plain inflate fails: decoding needs the SqText preset dictionary " + dictionary.getIdHex() +
+                              " (Inflater.setDictionary); only SqText ships it\n";
+                break;
+            case COMPRESSION_ZSTD:
+                instruction = "// 1. This is " + title + "+Zstandard (RFC 8878) compressed JSON\n" +
+                              "// 2. Decode " + title + ", then decompress Zstandard\n";
+                break;
+            case COMPRESSION_BROTLI:
+                instruction = "// 1. This is " + title + "+Brotli (RFC 7932) compressed JSON\n" +
+                              "// 2. Decode " + title + ", then decompress Brotli\n";
+                break;
+            default:
+                instruction = "// 1. This is " + title + "+GZIP compressed JSON\n" +
+                              "// 2. Decode " + title + ", then decompress GZIP\n";
+        }
         
         // Красивый вывод с инструкциями
-        String result = "// ===== SQText COMPRESSED DATA =====\n" +
-                       "// INSTRUCTION FOR AI:\n" +
-                       "// 1. This is Base64+GZIP compressed JSON\n" +
-                       "// 2. Decode Base64, then decompress GZIP\n" +
-                       "// 3. Read the JSON below\n" +
-                       "// ==================================\n\n" +
-                       jsonBuilder.toString();
-        
-        return result;
+        String header = "// ===== SQText COMPRESSED DATA =====\n" +
+                        "// INSTRUCTION FOR AI:\n" +
+                        instruction +
+                        "// 3. Read the JSON below\n" +
+                        "// ==================================\n\n";
         
-    } catch (Exception e) {
-        return "Ошибка при сжатии: " + e.getMessage();
+        Envelope.Writer json = new Envelope.Writer(header, encodedData.length() + 256, true)
+            .field("sqtext_format", "chat_v1")
+            .field("compression", compression + "+" + encoding.getName());
+        if (dictionary != null) {
+            json.field("dictionary", dictionary.getIdHex());
+        }
+        return json.field("original_size", text.length())
+            .field("compressed_size", encodedData.length())
+            .field("timestamp", System.currentTimeMillis())
+            .field("data", encodedData)
+            .finish();
     }
-}
     
     /**
      * Проверяет, является ли текст форматом для чата
@@ -64,29 +221,38 @@ public class ChatCompressor {
      * Извлекает данные из чат-формата
      */
     public static String extractFromChat(String chatText) throws IOException {
-        // Находим начало JSON
-        int start = chatText.indexOf("{");
-        if (start == -1) {
-            throw new IOException("Не найден JSON в чат-формате");
-        }
-        
-        String jsonPart = chatText.substring(start);
+        return decompress(Envelope.parse(chatText));
+    }
+    
+    static String decompress(Envelope envelope) throws IOException {
+        CharSequence compressedData = envelope.getData();
         
-        // Ищем данные
-        int dataStart = jsonPart.indexOf("\"data\":\"");
-        if (dataStart == -1) {
-            throw new IOException("Не найден 'data' в JSON");
+        // Кодировка - последняя часть поля "compression"; без нее - Base64
+        String compression = envelope.get("compression");
+        String codec = compression;
+        TextEncoding encoding = TextEncoding.BASE64;
+        if (compression != null && compression.lastIndexOf('+') != -1) {
+            codec = compression.substring(0, compression.lastIndexOf('+'));
+            encoding = TextEncoding.forName(compression.substring(compression.lastIndexOf('+') + 1));
         }
+        byte[] packed = encoding.decode(compressedData);
         
-        dataStart += 8;
-        int dataEnd = jsonPart.indexOf("\"", dataStart);
-        if (dataEnd == -1) {
-            throw new IOException("Не найден конец 'data'");
+        // Распаковываем тем словарем, что записан в JSON
+        String dictionaryId = envelope.get("dictionary");
+        byte[] utf8;
+        if (dictionaryId != null) {
+            PresetDictionary dictionary = PresetDictionary.forId(dictionaryId);
+            if (dictionary == null) {
+                throw new IOException("Неизвестный словарь " + dictionaryId);
+            }
+            utf8 = DictionaryCompressor.decompressBytes(packed, dictionary);
+        } else if (COMPRESSION_ZSTD.equals(codec)) {
+            utf8 = ZstdCompressor.decompressBytes(packed);
+        } else if (COMPRESSION_BROTLI.equals(codec)) {
+            utf8 = BrotliCompressor.decompressBytes(packed);
+        } else {
+            utf8 = GZipCompressor.decompressBytes(packed);
         }
-        
-        String compressedData = jsonPart.substring(dataStart, dataEnd);
-        
-        // Распаковываем
-        return GZipCompressor.decompress(compressedData);
+        return new String(utf8, StandardCharsets.UTF_8);
     }
 }
\ No newline at end of file
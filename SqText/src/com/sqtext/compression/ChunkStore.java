@@ -0,0 +1,223 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Локальное хранилище фрагментов по XXH64 содержимого: уже отправленные и уже
+ * принятые фрагменты, на которые может сослаться формат sqz-dedup. Фрагмент -
+ * файл с шестнадцатеричным хешем в имени; порядок LRU держится в памяти и
+ * переживает перезапуск через время изменения файла. Сверх емкости удаляются
+ * давно не использованные
+ */
+public final class ChunkStore {
+    public static final long DEFAULT_CAPACITY = 64L << 20;
+    private static final String DEFAULT_DIRECTORY = "sqtext_chunks";
+
+    private static ChunkStore defaultStore;
+
+    private final Path directory;
+    private final long capacity;
+    /** хеш -> размер, в порядке использования (первый - самый старый) */
+    private final LinkedHashMap<Long, Integer> sizes = new LinkedHashMap<>(256, 0.75f, true);
+    /** Содержимое фрагментов хранилища без каталога */
+    private final Map<Long, byte[]> memory;
+    private long size;
+
+    private ChunkStore(Path directory, long capacity) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.memory = directory == null ? new HashMap<>() : null;
+    }
+
+    /**
+     * Хранилище в каталоге sqtext_chunks рядом с журналом истории
+     */
+    public static synchronized ChunkStore getDefault() throws IOException {
+        if (defaultStore == null) {
+            defaultStore = open(Paths.get(DEFAULT_DIRECTORY), DEFAULT_CAPACITY);
+        }
+        return defaultStore;
+    }
+
+    /**
+     * Открывает (или создает) хранилище в каталоге
+     */
+    public static ChunkStore open(Path directory, long capacity) throws IOException {
+        Files.createDirectories(directory);
+        ChunkStore store = new ChunkStore(directory, capacity);
+        store.load();
+        return store;
+    }
+
+    /** Хранилище только в памяти (до конца работы программы) */
+    public static ChunkStore inMemory(long capacity) {
+        return new ChunkStore(null, capacity);
+    }
+
+    private void load() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, FileTime> times = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (parseName(file.getFileName().toString()) != null) {
+                    files.add(file);
+                    times.put(file, Files.getLastModifiedTime(file));
+                }
+            }
+        }
+        files.sort(Comparator.comparing(times::get));
+        for (Path file : files) {
+            int length = (int) Files.size(file);
+            sizes.put(parseName(file.getFileName().toString()), length);
+            size += length;
+        }
+        evict();
+    }
+
+    /**
+     * Есть ли фрагмент; найденный считается использованным (уходит в конец очереди LRU)
+     */
+    public synchronized boolean contains(long hash) {
+        if (sizes.get(hash) == null) {
+            return false;
+        }
+        touch(hash);
+        return true;
+    }
+
+    /**
+     * Содержимое фрагмента или null, если его нет (или он удален другой копией программы)
+     */
+    public synchronized byte[] get(long hash) throws IOException {
+        if (sizes.get(hash) == null) {
+            return null;
+        }
+        if (memory != null) {
+            return memory.get(hash);
+        }
+        try {
+            byte[] data = Files.readAllBytes(file(hash));
+            touch(hash);
+            return data;
+        } catch (NoSuchFileException e) {
+            size -= sizes.remove(hash);
+            return null;
+        }
+    }
+
+    /**
+     * Сохраняет фрагмент (повторное сохранение только отмечает использование)
+     */
+    public synchronized void put(long hash, byte[] data, int offset, int length) throws IOException {
+        if (sizes.get(hash) != null) {
+            touch(hash);
+            return;
+        }
+        if (memory != null) {
+            memory.put(hash, Arrays.copyOfRange(data, offset, offset + length));
+        } else {
+            Path file = file(hash);
+            Path part = file.resolveSibling(file.getFileName() + ".part");
+            try (OutputStream out = Files.newOutputStream(part)) {
+                out.write(data, offset, length);
+            }
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        sizes.put(hash, length);
+        size += length;
+        evict();
+    }
+
+    /** Сколько байт занимают фрагменты */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int count() {
+        return sizes.size();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Хеши последних использованных фрагментов, самый свежий первым
+     */
+    public synchronized List<Long> recent(int limit) {
+        List<Long> hashes = new ArrayList<>(sizes.keySet());
+        Collections.reverse(hashes);
+        return new ArrayList<>(hashes.subList(0, Math.min(limit, hashes.size())));
+    }
+
+    /** Удаляет все фрагменты */
+    public synchronized void clear() throws IOException {
+        for (Long hash : new ArrayList<>(sizes.keySet())) {
+            remove(hash);
+        }
+    }
+
+    private void touch(long hash) {
+        if (directory != null) {
+            try {
+                Files.setLastModifiedTime(file(hash), FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                // порядок LRU в памяти уже обновлен; после перезапуска фрагмент окажется старше
+            }
+        }
+    }
+
+    /** Удаляет самые старые фрагменты, пока размер больше емкости (последний остается всегда) */
+    private void evict() throws IOException {
+        while (size > capacity && sizes.size() > 1) {
+            remove(sizes.keySet().iterator().next());
+        }
+    }
+
+    private void remove(long hash) throws IOException {
+        Integer length = sizes.remove(hash);
+        if (length != null) {
+            removeData(hash, length);
+        }
+    }
+
+    private void removeData(long hash, int length) throws IOException {
+        size -= length;
+        if (memory != null) {
+            memory.remove(hash);
+        } else {
+            Files.deleteIfExists(file(hash));
+        }
+    }
+
+    private Path file(long hash) {
+        return directory.resolve(String.format("%016x", hash));
+    }
+
+    private static Long parseName(String name) {
+        if (name.length() != 16) {
+            return null;
+        }
+        try {
+            return Long.parseUnsignedLong(name, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Однобайтовая кодовая страница документа вместо UTF-8: ASCII остается как есть,
+ * 127 самых частых прочих символов (для русского текста - кириллица, кавычки-елочки,
+ * тире) получают байты 0x80..0xFE, а остальные пишутся через ESCAPE и UTF-8 самого
+ * символа (суррогаты - по отдельности, поэтому обратимо любое содержимое строки).
+ * Кодеку достается вдвое меньше байт на русских буквах. Страница записывается в
+ * конверт строкой ASCII - шестнадцатеричными кодами и диапазонами: "ab,bb,401,410-44f,451"
+ */
+final class CodePage {
+    private static final int ESCAPE = 0xFF;
+    private static final int SIZE = 127;
+
+    /** Символы байтов 0x80..0xFE по возрастанию кода */
+    private final char[] chars;
+
+    private CodePage(char[] chars) {
+        this.chars = chars;
+    }
+
+    /**
+     * Страница для текста или null, если UTF-8 не длиннее (ASCII, мало букв вне ASCII)
+     */
+    static CodePage choose(char[] text) {
+        int[] counts = new int[65536];
+        for (char c : text) {
+            counts[c]++;
+        }
+        // 127 самых частых символов из встречающихся больше одного раза
+        long[] ranked = new long[256];
+        int size = 0;
+        long escapes = 0;
+        for (int c = 0x80; c < counts.length; c++) {
+            escapes += Character.isSurrogate((char) c) ? 2L * counts[c] : counts[c];
+            if (counts[c] > 1 && !Character.isSurrogate((char) c)) {
+                if (size == ranked.length) {
+                    ranked = Arrays.copyOf(ranked, size * 2);
+                }
+                ranked[size++] = ((long) counts[c] << 16) | c;
+            }
+        }
+        Arrays.sort(ranked, 0, size);
+        int taken = Math.min(SIZE, size);
+        char[] chars = new char[taken];
+        // Выигрыш против UTF-8: 1-2 байта на символ страницы; проигрыш - байт ESCAPE на каждый прочий
+        long saving = 0;
+        for (int k = 0; k < taken; k++) {
+            long entry = ranked[size - 1 - k];
+            chars[k] = (char) entry;
+            saving += (entry >>> 16) * ((char) entry < 0x800 ? 1 : 2);
+        }
+        for (int k = 0; k < taken; k++) {
+            escapes -= counts[chars[k]];
+        }
+        Arrays.sort(chars);
+        CodePage page = new CodePage(chars);
+        if (saving - escapes <= page.getName().length()) {
+            return null;
+        }
+        return page;
+    }
+
+    /**
+     * Страница по строке из конверта
+     */
+    static CodePage forName(String name) throws IOException {
+        char[] chars = new char[SIZE];
+        int size = 0;
+        try {
+            for (String part : name.split(",")) {
+                int dash = part.indexOf('-');
+                int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash), 16);
+                int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1), 16);
+                if (from < 0x80 || to > 0xFFFF || from > to || to - from >= SIZE - size
+                        || (size > 0 && from <= chars[size - 1])) {
+                    throw new IOException("Неверная кодовая страница: " + name);
+                }
+                for (int c = from; c <= to; c++) {
+                    chars[size++] = (char) c;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Неверная кодовая страница: " + name);
+        }
+        return new CodePage(Arrays.copyOf(chars, size));
+    }
+
+    /** Строка для конверта: коды и диапазоны подряд идущих кодов */
+    String getName() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < chars.length; ) {
+            int j = i;
+            while (j + 1 < chars.length && chars[j + 1] == chars[j] + 1) {
+                j++;
+            }
+            if (name.length() > 0) {
+                name.append(',');
+            }
+            name.append(Integer.toHexString(chars[i]));
+            if (j > i) {
+                name.append('-').append(Integer.toHexString(chars[j]));
+            }
+            i = j + 1;
+        }
+        return name.toString();
+    }
+
+    byte[] encode(char[] text) {
+        byte[] map = new byte[65536];
+        for (int k = 0; k < chars.length; k++) {
+            map[chars[k]] = (byte) (0x80 + k);
+        }
+        byte[] out = new byte[text.length + 16];
+        int size = 0;
+        for (char c : text) {
+            if (size + 4 > out.length) {
+                out = Arrays.copyOf(out, out.length + (out.length >> 1) + 16);
+            }
+            if (c < 0x80) {
+                out[size++] = (byte) c;
+            } else if (map[c] != 0) {
+                out[size++] = map[c];
+            } else {
+                out[size++] = (byte) ESCAPE;
+                if (c < 0x800) {
+                    out[size++] = (byte) (0xC0 | c >> 6);
+                } else {
+                    out[size++] = (byte) (0xE0 | c >> 12);
+                    out[size++] = (byte) (0x80 | (c >> 6 & 0x3F));
+                }
+                out[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    String decode(byte[] data) throws IOException {
+        char[] table = new char[256];
+        for (int b = 0; b < 0x80; b++) {
+            table[b] = (char) b;
+        }
+        System.arraycopy(chars, 0, table, 0x80, chars.length);
+        char[] out = new char[data.length];
+        int size = 0;
+        int n = data.length;
+        for (int i = 0; i < n; i++) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80 + chars.length) {
+                out[size++] = table[b];
+                continue;
+            }
+            if (b != ESCAPE || i + 1 >= n) {
+                throw new IOException("Неверный байт кодовой страницы: " + b);
+            }
+            int lead = data[++i] & 0xFF;
+            if ((lead & 0xE0) == 0xC0 && i + 1 < n) {
+                out[size++] = (char) ((lead & 0x1F) << 6 | (data[++i] & 0x3F));
+            } else if ((lead & 0xF0) == 0xE0 && i + 2 < n) {
+                out[size++] = (char) ((lead & 0x0F) << 12 | (data[i + 1] & 0x3F) << 6 | (data[i + 2] & 0x3F));
+                i += 2;
+            } else {
+                throw new IOException("Неверный байт кодовой страницы: " + lead);
+            }
+        }
+        return new String(out, 0, size);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.sqtext.compression;
+
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Пул нативных контекстов zlib (Deflater/Inflater).
+ * У каждого потока свой небольшой стек контекстов: при возврате контекст сбрасывается
+ * через reset() и используется повторно, поэтому нативная память не растет с числом вызовов.
+ * Стек, а не одна ячейка - чтобы вложенные операции в одном потоке не мешали друг другу
+ */
+final class CodecPool {
+
+    /** Сколько свободных контекстов каждого вида держит один поток */
+    private static final int MAX_IDLE_PER_THREAD = 4;
+
+    private static final ThreadLocal<Slots> SLOTS = ThreadLocal.withInitial(Slots::new);
+
+    private static final class Slots {
+        final ArrayDeque<Deflater> deflaters = new ArrayDeque<>();
+        final ArrayDeque<Deflater> rawDeflaters = new ArrayDeque<>();
+        final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+        final ArrayDeque<Inflater> rawInflaters = new ArrayDeque<>();
+    }
+
+    private CodecPool() {
+    }
+
+    /**
+     * Берет Deflater из пула.
+     * @param nowrap true - "сырой" deflate без заголовка zlib (для GZIP)
+     */
+    static Deflater borrowDeflater(int level, boolean nowrap) {
+        Slots slots = SLOTS.get();
+        Deflater deflater = (nowrap ? slots.rawDeflaters : slots.deflaters).pollFirst();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+        deflater.setLevel(level);
+        deflater.setStrategy(Deflater.DEFAULT_STRATEGY);
+        return deflater;
+    }
+
+    /**
+     * Возвращает Deflater в пул; nowrap должен совпадать с тем, что был при получении
+     */
+    static void releaseDeflater(Deflater deflater, boolean nowrap) {
+        deflater.reset();
+        ArrayDeque<Deflater> idle = nowrap ? SLOTS.get().rawDeflaters : SLOTS.get().deflaters;
+        if (idle.size() < MAX_IDLE_PER_THREAD) {
+            idle.addFirst(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Берет Inflater из пула
+     */
+    static Inflater borrowInflater(boolean nowrap) {
+        Slots slots = SLOTS.get();
+        Inflater inflater = (nowrap ? slots.rawInflaters : slots.inflaters).pollFirst();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * Возвращает Inflater в пул
+     */
+    static void releaseInflater(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        ArrayDeque<Inflater> idle = nowrap ? SLOTS.get().rawInflaters : SLOTS.get().inflaters;
+        if (idle.size() < MAX_IDLE_PER_THREAD) {
+            idle.addFirst(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+}
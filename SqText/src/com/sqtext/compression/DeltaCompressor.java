@@ -0,0 +1,350 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+
+/**
+ * Формат sqz-delta: новая версия текста - команды COPY (кусок базовой версии) и ADD
+ * (новые байты), как в VCDIFF; поток команд жмется Zstd. База - явно заданный текст
+ * или самая похожая из недавних версий (хранилище sqtext_bases). Хеш базы записан
+ * в конверт: распаковка проверяет, что база та же.
+ * <pre>
+ * команда: varint (длина &lt;&lt; 1 | 1) | zigzag varint (адрес - ожидаемый) - COPY
+ *          varint (длина &lt;&lt; 1)     | байты                              - ADD
+ * </pre>
+ * Ожидаемый адрес - конец предыдущего COPY, поэтому куски базы подряд (правка в
+ * середине файла) кодируются нулевым смещением. Повторы внутри новых байт находит Zstd
+ */
+public final class DeltaCompressor {
+    static final String FORMAT = "sqz-delta";
+    /** Версии больше этого не запоминаются как базы */
+    static final int MAX_BASE = 4 << 20;
+    public static final long BASE_CAPACITY = 16L << 20;
+    private static final String BASE_DIRECTORY = "sqtext_bases";
+    /** Сколько недавних версий примерять в базы */
+    private static final int CANDIDATES = 8;
+    /** Минимальная длина COPY: короче выгоднее ADD */
+    private static final int MIN_MATCH = 16;
+    /** Шаг проб при выборе базы и доля совпавших проб, ниже которой база не нужна */
+    private static final int PROBE_STEP = 32;
+    private static final double MIN_SIMILARITY = 0.1;
+    private static final int LEVEL = 9;
+
+    private static final VarHandle LONG_LE =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static ChunkStore baseStore;
+
+    private DeltaCompressor() {
+    }
+
+    /**
+     * Недавние версии текстов по XXH64: кандидаты в базы
+     */
+    public static synchronized ChunkStore getBaseStore() throws IOException {
+        if (baseStore == null) {
+            baseStore = ChunkStore.open(Paths.get(BASE_DIRECTORY), BASE_CAPACITY);
+        }
+        return baseStore;
+    }
+
+    /**
+     * Запоминает текст как возможную базу следующих версий
+     */
+    public static void remember(String text) throws IOException {
+        remember(text.getBytes(StandardCharsets.UTF_8), getBaseStore());
+    }
+
+    private static void remember(byte[] utf8, ChunkStore bases) throws IOException {
+        if (utf8.length > 0 && utf8.length <= MAX_BASE) {
+            bases.put(XxHash64.hash(utf8, 0, utf8.length, 0), utf8, 0, utf8.length);
+        }
+    }
+
+    /**
+     * Дельта к самой похожей недавней версии (без подходящей - просто Zstd)
+     */
+    public static String compress(String text, TextEncoding encoding) throws IOException {
+        ChunkStore bases = getBaseStore();
+        byte[] target = text.getBytes(StandardCharsets.UTF_8);
+        byte[] base = chooseBase(target, bases);
+        String result = compress(text, target, base, encoding);
+        remember(target, bases);
+        return result;
+    }
+
+    /**
+     * Дельта к заданной базовой версии
+     */
+    public static String compress(String text, String base, TextEncoding encoding) throws IOException {
+        byte[] target = text.getBytes(StandardCharsets.UTF_8);
+        String result = compress(text, target, base.getBytes(StandardCharsets.UTF_8), encoding);
+        ChunkStore bases = getBaseStore();
+        remember(base.getBytes(StandardCharsets.UTF_8), bases);
+        remember(target, bases);
+        return result;
+    }
+
+    static String compress(String text, byte[] target, byte[] base, TextEncoding encoding) throws IOException {
+        long startTime = System.currentTimeMillis();
+        if (base == null) {
+            base = new byte[0];
+        }
+        ByteSink commands = new ByteSink(target.length / 4 + 64);
+        long copied = encode(target, base, commands);
+
+        Algorithm algorithm = Algorithm.ZSTD;
+        String compressed = encoding.encode(AdvancedCompressor.compressBytes(commands.toByteArray(), algorithm, LEVEL));
+        Envelope.Writer json = Envelope.Writer.forCodec(FORMAT, algorithm, LEVEL, encoding, compressed.length());
+        if (base.length > 0) {
+            json.field("base", Envelope.hash(base, base.length))
+                .field("base_length", base.length);
+        }
+        return json.field("original", text.length())
+            .field("copied", copied)
+            .field("added", target.length - copied)
+            .field("hash", Envelope.hash(target, target.length))
+            .field("time_ms", System.currentTimeMillis() - startTime)
+            .field("data", compressed)
+            .finish();
+    }
+
+    /**
+     * Распаковывает с явно заданной базой
+     */
+    public static String decompress(String json, String base) throws IOException {
+        Envelope envelope = Envelope.parse(json);
+        if (envelope.getFormat() != Envelope.Format.SQZ_DELTA) {
+            throw new IOException("Это не " + FORMAT + ": " + envelope.getFormat().getTitle());
+        }
+        byte[] target = decode(envelope, base.getBytes(StandardCharsets.UTF_8));
+        remember(target, getBaseStore());
+        return new String(target, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Распаковывает с базой из недавних версий; результат сам становится базой
+     */
+    static String decompress(Envelope envelope) throws IOException {
+        ChunkStore bases = getBaseStore();
+        byte[] base = new byte[0];
+        String baseHash = envelope.get("base");
+        if (baseHash != null) {
+            base = bases.get(parseHex(baseHash));
+            if (base == null) {
+                throw new IOException("Нет базовой версии " + baseHash + ": распакуйте или сожмите ее сначала "
+                    + "(в командной строке - --base ФАЙЛ)");
+            }
+        }
+        byte[] target = decode(envelope, base);
+        remember(target, bases);
+        return new String(target, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] decode(Envelope envelope, byte[] base) throws IOException {
+        String baseHash = envelope.get("base");
+        if (baseHash == null) {
+            base = new byte[0];
+        } else if (!baseHash.equals(Envelope.hash(base, base.length))) {
+            throw new IOException("Базовая версия не та: ее хеш " + Envelope.hash(base, base.length)
+                + ", в конверте " + baseHash);
+        }
+        byte[] target = apply(envelope.decodeData(), base);
+        envelope.verifyHash(target, target.length);
+        return target;
+    }
+
+    // ------------------------------------------------------------------ команды
+
+    /**
+     * Кодирует target командами против base
+     * @return сколько байт взято из базы
+     */
+    static long encode(byte[] target, byte[] base, ByteSink out) {
+        int[] index = index(base);
+        int bits = Integer.numberOfTrailingZeros(index.length);
+        long copied = 0;
+        int expected = 0;
+        int literalStart = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= target.length) {
+            int from = -1;
+            if (expected + MIN_MATCH <= base.length && matches(base, expected, target, i, MIN_MATCH)) {
+                from = expected;
+            } else if (base.length >= MIN_MATCH) {
+                int candidate = index[hash(target, i, bits)];
+                if (candidate >= 0 && matches(base, candidate, target, i, MIN_MATCH)) {
+                    from = candidate;
+                }
+            }
+            if (from < 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (start > literalStart && from > 0 && target[start - 1] == base[from - 1]) {
+                start--;
+                from--;
+            }
+            int end = i + MIN_MATCH;
+            int baseEnd = from + (end - start);
+            while (end < target.length && baseEnd < base.length && target[end] == base[baseEnd]) {
+                end++;
+                baseEnd++;
+            }
+            writeAdd(out, target, literalStart, start);
+            writeVarint(out, (long) (end - start) << 1 | 1);
+            writeVarint(out, zigzag(from - expected));
+            copied += end - start;
+            expected = baseEnd;
+            literalStart = end;
+            i = end;
+            Progress.advance(end - start);
+        }
+        writeAdd(out, target, literalStart, target.length);
+        return copied;
+    }
+
+    static byte[] apply(byte[] commands, byte[] base) throws IOException {
+        ByteSink out = new ByteSink(Math.max(base.length, commands.length * 2));
+        int[] pos = {0};
+        int expected = 0;
+        while (pos[0] < commands.length) {
+            long header = readVarint(commands, pos);
+            long length = header >>> 1;
+            if ((header & 1) != 0) {
+                long from = expected + unzigzag(readVarint(commands, pos));
+                if (from < 0 || from > base.length || length > base.length - from) {
+                    throw new IOException("COPY за пределами базовой версии: " + from + "+" + length);
+                }
+                out.write(base, (int) from, (int) length);
+                expected = (int) (from + length);
+            } else {
+                if (length > commands.length - pos[0]) {
+                    throw new IOException("Данные sqz-delta обрезаны");
+                }
+                out.write(commands, pos[0], (int) length);
+                pos[0] += (int) length;
+            }
+            Progress.advance(length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeAdd(ByteSink out, byte[] target, int from, int to) {
+        if (to > from) {
+            writeVarint(out, (long) (to - from) << 1);
+            out.write(target, from, to - from);
+            Progress.advance(to - from);
+        }
+    }
+
+    /**
+     * Таблица "хеш 16 байт -> позиция в базе" по всем позициям (при совпадении хешей - последняя)
+     */
+    private static int[] index(byte[] base) {
+        int size = Integer.highestOneBit(Math.max(64, base.length) * 2 - 1);
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int p = 0; p + MIN_MATCH <= base.length; p++) {
+            table[hash(base, p, bits)] = p;
+        }
+        return table;
+    }
+
+    private static int hash(byte[] data, int p, int bits) {
+        long a = (long) LONG_LE.get(data, p);
+        long b = (long) LONG_LE.get(data, p + 8);
+        return (int) ((a * 0x9E3779B185EBCA87L ^ b * 0xC2B2AE3D27D4EB4FL) >>> (64 - bits));
+    }
+
+    private static boolean matches(byte[] base, int from, byte[] target, int at, int length) {
+        return Arrays.equals(base, from, from + length, target, at, at + length);
+    }
+
+    // ------------------------------------------------------------------ выбор базы
+
+    /**
+     * Самая похожая из недавних версий: доля проб target (каждые PROBE_STEP байт),
+     * нашедших в версии те же MIN_MATCH байт. null - похожих нет
+     */
+    static byte[] chooseBase(byte[] target, ChunkStore bases) throws IOException {
+        if (target.length < MIN_MATCH) {
+            return null;
+        }
+        byte[] best = null;
+        double bestScore = MIN_SIMILARITY;
+        for (long hash : bases.recent(CANDIDATES)) {
+            byte[] candidate = bases.get(hash);
+            if (candidate == null || candidate.length < MIN_MATCH) {
+                continue;
+            }
+            int[] index = index(candidate);
+            int bits = Integer.numberOfTrailingZeros(index.length);
+            int probes = 0;
+            int hits = 0;
+            for (int i = 0; i + MIN_MATCH <= target.length; i += PROBE_STEP) {
+                int p = index[hash(target, i, bits)];
+                probes++;
+                if (p >= 0 && matches(candidate, p, target, i, MIN_MATCH)) {
+                    hits++;
+                }
+            }
+            double score = (double) hits / probes;
+            if (score > bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // ------------------------------------------------------------------ числа
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteSink out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IOException("Данные sqz-delta обрезаны");
+            }
+            int b = data[pos[0]++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Неверное число в данных sqz-delta");
+    }
+
+    private static long parseHex(String value) throws IOException {
+        try {
+            return Long.parseUnsignedLong(value, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Неверный хеш базовой версии: " + value);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.sqtext.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate с предустановленным словарем для коротких сообщений.
+ * Поток - обычный zlib (RFC 1950) с флагом FDICT: в заголовке лежит Adler-32 словаря,
+ * так что распаковать его можно любым zlib, если есть тот же словарь
+ */
+public class DictionaryCompressor {
+
+    /** Текстам длиннее (в байтах UTF-8) словарь почти ничего не дает - им хватает своей истории */
+    public static final int SMALL_TEXT_LIMIT = 64 * 1024;
+
+    /**
+     * Сжимает текст словарем и кодирует в Base64
+     */
+    public static String compress(String text, PresetDictionary dictionary) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        return Base64.getEncoder().encodeToString(compressToBytes(data, dictionary));
+    }
+
+    /**
+     * Распаковывает текст; словарь находится по идентификатору из заголовка zlib
+     */
+    public static String decompress(String compressedText) throws IOException {
+        return decompress(compressedText, null);
+    }
+
+    /**
+     * Распаковывает текст заданным словарем (null - искать по заголовку)
+     */
+    public static String decompress(String compressedText, PresetDictionary dictionary) throws IOException {
+        if (compressedText == null || compressedText.isEmpty()) {
+            return "";
+        }
+        byte[] data;
+        try {
+            data = Base64.getMimeDecoder().decode(compressedText);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректные Base64 данные: " + e.getMessage(), e);
+        }
+        return new String(decompressBytes(data, dictionary), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] compressToBytes(byte[] data, PresetDictionary dictionary) {
+        Deflater deflater = CodecPool.borrowDeflater(Deflater.BEST_COMPRESSION, false);
+        try {
+            deflater.setDictionary(dictionary.bytes());
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[Math.min(TextStreams.BUFFER_SIZE, data.length + 64)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            CodecPool.releaseDeflater(deflater, false);
+        }
+    }
+
+    public static byte[] decompressBytes(byte[] data, PresetDictionary dictionary) throws IOException {
+        int id = dictionaryId(data);
+        if (id == -1 && (dictionary == null || dictionary.getId() != -1)) {
+            throw new IOException("Данные не являются потоком zlib со словарем");
+        }
+        if (dictionary == null) {
+            dictionary = PresetDictionary.forId(id);
+            if (dictionary == null) {
+                throw new IOException("Неизвестный словарь " + String.format("%08x", id)
+                    + " - загрузите его через PresetDictionary.register()");
+            }
+        } else if (dictionary.getId() != id) {
+            throw new IOException("Данные сжаты словарем " + String.format("%08x", id)
+                + ", а передан " + dictionary.getIdHex());
+        }
+
+        Inflater inflater = CodecPool.borrowInflater(false);
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[TextStreams.BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n > 0) {
+                    out.write(buffer, 0, n);
+                } else if (inflater.needsDictionary()) {
+                    inflater.setDictionary(dictionary.bytes());
+                } else if (inflater.needsInput()) {
+                    throw new IOException("Поток zlib оборван");
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Поврежденные данные zlib: " + e.getMessage(), e);
+        } finally {
+            CodecPool.releaseInflater(inflater, false);
+        }
+    }
+
+    /**
+     * Идентификатор словаря (DICTID) из заголовка zlib или -1, если это не zlib со словарем
+     */
+    public static int dictionaryId(byte[] zlibData) {
+        if (zlibData.length < 6 || (zlibData[0] & 0x0F) != Deflater.DEFLATED
+                || ((zlibData[0] & 0xFF) << 8 | (zlibData[1] & 0xFF)) % 31 != 0
+                || (zlibData[1] & 0x20) == 0) {
+            return -1;
+        }
+        return (zlibData[2] & 0xFF) << 24 | (zlibData[3] & 0xFF) << 16
+            | (zlibData[4] & 0xFF) << 8 | (zlibData[5] & 0xFF);
+    }
+}
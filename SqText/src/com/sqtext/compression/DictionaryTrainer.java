@@ -0,0 +1,273 @@
+package com.sqtext.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Обучение предустановленного словаря на каталоге с перепиской (алгоритм в духе FastCover из zstd).
+ * Корпус делится на эпохи; в каждой эпохе выбирается отрезок, в котором больше всего
+ * подстрок (d-грамм), встречающихся во многих файлах. Подстроки выбранного отрезка больше
+ * не учитываются, поэтому следующие отрезки добавляют новое. Первые выбранные отрезки
+ * кладутся в конец словаря: deflate дешевле кодирует близкие расстояния
+ */
+public class DictionaryTrainer {
+
+    /** Длина выбираемого отрезка: на переписке из репозитория 1 КБ лучше и 256 байт, и 4 КБ */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+    /** Длина d-граммы: 8 байт - это 4-8 символов текста в UTF-8 */
+    private static final int DMER = 8;
+    private static final int FREQ_LOG = 20;
+    /** Большие файлы считаются набором "сообщений" такой длины */
+    private static final int DOCUMENT_SIZE = 4096;
+    private static final long MAX_CORPUS = 64L * 1024 * 1024;
+    private static final long MAX_SAMPLE = 16L * 1024 * 1024;
+
+    /**
+     * Обучает словарь максимального размера на всех текстовых файлах каталога (рекурсивно)
+     */
+    public static PresetDictionary train(Path corpusDir) throws IOException {
+        return train(collectSamples(corpusDir), PresetDictionary.MAX_SIZE, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param samples образцы сообщений (каждый файл - отдельный образец)
+     * @param dictionarySize размер словаря, не больше PresetDictionary.MAX_SIZE
+     * @param segmentSize длина отрезка, который переносится в словарь целиком
+     */
+    public static PresetDictionary train(List<byte[]> samples, int dictionarySize, int segmentSize)
+            throws IOException {
+        if (dictionarySize <= 0 || dictionarySize > PresetDictionary.MAX_SIZE) {
+            throw new IllegalArgumentException("Размер словаря должен быть от 1 до " + PresetDictionary.MAX_SIZE);
+        }
+        if (segmentSize < DMER) {
+            throw new IllegalArgumentException("Отрезок короче " + DMER + " байт");
+        }
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        List<Integer> ends = new ArrayList<>();
+        for (byte[] sample : samples) {
+            if (joined.size() + (long) sample.length > MAX_CORPUS) {
+                break;
+            }
+            joined.write(sample, 0, sample.length);
+            ends.add(joined.size());
+        }
+        byte[] corpus = joined.toByteArray();
+        if (corpus.length < DMER) {
+            throw new IOException("Корпус для обучения словаря слишком мал");
+        }
+        int[] hashes = dmerHashes(corpus, ends);
+        int[] freqs = documentFrequencies(hashes, ends);
+
+        // Эпохи: на каждую приходится хотя бы 10 отрезков, иначе выбор случаен
+        int epochs = Math.max(1, dictionarySize / segmentSize / 2);
+        int epochSize = corpus.length / epochs;
+        if (epochSize < 10 * segmentSize) {
+            epochs = Math.max(1, corpus.length / (10 * segmentSize));
+            epochSize = corpus.length / epochs;
+        }
+
+        byte[] dictionary = new byte[dictionarySize];
+        int tail = dictionarySize;
+        int[] windowCounts = new int[1 << FREQ_LOG];
+        int idleEpochs = 0;
+        for (int epoch = 0; tail > 0 && idleEpochs < epochs; epoch = (epoch + 1) % epochs) {
+            int begin = epoch * epochSize;
+            int end = epoch == epochs - 1 ? corpus.length : begin + epochSize;
+            long segment = bestSegment(hashes, freqs, windowCounts, begin, end, segmentSize);
+            if (segment < 0) {
+                idleEpochs++;
+                continue;
+            }
+            idleEpochs = 0;
+            int from = (int) (segment >>> 32);
+            int to = (int) segment;
+            for (int pos = from; pos + DMER <= to; pos++) {
+                if (hashes[pos] >= 0) {
+                    freqs[hashes[pos]] = 0;
+                }
+            }
+            int length = Math.min(to - from, tail);
+            tail -= length;
+            System.arraycopy(corpus, to - length, dictionary, tail, length);
+        }
+        if (tail == dictionarySize) {
+            throw new IOException("В корпусе нет повторяющихся фрагментов - словарь не нужен");
+        }
+        return PresetDictionary.of(Arrays.copyOfRange(dictionary, tail, dictionarySize));
+    }
+
+    /**
+     * Текстовые файлы каталога (файлы с нулевыми байтами считаются двоичными и пропускаются)
+     */
+    public static List<byte[]> collectSamples(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        List<byte[]> samples = new ArrayList<>();
+        for (Path file : files) {
+            if (Files.size(file) == 0 || Files.size(file) > MAX_SAMPLE) {
+                continue;
+            }
+            byte[] data = Files.readAllBytes(file);
+            if (!isBinary(data)) {
+                samples.add(data);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Обучение из командной строки:
+     * DictionaryTrainer &lt;каталог&gt; [&lt;каталог&gt;...] &lt;файл словаря&gt; [размер]
+     */
+    public static void main(String[] args) throws IOException {
+        int size = PresetDictionary.MAX_SIZE;
+        int count = args.length;
+        if (count >= 3 && args[count - 1].matches("\\d+")) {
+            size = Integer.parseInt(args[--count]);
+        }
+        if (count < 2) {
+            System.err.println("Использование: DictionaryTrainer <каталог>... <файл словаря> [размер]");
+            System.exit(2);
+        }
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < count - 1; i++) {
+            samples.addAll(collectSamples(Paths.get(args[i])));
+        }
+        PresetDictionary dictionary = train(samples, size, DEFAULT_SEGMENT_SIZE);
+        dictionary.save(Paths.get(args[count - 1]));
+
+        long plain = 0;
+        long withDictionary = 0;
+        for (byte[] sample : samples) {
+            plain += GZipCompressor.compressToBytes(new String(sample, StandardCharsets.UTF_8)).length;
+            withDictionary += DictionaryCompressor.compressToBytes(sample, dictionary).length;
+        }
+        System.out.println("Словарь " + dictionary.getIdHex() + ": " + dictionary.size() + " байт, "
+            + samples.size() + " образцов");
+        System.out.println("GZIP: " + plain + " байт, со словарем: " + withDictionary + " байт");
+    }
+
+    private static boolean isBinary(byte[] data) {
+        int limit = Math.min(data.length, 8192);
+        for (int i = 0; i < limit; i++) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Хеш d-граммы в каждой позиции; -1, если d-грамма выходит за конец образца
+     */
+    private static int[] dmerHashes(byte[] corpus, List<Integer> ends) {
+        int[] hashes = new int[corpus.length];
+        int start = 0;
+        for (int end : ends) {
+            for (int pos = start; pos < end; pos++) {
+                if (pos + DMER > end) {
+                    hashes[pos] = -1;
+                    continue;
+                }
+                long v = 0;
+                for (int i = 0; i < DMER; i++) {
+                    v = v << 8 | (corpus[pos + i] & 0xFF);
+                }
+                hashes[pos] = (int) ((v * 0x9E3779B97F4A7C15L) >>> (64 - FREQ_LOG));
+            }
+            start = end;
+        }
+        return hashes;
+    }
+
+    /**
+     * В скольких документах встречается каждая d-грамма: частые внутри одного сообщения
+     * повторы (вставленный лог, таблица) не должны вытеснять общую лексику переписки.
+     * D-граммы из единственного документа словарю бесполезны и получают частоту 0
+     */
+    private static int[] documentFrequencies(int[] hashes, List<Integer> ends) {
+        int[] freqs = new int[1 << FREQ_LOG];
+        int[] lastDocument = new int[1 << FREQ_LOG];
+        int start = 0;
+        int document = 0;
+        for (int end : ends) {
+            for (int pos = start; pos < end; pos++) {
+                if ((pos - start) % DOCUMENT_SIZE == 0) {
+                    document++;
+                }
+                int h = hashes[pos];
+                if (h >= 0 && lastDocument[h] != document) {
+                    lastDocument[h] = document;
+                    freqs[h]++;
+                }
+            }
+            start = end;
+        }
+        for (int h = 0; h < freqs.length; h++) {
+            if (freqs[h] < 2) {
+                freqs[h] = 0;
+            }
+        }
+        return freqs;
+    }
+
+    /**
+     * Лучший отрезок длины segmentSize в [begin, end): сумма частот различных d-грамм.
+     * Края без полезных d-грамм обрезаются.
+     * @return (начало << 32) | конец или -1, если полезного отрезка нет
+     */
+    private static long bestSegment(int[] hashes, int[] freqs, int[] windowCounts,
+                                    int begin, int end, int segmentSize) {
+        long bestScore = 0;
+        int bestFrom = 0;
+        int bestTo = 0;
+        long score = 0;
+        int windowStart = begin;
+        for (int pos = begin; pos + DMER <= end; pos++) {
+            int h = hashes[pos];
+            if (h >= 0 && windowCounts[h]++ == 0) {
+                score += freqs[h];
+            }
+            while (pos + DMER - windowStart > segmentSize) {
+                int old = hashes[windowStart++];
+                if (old >= 0 && --windowCounts[old] == 0) {
+                    score -= freqs[old];
+                }
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestFrom = windowStart;
+                bestTo = pos + DMER;
+            }
+        }
+        // Окно после прохода сбрасываем точечно, а не всей таблицей
+        for (int pos = windowStart; pos + DMER <= end; pos++) {
+            if (hashes[pos] >= 0) {
+                windowCounts[hashes[pos]] = 0;
+            }
+        }
+        if (bestScore == 0) {
+            return -1;
+        }
+        while (bestFrom < bestTo - DMER && (hashes[bestFrom] < 0 || freqs[hashes[bestFrom]] == 0)) {
+            bestFrom++;
+        }
+        int last = bestTo - DMER;
+        while (last > bestFrom && (hashes[last] < 0 || freqs[hashes[last]] == 0)) {
+            last--;
+        }
+        return (long) bestFrom << 32 | (last + DMER);
+    }
+}
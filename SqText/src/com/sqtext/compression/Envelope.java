@@ -0,0 +1,523 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+
+/**
+ * Конверт (JSON) всех форматов SqText: chat_v1, sqz 1.0, sqz-smart, sqz-dedup, sqz-delta, sqz-java, sqz-words и ultra-compact v1/v2.
+ * Разбор - один проход по тексту: служебные поля складываются в таблицу (вложенные
+ * объекты разворачиваются), а поле данных запоминается границами в исходном тексте
+ * и отдается декодеру как CharSequence без копирования
+ */
+public final class Envelope {
+
+    public enum Format {
+        CHAT_V1("чат-формат"),
+        SQZ("JSON формат нейросети"),
+        SQZ_SMART("Smart формат"),
+        SQZ_DEDUP("Дедупликация фрагментов"),
+        SQZ_DELTA("Дельта к прежней версии"),
+        SQZ_JAVA("Java-исходник по лексемам"),
+        SQZ_WORDS("Замена слов кодами"),
+        ULTRA_COMPACT_V2("Ultra-Compact формат"),
+        ULTRA_COMPACT_V1("Ultra-Compact формат v1");
+
+        private final String title;
+
+        Format(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() { return title; }
+    }
+
+    private final CharSequence source;
+    private final Map<String, String> fields = new HashMap<>();
+    private int pos;
+    private String dataKey;
+    private int dataStart = -1;
+    private int dataEnd;
+    private boolean dataEscaped;
+    private Format format;
+
+    private Envelope(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * Разбирает конверт; IOException, если это не JSON или формат не распознан
+     */
+    public static Envelope parse(CharSequence text) throws IOException {
+        Envelope envelope = new Envelope(text);
+        envelope.skipSpacesAndComments();
+        if (envelope.pos >= text.length() || text.charAt(envelope.pos) != '{') {
+            throw new IOException("Не найден JSON");
+        }
+        envelope.parseObject();
+        envelope.format = envelope.detectFormat();
+        if (envelope.format == null) {
+            throw new IOException("Неизвестный формат JSON: нет полей SqText");
+        }
+        return envelope;
+    }
+
+    /**
+     * Разбирает конверт или возвращает null, если текст - не конверт SqText
+     */
+    public static Envelope tryParse(CharSequence text) {
+        try {
+            return parse(text);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Распаковывает данные конверта его же форматом
+     */
+    public String decode() throws IOException {
+        switch (format) {
+            case CHAT_V1:
+                return ChatCompressor.decompress(this);
+            case SQZ:
+                return NeuroCompressor.decompress(this);
+            case SQZ_SMART:
+                return AdvancedCompressor.decompressSmart(this);
+            case SQZ_DEDUP:
+                return DedupCompressor.decompress(this);
+            case SQZ_DELTA:
+                return DeltaCompressor.decompress(this);
+            case SQZ_JAVA:
+                return JavaCompressor.decompress(this);
+            case SQZ_WORDS:
+                return WordCompressor.decompress(this);
+            default:
+                return AdvancedCompressor.decompressUltraCompact(this);
+        }
+    }
+
+    public Format getFormat() { return format; }
+
+    /**
+     * Значение служебного поля (строка без кавычек или литерал как есть) или null
+     */
+    public String get(String key) {
+        return fields.get(key);
+    }
+
+    /**
+     * Целочисленное поле или defaultValue, если поля нет
+     */
+    public int getInt(String key, int defaultValue) throws IOException {
+        String value = fields.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Поле '" + key + "' не число: " + value);
+        }
+    }
+
+    /**
+     * Поле данных ("data" или "d"): окно в исходный текст; копия - только если внутри есть экранирование
+     */
+    public CharSequence getData() throws IOException {
+        if (dataStart == -1) {
+            throw new IOException("Не найден 'data' в JSON");
+        }
+        if (dataEscaped) {
+            return unescape(dataStart, dataEnd);
+        }
+        return CharBuffer.wrap(source, dataStart, dataEnd);
+    }
+
+    /**
+     * Данные конверта кодека: раскодирование по полю "encoding" и распаковка по "algorithm"
+     */
+    byte[] decodeData() throws IOException {
+        TextEncoding encoding = TextEncoding.forName(get("encoding"));
+        Algorithm algorithm = Algorithm.forName(get("algorithm"));
+        return AdvancedCompressor.decompressBytes(encoding.decode(getData()), algorithm);
+    }
+
+    /**
+     * Сверяет XXH64 распакованного результата с полем "hash" (если оно есть)
+     */
+    void verifyHash(byte[] data, int length) throws IOException {
+        String expected = get("hash");
+        if (expected != null && !expected.equals(hash(data, length))) {
+            throw new IOException("Контрольная сумма не совпала: данные " + get("format") + " повреждены");
+        }
+    }
+
+    void verifyHash(String text) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        verifyHash(utf8, utf8.length);
+    }
+
+    /** Поле "hash": XXH64 первых length байт, 16 шестнадцатеричных цифр */
+    static String hash(byte[] data, int length) {
+        return String.format("%016x", XxHash64.hash(data, 0, length, 0));
+    }
+
+    static boolean startsWith(CharSequence text, String prefix) {
+        if (text.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Format detectFormat() {
+        if ("chat_v1".equals(fields.get("sqtext_format"))) {
+            return Format.CHAT_V1;
+        }
+        String name = fields.get("format");
+        if ("sqz".equals(name)) {
+            return Format.SQZ;
+        }
+        if ("sqz-smart".equals(name)) {
+            return Format.SQZ_SMART;
+        }
+        if (DedupCompressor.FORMAT.equals(name)) {
+            return Format.SQZ_DEDUP;
+        }
+        if (DeltaCompressor.FORMAT.equals(name)) {
+            return Format.SQZ_DELTA;
+        }
+        if (JavaCompressor.FORMAT.equals(name)) {
+            return Format.SQZ_JAVA;
+        }
+        if (WordCompressor.FORMAT.equals(name)) {
+            return Format.SQZ_WORDS;
+        }
+        if ("d".equals(dataKey)) {
+            return fields.containsKey("a") ? Format.ULTRA_COMPACT_V2 : Format.ULTRA_COMPACT_V1;
+        }
+        return null;
+    }
+
+    // ------------------------------------------------------------------ разбор
+
+    private void parseObject() throws IOException {
+        pos++;
+        skipSpaces();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipSpaces();
+            if (peek() != '"') {
+                throw error("ожидалось имя поля");
+            }
+            String key = readString();
+            skipSpaces();
+            if (peek() != ':') {
+                throw error("ожидалось ':'");
+            }
+            pos++;
+            skipSpaces();
+            parseValue(key);
+            skipSpaces();
+            char c = peek();
+            pos++;
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw error("ожидалось ',' или '}'");
+            }
+        }
+    }
+
+    private void parseValue(String key) throws IOException {
+        char c = peek();
+        if (c == '{') {
+            parseObject();
+        } else if (c == '[') {
+            pos++;
+            skipSpaces();
+            if (peek() == ']') {
+                pos++;
+                return;
+            }
+            while (true) {
+                skipSpaces();
+                parseValue(null);
+                skipSpaces();
+                char next = peek();
+                pos++;
+                if (next == ']') {
+                    return;
+                }
+                if (next != ',') {
+                    throw error("ожидалось ',' или ']'");
+                }
+            }
+        } else if (c == '"') {
+            if (dataStart == -1 && ("data".equals(key) || "d".equals(key))) {
+                // Данные не копируем - только границы
+                int start = pos + 1;
+                dataEscaped = skipString();
+                dataKey = key;
+                dataStart = start;
+                dataEnd = pos - 1;
+            } else if (key != null) {
+                fields.put(key, readString());
+            } else {
+                skipString();
+            }
+        } else {
+            int start = pos;
+            while (pos < source.length() && ",}] \t\r\n".indexOf(source.charAt(pos)) == -1) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("ожидалось значение");
+            }
+            if (key != null) {
+                fields.put(key, source.subSequence(start, pos).toString());
+            }
+        }
+    }
+
+    /**
+     * Пропускает строку, pos - за закрывающей кавычкой
+     * @return есть ли внутри экранирование
+     */
+    private boolean skipString() throws IOException {
+        boolean escaped = false;
+        int i = pos + 1;
+        int length = source.length();
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '"') {
+                pos = i + 1;
+                return escaped;
+            }
+            if (c == '\\') {
+                escaped = true;
+                i++;
+            }
+            i++;
+        }
+        throw error("строка не закрыта");
+    }
+
+    private String readString() throws IOException {
+        int start = pos + 1;
+        boolean escaped = skipString();
+        return escaped ? unescape(start, pos - 1).toString() : source.subSequence(start, pos - 1).toString();
+    }
+
+    private StringBuilder unescape(int from, int to) throws IOException {
+        StringBuilder out = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            c = source.charAt(++i);
+            switch (c) {
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'u':
+                    if (i + 4 >= to) {
+                        throw new IOException("Оборванная последовательность \\u в JSON");
+                    }
+                    try {
+                        out.append((char) Integer.parseInt(source.subSequence(i + 1, i + 5).toString(), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Некорректная последовательность \\u в JSON");
+                    }
+                    i += 4;
+                    break;
+                default: out.append(c);
+            }
+        }
+        return out;
+    }
+
+    private char peek() throws IOException {
+        if (pos >= source.length()) {
+            throw error("неожиданный конец");
+        }
+        return source.charAt(pos);
+    }
+
+    private void skipSpaces() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /** Перед JSON могут идти комментарии-инструкции: // ... */
+    private void skipSpacesAndComments() {
+        while (true) {
+            skipSpaces();
+            if (pos + 1 < source.length() && source.charAt(pos) == '/' && source.charAt(pos + 1) == '/') {
+                while (pos < source.length() && source.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("Некорректный JSON (позиция " + pos + "): " + message);
+    }
+
+    // ------------------------------------------------------------------ запись
+
+    /**
+     * Запись конверта прямо в один StringBuilder: данные не копируются в промежуточные
+     * строки и экранируются только при необходимости
+     */
+    public static final class Writer {
+        private final StringBuilder out;
+        private final boolean pretty;
+        private int depth = 1;
+        private boolean empty = true;
+
+        /**
+         * @param header текст перед JSON (комментарии-инструкции), может быть пустым
+         * @param capacity ожидаемый размер, обычно длина данных плюс запас на поля
+         * @param pretty с отступами в две пробела или одной строкой без пробелов
+         */
+        public Writer(String header, int capacity, boolean pretty) {
+            this.out = new StringBuilder(header.length() + capacity);
+            this.pretty = pretty;
+            out.append(header).append('{');
+        }
+
+        /**
+         * Конверт кодека: поля format, algorithm, level и encoding (если не Base64);
+         * дальше форматы дописывают свои поля, hash и data
+         * @param dataLength длина закодированных данных
+         */
+        static Writer forCodec(String format, Algorithm algorithm, int level, TextEncoding encoding, int dataLength) {
+            Writer json = new Writer("", dataLength + 256, true)
+                .field("format", format)
+                .field("algorithm", algorithm.getName())
+                .field("level", level);
+            if (encoding != TextEncoding.BASE64) {
+                json.field("encoding", encoding.getName());
+            }
+            return json;
+        }
+
+        public Writer field(String key, CharSequence value) {
+            key(key);
+            out.append('"');
+            appendEscaped(value);
+            out.append('"');
+            return this;
+        }
+
+        public Writer field(String key, long value) {
+            key(key);
+            out.append(value);
+            return this;
+        }
+
+        public Writer field(String key, boolean value) {
+            key(key);
+            out.append(value);
+            return this;
+        }
+
+        /**
+         * Дробное число с заданным числом знаков; всегда с точкой, независимо от локали
+         */
+        public Writer field(String key, double value, int decimals) {
+            key(key);
+            out.append(String.format(Locale.ROOT, "%." + decimals + "f", value));
+            return this;
+        }
+
+        public Writer beginObject(String key) {
+            key(key);
+            out.append('{');
+            depth++;
+            empty = true;
+            return this;
+        }
+
+        public Writer endObject() {
+            depth--;
+            newLine();
+            out.append('}');
+            empty = false;
+            return this;
+        }
+
+        /**
+         * Закрывает JSON и возвращает весь текст
+         */
+        public String finish() {
+            while (depth > 0) {
+                endObject();
+            }
+            return out.toString();
+        }
+
+        private void key(String key) {
+            if (!empty) {
+                out.append(',');
+            }
+            newLine();
+            out.append('"').append(key).append(pretty ? "\": " : "\":");
+            empty = false;
+        }
+
+        private void newLine() {
+            if (pretty) {
+                out.append('\n');
+                for (int i = 0; i < depth; i++) {
+                    out.append("  ");
+                }
+            }
+        }
+
+        private void appendEscaped(CharSequence value) {
+            int length = value.length();
+            int plain = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    continue;
+                }
+                out.append(value, plain, i);
+                plain = i + 1;
+                switch (c) {
+                    case '"': out.append("\\\""); break;
+                    case '\\': out.append("\\\\"); break;
+                    case '\n': out.append("\\n"); break;
+                    case '\r': out.append("\\r"); break;
+                    case '\t': out.append("\\t"); break;
+                    default: out.append(String.format("\\u%04x", (int) c));
+                }
+            }
+            out.append(value, plain, length);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.sqtext.compression;
+
+/**
+ * Нарезка по содержимому (FastCDC): граница ставится там, где gear-хеш последних
+ * байт совпадает с маской, поэтому вставка в начало текста сдвигает только соседние
+ * фрагменты, а остальные режутся так же, как раньше. До среднего размера маска
+ * строже, после - мягче (нормализация): размеры держатся около AVG_SIZE
+ */
+final class FastCdc {
+    static final int MIN_SIZE = 1024;
+    static final int AVG_SIZE = 4096;
+    static final int MAX_SIZE = 32768;
+
+    /** 14 старших бит до AVG_SIZE, 10 после (log2(AVG_SIZE) = 12, нормализация 2) */
+    private static final long MASK_STRICT = 0xFFFC000000000000L;
+    private static final long MASK_LOOSE = 0xFFC0000000000000L;
+
+    /** Таблица gear: фиксированная, чтобы нарезка не менялась между запусками */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long state = 0x5351_5465_7874_4344L;
+        for (int i = 0; i < GEAR.length; i++) {
+            // splitmix64
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private FastCdc() {
+    }
+
+    /**
+     * Длина фрагмента, начинающегося с offset (не больше end - offset)
+     */
+    static int cut(byte[] data, int offset, int end) {
+        int length = end - offset;
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int limit = offset + Math.min(length, MAX_SIZE);
+        int normal = offset + Math.min(length, AVG_SIZE);
+        long hash = 0;
+        int i = offset + MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & MASK_STRICT) == 0) {
+                return i + 1 - offset;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & MASK_LOOSE) == 0) {
+                return i + 1 - offset;
+            }
+        }
+        return limit - offset;
+    }
+}
\ No newline at end of file
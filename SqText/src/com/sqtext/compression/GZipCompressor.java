@@ -2,11 +2,20 @@ package com.sqtext.compression;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 
 public class GZipCompressor {
     
@@ -17,14 +26,42 @@ public class GZipCompressor {
         if (text == null || text.isEmpty()) {
             return "";
         }
-        
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (GZIPOutputStream gzipOut = new GZIPOutputStream(baos)) {
-            gzipOut.write(text.getBytes("UTF-8"));
+        if (ParallelGzipCompressor.worthwhile(text.length())) {
+            return Base64.getEncoder().encodeToString(compressToBytes(text));
         }
         
-        byte[] compressedBytes = baos.toByteArray();
-        return Base64.getEncoder().encodeToString(compressedBytes);
+        StringWriter out = new StringWriter(text.length() / 2 + 16);
+        compress(new StringReader(text), out);
+        return out.toString();
+    }
+    
+    /**
+     * Потоково сжимает байты: GZIP, затем Base64 по мере поступления данных.
+     * Память не зависит от размера входа; потоки вызывающего не закрываются
+     */
+    public static void compress(InputStream in, OutputStream out) throws IOException {
+        compress(in, out, Deflater.DEFAULT_COMPRESSION);
+    }
+    
+    /**
+     * То же с заданным уровнем (1..9, -1 - по умолчанию)
+     */
+    public static void compress(InputStream in, OutputStream out, int level) throws IOException {
+        OutputStream base64 = Base64.getEncoder().wrap(TextStreams.nonClosing(out));
+        try (OutputStream gzipOut = new PooledGzipOutputStream(base64, level, TextStreams.BUFFER_SIZE)) {
+            TextStreams.copy(in, gzipOut);
+        }
+    }
+    
+    /**
+     * Потоково сжимает текст (UTF-8) в Base64-текст
+     */
+    public static void compress(Reader in, Writer out) throws IOException {
+        OutputStream base64 = Base64.getEncoder().wrap(TextStreams.asciiOutput(out));
+        try (Writer utf8 = new OutputStreamWriter(
+                new PooledGzipOutputStream(base64), StandardCharsets.UTF_8)) {
+            TextStreams.copy(in, utf8);
+        }
     }
     
     /**
@@ -39,7 +76,6 @@ public class GZipCompressor {
     for (int i = 0; i < depth; i++) {
         // Каждый следующий этап сжимает результат предыдущего
         result = compress(result);
-        System.out.println("Этап " + (i+1) + ": " + result.length() + " символов");
     }
     return result;
 }
@@ -54,30 +90,59 @@ public class GZipCompressor {
             return "";
         }
         try {
-            // Очищаем текст от возможных лишних символов
-            String cleanText = compressedText.trim()
-                .replaceAll("\\s+", "")  // удаляем все пробелы и переносы
-                .replaceAll("[^A-Za-z0-9+/=]", ""); // удаляем не-Base64 символы
-            
-            byte[] gzipData = Base64.getDecoder().decode(cleanText);
-        byte[] compressedBytes = Base64.getDecoder().decode(compressedText);
-        ByteArrayInputStream bais = new ByteArrayInputStream(compressedBytes);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
-        try (GZIPInputStream gzipIn = new GZIPInputStream(bais)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = gzipIn.read(buffer)) != -1) {
-                baos.write(buffer, 0, len);
+            if (ParallelGzipCompressor.worthwhile(compressedText.length())) {
+                // Большие данные: члены с индексом распаковываются параллельно
+                return new String(decompressBytes(Base64.getMimeDecoder().decode(compressedText)),
+                    StandardCharsets.UTF_8);
             }
-        }
-        
-        return baos.toString("UTF-8");
+            StringWriter out = new StringWriter(compressedText.length() * 2);
+            decompress(new StringReader(compressedText), out);
+            return out.toString();
         } catch (IllegalArgumentException e) {
             throw new IOException("Некорректные Base64 данные: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Потоково распаковывает Base64+GZIP в байты.
+     * Пробелы, переносы строк и прочие не-Base64 символы пропускаются
+     */
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        InputStream base64 = Base64.getMimeDecoder().wrap(TextStreams.nonClosing(in));
+        try (InputStream gzipIn = new PooledGzipInputStream(base64)) {
+            TextStreams.copy(gzipIn, out);
+        }
+        out.flush();
+    }
+    
+    /**
+     * Потоково распаковывает Base64+GZIP текст в текст (UTF-8)
+     */
+    public static void decompress(Reader in, Writer out) throws IOException {
+        InputStream base64 = Base64.getMimeDecoder().wrap(TextStreams.asciiInput(in));
+        try (Reader utf8 = new InputStreamReader(
+                new PooledGzipInputStream(base64), StandardCharsets.UTF_8)) {
+            TextStreams.copy(utf8, out);
+        }
+        out.flush();
+    }
+    
+    /**
+     * Распаковывает GZIP-байты (без Base64)
+     */
+    public static byte[] decompressBytes(byte[] data) throws IOException {
+        if (ParallelGzipCompressor.worthwhile(data.length)) {
+            try (ParallelGzipCompressor parallel = new ParallelGzipCompressor()) {
+                return parallel.decompressToBytes(data);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+        try (InputStream gzipIn = new PooledGzipInputStream(new ByteArrayInputStream(data))) {
+            TextStreams.copy(gzipIn, out);
+        }
+        return out.toByteArray();
+    }
+    
     /**
      * Рекурсивно распаковывает текст, сжатый несколько раз
      */
@@ -106,7 +171,7 @@ public class GZipCompressor {
             byte[] bytes = Base64.getDecoder().decode(text);
             
             // Пытаемся распаковать как GZIP
-            try (GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            try (InputStream gzipIn = new PooledGzipInputStream(new ByteArrayInputStream(bytes))) {
                 byte[] buffer = new byte[1];
                 gzipIn.read(buffer);
                 return true;
@@ -118,11 +183,109 @@ public class GZipCompressor {
             return false;
         }
     }
+    
+    /** Сколько символов с начала и с конца текста смотрит looksCompressed */
+    public static final int DETECT_WINDOW = 4096;
+    
+    /**
+     * Быстрая версия isCompressed для автоопределения: смотрит только начало и конец
+     * текста (по DETECT_WINDOW символов), поэтому время не зависит от длины текста
+     */
+    public static boolean looksCompressed(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int length = text.length();
+        if (length <= 2 * DETECT_WINDOW) {
+            return looksCompressed(text, "", length);
+        }
+        return looksCompressed(text.subSequence(0, DETECT_WINDOW),
+            text.subSequence(length - DETECT_WINDOW, length), length);
+    }
+    
+    /**
+     * Проверка по вырезанным кускам текста длиной length: head - его начало, tail - конец
+     * (пустой, если head - весь текст). Пробелы по краям не учитываются, остальное должно
+     * быть Base64 длиной кратной 4, а начало - заголовком GZIP, за которым читается deflate
+     */
+    public static boolean looksCompressed(CharSequence head, CharSequence tail, long length) {
+        int start = 0;
+        while (start < head.length() && Character.isWhitespace(head.charAt(start))) {
+            start++;
+        }
+        CharSequence last = tail.length() == 0 ? head : tail;
+        int endTrim = 0;
+        while (endTrim < last.length() && Character.isWhitespace(last.charAt(last.length() - 1 - endTrim))) {
+            endTrim++;
+        }
+        long end = length - endTrim;
+        if (start == head.length() || end - start < 4 || (end - start) % 4 != 0) {
+            return false;
+        }
+        int headEnd = (int) Math.min(head.length(), end);
+        for (int i = start; i < headEnd; i++) {
+            if (!isBase64(head.charAt(i), i, end)) {
+                return false;
+            }
+        }
+        long tailStart = length - tail.length();
+        for (int j = 0; j < tail.length() - endTrim; j++) {
+            if (tailStart + j >= start && !isBase64(tail.charAt(j), tailStart + j, end)) {
+                return false;
+            }
+        }
+        
+        int chunk = (headEnd - start) & ~3;
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(head.subSequence(start, start + chunk).toString());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        try (InputStream gzipIn = new PooledGzipInputStream(new ByteArrayInputStream(bytes))) {
+            gzipIn.read();
+            return true;
+        } catch (EOFException e) {
+            // кусок кончился раньше первого байта данных: заголовок верный, остальное не видно
+            return start + chunk < end;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    private static boolean isBase64(char c, long position, long end) {
+        if (c == '=') {
+            return position >= end - 2;
+        }
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/';
+    }
     public static byte[] compressToBytes(String text) throws IOException {
+        if (ParallelGzipCompressor.worthwhile(text.length())) {
+            return compressToBytes(text.getBytes(StandardCharsets.UTF_8), Deflater.DEFAULT_COMPRESSION);
+        }
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+        try (OutputStream gzip = new PooledGzipOutputStream(baos)) {
             gzip.write(text.getBytes(StandardCharsets.UTF_8));
         }
         return baos.toByteArray();
     }
+    
+    /**
+     * GZIP байтов с заданным уровнем (1..9). Большой вход на многопроцессорной машине
+     * сжимается параллельно (ParallelGzipCompressor): результат - склеенные GZIP-члены
+     */
+    public static byte[] compressToBytes(byte[] data, int level) throws IOException {
+        if (ParallelGzipCompressor.worthwhile(data.length)) {
+            try (ParallelGzipCompressor parallel = new ParallelGzipCompressor(
+                    ParallelGzipCompressor.DEFAULT_BLOCK_SIZE, ForkJoinPool.getCommonPoolParallelism(),
+                    level, ParallelGzipCompressor.Mode.MEMBERS)) {
+                return parallel.compressToBytes(data);
+            }
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (OutputStream gzip = new PooledGzipOutputStream(baos, level, TextStreams.BUFFER_SIZE)) {
+            gzip.write(data);
+        }
+        return baos.toByteArray();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.sqtext.compression;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Поиск совпадений LZ77 по хеш-цепочкам (хеш от 4 байт).
+ * Общий для кодеров Zstandard и Brotli: они различаются только тем, как кодируют найденное
+ */
+final class HashChainMatcher {
+
+    static final int MIN_MATCH = 4;
+
+    private static final VarHandle INT_LE =
+        MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_LE =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] src;
+    private final int start;
+    private final int end;
+    private final int windowSize;
+    private final int[] head;
+    private final int[] chain;
+    private final int hashShift;
+    private int nextInsert;
+
+    /** Расстояние последнего найденного совпадения */
+    int matchDistance;
+
+    /**
+     * Размеры таблиц урезаются под длину данных, чтобы короткие тексты не платили за большие уровни
+     */
+    HashChainMatcher(byte[] src, int start, int end, int windowSize, int hashLog, int chainLog) {
+        int length = Math.max(end - start, 1);
+        int dataLog = 33 - Integer.numberOfLeadingZeros(Math.min(windowSize, length));
+        int headLog = Math.min(hashLog, Math.max(10, dataLog));
+        this.src = src;
+        this.start = start;
+        this.end = end;
+        this.windowSize = windowSize;
+        this.head = new int[1 << headLog];
+        this.chain = new int[Math.min(1 << chainLog, Integer.highestOneBit(length) * 2)];
+        this.hashShift = 32 - headLog;
+        this.nextInsert = start;
+    }
+
+    /**
+     * Добавляет в цепочки все позиции до target (не включая)
+     */
+    void insertUpTo(int target) {
+        int last = Math.min(target, end - 3);
+        int mask = chain.length - 1;
+        while (nextInsert < last) {
+            int h = hash(nextInsert);
+            chain[nextInsert & mask] = head[h];
+            head[h] = nextInsert + 1;
+            nextInsert++;
+        }
+        if (nextInsert < target) {
+            nextInsert = target;
+        }
+    }
+
+    /**
+     * Ищет совпадение длиннее minLength в позиции pos, просматривая не больше depth кандидатов.
+     * @return длина (расстояние - в matchDistance) или 0, если лучше не нашлось
+     */
+    int findLongest(int pos, int maxLength, int minLength, int depth) {
+        insertUpTo(pos);
+        if (pos + MIN_MATCH > end || minLength >= maxLength) {
+            return 0;
+        }
+        int best = minLength;
+        int bestDistance = 0;
+        int mask = chain.length - 1;
+        int lowest = Math.max(start, Math.max(pos - windowSize, pos - chain.length));
+        int candidate = head[hash(pos)] - 1;
+        for (int i = 0; i < depth && candidate >= lowest && best < maxLength; i++) {
+            // Быстрый отсев: кандидат длиннее лучшего обязан совпасть в позиции best
+            if (src[candidate + best] == src[pos + best]) {
+                int len = matchLength(candidate, pos, maxLength);
+                if (len > best) {
+                    best = len;
+                    bestDistance = pos - candidate;
+                }
+            }
+            candidate = chain[candidate & mask] - 1;
+        }
+        if (bestDistance == 0) {
+            return 0;
+        }
+        matchDistance = bestDistance;
+        return best;
+    }
+
+    /**
+     * Длина общего префикса позиций a и b, не больше max
+     */
+    int matchLength(int a, int b, int max) {
+        int len = 0;
+        while (len + 8 <= max && b + len + 8 <= src.length) {
+            long diff = (long) LONG_LE.get(src, a + len) ^ (long) LONG_LE.get(src, b + len);
+            if (diff != 0) {
+                return len + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+            len += 8;
+        }
+        while (len < max && src[a + len] == src[b + len]) {
+            len++;
+        }
+        return len;
+    }
+
+    private int hash(int pos) {
+        int v = (int) INT_LE.get(src, pos);
+        return (v * 0x9E3779B1) >>> hashShift;
+    }
+}
@@ -0,0 +1,51 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+
+/**
+ * Формат sqz-java: исходник Java проходит JavaTransform (лексемы, таблицы имен и
+ * литералов, отступы - отдельными потоками), и потоки жмутся обычным кодеком.
+ * Кодеку достается меньше байт и однородные потоки вместо перемешанного текста.
+ * Как формат для пользователя пока не выведен (ни -f, ни пункта в окне): на исходниках
+ * SqText он выигрывает у GZIP того же текста около 1% и проигрывает на половине файлов,
+ * а сжатие идет в 1,6 раза дольше. Распаковка конвертов sqz-java остается
+ */
+public final class JavaCompressor {
+    static final String FORMAT = "sqz-java";
+
+    private JavaCompressor() {
+    }
+
+    /**
+     * Сжимает GZIP с уровнем по умолчанию
+     */
+    public static String compress(String text, TextEncoding encoding) throws IOException {
+        return compress(text, Algorithm.GZIP, AdvancedCompressor.defaultLevel(Algorithm.GZIP), encoding);
+    }
+
+    public static String compress(String text, Algorithm algorithm, int level, TextEncoding encoding) throws IOException {
+        long startTime = System.currentTimeMillis();
+        JavaTransform transform = JavaTransform.encode(text);
+        byte[] streams = transform.toByteArray();
+        String compressed = encoding.encode(AdvancedCompressor.compressBytes(streams, algorithm, level));
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        return Envelope.Writer.forCodec(FORMAT, algorithm, level, encoding, compressed.length())
+            .field("original", text.length())
+            .field("transformed", streams.length)
+            .field("tokens", transform.getTokens())
+            .field("identifiers", transform.getIdentifiers())
+            .field("hash", Envelope.hash(utf8, utf8.length))
+            .field("time_ms", System.currentTimeMillis() - startTime)
+            .field("data", compressed)
+            .finish();
+    }
+
+    static String decompress(Envelope envelope) throws IOException {
+        String text = JavaTransform.decode(envelope.decodeData());
+        envelope.verifyHash(text);
+        return text;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,624 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Обратимое лексическое преобразование исходников Java перед энтропийным кодеком.
+ * Текст режется на лексемы, и однородные части расходятся по отдельным потокам:
+ * <pre>
+ * kinds       - код лексемы (байт): ключевое слово, знак, пробел, перевод строки...
+ * identifiers - номер имени в таблице документа (varint)
+ * names       - таблица имен по убыванию частоты, UTF-8, каждое с пробелом в конце
+ * literals    - номер строкового или символьного литерала (varint); новый - номер = размер таблицы
+ * strings     - новые литералы целиком, с кавычками (varint длина | UTF-8)
+ * numbers     - числа как написаны
+ * comments    - комментарии целиком
+ * indents     - отступ строки пробелами, разница с отступом прежней непустой строки (zigzag varint)
+ * other       - остальное: серии пробелов и табуляций, одиночный \r, прочие символы
+ * </pre>
+ * Разбор тотальный: любой текст, не только Java, разрезается и собирается обратно
+ * символ в символ - от качества разбора зависит только степень сжатия
+ */
+final class JavaTransform {
+    // Коды лексем; ASCII-знаки (33..126) кодируются самим символом
+    private static final int IDENTIFIER = 0;
+    private static final int LITERAL = 1;
+    private static final int NUMBER = 2;
+    private static final int COMMENT = 3;
+    private static final int NEWLINE = 4;
+    private static final int CRLF = 5;
+    private static final int SPACE = 6;
+    private static final int OTHER = 7;
+    private static final int KEYWORD = 128;
+
+    // Потоки
+    private static final int KINDS = 0;
+    private static final int IDENTIFIERS = 1;
+    private static final int NAMES = 2;
+    private static final int LITERALS = 3;
+    private static final int STRINGS = 4;
+    private static final int NUMBERS = 5;
+    private static final int COMMENTS = 6;
+    private static final int INDENTS = 7;
+    private static final int OTHERS = 8;
+    private static final int STREAMS = 9;
+
+    private static final String[] KEYWORDS = {
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+        "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+        "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+        "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+        "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+        "true", "false", "null", "var", "record", "yield", "sealed", "permits"
+    };
+
+    /** Классы ASCII-символов: начало и продолжение имени */
+    private static final byte[] ASCII = new byte[128];
+    private static final byte NAME_START = 1;
+    private static final byte NAME_PART = 2;
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if (Character.isJavaIdentifierStart(c)) {
+                ASCII[c] |= NAME_START;
+            }
+            if (Character.isJavaIdentifierPart(c)) {
+                ASCII[c] |= NAME_PART;
+            }
+        }
+    }
+
+    private final ByteSink[] streams = new ByteSink[STREAMS];
+    /**
+     * Имена документа (первые - ключевые слова): открытая адресация по String.hashCode,
+     * чтобы искать имя прямо в массиве символов, без строки на каждое вхождение
+     */
+    private int[] slots = new int[1024];
+    private String[] entries = new String[256];
+    private int entryCount;
+    /** Номера имен (без ключевых слов) по порядку вхождений */
+    private int[] identifiers = new int[256];
+    private int identifierCount;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int length;
+    private int tokens;
+    // Отступы: пустая строка (только отступ) не меняет отступ, от которого считается следующий
+    private int indent;
+    private int savedIndent;
+    private boolean emptyLine;
+
+    private JavaTransform(int capacity) {
+        streams[KINDS] = new ByteSink(capacity / 3);
+        for (int i = 1; i < STREAMS; i++) {
+            streams[i] = new ByteSink(capacity / 16);
+        }
+        for (String keyword : KEYWORDS) {
+            add(keyword, keyword.hashCode());
+        }
+    }
+
+    /**
+     * Разрезает текст на потоки
+     */
+    static JavaTransform encode(String text) {
+        JavaTransform transform = new JavaTransform(text.length());
+        transform.lex(text.toCharArray());
+        transform.writeIdentifiers();
+        return transform;
+    }
+
+    /** Потоки подряд: varint длина текста (в char), число потоков и их длины, затем содержимое */
+    byte[] toByteArray() {
+        int total = 0;
+        for (ByteSink stream : streams) {
+            total += stream.size();
+        }
+        ByteSink out = new ByteSink(total + 64);
+        writeVarint(out, length);
+        writeVarint(out, STREAMS);
+        for (ByteSink stream : streams) {
+            writeVarint(out, stream.size());
+        }
+        for (ByteSink stream : streams) {
+            out.write(stream.buffer(), 0, stream.size());
+        }
+        return out.toByteArray();
+    }
+
+    int getTokens() { return tokens; }
+
+    /** Разных имен в таблице документа */
+    int getIdentifiers() { return entryCount - KEYWORDS.length; }
+
+    private void lex(char[] text) {
+        int n = text.length;
+        length = n;
+        int reported = 0;
+        int i = startLine(text, 0);
+        while (i < n) {
+            char c = text[i];
+            int j;
+            if (c < 128 && (ASCII[c] & NAME_START) != 0) {
+                j = nameEnd(text, i);
+                name(text, i, j);
+            } else if (c == ' ' && (i + 1 == n || text[i + 1] != ' ' && text[i + 1] != '\t')) {
+                j = i + 1;
+                token(SPACE);
+            } else if (c == '\n' || (c == '\r' && i + 1 < n && text[i + 1] == '\n')) {
+                token(c == '\n' ? NEWLINE : CRLF);
+                if (emptyLine) {
+                    indent = savedIndent;
+                }
+                j = startLine(text, i + (c == '\n' ? 1 : 2));
+                if (j - reported >= 65536) {
+                    Progress.advance(j - reported);
+                    reported = j;
+                }
+            } else if (c == ' ' || c == '\t' || c == '\f' || c == '\r') {
+                j = i + 1;
+                if (c != '\r') {
+                    while (j < n && (text[j] == ' ' || text[j] == '\t' || text[j] == '\f')) {
+                        j++;
+                    }
+                }
+                token(OTHER);
+                writeText(streams[OTHERS], text, i, j);
+            } else if (c == '/' && i + 1 < n && (text[i + 1] == '/' || text[i + 1] == '*')) {
+                j = text[i + 1] == '/' ? lineEnd(text, i + 2) : blockCommentEnd(text, i + 2);
+                token(COMMENT);
+                writeText(streams[COMMENTS], text, i, j);
+            } else if (c == '"' || c == '\'') {
+                j = c == '"' && startsWith(text, i, "\"\"\"") ? textBlockEnd(text, i + 3) : quotedEnd(text, i + 1, c);
+                token(LITERAL);
+                literal(text, i, j);
+            } else if (isDigit(c) || (c == '.' && i + 1 < n && isDigit(text[i + 1]))) {
+                j = numberEnd(text, i);
+                token(NUMBER);
+                writeText(streams[NUMBERS], text, i, j);
+            } else if (c > ' ' && c < 0x7F) {
+                j = i + 1;
+                token(c);
+            } else if (c >= 128 && Character.isJavaIdentifierStart(Character.codePointAt(text, i))) {
+                j = nameEnd(text, i);
+                name(text, i, j);
+            } else {
+                j = i + Character.charCount(Character.codePointAt(text, i));
+                token(OTHER);
+                writeText(streams[OTHERS], text, i, j);
+            }
+            i = j;
+        }
+        Progress.advance(n - reported);
+    }
+
+    /** Отступ в начале строки; возвращает позицию после него */
+    private int startLine(char[] text, int i) {
+        int j = i;
+        while (j < text.length && text[j] == ' ') {
+            j++;
+        }
+        writeVarint(streams[INDENTS], zigzag(j - i - indent));
+        savedIndent = indent;
+        indent = j - i;
+        emptyLine = true;
+        return j;
+    }
+
+    private void token(int kind) {
+        streams[KINDS].write(kind);
+        if (kind != NEWLINE && kind != CRLF) {
+            emptyLine = false;
+        }
+        tokens++;
+    }
+
+    // ------------------------------------------------------------------ имена
+
+    private static int nameEnd(char[] text, int i) {
+        int n = text.length;
+        int j = i + Character.charCount(Character.codePointAt(text, i));
+        while (j < n) {
+            char c = text[j];
+            if (c < 128) {
+                if ((ASCII[c] & NAME_PART) == 0) {
+                    break;
+                }
+                j++;
+            } else {
+                int codePoint = Character.codePointAt(text, j);
+                if (!Character.isJavaIdentifierPart(codePoint)) {
+                    break;
+                }
+                j += Character.charCount(codePoint);
+            }
+        }
+        return j;
+    }
+
+    /** Имя text[from, to): ключевое слово или номер в таблице документа */
+    private void name(char[] text, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int length = to - from;
+        int mask = slots.length - 1;
+        int slot = slot(hash);
+        int entry;
+        while (true) {
+            entry = slots[slot] - 1;
+            if (entry < 0) {
+                entry = add(new String(text, from, to - from), hash);
+                break;
+            }
+            String name = entries[entry];
+            if (name.length() == length && startsWith(text, from, name)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (entry < KEYWORDS.length) {
+            token(KEYWORD + entry);
+            return;
+        }
+        token(IDENTIFIER);
+        if (identifiers.length == identifierCount) {
+            identifiers = Arrays.copyOf(identifiers, identifierCount * 2);
+        }
+        identifiers[identifierCount++] = entry - KEYWORDS.length;
+    }
+
+    private int add(String name, int hash) {
+        if (entryCount == entries.length) {
+            entries = Arrays.copyOf(entries, entryCount * 2);
+        }
+        if (entryCount * 2 >= slots.length) {
+            slots = new int[slots.length * 2];
+            for (int e = 0; e < entryCount; e++) {
+                place(e, entries[e].hashCode());
+            }
+        }
+        entries[entryCount] = name;
+        place(entryCount, hash);
+        return entryCount++;
+    }
+
+    private void place(int entry, int hash) {
+        int mask = slots.length - 1;
+        int slot = slot(hash);
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+    }
+
+    /** Хеш Фибоначчи: у String.hashCode коротких имен младшие биты похожи, и пробы слипаются */
+    private int slot(int hash) {
+        return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(slots.length));
+    }
+
+    /**
+     * Таблица имен по убыванию частоты (частым - однобайтовые номера), затем номера
+     */
+    private void writeIdentifiers() {
+        int count = entryCount - KEYWORDS.length;
+        int[] uses = new int[count];
+        for (int i = 0; i < identifierCount; i++) {
+            uses[identifiers[i]]++;
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> uses[y] - uses[x]);
+        int[] rank = new int[count];
+        for (int r = 0; r < count; r++) {
+            rank[order[r]] = r;
+            byte[] utf8 = entries[KEYWORDS.length + order[r]].getBytes(StandardCharsets.UTF_8);
+            streams[NAMES].write(utf8, 0, utf8.length);
+            streams[NAMES].write(' ');
+        }
+        for (int i = 0; i < identifierCount; i++) {
+            writeVarint(streams[IDENTIFIERS], rank[identifiers[i]]);
+        }
+    }
+
+    private void literal(char[] text, int from, int to) {
+        String value = new String(text, from, to - from);
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarint(streams[LITERALS], index);
+        } else {
+            writeVarint(streams[LITERALS], strings.size());
+            strings.put(value, strings.size());
+            writeText(streams[STRINGS], text, from, to);
+        }
+    }
+
+    // ------------------------------------------------------------------ границы лексем
+
+    private static int lineEnd(char[] text, int i) {
+        while (i < text.length && text[i] != '\n' && text[i] != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int blockCommentEnd(char[] text, int i) {
+        for (; i + 1 < text.length; i++) {
+            if (text[i] == '*' && text[i + 1] == '/') {
+                return i + 2;
+            }
+        }
+        return text.length;
+    }
+
+    /** Конец литерала в кавычках quote; незакрытый литерал кончается перед переводом строки */
+    private static int quotedEnd(char[] text, int i, char quote) {
+        int n = text.length;
+        while (i < n) {
+            char c = text[i];
+            if (c == '\\' && i + 1 < n && text[i + 1] != '\n' && text[i + 1] != '\r') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static int textBlockEnd(char[] text, int i) {
+        int n = text.length;
+        while (i < n) {
+            if (text[i] == '\\') {
+                i += 2;
+            } else if (startsWith(text, i, "\"\"\"")) {
+                return i + 3;
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static int numberEnd(char[] text, int i) {
+        int n = text.length;
+        boolean hex = startsWith(text, i, "0x") || startsWith(text, i, "0X");
+        int j = i + 1;
+        while (j < n) {
+            char c = text[j];
+            char previous = text[j - 1];
+            if (isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '.') {
+                j++;
+            } else if ((c == '+' || c == '-') && (hex ? previous == 'p' || previous == 'P' : previous == 'e' || previous == 'E')) {
+                j++;
+            } else {
+                break;
+            }
+        }
+        return j;
+    }
+
+    private static boolean startsWith(char[] text, int i, String prefix) {
+        if (i + prefix.length() > text.length) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length(); k++) {
+            if (text[i + k] != prefix.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // ------------------------------------------------------------------ сборка
+
+    /**
+     * Собирает текст из потоков toByteArray()
+     */
+    static String decode(byte[] data) throws IOException {
+        Input header = new Input(data, 0, data.length);
+        long length = header.varint();
+        int count = (int) header.varint();
+        if (count != STREAMS || length > Integer.MAX_VALUE) {
+            throw new IOException("Неверный заголовок потоков Java-преобразования");
+        }
+        Input[] in = new Input[STREAMS];
+        long[] sizes = new long[STREAMS];
+        for (int s = 0; s < STREAMS; s++) {
+            sizes[s] = header.varint();
+        }
+        int pos = header.pos;
+        for (int s = 0; s < STREAMS; s++) {
+            if (sizes[s] > data.length - pos) {
+                throw new IOException("Потоки Java-преобразования обрезаны");
+            }
+            in[s] = new Input(data, pos, pos + (int) sizes[s]);
+            pos += (int) sizes[s];
+        }
+
+        List<String> names = new ArrayList<>();
+        Input table = in[NAMES];
+        for (int start = table.pos; table.pos < table.end; table.pos++) {
+            if (table.data[table.pos] == ' ') {
+                names.add(new String(table.data, start, table.pos - start, StandardCharsets.UTF_8));
+                start = table.pos + 1;
+            }
+        }
+        List<String> strings = new ArrayList<>();
+
+        StringBuilder out = new StringBuilder((int) length);
+        int indent = unzigzag(in[INDENTS].varint());
+        int savedIndent = 0;
+        boolean emptyLine = true;
+        int reported = 0;
+        appendSpaces(out, indent);
+        Input kinds = in[KINDS];
+        while (kinds.pos < kinds.end) {
+            int kind = kinds.data[kinds.pos++] & 0xFF;
+            if (kind == NEWLINE || kind == CRLF) {
+                out.append(kind == NEWLINE ? "\n" : "\r\n");
+                if (emptyLine) {
+                    indent = savedIndent;
+                }
+                savedIndent = indent;
+                indent += unzigzag(in[INDENTS].varint());
+                appendSpaces(out, indent);
+                emptyLine = true;
+                if (out.length() - reported >= 65536) {
+                    Progress.advance(out.length() - reported);
+                    reported = out.length();
+                }
+                continue;
+            }
+            emptyLine = false;
+            if (kind >= KEYWORD) {
+                if (kind - KEYWORD >= KEYWORDS.length) {
+                    throw new IOException("Неизвестное ключевое слово в потоках Java-преобразования: " + kind);
+                }
+                out.append(KEYWORDS[kind - KEYWORD]);
+            } else if (kind > ' ' && kind < 0x7F) {
+                out.append((char) kind);
+            } else {
+                switch (kind) {
+                    case IDENTIFIER:
+                        long index = in[IDENTIFIERS].varint();
+                        if (index >= names.size()) {
+                            throw new IOException("Нет имени " + index + " в таблице Java-преобразования");
+                        }
+                        out.append(names.get((int) index));
+                        break;
+                    case LITERAL:
+                        out.append(literal(strings, in[LITERALS], in[STRINGS]));
+                        break;
+                    case NUMBER:
+                        out.append(in[NUMBERS].text());
+                        break;
+                    case COMMENT:
+                        out.append(in[COMMENTS].text());
+                        break;
+                    case SPACE:
+                        out.append(' ');
+                        break;
+                    case OTHER:
+                        out.append(in[OTHERS].text());
+                        break;
+                    default:
+                        throw new IOException("Неизвестный код лексемы: " + kind);
+                }
+            }
+        }
+        if (out.length() != length) {
+            throw new IOException("Длина после Java-преобразования не совпала: " + out.length() + " вместо " + length);
+        }
+        Progress.advance(out.length() - reported);
+        return out.toString();
+    }
+
+    private static String literal(List<String> table, Input refs, Input values) throws IOException {
+        long index = refs.varint();
+        if (index == table.size()) {
+            table.add(values.text());
+        } else if (index > table.size()) {
+            throw new IOException("Ссылка вперед в таблице Java-преобразования: " + index);
+        }
+        return table.get((int) index);
+    }
+
+    private static void appendSpaces(StringBuilder out, int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Неверный отступ в потоках Java-преобразования");
+        }
+        for (int i = 0; i < count; i++) {
+            out.append(' ');
+        }
+    }
+
+    /** Чтение одного потока */
+    private static final class Input {
+        final byte[] data;
+        final int end;
+        int pos;
+
+        Input(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= end) {
+                    throw new IOException("Потоки Java-преобразования обрезаны");
+                }
+                int b = data[pos++] & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Неверное число в потоках Java-преобразования");
+        }
+
+        String text() throws IOException {
+            long length = varint();
+            if (length > end - pos) {
+                throw new IOException("Потоки Java-преобразования обрезаны");
+            }
+            String value = new String(data, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return value;
+        }
+    }
+
+    // ------------------------------------------------------------------ числа
+
+    /** varint длина в UTF-8 | UTF-8; ASCII пишется без промежуточной строки */
+    private static void writeText(ByteSink out, char[] text, int from, int to) {
+        int ascii = from;
+        while (ascii < to && text[ascii] < 0x80) {
+            ascii++;
+        }
+        if (ascii == to) {
+            writeVarint(out, to - from);
+            for (int i = from; i < to; i++) {
+                out.write(text[i]);
+            }
+            return;
+        }
+        byte[] utf8 = new String(text, from, to - from).getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    private static void writeVarint(ByteSink out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
\ No newline at end of file
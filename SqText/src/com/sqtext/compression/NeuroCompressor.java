@@ -1,53 +1,79 @@
 package com.sqtext.compression;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class NeuroCompressor {
     
+    /** Так в метаданных помечается deflate с предустановленным словарем */
+    public static final String ALGORITHM_DICTIONARY = "DEFLATE+DICT";
+    
     /**
      * Сжимает текст в формат, понятный нейросети (JSON с метаданными)
      */
     public static String compressForNeuro(String text, int depth, String algorithm) throws IOException {
+        return compressForNeuro(text, depth, algorithm, TextEncoding.BASE64);
+    }
+    
+    /**
+     * То же с заданной кодировкой данных. Рекурсивный GZIP вкладывает Base64 в Base64,
+     * поэтому для него кодировка всегда Base64
+     */
+    public static String compressForNeuro(String text, int depth, String algorithm, TextEncoding encoding)
+            throws IOException {
         String compressedData;
+        PresetDictionary dictionary = null;
         
-        if ("GZIP".equals(algorithm)) {
-            compressedData = GZipCompressor.compress(text);
+        if (ALGORITHM_DICTIONARY.equals(algorithm)) {
+            // Только по явному выбору: без словаря SqText такие данные не распаковать,
+            // а конверт для нейросети обычно читают посторонние инструменты
+            dictionary = PresetDictionary.getDefault();
+            if (dictionary == null) {
+                throw new IOException("Встроенный словарь не найден в сборке");
+            }
+            compressedData = encoding.encode(
+                DictionaryCompressor.compressToBytes(text.getBytes(StandardCharsets.UTF_8), dictionary));
         } else if ("Рекурсивный GZIP".equals(algorithm)) {
+            encoding = TextEncoding.BASE64;
             compressedData = GZipCompressor.compressRecursive(text, depth);
         } else {
-            compressedData = GZipCompressor.compress(text);
+            compressedData = encoding.encode(GZipCompressor.compressToBytes(text));
         }
         
-        // Создаем JSON вручную
-        StringBuilder json = new StringBuilder();
-        json.append("{\n");
-        json.append("  \"metadata\": {\n");
-        json.append("    \"format\": \"sqz\",\n");
-        json.append("    \"version\": \"1.0\",\n");
-        json.append("    \"compressed\": true,\n");
-        json.append("    \"algorithm\": \"").append(algorithm).append("\",\n");
-        json.append("    \"depth\": ").append(depth).append(",\n");
-        json.append("    \"original_length\": ").append(text.length()).append(",\n");
-        json.append("    \"compressed_length\": ").append(compressedData.length()).append(",\n");
-        json.append("    \"timestamp\": ").append(System.currentTimeMillis()).append("\n");
-        json.append("  },\n");
-        json.append("  \"data\": \"").append(compressedData).append("\"\n");
-        json.append("}");
-        
         // Добавляем инструкцию для нейросети в комментарий
-        String result = "// SqText JSON Compressed Format v1.0\n";
-        result += "// Для нейросети: Base64+GZIP compressed data in JSON\n";
-        result += json.toString();
+        String header = "// SqText JSON Compressed Format v1.0\n";
+        header += dictionary != null
+            ? "// Для нейросети: " + encoding.getTitle() + "+zlib data with preset dictionary " + dictionary.getIdHex() + " in JSON\n"
+                + "// Plain inflate fails: decoding needs the SqText preset dictionary " + dictionary.getIdHex()
+                + " (Inflater.setDictionary); only SqText ships it\n"
+            : "// Для нейросети: " + encoding.getTitle() + "+GZIP compressed data in JSON\n";
         
-        return result;
+        Envelope.Writer json = new Envelope.Writer(header, compressedData.length() + 512, true)
+            .beginObject("metadata")
+            .field("format", "sqz")
+            .field("version", "1.0")
+            .field("compressed", true)
+            .field("algorithm", algorithm)
+            .field("encoding", encoding.getName());
+        if (dictionary != null) {
+            json.field("dictionary", dictionary.getIdHex());
+        }
+        return json.field("depth", depth)
+            .field("original_length", text.length())
+            .field("compressed_length", compressedData.length())
+            .field("timestamp", System.currentTimeMillis())
+            .endObject()
+            .field("data", compressedData)
+            .finish();
     }
     
     /**
      * Определяет, является ли текст JSON форматом для нейросети
      */
     public static boolean isNeuroFormat(String text) {
-        return text.contains("\"format\":\"sqz\"") && 
-               text.contains("\"compressed\":true");
+        Envelope envelope = Envelope.tryParse(text);
+        return envelope != null && envelope.getFormat() == Envelope.Format.SQZ
+            && "true".equals(envelope.get("compressed"));
     }
     
     /**
@@ -55,58 +81,37 @@ public class NeuroCompressor {
      */
     public static String decompressFromNeuro(String neuroText) throws IOException {
         try {
-            // Находим начало JSON (после комментариев)
-            int jsonStart = neuroText.indexOf("{");
-            if (jsonStart == -1) {
-                throw new IOException("Не найден JSON в тексте");
-            }
-            
-            String jsonPart = neuroText.substring(jsonStart);
-            
-            // Парсим JSON вручную (упрощенно)
-            int dataStart = jsonPart.indexOf("\"data\":\"");
-            if (dataStart == -1) {
-                throw new IOException("Не найден 'data' в JSON");
-            }
-            
-            dataStart += 8; // Длина "\"data\":\""
-            int dataEnd = jsonPart.indexOf("\"", dataStart);
-            if (dataEnd == -1) {
-                throw new IOException("Не найден конец 'data' в JSON");
-            }
-            
-            String compressedData = jsonPart.substring(dataStart, dataEnd);
-            
-            // Ищем algorithm и depth
-            String algorithm = "GZIP";
-            int depth = 1;
-            
-            int algoStart = jsonPart.indexOf("\"algorithm\":\"");
-            if (algoStart != -1) {
-                algoStart += 13;
-                int algoEnd = jsonPart.indexOf("\"", algoStart);
-                algorithm = jsonPart.substring(algoStart, algoEnd);
-            }
-            
-            int depthStart = jsonPart.indexOf("\"depth\":");
-            if (depthStart != -1) {
-                depthStart += 8;
-                int depthEnd = jsonPart.indexOf(",", depthStart);
-                if (depthEnd == -1) depthEnd = jsonPart.indexOf("}", depthStart);
-                String depthStr = jsonPart.substring(depthStart, depthEnd).trim();
-                depth = Integer.parseInt(depthStr);
-            }
-            
-            if ("GZIP".equals(algorithm)) {
-                return GZipCompressor.decompress(compressedData);
-            } else if ("Рекурсивный GZIP".equals(algorithm)) {
-                return GZipCompressor.decompressRecursive(compressedData, depth);
-            } else {
-                return GZipCompressor.decompress(compressedData);
-            }
-            
+            return decompress(Envelope.parse(neuroText));
         } catch (Exception e) {
             throw new IOException("Ошибка обработки JSON формата нейросети: " + e.getMessage());
         }
     }
+    
+    static String decompress(Envelope envelope) throws IOException {
+        CharSequence compressedData = envelope.getData();
+        
+        // Ищем algorithm, depth и словарь
+        String algorithm = envelope.get("algorithm");
+        if (algorithm == null) {
+            algorithm = "GZIP";
+        }
+        int depth = envelope.getInt("depth", 1);
+        
+        if ("Рекурсивный GZIP".equals(algorithm)) {
+            // Base64 вложен в Base64 - здесь без строки не обойтись
+            return GZipCompressor.decompressRecursive(compressedData.toString(), depth);
+        }
+        
+        TextEncoding encoding = TextEncoding.forName(envelope.get("encoding"));
+        byte[] packed = encoding.decode(compressedData);
+        String dictionaryId = envelope.get("dictionary");
+        if (dictionaryId != null) {
+            PresetDictionary dictionary = PresetDictionary.forId(dictionaryId);
+            if (dictionary == null) {
+                throw new IOException("Неизвестный словарь " + dictionaryId);
+            }
+            return new String(DictionaryCompressor.decompressBytes(packed, dictionary), StandardCharsets.UTF_8);
+        }
+        return new String(GZipCompressor.decompressBytes(packed), StandardCharsets.UTF_8);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,448 @@
+package com.sqtext.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Многопоточное GZIP-сжатие в стиле pigz.
+ * Вход режется на блоки, блоки сжимаются параллельно на ForkJoinPool.
+ * Результат - обычный GZIP, его читает GZipCompressor.decompress и любой gunzip.
+ *
+ * Режим MEMBERS: каждый блок - отдельный GZIP-член, в заголовке которого (поле FEXTRA,
+ * подполе "SQ") записаны размеры члена. По этому индексу распаковка тоже идет параллельно.
+ * Режим SINGLE_MEMBER: один GZIP-член, каждый блок получает словарь из хвоста предыдущего,
+ * поэтому степень сжатия почти как у обычного GZIP, но распаковка последовательная.
+ *
+ * С числом потоков по умолчанию работа идет на общем ForkJoinPool.commonPool(); при
+ * другом числе потоков создается свой пул, и его закрывает close().
+ *
+ * Progress привязан к потоку, поэтому о каждом готовом блоке сообщает вызывающий поток,
+ * когда забирает результат; там же проверяется отмена, и еще не начатые блоки снимаются
+ */
+public class ParallelGzipCompressor implements Closeable {
+
+    public enum Mode {
+        MEMBERS,
+        SINGLE_MEMBER
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final int MIN_BLOCK_SIZE = 64 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int FEXTRA = 4;
+    private static final int INDEX_XLEN = 12;
+    private static final int MEMBER_HEADER_SIZE = 10 + 2 + INDEX_XLEN;
+    private static final int TRAILER_SIZE = 8;
+    /** Предел сжатия deflate (~1032:1): больший размер в индексе члена заведомо ложный */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final int blockSize;
+    private final int parallelism;
+    private final int level;
+    private final Mode mode;
+    private final ForkJoinPool pool;
+    private final boolean ownPool;
+
+    public ParallelGzipCompressor() {
+        this(DEFAULT_BLOCK_SIZE, ForkJoinPool.getCommonPoolParallelism(), Deflater.DEFAULT_COMPRESSION, Mode.MEMBERS);
+    }
+
+    /**
+     * @param blockSize   размер блока несжатых данных (не меньше MIN_BLOCK_SIZE)
+     * @param parallelism число потоков сжатия
+     * @param level       уровень Deflater (-1..9)
+     * @param mode        MEMBERS или SINGLE_MEMBER
+     */
+    public ParallelGzipCompressor(int blockSize, int parallelism, int level, Mode mode) {
+        if (blockSize < MIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Размер блока меньше " + MIN_BLOCK_SIZE + ": " + blockSize);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным: " + parallelism);
+        }
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+        this.level = level;
+        this.mode = mode;
+        this.ownPool = parallelism != ForkJoinPool.getCommonPoolParallelism();
+        this.pool = ownPool ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Стоит ли сжимать параллельно: вход не меньше двух блоков по умолчанию и есть второй процессор
+     */
+    public static boolean worthwhile(long size) {
+        return size >= 2L * DEFAULT_BLOCK_SIZE && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Останавливает собственный пул потоков (общий пул не трогается)
+     */
+    @Override
+    public void close() {
+        if (ownPool) {
+            pool.shutdown();
+        }
+    }
+
+    public int getBlockSize() { return blockSize; }
+    public int getParallelism() { return parallelism; }
+    public Mode getMode() { return mode; }
+
+    /**
+     * Сжимает текст в GZIP+Base64, совместимый с GZipCompressor.decompress
+     */
+    public String compress(String text) throws IOException {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        return Base64.getEncoder().encodeToString(compressToBytes(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Распаковывает GZIP+Base64; если в данных есть индекс членов - параллельно
+     */
+    public String decompress(String compressedText) throws IOException {
+        if (compressedText == null || compressedText.isEmpty()) {
+            return "";
+        }
+        byte[] gzip;
+        try {
+            gzip = Base64.getMimeDecoder().decode(compressedText);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректные Base64 данные: " + e.getMessage(), e);
+        }
+        return new String(decompressToBytes(gzip), StandardCharsets.UTF_8);
+    }
+
+    public byte[] compressToBytes(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 3 + 64);
+        compress(new ByteArrayInputStream(data), baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Потоково сжимает вход. В работе одновременно не больше 2 * parallelism блоков,
+     * так что память ограничена независимо от размера входа
+     */
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        int maxInFlight = parallelism * 2;
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        ArrayDeque<Integer> inFlightSizes = new ArrayDeque<>();
+        CRC32 crc = new CRC32();
+        long totalSize = 0;
+
+        if (mode == Mode.SINGLE_MEMBER) {
+            out.write(new byte[] {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0});
+        }
+
+        byte[] previous = null;
+        try {
+            byte[] block = readBlock(in);
+            while (block != null) {
+                byte[] next = readBlock(in);
+                boolean last = next == null;
+                if (mode == Mode.SINGLE_MEMBER) {
+                    crc.update(block);
+                    totalSize += block.length;
+                }
+
+                final byte[] current = block;
+                final byte[] dictionarySource = previous;
+                inFlight.add(pool.submit(() -> mode == Mode.MEMBERS
+                    ? compressMember(current)
+                    : compressPrimedBlock(current, dictionarySource, last)));
+                inFlightSizes.add(block.length);
+                while (inFlight.size() >= maxInFlight) {
+                    out.write(await(inFlight.poll()));
+                    Progress.advance(inFlightSizes.poll());
+                }
+
+                previous = block;
+                block = next;
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.poll()));
+                Progress.advance(inFlightSizes.poll());
+            }
+        } finally {
+            // Ошибка или отмена: блоки, которые еще не начаты, не сжимаем
+            cancelAll(inFlight);
+        }
+
+        if (mode == Mode.MEMBERS) {
+            if (previous == null) {
+                // Пустой вход: один пустой член, чтобы результат оставался валидным GZIP
+                out.write(compressMember(new byte[0]));
+            }
+        } else {
+            if (previous == null) {
+                // Пустой вход: пустой финальный блок deflate
+                out.write(new byte[] {0x03, 0x00});
+            }
+            writeInt(out, (int) crc.getValue());
+            writeInt(out, (int) totalSize);
+        }
+        out.flush();
+    }
+
+    /**
+     * Распаковывает GZIP. Если у членов есть индекс "SQ" - каждый член распаковывается
+     * в свой поток прямо в нужное место выходного массива, иначе - обычное последовательное чтение
+     */
+    public byte[] decompressToBytes(byte[] gzip) throws IOException {
+        List<long[]> members = readMemberIndex(gzip);
+        if (members == null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                (int) Math.min(Integer.MAX_VALUE - 8, gzip.length * 3L));
+            try (InputStream gzipIn = new PooledGzipInputStream(new ByteArrayInputStream(gzip))) {
+                TextStreams.copy(gzipIn, baos);
+            }
+            return baos.toByteArray();
+        }
+
+        long total = 0;
+        for (long[] member : members) {
+            member[2] = total;
+            total += member[1];
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IOException("Слишком большой результат для массива: " + total + " байт");
+        }
+        byte[] result = new byte[(int) total];
+        ArrayDeque<Future<Void>> tasks = new ArrayDeque<>(members.size());
+        try {
+            for (long[] member : members) {
+                tasks.add(pool.submit(() -> {
+                    inflateMember(gzip, (int) member[0], result, (int) member[2], (int) member[1]);
+                    return null;
+                }));
+            }
+            for (long[] member : members) {
+                await(tasks.poll());
+                Progress.advance(member[3]);
+            }
+        } finally {
+            cancelAll(tasks);
+        }
+        return result;
+    }
+
+    private static void cancelAll(ArrayDeque<? extends Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            task.cancel(false);
+        }
+        tasks.clear();
+    }
+
+    private byte[] readBlock(InputStream in) throws IOException {
+        byte[] block = new byte[blockSize];
+        int filled = 0;
+        while (filled < blockSize) {
+            int n = in.read(block, filled, blockSize - filled);
+            if (n == -1) {
+                break;
+            }
+            filled += n;
+        }
+        if (filled == 0) {
+            return null;
+        }
+        return filled == blockSize ? block : Arrays.copyOf(block, filled);
+    }
+
+    /**
+     * Самостоятельный GZIP-член с индексом "SQ" в заголовке
+     */
+    private byte[] compressMember(byte[] block) {
+        Deflater deflater = CodecPool.borrowDeflater(level, true);
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(block.length / 2 + 64);
+            deflater.setInput(block);
+            deflater.finish();
+            drain(deflater, body, Deflater.NO_FLUSH);
+
+            CRC32 crc = new CRC32();
+            crc.update(block);
+            int memberSize = MEMBER_HEADER_SIZE + body.size() + TRAILER_SIZE;
+
+            ByteArrayOutputStream member = new ByteArrayOutputStream(memberSize);
+            member.write(new byte[] {0x1f, (byte) 0x8b, Deflater.DEFLATED, FEXTRA, 0, 0, 0, 0, 0, 0}, 0, 10);
+            writeShort(member, INDEX_XLEN);
+            member.write('S');
+            member.write('Q');
+            writeShort(member, 8);
+            writeInt(member, memberSize);
+            writeInt(member, block.length);
+            body.writeTo(member);
+            writeInt(member, (int) crc.getValue());
+            writeInt(member, block.length);
+            return member.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            CodecPool.releaseDeflater(deflater, true);
+        }
+    }
+
+    /**
+     * Кусок общего deflate-потока: словарь из хвоста предыдущего блока,
+     * в конце SYNC_FLUSH (выравнивание на байт), у последнего блока - FINISH
+     */
+    private byte[] compressPrimedBlock(byte[] block, byte[] previous, boolean last) {
+        Deflater deflater = CodecPool.borrowDeflater(level, true);
+        try {
+            if (previous != null) {
+                int dictLength = Math.min(DICTIONARY_SIZE, previous.length);
+                deflater.setDictionary(previous, previous.length - dictLength, dictLength);
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream(block.length / 2 + 64);
+            deflater.setInput(block);
+            if (last) {
+                deflater.finish();
+                drain(deflater, body, Deflater.NO_FLUSH);
+            } else {
+                drain(deflater, body, Deflater.SYNC_FLUSH);
+            }
+            return body.toByteArray();
+        } finally {
+            CodecPool.releaseDeflater(deflater, true);
+        }
+    }
+
+    private static void drain(Deflater deflater, ByteArrayOutputStream out, int flush) {
+        byte[] buffer = new byte[TextStreams.BUFFER_SIZE];
+        if (flush == Deflater.NO_FLUSH) {
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } else {
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, flush);
+                out.write(buffer, 0, n);
+            } while (n == buffer.length);
+        }
+    }
+
+    /**
+     * Читает индекс: {смещение, несжатый размер, место в результате, размер члена} для каждого члена.
+     * null - если хотя бы у одного члена нет подполя "SQ"
+     */
+    private static List<long[]> readMemberIndex(byte[] gzip) {
+        List<long[]> members = new ArrayList<>();
+        int offset = 0;
+        while (offset < gzip.length) {
+            if (gzip.length - offset < MEMBER_HEADER_SIZE
+                    || (gzip[offset] & 0xff) != 0x1f || (gzip[offset + 1] & 0xff) != 0x8b
+                    || (gzip[offset + 3] & FEXTRA) == 0 || readShort(gzip, offset + 10) != INDEX_XLEN
+                    || gzip[offset + 12] != 'S' || gzip[offset + 13] != 'Q') {
+                return null;
+            }
+            long memberSize = readInt(gzip, offset + 16) & 0xffffffffL;
+            long rawSize = readInt(gzip, offset + 20) & 0xffffffffL;
+            if (memberSize < MEMBER_HEADER_SIZE + TRAILER_SIZE || offset + memberSize > gzip.length) {
+                return null;
+            }
+            // Индекс не доверенный: размер, которого deflate дать не может, - повреждение
+            if (rawSize > (memberSize - MEMBER_HEADER_SIZE - TRAILER_SIZE) * MAX_DEFLATE_RATIO + 64) {
+                return null;
+            }
+            members.add(new long[] {offset, rawSize, 0, memberSize});
+            offset += (int) memberSize;
+        }
+        return members.isEmpty() ? null : members;
+    }
+
+    private static void inflateMember(byte[] gzip, int offset, byte[] out, int outOffset, int rawSize)
+            throws IOException {
+        int memberSize = readInt(gzip, offset + 16);
+        Inflater inflater = CodecPool.borrowInflater(true);
+        try {
+            inflater.setInput(gzip, offset + MEMBER_HEADER_SIZE, memberSize - MEMBER_HEADER_SIZE - TRAILER_SIZE);
+            int written = 0;
+            while (written < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(out, outOffset + written, rawSize - written);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                written += n;
+            }
+            if (written != rawSize || !inflater.finished() && !finishesEmpty(inflater)) {
+                throw new ZipException("Повреждённый GZIP-член по смещению " + offset);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(out, outOffset, rawSize);
+            int trailer = offset + memberSize - TRAILER_SIZE;
+            if (readInt(gzip, trailer) != (int) crc.getValue() || readInt(gzip, trailer + 4) != rawSize) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            CodecPool.releaseInflater(inflater, true);
+        }
+    }
+
+    /**
+     * После того как нужный объем получен, в потоке может остаться только финальный пустой блок
+     */
+    private static boolean finishesEmpty(Inflater inflater) throws DataFormatException {
+        byte[] probe = new byte[1];
+        return inflater.inflate(probe) == 0 && inflater.finished();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // Как Progress.advance: прерванный поток - отмененная операция
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Операция отменена");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Ошибка параллельного сжатия: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static void writeShort(OutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int v) throws IOException {
+        writeShort(out, v);
+        writeShort(out, v >>> 16);
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return readShort(b, off) | readShort(b, off + 2) << 16;
+    }
+}
@@ -0,0 +1,213 @@
+package com.sqtext.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Чтение GZIP на Inflater из {@link CodecPool}.
+ * Как и GZIPInputStream, читает подряд несколько склеенных GZIP-членов
+ */
+class PooledGzipInputStream extends InputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final PushbackInputStream in;
+    private final Inflater inf;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buf;
+    private final byte[] single = new byte[1];
+    private int bufLen;
+    private boolean eof;
+    private boolean closed;
+
+    PooledGzipInputStream(InputStream in) throws IOException {
+        this(in, TextStreams.BUFFER_SIZE);
+    }
+
+    PooledGzipInputStream(InputStream in, int bufferSize) throws IOException {
+        this.in = new PushbackInputStream(in, bufferSize);
+        this.buf = new byte[bufferSize];
+        this.inf = CodecPool.borrowInflater(true);
+        try {
+            if (!readHeader(true)) {
+                throw new EOFException();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (eof) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        try {
+            while (true) {
+                int n = inf.inflate(b, off, len);
+                if (n > 0) {
+                    crc.update(b, off, n);
+                    if (inf.finished()) {
+                        // конец члена разбирается сразу, чтобы available() знал о конце данных
+                        nextMember();
+                    }
+                    return n;
+                }
+                if (inf.finished()) {
+                    if (!nextMember()) {
+                        return -1;
+                    }
+                } else if (inf.needsDictionary()) {
+                    throw new ZipException("GZIP stream requires a preset dictionary");
+                } else if (inf.needsInput()) {
+                    fill();
+                }
+            }
+        } catch (DataFormatException e) {
+            String message = e.getMessage();
+            throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+        }
+    }
+
+    /**
+     * 0 после последнего члена, иначе 1 (сколько байт даст распаковка, заранее не известно)
+     */
+    @Override
+    public int available() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            CodecPool.releaseInflater(inf, true);
+            in.close();
+        }
+    }
+
+    private void fill() throws IOException {
+        bufLen = in.read(buf, 0, buf.length);
+        if (bufLen == -1) {
+            bufLen = 0;
+            throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        inf.setInput(buf, 0, bufLen);
+        Progress.advance(bufLen);
+    }
+
+    private void readTrailer() throws IOException {
+        int remaining = inf.getRemaining();
+        if (remaining > 0) {
+            in.unread(buf, bufLen - remaining, remaining);
+        }
+        bufLen = 0;
+        long expectedCrc = readInt() & 0xffffffffL;
+        long expectedSize = readInt() & 0xffffffffL;
+        if (expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    /**
+     * Проверяет окончание члена и переходит к следующему. Как в GZIPInputStream, следующий
+     * член ищется, только если данные уже есть: иначе на канале или сокете чтение
+     * заголовка ждало бы байт, которых отправитель не пришлет
+     */
+    private boolean nextMember() throws IOException {
+        readTrailer();
+        if (in.available() <= 0 || !readHeader(false)) {
+            eof = true;
+            return false;
+        }
+        inf.reset();
+        crc.reset();
+        return true;
+    }
+
+    /**
+     * Читает заголовок GZIP-члена.
+     * Для первого члена неверная сигнатура - ошибка, для следующих - просто конец данных
+     */
+    private boolean readHeader(boolean first) throws IOException {
+        int id1 = in.read();
+        if (id1 == -1) {
+            return false;
+        }
+        int id2 = in.read();
+        if (id1 != 0x1f || id2 != 0x8b) {
+            if (first) {
+                throw new ZipException("Not in GZIP format");
+            }
+            return false;
+        }
+        if (readByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readByte();
+        skipBytes(6); // MTIME, XFL, OS
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readShort());
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+                // имя файла не нужно
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+                // комментарий не нужен
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of GZIP header");
+        }
+        return b;
+    }
+
+    private int readShort() throws IOException {
+        return readByte() | (readByte() << 8);
+    }
+
+    private int readInt() throws IOException {
+        return readShort() | (readShort() << 16);
+    }
+
+    private void skipBytes(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readByte();
+        }
+    }
+}
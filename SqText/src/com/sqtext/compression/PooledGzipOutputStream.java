@@ -0,0 +1,80 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * GZIP-поток на Deflater из {@link CodecPool}.
+ * Формат тот же, что у GZIPOutputStream, но нативный контекст не создается на каждый вызов
+ */
+class PooledGzipOutputStream extends DeflaterOutputStream {
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final CRC32 crc = new CRC32();
+    private boolean finished;
+    private boolean released;
+
+    PooledGzipOutputStream(OutputStream out) throws IOException {
+        this(out, Deflater.DEFAULT_COMPRESSION, TextStreams.BUFFER_SIZE);
+    }
+
+    PooledGzipOutputStream(OutputStream out, int level, int bufferSize) throws IOException {
+        super(out, CodecPool.borrowDeflater(level, true), bufferSize);
+        try {
+            out.write(HEADER);
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        crc.update(b, off, len);
+        Progress.advance(len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        def.finish();
+        while (!def.finished()) {
+            deflate();
+        }
+        writeInt((int) crc.getValue());
+        writeInt((int) def.getBytesRead());
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            release();
+        }
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+
+    private void release() {
+        if (!released) {
+            released = true;
+            CodecPool.releaseDeflater(def, true);
+        }
+    }
+}
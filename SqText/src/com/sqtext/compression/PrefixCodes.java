@@ -0,0 +1,168 @@
+package com.sqtext.compression;
+
+/**
+ * Построение кодов Хаффмана с ограничением длины - общее для Zstandard и Brotli
+ */
+final class PrefixCodes {
+
+    private PrefixCodes() {
+    }
+
+    /**
+     * Длины кодов для частот counts[0..alphabetSize) не длиннее maxBits.
+     * Отсутствующие символы получают 0; единственный символ - длину 1
+     */
+    static void buildLengths(int[] counts, int alphabetSize, int maxBits, int[] lengths) {
+        int present = 0;
+        for (int s = 0; s < alphabetSize; s++) {
+            lengths[s] = 0;
+            if (counts[s] != 0) {
+                present++;
+            }
+        }
+        int[] symbols = new int[present];
+        int n = 0;
+        for (int s = 0; s < alphabetSize; s++) {
+            if (counts[s] != 0) {
+                symbols[n++] = s;
+            }
+        }
+        if (n == 1) {
+            lengths[symbols[0]] = 1;
+            return;
+        }
+        if (n == 0) {
+            return;
+        }
+        sortByCount(symbols, counts);
+
+        // Алгоритм двух очередей: листья отсортированы, внутренние узлы появляются по возрастанию
+        long[] weight = new long[2 * n];
+        int[] parent = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            weight[i] = counts[symbols[i]];
+        }
+        int leaf = 0;
+        int node = n;
+        int next = n;
+        for (int k = 0; k < n - 1; k++) {
+            int a = (leaf < n && (node >= next || weight[leaf] <= weight[node])) ? leaf++ : node++;
+            int b = (leaf < n && (node >= next || weight[leaf] <= weight[node])) ? leaf++ : node++;
+            weight[next] = weight[a] + weight[b];
+            parent[a] = next;
+            parent[b] = next;
+            next++;
+        }
+        int[] depth = new int[2 * n];
+        for (int i = next - 2; i >= 0; i--) {
+            depth[i] = depth[parent[i]] + 1;
+        }
+        int maxLen = 0;
+        for (int i = 0; i < n; i++) {
+            lengths[symbols[i]] = depth[i];
+            maxLen = Math.max(maxLen, depth[i]);
+        }
+        if (maxLen > maxBits) {
+            limitLengths(counts, symbols, lengths, maxBits);
+        }
+    }
+
+    /**
+     * Канонические коды (старший бит первым): по возрастанию длины, при равной длине - по символу
+     */
+    static int[] canonicalCodes(int[] lengths, int alphabetSize) {
+        int maxLen = 0;
+        for (int s = 0; s < alphabetSize; s++) {
+            maxLen = Math.max(maxLen, lengths[s]);
+        }
+        int[] lengthCount = new int[maxLen + 2];
+        for (int s = 0; s < alphabetSize; s++) {
+            lengthCount[lengths[s]]++;
+        }
+        lengthCount[0] = 0;
+        int[] nextCode = new int[maxLen + 2];
+        int code = 0;
+        for (int len = 1; len <= maxLen; len++) {
+            code = (code + lengthCount[len - 1]) << 1;
+            nextCode[len] = code;
+        }
+        int[] codes = new int[alphabetSize];
+        for (int s = 0; s < alphabetSize; s++) {
+            if (lengths[s] != 0) {
+                codes[s] = nextCode[lengths[s]]++;
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Разворот младших length бит - для потоков, которые пишутся младшим битом вперед
+     */
+    static int reverseBits(int code, int length) {
+        return Integer.reverse(code) >>> (32 - length);
+    }
+
+    private static void sortByCount(int[] symbols, int[] counts) {
+        // Вставками для малых алфавитов, иначе через упакованные ключи
+        if (symbols.length <= 64) {
+            for (int i = 1; i < symbols.length; i++) {
+                int s = symbols[i];
+                int j = i - 1;
+                while (j >= 0 && counts[symbols[j]] > counts[s]) {
+                    symbols[j + 1] = symbols[j];
+                    j--;
+                }
+                symbols[j + 1] = s;
+            }
+            return;
+        }
+        long[] keys = new long[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            keys[i] = (long) counts[symbols[i]] << 32 | symbols[i];
+        }
+        java.util.Arrays.sort(keys);
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * Ограничивает длины кодов maxBits, сохраняя полноту кода (сумма Крафта = 1)
+     */
+    private static void limitLengths(int[] counts, int[] symbols, int[] lengths, int maxBits) {
+        long full = 1L << maxBits;
+        long kraft = 0;
+        for (int s : symbols) {
+            if (lengths[s] > maxBits) {
+                lengths[s] = maxBits;
+            }
+            kraft += full >> lengths[s];
+        }
+        // Переполнение: удлиняем самые длинные коды (< maxBits) у самых редких символов
+        while (kraft > full) {
+            int best = -1;
+            for (int s : symbols) {
+                if (lengths[s] < maxBits && (best == -1 || lengths[s] > lengths[best]
+                        || lengths[s] == lengths[best] && counts[s] < counts[best])) {
+                    best = s;
+                }
+            }
+            kraft -= full >> (lengths[best] + 1);
+            lengths[best]++;
+        }
+        // Недобор: укорачиваем коды частых символов, пока сумма не станет полной
+        while (kraft < full) {
+            long slack = full - kraft;
+            int best = -1;
+            for (int i = symbols.length - 1; i >= 0; i--) {
+                int s = symbols[i];
+                if (lengths[s] > 1 && (full >> lengths[s]) <= slack
+                        && (best == -1 || lengths[s] > lengths[best])) {
+                    best = s;
+                }
+            }
+            kraft += full >> lengths[best];
+            lengths[best]--;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+
+/**
+ * Предустановленный словарь deflate (zlib setDictionary).
+ * Идентификатор - Adler-32 байтов словаря, тот же DICTID, что zlib пишет в заголовок потока,
+ * поэтому по сжатым данным всегда можно проверить, тем ли словарем их распаковывают
+ */
+public final class PresetDictionary {
+
+    /** Deflate видит не больше 32 КБ истории - словарь длиннее бесполезен */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    private static final String BUILT_IN_RESOURCE = "chat-dictionary.bin";
+
+    private static final Map<Integer, PresetDictionary> REGISTRY = new ConcurrentHashMap<>();
+    private static volatile PresetDictionary builtIn;
+    private static volatile PresetDictionary defaultDictionary;
+
+    private final byte[] bytes;
+    private final int id;
+
+    private PresetDictionary(byte[] bytes) {
+        this.bytes = bytes;
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        this.id = (int) adler.getValue();
+    }
+
+    /**
+     * Словарь из готовых байтов; если их больше MAX_SIZE, берется хвост (он ближе к данным)
+     */
+    public static PresetDictionary of(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Пустой словарь");
+        }
+        int from = Math.max(0, bytes.length - MAX_SIZE);
+        return new PresetDictionary(Arrays.copyOfRange(bytes, from, bytes.length));
+    }
+
+    public static PresetDictionary load(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length == 0) {
+            throw new IOException("Файл словаря пуст: " + file);
+        }
+        return of(data);
+    }
+
+    public void save(Path file) throws IOException {
+        Files.write(file, bytes);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Идентификатор в виде 8 шестнадцатеричных цифр - так он записывается в JSON
+     */
+    public String getIdHex() {
+        return String.format("%08x", id);
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /** Без копирования: массив не должен меняться */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Делает словарь доступным для распаковки по идентификатору
+     */
+    public static PresetDictionary register(PresetDictionary dictionary) {
+        PresetDictionary previous = REGISTRY.putIfAbsent(dictionary.id, dictionary);
+        return previous != null ? previous : dictionary;
+    }
+
+    /**
+     * Ищет словарь по идентификатору среди встроенного и зарегистрированных
+     * @return словарь или null
+     */
+    public static PresetDictionary forId(int id) {
+        PresetDictionary builtInDictionary = builtIn();
+        if (builtInDictionary != null && builtInDictionary.id == id) {
+            return builtInDictionary;
+        }
+        return REGISTRY.get(id);
+    }
+
+    /**
+     * То же по записи из JSON ("1a2b3c4d")
+     */
+    public static PresetDictionary forId(String idHex) {
+        try {
+            return forId(Integer.parseUnsignedInt(idHex.trim(), 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Словарь, обученный на переписке из репозитория; null, если ресурс не собран в сборку
+     */
+    public static PresetDictionary builtIn() {
+        PresetDictionary d = builtIn;
+        if (d == null) {
+            synchronized (PresetDictionary.class) {
+                d = builtIn;
+                if (d == null) {
+                    d = loadBuiltIn();
+                    builtIn = d;
+                }
+            }
+        }
+        return d.bytes.length > 0 ? d : null;
+    }
+
+    /**
+     * Словарь для сжатия коротких сообщений: заданный через setDefault() или встроенный
+     */
+    public static PresetDictionary getDefault() {
+        PresetDictionary d = defaultDictionary;
+        return d != null ? d : builtIn();
+    }
+
+    /**
+     * Меняет словарь по умолчанию (null - вернуть встроенный). Словарь регистрируется
+     */
+    public static void setDefault(PresetDictionary dictionary) {
+        if (dictionary != null) {
+            dictionary = register(dictionary);
+        }
+        defaultDictionary = dictionary;
+    }
+
+    private static PresetDictionary loadBuiltIn() {
+        try (InputStream in = PresetDictionary.class.getResourceAsStream(BUILT_IN_RESOURCE)) {
+            if (in != null) {
+                byte[] data = in.readAllBytes();
+                if (data.length > 0) {
+                    return of(data);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось загрузить встроенный словарь: " + e.getMessage());
+        }
+        // Пустой маркер, чтобы не искать ресурс повторно
+        return new PresetDictionary(new byte[0]);
+    }
+}
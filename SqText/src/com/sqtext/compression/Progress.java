@@ -0,0 +1,81 @@
+package com.sqtext.compression;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Прогресс длинной операции в текущем потоке: кодеки сообщают, сколько байт входа
+ * обработано (блок, мета-блок, буфер потока), и здесь же проверяется отмена -
+ * прерванный поток получает CancellationException при следующем отчете.
+ * Без start() отчеты ничего не делают, поэтому сигнатуры кодеков не меняются
+ */
+public final class Progress implements AutoCloseable {
+
+    public interface Listener {
+        /**
+         * @param done обработано байт (может превысить total, если операция делает несколько проходов)
+         * @param total ожидаемое число байт
+         */
+        void update(long done, long total);
+    }
+
+    private static final ThreadLocal<Progress> CURRENT = new ThreadLocal<>();
+
+    private final long total;
+    private final Listener listener;
+    private long done;
+
+    private Progress(long total, Listener listener) {
+        this.total = Math.max(1, total);
+        this.listener = listener;
+    }
+
+    /**
+     * Включает отчеты в текущем потоке до close()
+     */
+    public static Progress start(long totalBytes, Listener listener) {
+        Progress progress = new Progress(totalBytes, listener);
+        CURRENT.set(progress);
+        return progress;
+    }
+
+    @Override
+    public void close() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Отчет кодека: обработано еще bytes байт входа
+     */
+    static void advance(long bytes) {
+        Progress progress = CURRENT.get();
+        if (progress == null) {
+            return;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Операция отменена");
+        }
+        progress.done += bytes;
+        progress.listener.update(progress.done, progress.total);
+    }
+
+    /**
+     * Длина текста в UTF-8 без кодирования - для оценки объема работы
+     */
+    public static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
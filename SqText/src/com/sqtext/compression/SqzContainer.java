@@ -0,0 +1,668 @@
+package com.sqtext.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+
+/**
+ * Двоичный контейнер .sqz: заголовок, независимо сжатые блоки и индекс блоков в конце файла.
+ * <pre>
+ * заголовок (16):  "SQZ" 0x1A | версия | кодек | уровень | 0 | размер блока (4) | CRC32C заголовка (4)
+ * блоки:           сжатые данные подряд (GZIP - "сырой" deflate без обертки)
+ * индекс (36 * N): смещение (8) | смещение в исходных данных (8) | длина сжатого (4) |
+ *                  длина исходного (4) | CRC32C сжатого (4) | CRC32C исходного (4) |
+ *                  число переводов строки в блоке (4)
+ * концовка (28):   смещение индекса (8) | число блоков (4) | CRC32C индекса (4) |
+ *                  размер исходных данных (8) | "SQZI"
+ * </pre>
+ * Все числа little-endian. Файл читается через отображение в память: открытие читает
+ * только заголовок и концовку, проверка целостности сверяет CRC сжатых блоков без распаковки.
+ * Границы блоков - точки входа для произвольного доступа: диапазон байтов или строк
+ * распаковывает только покрывающие его блоки
+ */
+public final class SqzContainer implements Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int MAX_BLOCK_SIZE = 64 << 20;
+
+    private static final byte[] MAGIC = {'S', 'Q', 'Z', 0x1A};
+    private static final byte[] FOOTER_MAGIC = {'S', 'Q', 'Z', 'I'};
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 36;
+    private static final int FOOTER_SIZE = 28;
+    /** Файл отображается кусками: один MappedByteBuffer ограничен 2 ГБ */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /** Коды алгоритмов в заголовке: не зависят от порядка констант в Algorithm */
+    private static final Algorithm[] CODECS = {Algorithm.STORED, Algorithm.GZIP, Algorithm.ZSTD, Algorithm.BROTLI};
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final MappedByteBuffer[] segments;
+    private final Algorithm algorithm;
+    private final int level;
+    private final int blockSize;
+    private final long indexOffset;
+    private final int blockCount;
+    private final int indexCrc;
+    private final long uncompressedSize;
+
+    /** Начала блоков в исходных данных и число строк до блока; строятся при первом обращении */
+    private long[] blockStarts;
+    private long[] linesBefore;
+    private long lineCount = -1;
+    /** Последний распакованный блок: листание страницами попадает в него же */
+    private int cachedBlock = -1;
+    private byte[] cachedData;
+
+    private SqzContainer(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        if (fileSize < HEADER_SIZE + FOOTER_SIZE) {
+            throw new IOException("Файл слишком мал для контейнера .sqz");
+        }
+        ByteBuffer header = region(0, HEADER_SIZE);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new IOException("Это не контейнер .sqz");
+            }
+        }
+        if (crc(header, 0, 12) != header.getInt(12)) {
+            throw new IOException("Заголовок контейнера поврежден");
+        }
+        int version = header.get(4);
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия контейнера: " + version);
+        }
+        int codec = header.get(5);
+        if (codec < 0 || codec >= CODECS.length) {
+            throw new IOException("Неизвестный кодек контейнера: " + codec);
+        }
+        algorithm = CODECS[codec];
+        level = header.get(6);
+        blockSize = header.getInt(8);
+
+        ByteBuffer footer = region(fileSize - FOOTER_SIZE, FOOTER_SIZE);
+        for (int i = 0; i < FOOTER_MAGIC.length; i++) {
+            if (footer.get(24 + i) != FOOTER_MAGIC[i]) {
+                throw new IOException("Контейнер оборван: нет индекса блоков");
+            }
+        }
+        indexOffset = footer.getLong(0);
+        blockCount = footer.getInt(8);
+        indexCrc = footer.getInt(12);
+        uncompressedSize = footer.getLong(16);
+        long indexSize = (long) blockCount * ENTRY_SIZE;
+        if (blockCount < 0 || indexOffset < HEADER_SIZE || indexSize > Integer.MAX_VALUE
+                || indexOffset + indexSize != fileSize - FOOTER_SIZE) {
+            throw new IOException("Индекс контейнера поврежден");
+        }
+        // Чтение доверяет полям индекса, поэтому CRC индекса сверяется сразу при открытии
+        if (crc(region(indexOffset, (int) indexSize), 0, (int) indexSize) != indexCrc) {
+            throw new IOException("Индекс контейнера поврежден: CRC32C не совпадает");
+        }
+    }
+
+    /**
+     * Открывает контейнер для чтения (файл отображается в память)
+     */
+    public static SqzContainer open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new SqzContainer(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Начинаются ли данные с сигнатуры контейнера
+     */
+    public static boolean isContainer(byte[] head) {
+        return head.length >= MAGIC.length && java.util.Arrays.equals(head, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Начинается ли файл с сигнатуры контейнера
+     */
+    public static boolean isContainer(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // читаем до конца сигнатуры
+            }
+            return !magic.hasRemaining() && java.util.Arrays.equals(magic.array(), MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Записывает данные в контейнер целиком
+     */
+    public static void write(Path file, byte[] data, Algorithm algorithm, int level) throws IOException {
+        try (Writer writer = new Writer(file, algorithm, level, DEFAULT_BLOCK_SIZE)) {
+            writer.write(data, 0, data.length);
+        }
+    }
+
+    public Algorithm getAlgorithm() { return algorithm; }
+    public int getLevel() { return level; }
+    public int getBlockSize() { return blockSize; }
+    public int getBlockCount() { return blockCount; }
+    public long getUncompressedSize() { return uncompressedSize; }
+    public long getFileSize() { return fileSize; }
+
+    /** Смещение начала блока в исходных данных */
+    public long getBlockStart(int block) throws IOException {
+        return entry(block).getLong(8);
+    }
+
+    /** Длина блока в исходных данных */
+    public int getBlockLength(int block) throws IOException {
+        return entry(block).getInt(20);
+    }
+
+    /**
+     * Распаковывает один блок, сверяя CRC32C сжатых и исходных данных
+     */
+    public byte[] readBlock(int block) throws IOException {
+        ByteBuffer entry = entry(block);
+        long offset = entry.getLong(0);
+        int compressedLength = entry.getInt(16);
+        int length = entry.getInt(20);
+        if (offset < HEADER_SIZE || compressedLength < 0 || offset > indexOffset - compressedLength
+                || length < 0 || length > MAX_BLOCK_SIZE) {
+            throw new IOException("Запись индекса блока " + block + " повреждена");
+        }
+        ByteBuffer compressed = region(offset, compressedLength);
+        if (crc(compressed, 0, compressedLength) != entry.getInt(24)) {
+            throw new IOException("Блок " + block + " поврежден: CRC32C сжатых данных не совпадает");
+        }
+        byte[] data = decode(compressed, length);
+        if (data.length != length || crc(ByteBuffer.wrap(data), 0, length) != entry.getInt(28)) {
+            throw new IOException("Блок " + block + " распакован с ошибкой: CRC32C данных не совпадает");
+        }
+        return data;
+    }
+
+    /**
+     * Распаковывает все данные (до 2 ГБ)
+     */
+    public byte[] readAll() throws IOException {
+        if (uncompressedSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("Данные контейнера больше 2 ГБ - читайте по блокам");
+        }
+        byte[] out = new byte[(int) uncompressedSize];
+        int pos = 0;
+        for (int i = 0; i < blockCount; i++) {
+            byte[] block = readBlock(i);
+            if (pos + block.length > out.length) {
+                throw new IOException("Размер данных не совпадает с индексом");
+            }
+            System.arraycopy(block, 0, out, pos, block.length);
+            pos += block.length;
+        }
+        if (pos != out.length) {
+            throw new IOException("Размер данных не совпадает с индексом");
+        }
+        return out;
+    }
+
+    /**
+     * Проверка целостности по индексу (его CRC сверен при открытии): CRC32C каждого
+     * сжатого блока, без распаковки
+     * @return номера поврежденных блоков (пустой список - все цело)
+     */
+    public List<Integer> verify() throws IOException {
+        List<Integer> damaged = new ArrayList<>();
+        long expectedStart = 0;
+        for (int i = 0; i < blockCount; i++) {
+            ByteBuffer entry = entry(i);
+            long offset = entry.getLong(0);
+            int compressedLength = entry.getInt(16);
+            if (entry.getLong(8) != expectedStart || offset < HEADER_SIZE || compressedLength < 0
+                    || offset > indexOffset - compressedLength || crc(region(offset, compressedLength), 0, compressedLength) != entry.getInt(24)) {
+                damaged.add(i);
+            }
+            expectedStart = entry.getLong(8) + entry.getInt(20);
+        }
+        if (expectedStart != uncompressedSize) {
+            throw new IOException("Размер данных не совпадает с индексом");
+        }
+        return damaged;
+    }
+
+    /**
+     * Число строк: переводы строки плюс последняя строка без перевода
+     */
+    public long getLineCount() throws IOException {
+        if (lineCount < 0) {
+            buildIndex();
+            lineCount = linesBefore[blockCount];
+            if (blockCount > 0) {
+                byte[] last = block(blockCount - 1);
+                if (last.length > 0 && last[last.length - 1] != '\n') {
+                    lineCount++;
+                }
+            }
+        }
+        return lineCount;
+    }
+
+    /**
+     * Байты исходных данных [offset, offset + length): распаковываются только блоки,
+     * которые покрывают диапазон. Диапазон за концом данных обрезается
+     */
+    public byte[] readRange(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Отрицательное смещение или длина");
+        }
+        buildIndex();
+        long end = Math.min(uncompressedSize, offset + length);
+        if (offset >= end) {
+            return new byte[0];
+        }
+        byte[] out = new byte[(int) (end - offset)];
+        int n = 0;
+        for (int b = findBlock(blockStarts, offset); n < out.length; b++) {
+            byte[] data = block(b);
+            int from = (int) (offset + n - blockStarts[b]);
+            int count = Math.min(data.length - from, out.length - n);
+            System.arraycopy(data, from, out, n, count);
+            n += count;
+        }
+        return out;
+    }
+
+    /**
+     * Строки [first, first + count) (нумерация с нуля) без перевода строки в конце;
+     * распаковываются только блоки, в которые попадают эти строки
+     */
+    public List<String> readLines(long first, int count) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (first < 0 || count <= 0 || first >= getLineCount()) {
+            return lines;
+        }
+        // Строка first начинается сразу за first-м переводом строки
+        int b = 0;
+        int pos = 0;
+        if (first > 0) {
+            b = findBlock(linesBefore, first - 1);
+            byte[] data = block(b);
+            long skip = first - linesBefore[b];
+            while (skip > 0) {
+                if (data[pos++] == '\n') {
+                    skip--;
+                }
+            }
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (; b < blockCount && lines.size() < count; b++, pos = 0) {
+            byte[] data = block(b);
+            int start = pos;
+            for (; pos < data.length && lines.size() < count; pos++) {
+                if (data[pos] == '\n') {
+                    line.write(data, start, pos - start);
+                    lines.add(toLine(line));
+                    start = pos + 1;
+                }
+            }
+            if (lines.size() < count) {
+                line.write(data, start, pos - start);
+            }
+        }
+        if (lines.size() < count && line.size() > 0) {
+            lines.add(toLine(line));
+        }
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Отображения освобождает сборщик мусора; канал закрываем сразу
+        channel.close();
+    }
+
+    /**
+     * Блок для постраничного чтения: число переводов строки сверяется с индексом,
+     * на нем держатся переходы по номерам строк
+     */
+    private byte[] block(int block) throws IOException {
+        if (block != cachedBlock) {
+            byte[] data = readBlock(block);
+            if (countLines(data, 0, data.length) != linesBefore[block + 1] - linesBefore[block]) {
+                throw new IOException("Блок " + block + " не совпадает с индексом: другое число строк");
+            }
+            cachedData = data;
+            cachedBlock = block;
+        }
+        return cachedData;
+    }
+
+    /**
+     * Таблицы начал блоков и строк по индексу
+     */
+    private void buildIndex() throws IOException {
+        if (blockStarts != null) {
+            return;
+        }
+        long[] starts = new long[blockCount + 1];
+        long[] lines = new long[blockCount + 1];
+        for (int i = 0; i < blockCount; i++) {
+            ByteBuffer entry = entry(i);
+            int length = entry.getInt(20);
+            int newlines = entry.getInt(32);
+            if (length < 0 || length > MAX_BLOCK_SIZE || newlines < 0 || newlines > length
+                    || entry.getLong(8) != starts[i]) {
+                throw new IOException("Запись индекса блока " + i + " повреждена");
+            }
+            starts[i + 1] = starts[i] + length;
+            lines[i + 1] = lines[i] + newlines;
+        }
+        if (starts[blockCount] != uncompressedSize) {
+            throw new IOException("Размер данных не совпадает с индексом");
+        }
+        blockStarts = starts;
+        linesBefore = lines;
+    }
+
+    /**
+     * Номер блока, в котором лежит позиция value: последний i, у которого table[i] &lt;= value
+     * (для строк - блок, где заканчивается строка номер value)
+     */
+    private int findBlock(long[] table, long value) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (table[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static String toLine(ByteArrayOutputStream line) {
+        byte[] bytes = line.toByteArray();
+        line.reset();
+        int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int countLines(byte[] data, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (data[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private ByteBuffer entry(int block) throws IOException {
+        if (block < 0 || block >= blockCount) {
+            throw new IndexOutOfBoundsException("Блок " + block + " из " + blockCount);
+        }
+        return region(indexOffset + (long) block * ENTRY_SIZE, ENTRY_SIZE);
+    }
+
+    /**
+     * Окно [position, position + length) файла: срез отображения или, если окно
+     * пересекает границу кусков отображения, копия
+     */
+    private ByteBuffer region(long position, int length) throws IOException {
+        int index = (int) (position / SEGMENT_SIZE);
+        long segmentStart = index * SEGMENT_SIZE;
+        if (position + length <= segmentStart + SEGMENT_SIZE) {
+            MappedByteBuffer segment = segments[index];
+            if (segment == null) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                    Math.min(SEGMENT_SIZE, fileSize - segmentStart));
+                segments[index] = segment;
+            }
+            return segment.slice((int) (position - segmentStart), length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer copy = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (copy.hasRemaining()) {
+            if (channel.read(copy, position + copy.position()) < 0) {
+                throw new IOException("Контейнер оборван");
+            }
+        }
+        return copy.flip();
+    }
+
+    private byte[] decode(ByteBuffer compressed, int length) throws IOException {
+        if (algorithm == Algorithm.GZIP) {
+            // Inflater читает прямо из отображенной памяти
+            Inflater inflater = CodecPool.borrowInflater(true);
+            try {
+                inflater.setInput(compressed.duplicate());
+                byte[] out = new byte[length];
+                int n = 0;
+                while (n < length && !inflater.finished()) {
+                    int read = inflater.inflate(out, n, length - n);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Поток deflate оборван");
+                    }
+                    n += read;
+                }
+                return n == length ? out : java.util.Arrays.copyOf(out, n);
+            } catch (DataFormatException e) {
+                throw new IOException("Поврежденные данные deflate: " + e.getMessage(), e);
+            } finally {
+                CodecPool.releaseInflater(inflater, true);
+            }
+        }
+        byte[] bytes = new byte[compressed.remaining()];
+        compressed.duplicate().get(bytes);
+        return AdvancedCompressor.decompressBytes(bytes, algorithm);
+    }
+
+    private static byte[] encode(byte[] data, int length, Algorithm algorithm, int level) throws IOException {
+        if (algorithm == Algorithm.GZIP) {
+            Deflater deflater = CodecPool.borrowDeflater(level, true);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] buffer = new byte[TextStreams.BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                CodecPool.releaseDeflater(deflater, true);
+            }
+        }
+        byte[] block = length == data.length ? data : java.util.Arrays.copyOf(data, length);
+        return AdvancedCompressor.compressBytes(block, algorithm, level);
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int length) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(from + length).position(from);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    // ------------------------------------------------------------------ запись
+
+    /**
+     * Потоковая запись контейнера: данные копятся до размера блока, каждый блок
+     * сжимается отдельно; индекс и концовка пишутся при close(). Блоки независимы, поэтому
+     * сжимаются параллельно на ForkJoinPool.commonPool(), а в файл пишутся по порядку; в
+     * работе не больше двух блоков на поток, так что память не зависит от размера входа
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final Algorithm algorithm;
+        private final int level;
+        private final int maxPending = 2 * ForkJoinPool.getCommonPoolParallelism();
+        private final ArrayDeque<Future<Encoded>> pending = new ArrayDeque<>();
+        /** Буферы уже записанных блоков для повторного использования */
+        private final ArrayDeque<byte[]> spare = new ArrayDeque<>();
+        private byte[] block;
+        private int filled;
+        private long position = HEADER_SIZE;
+        private long uncompressed;
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private boolean closed;
+
+        public Writer(Path file, Algorithm algorithm, int level, int blockSize) throws IOException {
+            if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Размер блока должен быть от 1 до " + MAX_BLOCK_SIZE);
+            }
+            int codec = java.util.Arrays.asList(CODECS).indexOf(algorithm);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            this.algorithm = algorithm;
+            this.level = level;
+            this.block = new byte[blockSize];
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).put((byte) VERSION).put((byte) codec).put((byte) level).put((byte) 0).putInt(blockSize);
+            header.putInt(crc(header, 0, 12));
+            writeFully(header.flip(), 0);
+        }
+
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int n = Math.min(length, block.length - filled);
+                System.arraycopy(data, offset, block, filled, n);
+                filled += n;
+                offset += n;
+                length -= n;
+                if (filled == block.length) {
+                    flushBlock();
+                }
+            }
+        }
+
+        public void write(String text) throws IOException {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            write(utf8, 0, utf8.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (filled > 0) {
+                    flushBlock();
+                }
+                while (!pending.isEmpty()) {
+                    writeBlock(await(pending.poll()));
+                }
+                byte[] entries = index.toByteArray();
+                writeFully(ByteBuffer.wrap(entries), position);
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                footer.putLong(position).putInt(entries.length / ENTRY_SIZE)
+                    .putInt(crc(ByteBuffer.wrap(entries), 0, entries.length))
+                    .putLong(uncompressed).put(FOOTER_MAGIC);
+                writeFully(footer.flip(), position + entries.length);
+            } finally {
+                for (Future<Encoded> task : pending) {
+                    task.cancel(true);
+                }
+                channel.close();
+            }
+        }
+
+        /** Отдает полный блок в пул; при очереди в maxPending ждет и пишет самый старый */
+        private void flushBlock() throws IOException {
+            byte[] data = block;
+            int length = filled;
+            pending.add(ForkJoinPool.commonPool().submit(() -> new Encoded(data, length,
+                encode(data, length, algorithm, level))));
+            block = spare.isEmpty() ? new byte[data.length] : spare.poll();
+            filled = 0;
+            while (pending.size() >= maxPending) {
+                writeBlock(await(pending.poll()));
+            }
+        }
+
+        private void writeBlock(Encoded encoded) throws IOException {
+            byte[] compressed = encoded.compressed;
+            writeFully(ByteBuffer.wrap(compressed), position);
+
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            entry.putLong(position).putLong(uncompressed).putInt(compressed.length).putInt(encoded.length)
+                .putInt(crc(ByteBuffer.wrap(compressed), 0, compressed.length))
+                .putInt(encoded.crc).putInt(encoded.lines);
+            index.write(entry.array(), 0, ENTRY_SIZE);
+
+            position += compressed.length;
+            uncompressed += encoded.length;
+            spare.add(encoded.data);
+            // Блок сжат в пуле, а Progress привязан к потоку: сообщаем отсюда
+            Progress.advance(encoded.length);
+        }
+
+        private static Encoded await(Future<Encoded> task) throws IOException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Запись контейнера прервана", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Ошибка сжатия блока: " + cause.getMessage(), cause);
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+        }
+    }
+
+    /** Сжатый блок и поля его записи в индексе; CRC и строки считаются в том же потоке, что и сжатие */
+    private static final class Encoded {
+        final byte[] data;
+        final int length;
+        final byte[] compressed;
+        final int crc;
+        final int lines;
+
+        Encoded(byte[] data, int length, byte[] compressed) {
+            this.data = data;
+            this.length = length;
+            this.compressed = compressed;
+            this.crc = crc(ByteBuffer.wrap(data), 0, length);
+            this.lines = countLines(data, 0, length);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Кодировка сжатых байтов в текст. Имя кодировки пишется в конверт (JSON) рядом
+ * с данными, и распаковка выбирает декодер по нему; без имени - Base64
+ */
+public enum TextEncoding {
+    /** +33%, понимают все */
+    BASE64("base64", "Base64", true) {
+        @Override
+        public String encode(byte[] data) {
+            return Base64.getEncoder().encodeToString(data);
+        }
+
+        @Override
+        public byte[] decode(CharSequence text) throws IOException {
+            // ASCII-байты прямо из CharSequence: без промежуточной строки
+            byte[] ascii = new byte[text.length()];
+            for (int i = 0; i < ascii.length; i++) {
+                char c = text.charAt(i);
+                ascii[i] = c < 0x80 ? (byte) c : (byte) ' ';
+            }
+            try {
+                return Base64.getMimeDecoder().decode(ascii);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Некорректные Base64 данные: " + e.getMessage(), e);
+            }
+        }
+    },
+    /** +25%, алфавит без кавычек и обратной косой черты */
+    Z85("z85", "Z85", true) {
+        @Override
+        public String encode(byte[] data) {
+            return Base85.encodeZ85(data);
+        }
+
+        @Override
+        public byte[] decode(CharSequence text) throws IOException {
+            return Base85.decodeZ85(text);
+        }
+    },
+    /** +25% (меньше на нулевых блоках), но в JSON кавычки и \ экранируются */
+    ASCII85("ascii85", "Ascii85", false) {
+        @Override
+        public String encode(byte[] data) {
+            return Base85.encodeAscii85(data);
+        }
+
+        @Override
+        public byte[] decode(CharSequence text) throws IOException {
+            return Base85.decodeAscii85(text);
+        }
+    },
+    /** +14% в байтах UTF-8; управляющие символы в JSON экранируются */
+    BASE122("base122", "Base-122", false) {
+        @Override
+        public String encode(byte[] data) {
+            return Base122.encode(data);
+        }
+
+        @Override
+        public byte[] decode(CharSequence text) throws IOException {
+            return Base122.decode(text);
+        }
+    },
+    /** 15 бит на символ - для полей с ограничением по числу символов */
+    BASE32768("base32768", "Base32768", true) {
+        @Override
+        public String encode(byte[] data) {
+            return Base32768.encode(data);
+        }
+
+        @Override
+        public byte[] decode(CharSequence text) throws IOException {
+            return Base32768.decode(text);
+        }
+    };
+
+    private final String name;
+    private final String title;
+    private final boolean jsonSafe;
+
+    TextEncoding(String name, String title, boolean jsonSafe) {
+        this.name = name;
+        this.title = title;
+        this.jsonSafe = jsonSafe;
+    }
+
+    /** Имя в конверте */
+    public String getName() { return name; }
+
+    /** Название для людей и инструкций чат-боту */
+    public String getTitle() { return title; }
+
+    /** Выход кодировки можно вставить в строку JSON без экранирования */
+    public boolean isJsonSafe() { return jsonSafe; }
+
+    public abstract String encode(byte[] data);
+
+    public abstract byte[] decode(CharSequence text) throws IOException;
+
+    /**
+     * Кодировка по имени из конверта; null - Base64 (конверты старых версий)
+     */
+    public static TextEncoding forName(String name) throws IOException {
+        if (name == null) {
+            return BASE64;
+        }
+        for (TextEncoding e : values()) {
+            if (e.name.equalsIgnoreCase(name)) {
+                return e;
+            }
+        }
+        throw new IOException("Неизвестная кодировка данных: " + name);
+    }
+}
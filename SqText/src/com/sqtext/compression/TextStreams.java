@@ -0,0 +1,150 @@
+package com.sqtext.compression;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Вспомогательные адаптеры для потокового сжатия.
+ * Base64 - это ASCII, поэтому между байтами и символами конвертируем без кодировщиков
+ */
+final class TextStreams {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private TextStreams() {
+    }
+
+    /**
+     * Копирует поток байт целиком, возвращает количество байт
+     */
+    static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+            total += len;
+        }
+        return total;
+    }
+
+    /**
+     * Копирует поток символов целиком, возвращает количество символов
+     */
+    static long copy(Reader in, Writer out) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        long total = 0;
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+            total += len;
+        }
+        return total;
+    }
+
+    /**
+     * Поток, который при закрытии только сбрасывает буфер, а чужой поток не закрывает
+     */
+    static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Поток, закрытие которого не закрывает исходный поток
+     */
+    static InputStream nonClosing(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public void close() {
+                // Исходный поток закрывает тот, кто его открыл
+            }
+        };
+    }
+
+    /**
+     * Пишет ASCII-байты (Base64 и т.п.) как символы в Writer
+     */
+    static OutputStream asciiOutput(Writer writer) {
+        return new OutputStream() {
+            private final char[] chars = new char[BUFFER_SIZE];
+
+            @Override
+            public void write(int b) throws IOException {
+                writer.write(b & 0x7F);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, chars.length);
+                    for (int i = 0; i < n; i++) {
+                        chars[i] = (char) (b[off + i] & 0x7F);
+                    }
+                    writer.write(chars, 0, n);
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * Читает символы из Reader как ASCII-байты.
+     * Символы вне ASCII превращаются в пробел, чтобы MIME-декодер Base64 их пропустил
+     */
+    static InputStream asciiInput(Reader reader) {
+        return new InputStream() {
+            private final char[] chars = new char[BUFFER_SIZE];
+
+            @Override
+            public int read() throws IOException {
+                int c = reader.read();
+                if (c == -1) {
+                    return -1;
+                }
+                return c < 0x80 ? c : ' ';
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int n = reader.read(chars, 0, Math.min(len, chars.length));
+                if (n == -1) {
+                    return -1;
+                }
+                for (int i = 0; i < n; i++) {
+                    char c = chars[i];
+                    b[off + i] = (byte) (c < 0x80 ? c : ' ');
+                }
+                return n;
+            }
+        };
+    }
+}
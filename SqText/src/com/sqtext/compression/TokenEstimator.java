@@ -0,0 +1,485 @@
+package com.sqtext.compression;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Оценка числа токенов, которые текст займет в контексте чат-бота. Работает локально.
+ * Словарь в формате tiktoken (строка "токен-в-Base64 ранг"), разбиение на куски -
+ * регулярное выражение cl100k. Поэтому, положив настоящий cl100k_base.tiktoken,
+ * можно получить точный счет; встроенный словарь обучен на переписке и коде SqText
+ * и дает оценку того же порядка
+ */
+public class TokenEstimator {
+
+    private static final String BUILT_IN_RESOURCE = "token-vocab.tiktoken";
+
+    /** До этой длины (символов) estimate считает точно, длиннее - по выборке */
+    public static final int EXACT_LIMIT = 1 << 20;
+    private static final int SAMPLE_SLICES = 8;
+    private static final int SAMPLE_SLICE = 32 * 1024;
+
+    /** Разбиение текста на куски до BPE (как в cl100k) */
+    private static final Pattern PIECES = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+            + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+        Pattern.UNICODE_CHARACTER_CLASS);
+
+    private static volatile TokenEstimator builtIn;
+
+    // Токены подряд в одном массиве и хеш-таблица "байты токена -> ранг"
+    private final byte[] tokenData;
+    private final int[] tokenOffset;
+    private final int[] tokenLength;
+    private final int[] slots;
+    private final int mask;
+
+    private TokenEstimator(List<byte[]> tokens) {
+        int total = 0;
+        for (byte[] t : tokens) {
+            total += t.length;
+        }
+        tokenData = new byte[total];
+        tokenOffset = new int[tokens.size()];
+        tokenLength = new int[tokens.size()];
+        int capacity = Integer.highestOneBit(Math.max(16, tokens.size() * 2)) * 2;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        int pos = 0;
+        for (int rank = 0; rank < tokens.size(); rank++) {
+            byte[] t = tokens.get(rank);
+            System.arraycopy(t, 0, tokenData, pos, t.length);
+            tokenOffset[rank] = pos;
+            tokenLength[rank] = t.length;
+            pos += t.length;
+            if (t.length > 0 && rank(tokenData, tokenOffset[rank], pos) == -1) {
+                int slot = hash(tokenData, tokenOffset[rank], pos) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = rank + 1;
+            }
+        }
+    }
+
+    /**
+     * Встроенный словарь (обучен на переписке и исходниках SqText)
+     */
+    public static TokenEstimator getDefault() throws IOException {
+        TokenEstimator e = builtIn;
+        if (e == null) {
+            synchronized (TokenEstimator.class) {
+                e = builtIn;
+                if (e == null) {
+                    try (InputStream in = TokenEstimator.class.getResourceAsStream(BUILT_IN_RESOURCE)) {
+                        if (in == null) {
+                            throw new IOException("Не найден словарь токенов " + BUILT_IN_RESOURCE);
+                        }
+                        e = read(new InputStreamReader(in, StandardCharsets.US_ASCII));
+                    }
+                    builtIn = e;
+                }
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Словарь tiktoken из файла (например, cl100k_base.tiktoken)
+     */
+    public static TokenEstimator load(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            return read(in);
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            Base64.Encoder base64 = Base64.getEncoder();
+            for (int rank = 0; rank < tokenOffset.length; rank++) {
+                byte[] t = Arrays.copyOfRange(tokenData, tokenOffset[rank], tokenOffset[rank] + tokenLength[rank]);
+                out.write(base64.encodeToString(t) + " " + rank + "\n");
+            }
+        }
+    }
+
+    public int vocabularySize() {
+        return tokenOffset.length;
+    }
+
+    /**
+     * Сколько токенов займет текст
+     */
+    public int count(CharSequence text) {
+        Matcher m = PIECES.matcher(text);
+        byte[] buffer = new byte[64];
+        int tokens = 0;
+        while (m.find()) {
+            int needed = (m.end() - m.start()) * 3;
+            if (needed > buffer.length) {
+                buffer = new byte[Math.max(needed, buffer.length * 2)];
+            }
+            int length = encodeUtf8(text, m.start(), m.end(), buffer);
+            tokens += countPiece(buffer, length);
+        }
+        return tokens;
+    }
+
+    /**
+     * Число токенов для текста любой длины: до EXACT_LIMIT символов - точно, как count,
+     * длиннее - по SAMPLE_SLICES срезам, разнесенным по всему тексту, с пересчетом на длину.
+     * BPE идет около 8 МБ/с, поэтому без выборки многомегабайтный текст считался бы секундами
+     */
+    public int estimate(CharSequence text) {
+        int length = text.length();
+        if (length <= EXACT_LIMIT) {
+            return count(text);
+        }
+        long tokens = 0;
+        long step = (length - SAMPLE_SLICE) / (SAMPLE_SLICES - 1);
+        for (int i = 0; i < SAMPLE_SLICES; i++) {
+            int from = (int) (i * step);
+            tokens += count(text.subSequence(from, from + SAMPLE_SLICE));
+        }
+        return (int) Math.min(Integer.MAX_VALUE,
+            Math.round((double) tokens * length / ((long) SAMPLE_SLICES * SAMPLE_SLICE)));
+    }
+
+    // ------------------------------------------------------------------ BPE
+
+    /**
+     * Число токенов куска: слияния пар по возрастанию ранга, как в tiktoken.
+     * Пары лежат в куче (ранг, позиция); устаревшие записи отбрасываются при извлечении
+     */
+    private int countPiece(byte[] b, int length) {
+        if (length <= 1 || rank(b, 0, length) != -1) {
+            return 1;
+        }
+        int[] next = new int[length + 1];
+        int[] prev = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            next[i] = i + 1;
+            prev[i] = i - 1;
+        }
+        long[] heap = new long[length];
+        int heapSize = 0;
+        for (int i = 0; i + 2 <= length; i++) {
+            int r = rank(b, i, i + 2);
+            if (r != -1) {
+                heapSize = push(heap, heapSize, (long) r << 32 | i);
+            }
+        }
+        int parts = length;
+        boolean[] dead = new boolean[length + 1];
+        while (heapSize > 0) {
+            long top = heap[0];
+            heapSize = pop(heap, heapSize);
+            int i = (int) top;
+            int r = (int) (top >>> 32);
+            if (dead[i]) {
+                continue;
+            }
+            int j = next[i];
+            if (j >= length) {
+                continue;
+            }
+            int k = next[j];
+            if (rank(b, i, k) != r) {
+                continue;
+            }
+            // Сливаем части [i, j) и [j, k)
+            dead[j] = true;
+            next[i] = k;
+            prev[k] = i;
+            parts--;
+            if (prev[i] >= 0) {
+                int pr = rank(b, prev[i], k);
+                if (pr != -1) {
+                    heap = ensure(heap, heapSize);
+                    heapSize = push(heap, heapSize, (long) pr << 32 | prev[i]);
+                }
+            }
+            if (k < length) {
+                int nr = rank(b, i, next[k]);
+                if (nr != -1) {
+                    heap = ensure(heap, heapSize);
+                    heapSize = push(heap, heapSize, (long) nr << 32 | i);
+                }
+            }
+        }
+        return parts;
+    }
+
+    private int rank(byte[] b, int from, int to) {
+        int slot = hash(b, from, to) & mask;
+        int length = to - from;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int rank = entry - 1;
+            if (tokenLength[rank] == length
+                    && Arrays.equals(tokenData, tokenOffset[rank], tokenOffset[rank] + length, b, from, to)) {
+                return rank;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(byte[] b, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (b[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 15);
+    }
+
+    private static long[] ensure(long[] heap, int size) {
+        return size < heap.length ? heap : Arrays.copyOf(heap, heap.length * 2);
+    }
+
+    private static int push(long[] heap, int size, long value) {
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+        return size + 1;
+    }
+
+    private static int pop(long[] heap, int size) {
+        long last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return size;
+    }
+
+    private static int encodeUtf8(CharSequence s, int from, int to, byte[] out) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int c = s.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | c >> 6);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < to
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint((char) c, s.charAt(++i));
+                out[n++] = (byte) (0xF0 | cp >> 18);
+                out[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                out[n++] = (byte) (0xE0 | c >> 12);
+                out[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return n;
+    }
+
+    private static TokenEstimator read(Reader reader) throws IOException {
+        List<byte[]> tokens = new ArrayList<>();
+        BufferedReader in = new BufferedReader(reader);
+        Base64.Decoder base64 = Base64.getDecoder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            try {
+                int rank = Integer.parseInt(line.substring(space + 1));
+                byte[] token = base64.decode(line.substring(0, space));
+                while (tokens.size() <= rank) {
+                    tokens.add(new byte[0]);
+                }
+                tokens.set(rank, token);
+            } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                throw new IOException("Некорректная строка словаря токенов: " + line, e);
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw new IOException("Словарь токенов пуст");
+        }
+        return new TokenEstimator(tokens);
+    }
+
+    // ------------------------------------------------------------------ обучение
+
+    /**
+     * Обучает байтовый BPE: 256 однобайтовых токенов плюс слияния самых частых пар
+     * внутри кусков, пока словарь не достигнет vocabularySize
+     */
+    public static TokenEstimator train(List<String> samples, int vocabularySize) {
+        Map<String, Integer> pieceCounts = new HashMap<>();
+        for (String sample : samples) {
+            Matcher m = PIECES.matcher(sample);
+            while (m.find()) {
+                // Байты куска в строке ISO-8859-1 - удобный ключ для HashMap
+                String piece = new String(m.group().getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+                pieceCounts.merge(piece, 1, Integer::sum);
+            }
+        }
+        List<byte[]> tokens = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            tokens.add(new byte[] {(byte) i});
+        }
+        int n = pieceCounts.size();
+        int[][] symbols = new int[n][];
+        int[] lengths = new int[n];
+        int[] counts = new int[n];
+        int index = 0;
+        for (Map.Entry<String, Integer> e : pieceCounts.entrySet()) {
+            String piece = e.getKey();
+            symbols[index] = new int[piece.length()];
+            for (int i = 0; i < piece.length(); i++) {
+                symbols[index][i] = piece.charAt(i);
+            }
+            lengths[index] = piece.length();
+            counts[index] = e.getValue();
+            index++;
+        }
+
+        Map<Long, Integer> pairCounts = new HashMap<>();
+        Map<Long, Set<Integer>> pairPieces = new HashMap<>();
+        for (int p = 0; p < n; p++) {
+            addPairs(p, symbols, lengths, counts, pairCounts, pairPieces, 1);
+        }
+        while (tokens.size() < vocabularySize) {
+            long best = -1;
+            int bestCount = 1;
+            for (Map.Entry<Long, Integer> e : pairCounts.entrySet()) {
+                int c = e.getValue();
+                if (c > bestCount || c == bestCount && best != -1 && e.getKey() < best) {
+                    best = e.getKey();
+                    bestCount = c;
+                }
+            }
+            if (best == -1) {
+                break;
+            }
+            int a = (int) (best >>> 32);
+            int b = (int) best;
+            int merged = tokens.size();
+            byte[] ta = tokens.get(a);
+            byte[] tb = tokens.get(b);
+            byte[] t = Arrays.copyOf(ta, ta.length + tb.length);
+            System.arraycopy(tb, 0, t, ta.length, tb.length);
+            tokens.add(t);
+
+            for (int p : new ArrayList<>(pairPieces.get(best))) {
+                addPairs(p, symbols, lengths, counts, pairCounts, pairPieces, -1);
+                int[] s = symbols[p];
+                int w = 0;
+                for (int r = 0; r < lengths[p]; r++) {
+                    if (r + 1 < lengths[p] && s[r] == a && s[r + 1] == b) {
+                        s[w++] = merged;
+                        r++;
+                    } else {
+                        s[w++] = s[r];
+                    }
+                }
+                lengths[p] = w;
+                addPairs(p, symbols, lengths, counts, pairCounts, pairPieces, 1);
+            }
+        }
+        return new TokenEstimator(tokens);
+    }
+
+    private static void addPairs(int p, int[][] symbols, int[] lengths, int[] counts,
+                                 Map<Long, Integer> pairCounts, Map<Long, Set<Integer>> pairPieces, int sign) {
+        int[] s = symbols[p];
+        for (int i = 0; i + 1 < lengths[p]; i++) {
+            long key = (long) s[i] << 32 | s[i + 1];
+            int c = pairCounts.getOrDefault(key, 0) + sign * counts[p];
+            if (c > 0) {
+                pairCounts.put(key, c);
+            } else {
+                pairCounts.remove(key);
+            }
+            if (sign > 0) {
+                pairPieces.computeIfAbsent(key, k -> new HashSet<>()).add(p);
+            } else {
+                Set<Integer> where = pairPieces.get(key);
+                if (where != null) {
+                    where.remove(p);
+                    if (where.isEmpty()) {
+                        pairPieces.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Командная строка:
+     * TokenEstimator train &lt;каталог&gt;... &lt;файл словаря&gt; &lt;размер&gt; - обучить словарь;
+     * TokenEstimator count &lt;файл&gt;... - посчитать токены встроенным словарем
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 4 && "train".equals(args[0])) {
+            int size = Integer.parseInt(args[args.length - 1]);
+            List<String> samples = new ArrayList<>();
+            for (int i = 1; i < args.length - 2; i++) {
+                for (byte[] sample : DictionaryTrainer.collectSamples(Paths.get(args[i]))) {
+                    samples.add(new String(sample, StandardCharsets.UTF_8));
+                }
+            }
+            TokenEstimator estimator = train(samples, size);
+            estimator.save(Paths.get(args[args.length - 2]));
+            System.out.println("Словарь токенов: " + estimator.vocabularySize() + " токенов, "
+                + samples.size() + " образцов");
+        } else if (args.length >= 2 && "count".equals(args[0])) {
+            TokenEstimator estimator = getDefault();
+            for (int i = 1; i < args.length; i++) {
+                String text = new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8);
+                System.out.println(args[i] + ": " + text.length() + " символов, " + estimator.count(text) + " токенов");
+            }
+        } else {
+            System.err.println("Использование: TokenEstimator train <каталог>... <файл словаря> <размер>");
+            System.err.println("               TokenEstimator count <файл>...");
+            System.exit(2);
+        }
+    }
+}
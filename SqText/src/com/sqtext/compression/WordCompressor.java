@@ -0,0 +1,56 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.sqtext.compression.AdvancedCompressor.Algorithm;
+
+/**
+ * Формат sqz-words: частые слова (встроенный словарь русских форм и слов Java, плюс
+ * повторяющиеся слова самого документа) заменяются короткими кодами WordTransform,
+ * результат жмется обычным кодеком. Разбор данных возможен только тем же словарем,
+ * поэтому в конверт пишется его XXH64
+ */
+public final class WordCompressor {
+    static final String FORMAT = "sqz-words";
+
+    private WordCompressor() {
+    }
+
+    /**
+     * Сжимает GZIP с уровнем по умолчанию
+     */
+    public static String compress(String text, TextEncoding encoding) throws IOException {
+        return compress(text, Algorithm.GZIP, AdvancedCompressor.defaultLevel(Algorithm.GZIP), encoding);
+    }
+
+    public static String compress(String text, Algorithm algorithm, int level, TextEncoding encoding) throws IOException {
+        long startTime = System.currentTimeMillis();
+        WordTransform.Dictionary dictionary = WordTransform.getDictionary();
+        WordTransform transform = WordTransform.encode(text, dictionary);
+        byte[] transformed = transform.toByteArray();
+        String compressed = encoding.encode(AdvancedCompressor.compressBytes(transformed, algorithm, level));
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        return Envelope.Writer.forCodec(FORMAT, algorithm, level, encoding, compressed.length())
+            .field("original", text.length())
+            .field("transformed", transformed.length)
+            .field("words", transform.getWords())
+            .field("dynamic", transform.getDynamicWords())
+            .field("dictionary", String.format("%016x", dictionary.id))
+            .field("hash", Envelope.hash(utf8, utf8.length))
+            .field("time_ms", System.currentTimeMillis() - startTime)
+            .field("data", compressed)
+            .finish();
+    }
+
+    static String decompress(Envelope envelope) throws IOException {
+        WordTransform.Dictionary dictionary = WordTransform.getDictionary();
+        String id = envelope.get("dictionary");
+        if (id != null && !id.equals(String.format("%016x", dictionary.id))) {
+            throw new IOException("Данные sqz-words сжаты другой версией словаря слов");
+        }
+        String text = WordTransform.decode(envelope.decodeData(), dictionary);
+        envelope.verifyHash(text);
+        return text;
+    }
+}
\ No newline at end of file
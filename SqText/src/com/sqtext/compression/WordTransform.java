@@ -0,0 +1,496 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Обратимая замена слов кодами (в духе XWRT) перед энтропийным кодеком. Текст
+ * остается UTF-8, а слова (серии букв) из словаря заменяются кодом в 1-3 байта.
+ * Коды берутся из байтов, которых в UTF-8 нет (C0, C1, F5..FF) или почти не бывает
+ * (управляющие, кроме \t \n \r); такой байт в самом тексте экранируется.
+ * <pre>
+ * ESC x         - байт x как есть
+ * CAP, UPPER    - следующее слово с заглавной буквы / прописными
+ * один байт     - одно из самых частых слов документа (список hot в заголовке)
+ * p x, p x y    - слово по номеру: статический словарь, затем словарь документа
+ * </pre>
+ * Статический словарь (word-dictionary.txt: частые русские формы, ключевые слова и
+ * имена Java, английские слова из журналов) - в нижнем регистре; словарь документа -
+ * слова, которые повторяются и окупают место в заголовке
+ */
+final class WordTransform {
+    static final String RESOURCE = "word-dictionary.txt";
+
+    /** Байты кодов: сначала невозможные в UTF-8 (их не нужно экранировать), затем управляющие */
+    private static final int[] CODES = {
+        0xF5, 0xF6, 0xF7, 0xF8, 0xF9, 0xFA, 0xFB, 0xFC, 0xFD, 0xFE, 0xFF, 0xC0, 0xC1,
+        0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x0B, 0x0C, 0x0E, 0x0F,
+        0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17, 0x18, 0x19, 0x1A, 0x1B,
+        0x1C, 0x1D, 0x1E, 0x1F, 0x7F, 0x00
+    };
+    private static final int SHORT_CODES = 24;
+    private static final int LONG_PREFIXES = 2;
+    private static final int MEDIUM_PREFIXES = CODES.length - 3 - SHORT_CODES - LONG_PREFIXES;
+    /** Номера ниже MEDIUM кодируются двумя байтами, остальные тремя */
+    private static final int MEDIUM = MEDIUM_PREFIXES << 8;
+    private static final int LIMIT = MEDIUM + (LONG_PREFIXES << 16);
+    /** Экранирующий байт - последний в CODES */
+    private static final int ESCAPE = 0x00;
+
+    // Роли байтов в decode
+    private static final int LITERAL = 0;
+    private static final int ESC = 1;
+    private static final int CAP = 2;
+    private static final int UPPER = 3;
+    private static final int SHORT = 4;
+    private static final int MEDIUM_PREFIX = 5;
+    private static final int LONG_PREFIX = 6;
+    private static final byte[] ROLE = new byte[256];
+    private static final byte[] VALUE = new byte[256];
+    private static final int[] SHORT_BYTE = new int[SHORT_CODES];
+
+    static {
+        int c = 0;
+        ROLE[CODES[c++]] = CAP;
+        ROLE[CODES[c++]] = UPPER;
+        for (int i = 0; i < SHORT_CODES; i++, c++) {
+            ROLE[CODES[c]] = SHORT;
+            VALUE[CODES[c]] = (byte) i;
+            SHORT_BYTE[i] = CODES[c];
+        }
+        for (int i = 0; i < MEDIUM_PREFIXES; i++, c++) {
+            ROLE[CODES[c]] = MEDIUM_PREFIX;
+            VALUE[CODES[c]] = (byte) i;
+        }
+        for (int i = 0; i < LONG_PREFIXES; i++, c++) {
+            ROLE[CODES[c]] = LONG_PREFIX;
+            VALUE[CODES[c]] = (byte) i;
+        }
+        ROLE[CODES[c]] = ESC;
+    }
+
+    private static volatile Dictionary builtIn;
+
+    private final ByteSink out;
+    private int words;
+    private int dynamicWords;
+    /** Разные слова документа и открытая адресация по ним (номер + 1) */
+    private Word[] forms = new Word[256];
+    private int formCount;
+    private int[] slots = new int[512];
+
+    private WordTransform(int capacity) {
+        out = new ByteSink(capacity);
+    }
+
+    /** Встроенный словарь: номер слова по порядку строк ресурса */
+    static final class Dictionary {
+        final String[] words;
+        final Map<String, Integer> index;
+        /** XXH64 ресурса: сжатые данные годятся только для того же словаря */
+        final long id;
+
+        private Dictionary(byte[] data) {
+            String[] lines = new String(data, StandardCharsets.UTF_8).split("\n");
+            List<String> list = new ArrayList<>(lines.length);
+            index = new HashMap<>(lines.length * 2);
+            for (String line : lines) {
+                String word = line.trim();
+                if (!word.isEmpty() && index.putIfAbsent(word, list.size()) == null) {
+                    list.add(word);
+                }
+            }
+            words = list.toArray(new String[0]);
+            id = XxHash64.hash(data, 0, data.length, 0);
+        }
+    }
+
+    static Dictionary getDictionary() throws IOException {
+        Dictionary d = builtIn;
+        if (d == null) {
+            synchronized (WordTransform.class) {
+                d = builtIn;
+                if (d == null) {
+                    try (InputStream in = WordTransform.class.getResourceAsStream(RESOURCE)) {
+                        if (in == null) {
+                            throw new IOException("Не найден словарь слов " + RESOURCE);
+                        }
+                        d = new Dictionary(in.readAllBytes());
+                    }
+                    builtIn = d;
+                }
+            }
+        }
+        return d;
+    }
+
+    /** Разное написание слова в документе */
+    private static final class Word {
+        final String text;
+        final int hash;
+        int count;
+        /** Номер в общем словаре (статический, затем документа) или -1 */
+        int index = -1;
+        int flag;
+        byte[] utf8;
+
+        Word(String text, int hash) {
+            this.text = text;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Заменяет слова текста кодами
+     */
+    static WordTransform encode(String text, Dictionary dictionary) {
+        char[] chars = text.toCharArray();
+        WordTransform transform = new WordTransform(chars.length + chars.length / 4 + 64);
+        transform.run(chars, dictionary);
+        return transform;
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    /** Слов, замененных кодом */
+    int getWords() { return words; }
+
+    /** Размер словаря документа */
+    int getDynamicWords() { return dynamicWords; }
+
+    private void run(char[] text, Dictionary dictionary) {
+        // Проход 1: слова и их частоты; на слово - начало, конец и номер формы
+        int[] tokens = new int[96];
+        int n = text.length;
+        int i = 0;
+        int count = 0;
+        while (i < n) {
+            if (!isLetter(text[i])) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int hash = 0;
+            while (i < n && isLetter(text[i])) {
+                hash = 31 * hash + text[i++];
+            }
+            int form = find(text, start, i, hash);
+            forms[form].count++;
+            if (count * 3 == tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[count * 3] = start;
+            tokens[count * 3 + 1] = i;
+            tokens[count * 3 + 2] = form;
+            count++;
+        }
+
+        // Статический словарь: слово в нижнем регистре, с заглавной или прописными
+        List<Word> candidates = new ArrayList<>();
+        for (int f = 0; f < formCount; f++) {
+            Word word = forms[f];
+            String lower = word.text.toLowerCase(Locale.ROOT);
+            Integer rank = dictionary.index.get(lower);
+            if (rank != null) {
+                if (word.text.equals(lower)) {
+                    word.index = rank;
+                } else if (word.text.equals(capitalize(lower))) {
+                    word.index = rank;
+                    word.flag = CAP;
+                } else if (word.text.equals(lower.toUpperCase(Locale.ROOT))) {
+                    word.index = rank;
+                    word.flag = UPPER;
+                }
+            }
+            word.utf8 = word.text.getBytes(StandardCharsets.UTF_8);
+            // Слово документа окупается, если двухбайтовый код короче и заголовок отыгран
+            if (word.index < 0 && word.count >= 2
+                && (long) word.count * (word.utf8.length - 2) > word.utf8.length + 1) {
+                candidates.add(word);
+            }
+        }
+        candidates.sort((a, b) -> b.count != a.count ? Integer.compare(b.count, a.count) : a.text.compareTo(b.text));
+        int next = dictionary.words.length;
+        ByteSink header = new ByteSink(256);
+        int dynamic = Math.min(candidates.size(), LIMIT - next);
+        writeVarint(header, dynamic);
+        for (int k = 0; k < dynamic; k++) {
+            Word word = candidates.get(k);
+            word.index = next++;
+            header.write(word.utf8, 0, word.utf8.length);
+            header.write('\n');
+        }
+        dynamicWords = dynamic;
+
+        // Самые частые слова документа получают однобайтовые коды
+        Map<Integer, Integer> uses = new HashMap<>();
+        for (int f = 0; f < formCount; f++) {
+            Word word = forms[f];
+            if (word.index >= 0) {
+                uses.merge(word.index, word.count, Integer::sum);
+            }
+        }
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(uses.entrySet());
+        ranked.sort((a, b) -> !a.getValue().equals(b.getValue())
+            ? Integer.compare(b.getValue(), a.getValue()) : Integer.compare(a.getKey(), b.getKey()));
+        int hotCount = Math.min(SHORT_CODES, ranked.size());
+        Map<Integer, Integer> hot = new HashMap<>();
+        writeVarint(header, hotCount);
+        for (int k = 0; k < hotCount; k++) {
+            int index = ranked.get(k).getKey();
+            hot.put(index, k);
+            writeVarint(header, index);
+        }
+        out.write(header.buffer(), 0, header.size());
+
+        // Проход 2: текст с кодами вместо слов
+        int from = 0;
+        for (int k = 0; k < count; k++) {
+            literal(text, from, tokens[k * 3]);
+            from = tokens[k * 3 + 1];
+            Word word = forms[tokens[k * 3 + 2]];
+            Integer shortCode = word.index < 0 ? null : hot.get(word.index);
+            int length = word.index < 0 ? Integer.MAX_VALUE
+                : (shortCode != null ? 1 : word.index < MEDIUM ? 2 : 3) + (word.flag != 0 ? 1 : 0);
+            if (length >= word.utf8.length) {
+                out.write(word.utf8, 0, word.utf8.length);
+                continue;
+            }
+            words++;
+            if (word.flag != 0) {
+                out.write(CODES[word.flag - CAP]);
+            }
+            if (shortCode != null) {
+                out.write(SHORT_BYTE[shortCode]);
+            } else if (word.index < MEDIUM) {
+                out.write(CODES[2 + SHORT_CODES + (word.index >>> 8)]);
+                out.write(word.index);
+            } else {
+                int index = word.index - MEDIUM;
+                out.write(CODES[2 + SHORT_CODES + MEDIUM_PREFIXES + (index >>> 16)]);
+                out.write(index >>> 8);
+                out.write(index);
+            }
+        }
+        literal(text, from, n);
+    }
+
+    /** Номер формы text[from, to), новая форма добавляется */
+    private int find(char[] text, int from, int to, int hash) {
+        int length = to - from;
+        int mask = slots.length - 1;
+        int slot = slot(hash);
+        while (true) {
+            int form = slots[slot] - 1;
+            if (form < 0) {
+                return add(new Word(new String(text, from, length), hash), slot);
+            }
+            Word word = forms[form];
+            if (word.hash == hash && word.text.length() == length && matches(text, from, word.text)) {
+                return form;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int add(Word word, int slot) {
+        if (formCount == forms.length) {
+            forms = Arrays.copyOf(forms, formCount * 2);
+        }
+        forms[formCount] = word;
+        slots[slot] = formCount + 1;
+        if (++formCount * 2 >= slots.length) {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int f = 0; f < formCount; f++) {
+                int s = slot(forms[f].hash);
+                while (slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[s] = f + 1;
+            }
+        }
+        return formCount - 1;
+    }
+
+    /** Хеш Фибоначчи, как в JavaTransform */
+    private int slot(int hash) {
+        return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(slots.length));
+    }
+
+    private static boolean matches(char[] text, int from, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (text[from + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(char c) {
+        if (c < 0x80) {
+            return (char) ((c | 0x20) - 'a') < 26;
+        }
+        return Character.isLetter(c);
+    }
+
+    /** Текст между словами: UTF-8, байты кодов экранируются */
+    private void literal(char[] text, int from, int to) {
+        int ascii = from;
+        while (ascii < to && text[ascii] < 0x80) {
+            ascii++;
+        }
+        if (ascii == to) {
+            for (int i = from; i < to; i++) {
+                char c = text[i];
+                if (ROLE[c] != LITERAL) {
+                    out.write(ESCAPE);
+                }
+                out.write(c);
+            }
+            return;
+        }
+        byte[] utf8 = new String(text, from, to - from).getBytes(StandardCharsets.UTF_8);
+        for (byte b : utf8) {
+            if (ROLE[b & 0xFF] != LITERAL) {
+                out.write(ESCAPE);
+            }
+            out.write(b);
+        }
+    }
+
+    private static String capitalize(String word) {
+        return word.substring(0, 1).toUpperCase(Locale.ROOT) + word.substring(1);
+    }
+
+    // ------------------------------------------------------------------ сборка
+
+    /**
+     * Восстанавливает текст из toByteArray()
+     */
+    static String decode(byte[] data, Dictionary dictionary) throws IOException {
+        int[] pos = {0};
+        long dynamic = readVarint(data, pos);
+        if (dynamic > LIMIT - dictionary.words.length) {
+            throw new IOException("Неверный заголовок словарного преобразования");
+        }
+        String[] table = new String[dictionary.words.length + (int) dynamic];
+        System.arraycopy(dictionary.words, 0, table, 0, dictionary.words.length);
+        for (int k = dictionary.words.length; k < table.length; k++) {
+            int start = pos[0];
+            while (pos[0] < data.length && data[pos[0]] != '\n') {
+                pos[0]++;
+            }
+            if (pos[0] == data.length) {
+                throw new IOException("Данные словарного преобразования обрезаны");
+            }
+            table[k] = new String(data, start, pos[0]++ - start, StandardCharsets.UTF_8);
+        }
+        long hotCount = readVarint(data, pos);
+        if (hotCount > SHORT_CODES) {
+            throw new IOException("Неверный заголовок словарного преобразования");
+        }
+        int[] hot = new int[(int) hotCount];
+        for (int k = 0; k < hot.length; k++) {
+            hot[k] = index(readVarint(data, pos), table);
+        }
+
+        // UTF-8 слов по мере надобности: [номер * 3 + регистр]
+        byte[][] cache = new byte[table.length * 3][];
+        ByteSink out = new ByteSink(data.length + data.length / 2);
+        int i = pos[0];
+        int flag = 0;
+        while (i < data.length) {
+            int b = data[i++] & 0xFF;
+            int role = ROLE[b];
+            if (role == LITERAL) {
+                out.write(b);
+                continue;
+            }
+            if (role == ESC) {
+                if (i == data.length) {
+                    throw new IOException("Данные словарного преобразования обрезаны");
+                }
+                out.write(data[i++]);
+                continue;
+            }
+            if (role == CAP || role == UPPER) {
+                flag = role - CAP + 1;
+                continue;
+            }
+            int index;
+            if (role == SHORT) {
+                int k = VALUE[b];
+                if (k >= hot.length) {
+                    throw new IOException("Неверный код слова");
+                }
+                index = hot[k];
+            } else if (role == MEDIUM_PREFIX) {
+                if (i >= data.length) {
+                    throw new IOException("Данные словарного преобразования обрезаны");
+                }
+                index = index((VALUE[b] << 8) | (data[i++] & 0xFF), table);
+            } else {
+                if (i + 1 >= data.length) {
+                    throw new IOException("Данные словарного преобразования обрезаны");
+                }
+                index = index(MEDIUM + ((VALUE[b] << 16) | ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF)), table);
+                i += 2;
+            }
+            int key = index * 3 + flag;
+            byte[] word = cache[key];
+            if (word == null) {
+                String text = table[index];
+                if (flag == 1) {
+                    text = capitalize(text);
+                } else if (flag == 2) {
+                    text = text.toUpperCase(Locale.ROOT);
+                }
+                word = text.getBytes(StandardCharsets.UTF_8);
+                cache[key] = word;
+            }
+            out.write(word, 0, word.length);
+            flag = 0;
+        }
+        return new String(out.buffer(), 0, out.size(), StandardCharsets.UTF_8);
+    }
+
+    private static int index(long value, String[] table) throws IOException {
+        if (value < 0 || value >= table.length) {
+            throw new IOException("Неверный номер слова: " + value);
+        }
+        return (int) value;
+    }
+
+    private static void writeVarint(ByteSink out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IOException("Данные словарного преобразования обрезаны");
+            }
+            int b = data[pos[0]++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Неверное число в данных словарного преобразования");
+    }
+}
\ No newline at end of file
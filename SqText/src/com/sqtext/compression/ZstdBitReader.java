@@ -0,0 +1,109 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Обратный битовый поток Zstandard: читается с конца, последний байт содержит бит-маркер.
+ * Биты за началом потока считаются нулевыми - так требует формат для хвостов FSE
+ */
+final class ZstdBitReader {
+
+    private static final VarHandle LONG_LE =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private byte[] src;
+    private int start;
+    private int end;
+    /** Сколько бит еще не прочитано (позиция относительно start) */
+    private long bitPos;
+
+    ZstdBitReader() {
+    }
+
+    ZstdBitReader(byte[] src, int start, int end) throws IOException {
+        init(src, start, end);
+    }
+
+    void init(byte[] src, int start, int end) throws IOException {
+        if (end <= start) {
+            throw new IOException("Zstd: пустой битовый поток");
+        }
+        int last = src[end - 1] & 0xFF;
+        if (last == 0) {
+            throw new IOException("Zstd: в битовом потоке нет маркера");
+        }
+        this.src = src;
+        this.start = start;
+        this.end = end;
+        this.bitPos = (long) (end - start - 1) * 8 + (31 - Integer.numberOfLeadingZeros(last));
+    }
+
+    /**
+     * Читает n бит (0..56)
+     */
+    int readBits(int n) {
+        int v = peekBits(n);
+        bitPos -= n;
+        return v;
+    }
+
+    long readLongBits(int n) {
+        long v = peekLong(n);
+        bitPos -= n;
+        return v;
+    }
+
+    int peekBits(int n) {
+        return (int) peekLong(n);
+    }
+
+    void skipBits(int n) {
+        bitPos -= n;
+    }
+
+    /**
+     * Поток прочитан ровно до начала
+     */
+    boolean isComplete() {
+        return bitPos == 0;
+    }
+
+    /**
+     * Прочитано больше бит, чем есть в потоке
+     */
+    boolean isOverflow() {
+        return bitPos < 0;
+    }
+
+    private long peekLong(int n) {
+        if (n == 0) {
+            return 0;
+        }
+        long p = bitPos - n;
+        if (p >= 0) {
+            return load(p) & ((1L << n) - 1);
+        }
+        if (bitPos <= 0) {
+            return 0;
+        }
+        // Недостающие младшие биты - нули
+        long available = load(0) & ((1L << bitPos) - 1);
+        return available << (-p);
+    }
+
+    private long load(long bit) {
+        int index = start + (int) (bit >>> 3);
+        int shift = (int) (bit & 7);
+        if (index + 8 <= src.length) {
+            return (long) LONG_LE.get(src, index) >>> shift;
+        }
+        long v = 0;
+        for (int i = Math.min(end, src.length) - 1; i >= index; i--) {
+            v = (v << 8) | (src[i] & 0xFF);
+        }
+        return v >>> shift;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Zstandard (RFC 8878) без внешних библиотек: уровни 1..19 и контрольная сумма кадра.
+ * Выход совместим с утилитой zstd и libzstd
+ */
+public class ZstdCompressor {
+
+    public static final int MIN_LEVEL = ZstdEncoder.MIN_LEVEL;
+    public static final int MAX_LEVEL = ZstdEncoder.MAX_LEVEL;
+    public static final int DEFAULT_LEVEL = ZstdEncoder.DEFAULT_LEVEL;
+
+    /**
+     * Сжимает текст уровнем по умолчанию и кодирует в Base64
+     */
+    public static String compress(String text) throws IOException {
+        return compress(text, DEFAULT_LEVEL, true);
+    }
+
+    /**
+     * Сжимает текст указанным уровнем (1..19); checksum - добавить XXH64 кадра
+     */
+    public static String compress(String text, int level, boolean checksum) throws IOException {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        return Base64.getEncoder().encodeToString(compressToBytes(data, level, checksum));
+    }
+
+    /**
+     * Распаковывает текст, сжатый методом compress()
+     */
+    public static String decompress(String compressedText) throws IOException {
+        if (compressedText == null || compressedText.isEmpty()) {
+            return "";
+        }
+        byte[] data;
+        try {
+            data = Base64.getMimeDecoder().decode(compressedText);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректные Base64 данные: " + e.getMessage(), e);
+        }
+        return new String(decompressBytes(data), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] compressToBytes(byte[] data, int level, boolean checksum) {
+        return new ZstdEncoder(level).compress(data, 0, data.length, checksum);
+    }
+
+    /**
+     * Распаковывает один или несколько кадров Zstandard подряд
+     */
+    public static byte[] decompressBytes(byte[] data) throws IOException {
+        return new ZstdDecoder().decompress(data, 0, data.length);
+    }
+
+    /**
+     * Начинаются ли данные с магического числа кадра Zstandard
+     */
+    public static boolean isZstd(byte[] data) {
+        return data.length >= 4 && ZstdDecoder.readInt(data, 0) == ZstdDecoder.MAGIC;
+    }
+}
@@ -0,0 +1,507 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+
+/**
+ * Декодер Zstandard (RFC 8878) на чистой Java.
+ * Понимает все типы блоков, литералов и режимов таблиц, несколько кадров подряд,
+ * пропускаемые кадры и контрольную сумму XXH64. Внешние словари не поддерживаются
+ */
+final class ZstdDecoder {
+
+    static final int MAGIC = 0xFD2FB528;
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+    static final int[] LL_BASE = {
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+        16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096,
+        8192, 16384, 32768, 65536
+    };
+    static final int[] LL_BITS = {
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+        1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+        13, 14, 15, 16
+    };
+    static final int[] ML_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+        19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34,
+        35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+        4099, 8195, 16387, 32771, 65539
+    };
+    static final int[] ML_BITS = {
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+        1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+        12, 13, 14, 15, 16
+    };
+
+    static final short[] LL_DEFAULT_NORM = {
+        4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+        2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+        -1, -1, -1, -1
+    };
+    static final short[] ML_DEFAULT_NORM = {
+        1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+        -1, -1, -1, -1, -1
+    };
+    static final short[] OF_DEFAULT_NORM = {
+        1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+        1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1
+    };
+    static final int LL_DEFAULT_LOG = 6;
+    static final int ML_DEFAULT_LOG = 6;
+    static final int OF_DEFAULT_LOG = 5;
+    static final int LL_MAX_SYMBOL = 35;
+    static final int ML_MAX_SYMBOL = 52;
+    static final int OF_MAX_SYMBOL = 31;
+
+    private static final ZstdFse.DecodeTable LL_DEFAULT = defaultTable(LL_DEFAULT_NORM, LL_DEFAULT_LOG);
+    private static final ZstdFse.DecodeTable ML_DEFAULT = defaultTable(ML_DEFAULT_NORM, ML_DEFAULT_LOG);
+    private static final ZstdFse.DecodeTable OF_DEFAULT = defaultTable(OF_DEFAULT_NORM, OF_DEFAULT_LOG);
+
+    // Состояние кадра: таблицы и повторные смещения живут между блоками
+    private final ZstdHuffman.DecodeTable huffman = new ZstdHuffman.DecodeTable();
+    private final ZstdFse.DecodeTable llTable = new ZstdFse.DecodeTable();
+    private final ZstdFse.DecodeTable mlTable = new ZstdFse.DecodeTable();
+    private final ZstdFse.DecodeTable ofTable = new ZstdFse.DecodeTable();
+    private ZstdFse.DecodeTable llCurrent;
+    private ZstdFse.DecodeTable mlCurrent;
+    private ZstdFse.DecodeTable ofCurrent;
+    private final int[] reps = new int[3];
+    private final ZstdBitReader bits = new ZstdBitReader();
+    private final short[] norm = new short[64];
+    private final int[] tableLog = new int[1];
+    private final int[] maxSymbol = new int[1];
+    private byte[] literals = new byte[MAX_BLOCK_SIZE];
+    private int literalsLength;
+
+    /**
+     * Распаковывает все кадры из src
+     */
+    byte[] decompress(byte[] src, int offset, int length) throws IOException {
+        int end = offset + length;
+        int pos = offset;
+        ByteSink out = new ByteSink(Math.max(64, length * 3));
+        boolean sawFrame = false;
+        while (pos < end) {
+            if (end - pos < 4) {
+                throw new IOException("Zstd: обрезанный кадр");
+            }
+            int magic = readInt(src, pos);
+            if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+                if (end - pos < 8) {
+                    throw new IOException("Zstd: обрезанный пропускаемый кадр");
+                }
+                long size = readInt(src, pos + 4) & 0xFFFFFFFFL;
+                if (pos + 8 + size > end) {
+                    throw new IOException("Zstd: обрезанный пропускаемый кадр");
+                }
+                pos += 8 + (int) size;
+                continue;
+            }
+            if (magic != MAGIC) {
+                throw new IOException("Zstd: неверная сигнатура кадра");
+            }
+            pos = decodeFrame(src, pos + 4, end, out);
+            sawFrame = true;
+        }
+        if (!sawFrame) {
+            throw new IOException("Zstd: нет ни одного кадра");
+        }
+        return out.toByteArray();
+    }
+
+    private int decodeFrame(byte[] src, int pos, int end, ByteSink out) throws IOException {
+        if (pos >= end) {
+            throw new IOException("Zstd: обрезанный заголовок кадра");
+        }
+        int descriptor = src[pos++] & 0xFF;
+        int fcsFlag = descriptor >>> 6;
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        boolean checksum = (descriptor & 0x04) != 0;
+        int dictFlag = descriptor & 0x03;
+        if ((descriptor & 0x08) != 0) {
+            throw new IOException("Zstd: установлен зарезервированный бит");
+        }
+
+        long windowSize = 0;
+        if (!singleSegment) {
+            int wd = src[pos++] & 0xFF;
+            int windowLog = 10 + (wd >>> 3);
+            long windowBase = 1L << windowLog;
+            windowSize = windowBase + (windowBase / 8) * (wd & 7);
+        }
+        int dictIdSize = dictFlag == 3 ? 4 : dictFlag;
+        long dictId = readLong(src, pos, dictIdSize, end);
+        pos += dictIdSize;
+        if (dictId != 0) {
+            throw new IOException("Zstd: кадры со словарем не поддерживаются");
+        }
+        int fcsSize = fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+        long contentSize = -1;
+        if (fcsSize > 0) {
+            contentSize = readLong(src, pos, fcsSize, end);
+            if (fcsSize == 2) {
+                contentSize += 256;
+            }
+            pos += fcsSize;
+        }
+        if (singleSegment) {
+            windowSize = contentSize;
+        }
+        if (contentSize > 0) {
+            if (out.size() + contentSize > Integer.MAX_VALUE - 8) {
+                throw new IOException("Zstd: результат больше 2 ГБ");
+            }
+            out.ensureCapacity(out.size() + (int) contentSize);
+        }
+        int blockMax = (int) Math.min(MAX_BLOCK_SIZE, Math.max(windowSize, 1));
+
+        int frameStart = out.size();
+        reps[0] = 1;
+        reps[1] = 4;
+        reps[2] = 8;
+        huffman.present = false;
+        llCurrent = null;
+        mlCurrent = null;
+        ofCurrent = null;
+
+        boolean last;
+        do {
+            if (end - pos < 3) {
+                throw new IOException("Zstd: обрезанный заголовок блока");
+            }
+            int header = (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8 | (src[pos + 2] & 0xFF) << 16;
+            pos += 3;
+            last = (header & 1) != 0;
+            int type = (header >>> 1) & 3;
+            int size = header >>> 3;
+            switch (type) {
+                case 0: // Raw
+                    if (pos + size > end) {
+                        throw new IOException("Zstd: обрезанный блок");
+                    }
+                    out.write(src, pos, size);
+                    Progress.advance(size);
+                    pos += size;
+                    break;
+                case 1: // RLE
+                    if (pos >= end) {
+                        throw new IOException("Zstd: обрезанный RLE-блок");
+                    }
+                    if (size > blockMax) {
+                        throw new IOException("Zstd: слишком большой блок");
+                    }
+                    out.fill(src[pos++], size);
+                    break;
+                case 2:
+                    if (pos + size > end || size > blockMax) {
+                        throw new IOException("Zstd: неверный размер блока");
+                    }
+                    decodeCompressedBlock(src, pos, pos + size, out, frameStart);
+                    Progress.advance(size);
+                    pos += size;
+                    break;
+                default:
+                    throw new IOException("Zstd: зарезервированный тип блока");
+            }
+        } while (!last);
+
+        int produced = out.size() - frameStart;
+        if (contentSize >= 0 && produced != contentSize) {
+            throw new IOException("Zstd: размер не совпадает с заголовком кадра");
+        }
+        if (checksum) {
+            if (end - pos < 4) {
+                throw new IOException("Zstd: нет контрольной суммы");
+            }
+            int expected = readInt(src, pos);
+            int actual = (int) XxHash64.hash(out.buffer(), frameStart, produced, 0);
+            if (expected != actual) {
+                throw new IOException("Zstd: неверная контрольная сумма");
+            }
+            pos += 4;
+        }
+        return pos;
+    }
+
+    private void decodeCompressedBlock(byte[] src, int pos, int end, ByteSink out, int frameStart)
+            throws IOException {
+        pos = decodeLiterals(src, pos, end);
+
+        // Количество последовательностей
+        if (pos >= end) {
+            throw new IOException("Zstd: нет секции последовательностей");
+        }
+        int b0 = src[pos++] & 0xFF;
+        int nbSeq;
+        if (b0 == 0) {
+            if (pos != end) {
+                throw new IOException("Zstd: лишние данные в блоке");
+            }
+            out.write(literals, 0, literalsLength);
+            return;
+        } else if (b0 < 128) {
+            nbSeq = b0;
+        } else if (b0 < 255) {
+            nbSeq = ((b0 - 128) << 8) + (src[pos++] & 0xFF);
+        } else {
+            nbSeq = (src[pos] & 0xFF) + ((src[pos + 1] & 0xFF) << 8) + 0x7F00;
+            pos += 2;
+        }
+        if (pos >= end) {
+            throw new IOException("Zstd: нет режимов таблиц");
+        }
+        int modes = src[pos++] & 0xFF;
+        if ((modes & 3) != 0) {
+            throw new IOException("Zstd: зарезервированные биты режимов");
+        }
+        pos = readTable(src, pos, end, modes >>> 6, llTable, 0);
+        pos = readTable(src, pos, end, (modes >>> 4) & 3, ofTable, 1);
+        pos = readTable(src, pos, end, (modes >>> 2) & 3, mlTable, 2);
+
+        executeSequences(src, pos, end, nbSeq, out, frameStart);
+    }
+
+    private int readTable(byte[] src, int pos, int end, int mode, ZstdFse.DecodeTable table, int kind)
+            throws IOException {
+        int maxSym = kind == 0 ? LL_MAX_SYMBOL : kind == 1 ? OF_MAX_SYMBOL : ML_MAX_SYMBOL;
+        int maxLog = kind == 0 ? 9 : kind == 1 ? 8 : 9;
+        ZstdFse.DecodeTable result;
+        switch (mode) {
+            case 0:
+                result = kind == 0 ? LL_DEFAULT : kind == 1 ? OF_DEFAULT : ML_DEFAULT;
+                break;
+            case 1:
+                if (pos >= end) {
+                    throw new IOException("Zstd: нет символа RLE");
+                }
+                int symbol = src[pos++] & 0xFF;
+                if (symbol > maxSym) {
+                    throw new IOException("Zstd: символ RLE вне диапазона");
+                }
+                ZstdFse.buildRleTable(table, symbol);
+                result = table;
+                break;
+            case 2:
+                pos += ZstdFse.readNormalizedCounts(src, pos, end, norm, maxSym, maxLog, tableLog, maxSymbol);
+                ZstdFse.buildDecodeTable(table, norm, maxSymbol[0], tableLog[0]);
+                result = table;
+                break;
+            default:
+                result = kind == 0 ? llCurrent : kind == 1 ? ofCurrent : mlCurrent;
+                if (result == null) {
+                    throw new IOException("Zstd: режим Repeat без предыдущей таблицы");
+                }
+                break;
+        }
+        if (kind == 0) {
+            llCurrent = result;
+        } else if (kind == 1) {
+            ofCurrent = result;
+        } else {
+            mlCurrent = result;
+        }
+        return pos;
+    }
+
+    private void executeSequences(byte[] src, int pos, int end, int nbSeq, ByteSink out, int frameStart)
+            throws IOException {
+        ZstdFse.DecodeTable ll = llCurrent;
+        ZstdFse.DecodeTable of = ofCurrent;
+        ZstdFse.DecodeTable ml = mlCurrent;
+        ZstdBitReader in = bits;
+        in.init(src, pos, end);
+        int llState = in.readBits(ll.tableLog);
+        int ofState = in.readBits(of.tableLog);
+        int mlState = in.readBits(ml.tableLog);
+
+        int litPos = 0;
+        int rep0 = reps[0];
+        int rep1 = reps[1];
+        int rep2 = reps[2];
+        for (int n = 0; n < nbSeq; n++) {
+            int ofCode = of.symbol[ofState];
+            int mlCode = ml.symbol[mlState];
+            int llCode = ll.symbol[llState];
+            if (ofCode > 31) {
+                throw new IOException("Zstd: неверный код смещения");
+            }
+            long offsetValue = (1L << ofCode) + in.readLongBits(ofCode);
+            int matchLength = ML_BASE[mlCode] + in.readBits(ML_BITS[mlCode]);
+            int litLength = LL_BASE[llCode] + in.readBits(LL_BITS[llCode]);
+
+            int offset;
+            if (offsetValue > 3) {
+                offset = (int) (offsetValue - 3);
+                rep2 = rep1;
+                rep1 = rep0;
+                rep0 = offset;
+            } else {
+                int index = (int) offsetValue - 1 + (litLength == 0 ? 1 : 0);
+                if (index == 0) {
+                    offset = rep0;
+                } else {
+                    offset = index == 1 ? rep1 : index == 2 ? rep2 : rep0 - 1;
+                    if (offset == 0) {
+                        throw new IOException("Zstd: нулевое смещение");
+                    }
+                    if (index != 1) {
+                        rep2 = rep1;
+                    }
+                    rep1 = rep0;
+                    rep0 = offset;
+                }
+            }
+
+            if (n + 1 < nbSeq) {
+                llState = ll.newState[llState] + in.readBits(ll.nbBits[llState]);
+                mlState = ml.newState[mlState] + in.readBits(ml.nbBits[mlState]);
+                ofState = of.newState[ofState] + in.readBits(of.nbBits[ofState]);
+            }
+
+            if (litPos + litLength > literalsLength) {
+                throw new IOException("Zstd: литералов меньше, чем требуют последовательности");
+            }
+            out.write(literals, litPos, litLength);
+            litPos += litLength;
+            if (offset > out.size() - frameStart) {
+                throw new IOException("Zstd: смещение за началом данных");
+            }
+            out.copyMatch(offset, matchLength);
+        }
+        if (!in.isComplete()) {
+            throw new IOException("Zstd: поток последовательностей прочитан не полностью");
+        }
+        reps[0] = rep0;
+        reps[1] = rep1;
+        reps[2] = rep2;
+        out.write(literals, litPos, literalsLength - litPos);
+    }
+
+    private int decodeLiterals(byte[] src, int pos, int end) throws IOException {
+        if (pos >= end) {
+            throw new IOException("Zstd: нет секции литералов");
+        }
+        int b0 = src[pos] & 0xFF;
+        int type = b0 & 3;
+        int sizeFormat = (b0 >>> 2) & 3;
+
+        if (type == 0 || type == 1) {
+            int regenerated;
+            switch (sizeFormat) {
+                case 0:
+                case 2:
+                    regenerated = b0 >>> 3;
+                    pos += 1;
+                    break;
+                case 1:
+                    regenerated = (b0 >>> 4) + ((src[pos + 1] & 0xFF) << 4);
+                    pos += 2;
+                    break;
+                default:
+                    regenerated = (b0 >>> 4) + ((src[pos + 1] & 0xFF) << 4) + ((src[pos + 2] & 0xFF) << 12);
+                    pos += 3;
+                    break;
+            }
+            if (regenerated > MAX_BLOCK_SIZE) {
+                throw new IOException("Zstd: слишком много литералов");
+            }
+            if (type == 0) {
+                if (pos + regenerated > end) {
+                    throw new IOException("Zstd: обрезанные литералы");
+                }
+                System.arraycopy(src, pos, literals, 0, regenerated);
+                pos += regenerated;
+            } else {
+                if (pos >= end) {
+                    throw new IOException("Zstd: обрезанные литералы");
+                }
+                java.util.Arrays.fill(literals, 0, regenerated, src[pos++]);
+            }
+            literalsLength = regenerated;
+            return pos;
+        }
+
+        int headerSize = sizeFormat < 2 ? 3 : sizeFormat == 2 ? 4 : 5;
+        if (pos + headerSize > end) {
+            throw new IOException("Zstd: обрезанный заголовок литералов");
+        }
+        long h = 0;
+        for (int i = headerSize - 1; i >= 0; i--) {
+            h = (h << 8) | (src[pos + i] & 0xFF);
+        }
+        int sizeBits = sizeFormat < 2 ? 10 : sizeFormat == 2 ? 14 : 18;
+        int regenerated = (int) ((h >>> 4) & ((1 << sizeBits) - 1));
+        int compressed = (int) ((h >>> (4 + sizeBits)) & ((1 << sizeBits) - 1));
+        boolean singleStream = sizeFormat == 0;
+        pos += headerSize;
+        if (regenerated > MAX_BLOCK_SIZE || pos + compressed > end) {
+            throw new IOException("Zstd: неверные размеры литералов");
+        }
+        int streamsEnd = pos + compressed;
+        if (type == 2) {
+            pos += ZstdHuffman.readTable(huffman, src, pos, streamsEnd);
+        } else if (!huffman.present) {
+            throw new IOException("Zstd: литералы Treeless без предыдущего дерева");
+        }
+
+        if (singleStream) {
+            ZstdHuffman.decodeStream(huffman, src, pos, streamsEnd, literals, 0, regenerated, bits);
+        } else {
+            if (streamsEnd - pos < 6) {
+                throw new IOException("Zstd: нет таблицы переходов");
+            }
+            int size1 = (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8;
+            int size2 = (src[pos + 2] & 0xFF) | (src[pos + 3] & 0xFF) << 8;
+            int size3 = (src[pos + 4] & 0xFF) | (src[pos + 5] & 0xFF) << 8;
+            int start1 = pos + 6;
+            int start2 = start1 + size1;
+            int start3 = start2 + size2;
+            int start4 = start3 + size3;
+            if (start4 > streamsEnd) {
+                throw new IOException("Zstd: неверная таблица переходов");
+            }
+            int segment = (regenerated + 3) / 4;
+            if (3 * segment > regenerated) {
+                throw new IOException("Zstd: слишком мало литералов для 4 потоков");
+            }
+            ZstdHuffman.decodeStream(huffman, src, start1, start2, literals, 0, segment, bits);
+            ZstdHuffman.decodeStream(huffman, src, start2, start3, literals, segment, segment, bits);
+            ZstdHuffman.decodeStream(huffman, src, start3, start4, literals, 2 * segment, segment, bits);
+            ZstdHuffman.decodeStream(huffman, src, start4, streamsEnd, literals, 3 * segment,
+                regenerated - 3 * segment, bits);
+        }
+        literalsLength = regenerated;
+        return streamsEnd;
+    }
+
+    private static ZstdFse.DecodeTable defaultTable(short[] norm, int log) {
+        ZstdFse.DecodeTable table = new ZstdFse.DecodeTable();
+        try {
+            ZstdFse.buildDecodeTable(table, norm, norm.length - 1, log);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        return table;
+    }
+
+    static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    private static long readLong(byte[] b, int off, int size, int end) throws IOException {
+        if (off + size > end) {
+            throw new IOException("Zstd: обрезанный заголовок кадра");
+        }
+        long v = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            v = (v << 8) | (b[off + i] & 0xFF);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,573 @@
+package com.sqtext.compression;
+
+/**
+ * Кодер Zstandard на чистой Java.
+ * Поиск совпадений - хеш-цепочки с жадным или ленивым разбором (глубина зависит от уровня),
+ * литералы кодируются Хаффманом, последовательности - FSE (стандартные или свои таблицы)
+ */
+final class ZstdEncoder {
+
+    static final int MIN_LEVEL = 1;
+    static final int MAX_LEVEL = 19;
+    static final int DEFAULT_LEVEL = 3;
+
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+    private static final int MIN_MATCH = HashChainMatcher.MIN_MATCH;
+    private static final int LL_MAX_LOG = 9;
+    private static final int ML_MAX_LOG = 9;
+    private static final int OF_MAX_LOG = 8;
+    private static final int OF_DEFAULT_MAX_SYMBOL = 28;
+
+    /** {windowLog, hashLog, chainLog, searchDepth, lazy} для уровней 1..19 */
+    private static final int[][] LEVELS = {
+        {19, 15, 15, 1, 0},
+        {19, 16, 16, 2, 0},
+        {20, 17, 16, 4, 0},
+        {20, 17, 17, 6, 1},
+        {21, 17, 17, 8, 1},
+        {21, 18, 18, 12, 1},
+        {21, 18, 18, 16, 1},
+        {22, 18, 19, 24, 1},
+        {22, 19, 19, 32, 2},
+        {22, 19, 20, 48, 2},
+        {22, 20, 20, 64, 2},
+        {22, 20, 21, 96, 2},
+        {23, 20, 21, 128, 2},
+        {23, 20, 22, 192, 2},
+        {23, 21, 22, 256, 2},
+        {23, 21, 22, 384, 2},
+        {23, 21, 22, 512, 2},
+        {23, 21, 22, 768, 2},
+        {23, 21, 22, 1024, 2},
+    };
+
+    private static final byte[] LL_CODE = buildCodeTable(ZstdDecoder.LL_BASE, ZstdDecoder.LL_BITS, 0, 64);
+    private static final byte[] ML_CODE = buildCodeTable(ZstdDecoder.ML_BASE, ZstdDecoder.ML_BITS, 3, 128);
+
+    private static final ZstdFse.EncodeTable LL_DEFAULT = ZstdFse.buildEncodeTable(
+        ZstdDecoder.LL_DEFAULT_NORM, ZstdDecoder.LL_MAX_SYMBOL, ZstdDecoder.LL_DEFAULT_LOG);
+    private static final ZstdFse.EncodeTable ML_DEFAULT = ZstdFse.buildEncodeTable(
+        ZstdDecoder.ML_DEFAULT_NORM, ZstdDecoder.ML_MAX_SYMBOL, ZstdDecoder.ML_DEFAULT_LOG);
+    private static final ZstdFse.EncodeTable OF_DEFAULT = ZstdFse.buildEncodeTable(
+        ZstdDecoder.OF_DEFAULT_NORM, OF_DEFAULT_MAX_SYMBOL, ZstdDecoder.OF_DEFAULT_LOG);
+
+    private final int windowSize;
+    private final int hashLog;
+    private final int chainLog;
+    private final int searchDepth;
+    private final int lazy;
+
+    private byte[] src;
+    private int srcStart;
+    private int srcEnd;
+    private HashChainMatcher matcher;
+    private final int[] reps = new int[3];
+
+    // Последовательности текущего блока
+    private int nbSeq;
+    private int[] seqLitLength = new int[1024];
+    private int[] seqMatchLength = new int[1024];
+    private int[] seqOffsetValue = new int[1024];
+    private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+    private int literalsLength;
+
+    // Результат поиска совпадения
+    private int foundLength;
+    private int foundOffset;
+
+    ZstdEncoder(int level) {
+        int[] p = LEVELS[Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level)) - 1];
+        this.windowSize = 1 << p[0];
+        this.hashLog = p[1];
+        this.chainLog = p[2];
+        this.searchDepth = p[3];
+        this.lazy = p[4];
+    }
+
+    /**
+     * Сжимает данные в один кадр Zstandard
+     */
+    byte[] compress(byte[] data, int offset, int length, boolean checksum) {
+        ByteSink out = new ByteSink(length / 2 + 64);
+        writeFrameHeader(out, length, checksum);
+
+        this.src = data;
+        this.srcStart = offset;
+        this.srcEnd = offset + length;
+        this.matcher = new HashChainMatcher(data, offset, srcEnd, windowSize, hashLog, chainLog);
+        reps[0] = 1;
+        reps[1] = 4;
+        reps[2] = 8;
+
+        BitOutput block = new BitOutput(MAX_BLOCK_SIZE + 1024);
+        if (length == 0) {
+            writeBlockHeader(out, true, 0, 0);
+        }
+        for (int blockStart = offset; blockStart < srcEnd; blockStart += MAX_BLOCK_SIZE) {
+            int blockEnd = Math.min(srcEnd, blockStart + MAX_BLOCK_SIZE);
+            boolean last = blockEnd == srcEnd;
+            int blockSize = blockEnd - blockStart;
+            Progress.advance(blockSize);
+            int rep0 = reps[0];
+            int rep1 = reps[1];
+            int rep2 = reps[2];
+
+            parseBlock(blockStart, blockEnd);
+            block.reset();
+            boolean compressed = encodeBlock(block);
+            if (compressed && block.size() < blockSize) {
+                writeBlockHeader(out, last, 2, block.size());
+                block.writeTo(out);
+            } else {
+                // Декодер не увидит последовательностей этого блока - возвращаем повторные смещения
+                reps[0] = rep0;
+                reps[1] = rep1;
+                reps[2] = rep2;
+                if (isSingleByte(blockStart, blockEnd)) {
+                    writeBlockHeader(out, last, 1, blockSize);
+                    out.write(data[blockStart]);
+                } else {
+                    writeBlockHeader(out, last, 0, blockSize);
+                    out.write(data, blockStart, blockSize);
+                }
+            }
+        }
+
+        if (checksum) {
+            int hash = (int) XxHash64.hash(data, offset, length, 0);
+            out.write(hash);
+            out.write(hash >>> 8);
+            out.write(hash >>> 16);
+            out.write(hash >>> 24);
+        }
+        this.src = null;
+        this.matcher = null;
+        return out.toByteArray();
+    }
+
+    // ------------------------------------------------------------------ заголовки
+
+    private static void writeFrameHeader(ByteSink out, long contentSize, boolean checksum) {
+        int magic = ZstdDecoder.MAGIC;
+        out.write(magic);
+        out.write(magic >>> 8);
+        out.write(magic >>> 16);
+        out.write(magic >>> 24);
+
+        int fcsFlag;
+        int fcsSize;
+        long fcsValue = contentSize;
+        if (contentSize < 256) {
+            fcsFlag = 0;
+            fcsSize = 1;
+        } else if (contentSize < 65536 + 256) {
+            fcsFlag = 1;
+            fcsSize = 2;
+            fcsValue -= 256;
+        } else if (contentSize <= 0xFFFFFFFFL) {
+            fcsFlag = 2;
+            fcsSize = 4;
+        } else {
+            fcsFlag = 3;
+            fcsSize = 8;
+        }
+        // Single_Segment: окно равно размеру содержимого, дескриптор окна не нужен
+        out.write(fcsFlag << 6 | 0x20 | (checksum ? 0x04 : 0));
+        for (int i = 0; i < fcsSize; i++) {
+            out.write((int) (fcsValue >>> (8 * i)));
+        }
+    }
+
+    private static void writeBlockHeader(ByteSink out, boolean last, int type, int size) {
+        int header = size << 3 | type << 1 | (last ? 1 : 0);
+        out.write(header);
+        out.write(header >>> 8);
+        out.write(header >>> 16);
+    }
+
+    private boolean isSingleByte(int from, int to) {
+        byte first = src[from];
+        for (int i = from + 1; i < to; i++) {
+            if (src[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------ поиск совпадений
+
+    private void parseBlock(int start, int end) {
+        nbSeq = 0;
+        literalsLength = 0;
+        int anchor = start;
+        int pos = start;
+        int limit = end - MIN_MATCH;
+
+        while (pos <= limit) {
+            if (!findMatch(pos, end, pos - anchor)) {
+                pos++;
+                continue;
+            }
+            int length = foundLength;
+            int offset = foundOffset;
+
+            // Ленивый разбор: может быть, со следующей позиции совпадение заметно лучше
+            for (int step = 0; step < lazy && pos + 1 <= limit; step++) {
+                int gain = length * 4 - ZstdFse.highBit(offsetValue(offset, pos - anchor)) + 4;
+                if (!findMatch(pos + 1, end, pos + 1 - anchor)) {
+                    break;
+                }
+                int gain2 = foundLength * 4 - ZstdFse.highBit(offsetValue(foundOffset, pos + 1 - anchor));
+                if (gain2 <= gain) {
+                    break;
+                }
+                pos++;
+                length = foundLength;
+                offset = foundOffset;
+            }
+
+            addSequence(anchor, pos - anchor, offset, length);
+            pos += length;
+            anchor = pos;
+        }
+        int tail = end - anchor;
+        System.arraycopy(src, anchor, literals, literalsLength, tail);
+        literalsLength += tail;
+    }
+
+    /**
+     * Ищет лучшее совпадение в позиции pos; результат в foundLength/foundOffset
+     */
+    private boolean findMatch(int pos, int end, int litLength) {
+        int maxLength = end - pos;
+        int bestLength = 0;
+        int bestOffset = 0;
+
+        // Сначала повторные смещения - их код самый дешевый
+        for (int r = 0; r < 3; r++) {
+            int offset = r == 0 && litLength == 0 ? reps[0] - 1 : reps[r];
+            if (offset <= 0 || pos - offset < srcStart) {
+                continue;
+            }
+            int len = matcher.matchLength(pos - offset, pos, maxLength);
+            if (len >= MIN_MATCH && len > bestLength) {
+                bestLength = len;
+                bestOffset = offset;
+            }
+        }
+
+        int len = matcher.findLongest(pos, maxLength, Math.max(bestLength, MIN_MATCH - 1), searchDepth);
+        if (len > 0) {
+            bestLength = len;
+            bestOffset = matcher.matchDistance;
+        }
+
+        if (bestLength < MIN_MATCH) {
+            return false;
+        }
+        foundLength = bestLength;
+        foundOffset = bestOffset;
+        return true;
+    }
+
+    // ------------------------------------------------------------------ последовательности
+
+    /**
+     * Код смещения с учетом повторных смещений (без изменения состояния)
+     */
+    private int offsetValue(int offset, int litLength) {
+        if (litLength > 0) {
+            if (offset == reps[0]) {
+                return 1;
+            }
+            if (offset == reps[1]) {
+                return 2;
+            }
+            if (offset == reps[2]) {
+                return 3;
+            }
+        } else {
+            if (offset == reps[1]) {
+                return 1;
+            }
+            if (offset == reps[2]) {
+                return 2;
+            }
+            if (offset == reps[0] - 1) {
+                return 3;
+            }
+        }
+        return offset + 3;
+    }
+
+    private void addSequence(int anchor, int litLength, int offset, int matchLength) {
+        if (nbSeq == seqLitLength.length) {
+            seqLitLength = java.util.Arrays.copyOf(seqLitLength, nbSeq * 2);
+            seqMatchLength = java.util.Arrays.copyOf(seqMatchLength, nbSeq * 2);
+            seqOffsetValue = java.util.Arrays.copyOf(seqOffsetValue, nbSeq * 2);
+        }
+        int value = offsetValue(offset, litLength);
+        // Обновление повторных смещений - ровно как в декодере
+        if (value > 3) {
+            reps[2] = reps[1];
+            reps[1] = reps[0];
+            reps[0] = offset;
+        } else {
+            int index = value - 1 + (litLength == 0 ? 1 : 0);
+            if (index > 0) {
+                if (index != 1) {
+                    reps[2] = reps[1];
+                }
+                reps[1] = reps[0];
+                reps[0] = offset;
+            }
+        }
+        seqLitLength[nbSeq] = litLength;
+        seqMatchLength[nbSeq] = matchLength;
+        seqOffsetValue[nbSeq] = value;
+        nbSeq++;
+        System.arraycopy(src, anchor, literals, literalsLength, litLength);
+        literalsLength += litLength;
+    }
+
+    // ------------------------------------------------------------------ кодирование блока
+
+    private boolean encodeBlock(BitOutput out) {
+        encodeLiterals(out);
+        return encodeSequences(out);
+    }
+
+    private void encodeLiterals(BitOutput out) {
+        int size = literalsLength;
+        if (size == 0) {
+            out.writeByte(0);
+            return;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < size; i++) {
+            counts[literals[i] & 0xFF]++;
+        }
+        if (counts[literals[0] & 0xFF] == size && size > 1) {
+            writeRawLiteralsHeader(out, 1, size);
+            out.writeByte(literals[0]);
+            return;
+        }
+
+        ZstdHuffman.Code code = size >= 64 ? ZstdHuffman.build(counts) : null;
+        if (code != null) {
+            long estimate = code.description.length + 6 + (ZstdHuffman.estimateBits(counts, code) + 7) / 8;
+            if (estimate < size - size / 16) {
+                if (writeCompressedLiterals(out, code, size)) {
+                    return;
+                }
+            }
+        }
+        writeRawLiteralsHeader(out, 0, size);
+        out.writeBytes(literals, 0, size);
+    }
+
+    private static void writeRawLiteralsHeader(BitOutput out, int type, int size) {
+        if (size < 32) {
+            out.writeByte(type | size << 3);
+        } else if (size < 4096) {
+            out.writeByte(type | 1 << 2 | (size & 0xF) << 4);
+            out.writeByte(size >>> 4);
+        } else {
+            out.writeByte(type | 3 << 2 | (size & 0xF) << 4);
+            out.writeByte(size >>> 4);
+            out.writeByte(size >>> 12);
+        }
+    }
+
+    private boolean writeCompressedLiterals(BitOutput out, ZstdHuffman.Code code, int size) {
+        boolean singleStream = size < 256;
+        byte[][] streams;
+        if (singleStream) {
+            BitOutput stream = new BitOutput(size);
+            ZstdHuffman.encodeStream(stream, code, literals, 0, size);
+            streams = new byte[][] {stream.toByteArray()};
+        } else {
+            int segment = (size + 3) / 4;
+            streams = new byte[4][];
+            for (int i = 0; i < 4; i++) {
+                BitOutput stream = new BitOutput(segment);
+                int from = i * segment;
+                int to = i == 3 ? size : from + segment;
+                ZstdHuffman.encodeStream(stream, code, literals, from, to);
+                streams[i] = stream.toByteArray();
+                if (i < 3 && streams[i].length > 0xFFFF) {
+                    return false;
+                }
+            }
+        }
+        int compressed = code.description.length + (singleStream ? 0 : 6);
+        for (byte[] s : streams) {
+            compressed += s.length;
+        }
+        if (compressed >= size) {
+            return false;
+        }
+
+        int sizeFormat;
+        int sizeBits;
+        if (singleStream) {
+            sizeFormat = 0;
+            sizeBits = 10;
+        } else if (size < 1024 && compressed < 1024) {
+            sizeFormat = 1;
+            sizeBits = 10;
+        } else if (size < 16384 && compressed < 16384) {
+            sizeFormat = 2;
+            sizeBits = 14;
+        } else {
+            sizeFormat = 3;
+            sizeBits = 18;
+        }
+        long header = 2 | sizeFormat << 2 | (long) size << 4 | (long) compressed << (4 + sizeBits);
+        int headerSize = sizeFormat < 2 ? 3 : sizeFormat == 2 ? 4 : 5;
+        for (int i = 0; i < headerSize; i++) {
+            out.writeByte((int) (header >>> (8 * i)));
+        }
+        out.writeBytes(code.description, 0, code.description.length);
+        if (!singleStream) {
+            for (int i = 0; i < 3; i++) {
+                out.writeByte(streams[i].length);
+                out.writeByte(streams[i].length >>> 8);
+            }
+        }
+        for (byte[] s : streams) {
+            out.writeBytes(s, 0, s.length);
+        }
+        return true;
+    }
+
+    private boolean encodeSequences(BitOutput out) {
+        if (nbSeq < 128) {
+            out.writeByte(nbSeq);
+        } else if (nbSeq < 0x7F00) {
+            out.writeByte((nbSeq >>> 8) + 128);
+            out.writeByte(nbSeq);
+        } else {
+            out.writeByte(255);
+            out.writeByte(nbSeq - 0x7F00);
+            out.writeByte((nbSeq - 0x7F00) >>> 8);
+        }
+        if (nbSeq == 0) {
+            return true;
+        }
+
+        byte[] llCodes = new byte[nbSeq];
+        byte[] mlCodes = new byte[nbSeq];
+        byte[] ofCodes = new byte[nbSeq];
+        int[] llCounts = new int[ZstdDecoder.LL_MAX_SYMBOL + 1];
+        int[] mlCounts = new int[ZstdDecoder.ML_MAX_SYMBOL + 1];
+        int[] ofCounts = new int[ZstdDecoder.OF_MAX_SYMBOL + 1];
+        for (int i = 0; i < nbSeq; i++) {
+            int ll = seqLitLength[i];
+            int mlBase = seqMatchLength[i] - 3;
+            llCodes[i] = ll < 64 ? LL_CODE[ll] : (byte) (ZstdFse.highBit(ll) + 19);
+            mlCodes[i] = mlBase < 128 ? ML_CODE[mlBase] : (byte) (ZstdFse.highBit(mlBase) + 36);
+            ofCodes[i] = (byte) ZstdFse.highBit(seqOffsetValue[i]);
+            llCounts[llCodes[i]]++;
+            mlCounts[mlCodes[i]]++;
+            ofCounts[ofCodes[i]]++;
+        }
+
+        BitOutput tables = new BitOutput(256);
+        int[] modes = new int[3];
+        ZstdFse.EncodeTable llTable = chooseTable(tables, llCounts, ZstdDecoder.LL_MAX_SYMBOL,
+            ZstdDecoder.LL_DEFAULT_NORM, ZstdDecoder.LL_DEFAULT_LOG, LL_DEFAULT, LL_MAX_LOG, modes, 0);
+        ZstdFse.EncodeTable ofTable = chooseTable(tables, ofCounts, ZstdDecoder.OF_MAX_SYMBOL,
+            ZstdDecoder.OF_DEFAULT_NORM, ZstdDecoder.OF_DEFAULT_LOG, OF_DEFAULT, OF_MAX_LOG, modes, 1);
+        ZstdFse.EncodeTable mlTable = chooseTable(tables, mlCounts, ZstdDecoder.ML_MAX_SYMBOL,
+            ZstdDecoder.ML_DEFAULT_NORM, ZstdDecoder.ML_DEFAULT_LOG, ML_DEFAULT, ML_MAX_LOG, modes, 2);
+        out.writeByte(modes[0] << 6 | modes[1] << 4 | modes[2] << 2);
+        byte[] tableBytes = tables.toByteArray();
+        out.writeBytes(tableBytes, 0, tableBytes.length);
+        out.alignToByte();
+
+        // Последовательности пишутся с конца: декодер читает поток в обратном порядке
+        int last = nbSeq - 1;
+        int llState = ZstdFse.initState(llTable, llCodes[last]);
+        int mlState = ZstdFse.initState(mlTable, mlCodes[last]);
+        int ofState = ZstdFse.initState(ofTable, ofCodes[last]);
+        addExtraBits(out, last, llCodes[last], mlCodes[last], ofCodes[last]);
+        for (int n = last - 1; n >= 0; n--) {
+            ofState = ZstdFse.encodeSymbol(out, ofTable, ofState, ofCodes[n]);
+            mlState = ZstdFse.encodeSymbol(out, mlTable, mlState, mlCodes[n]);
+            llState = ZstdFse.encodeSymbol(out, llTable, llState, llCodes[n]);
+            addExtraBits(out, n, llCodes[n], mlCodes[n], ofCodes[n]);
+        }
+        ZstdFse.flushState(out, mlTable, mlState);
+        ZstdFse.flushState(out, ofTable, ofState);
+        ZstdFse.flushState(out, llTable, llState);
+        out.closeWithMarker();
+        return true;
+    }
+
+    private void addExtraBits(BitOutput out, int n, int llCode, int mlCode, int ofCode) {
+        out.addBits(seqLitLength[n] - ZstdDecoder.LL_BASE[llCode], ZstdDecoder.LL_BITS[llCode]);
+        out.addBits(seqMatchLength[n] - ZstdDecoder.ML_BASE[mlCode], ZstdDecoder.ML_BITS[mlCode]);
+        out.addBits(seqOffsetValue[n] - (1L << ofCode), ofCode);
+    }
+
+    /**
+     * Выбирает самый дешевый режим таблицы: стандартная, RLE или своя (FSE_Compressed)
+     */
+    private ZstdFse.EncodeTable chooseTable(BitOutput tables, int[] counts, int maxSymbolLimit,
+                                            short[] defaultNorm, int defaultLog,
+                                            ZstdFse.EncodeTable defaultTable, int maxLog,
+                                            int[] modes, int kind) {
+        int maxSymbol = maxSymbolLimit;
+        while (maxSymbol > 0 && counts[maxSymbol] == 0) {
+            maxSymbol--;
+        }
+        int distinct = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] > 0) {
+                distinct++;
+            }
+        }
+        if (distinct == 1 && nbSeq > 2) {
+            modes[kind] = 1;
+            tables.writeByte(maxSymbol);
+            short[] norm = new short[maxSymbol + 1];
+            norm[maxSymbol] = 1;
+            ZstdFse.EncodeTable rle = ZstdFse.buildEncodeTable(norm, maxSymbol, 0);
+            return rle;
+        }
+
+        long defaultCost = maxSymbol < defaultNorm.length
+            ? ZstdFse.estimateBits(counts, maxSymbol, defaultNorm, defaultLog)
+            : Long.MAX_VALUE;
+
+        int tableLog = ZstdFse.optimalTableLog(maxLog, nbSeq, maxSymbol);
+        short[] norm = new short[maxSymbol + 1];
+        ZstdFse.normalizeCounts(norm, counts, maxSymbol, nbSeq, tableLog);
+        BitOutput header = new BitOutput(64);
+        ZstdFse.writeNormalizedCounts(header, norm, maxSymbol, tableLog);
+        long customCost = ZstdFse.estimateBits(counts, maxSymbol, norm, tableLog) + header.size() * 8L;
+
+        if (defaultCost <= customCost) {
+            modes[kind] = 0;
+            return defaultTable;
+        }
+        modes[kind] = 2;
+        byte[] bytes = header.toByteArray();
+        tables.writeBytes(bytes, 0, bytes.length);
+        return ZstdFse.buildEncodeTable(norm, maxSymbol, tableLog);
+    }
+
+    private static byte[] buildCodeTable(int[] base, int[] bits, int bias, int size) {
+        byte[] table = new byte[size];
+        for (int code = 0; code < base.length; code++) {
+            int from = base[code] - bias;
+            int to = Math.min(size, from + (1 << bits[code]));
+            for (int v = from; v < to; v++) {
+                table[v] = (byte) code;
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,399 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+
+/**
+ * Finite State Entropy (tANS) для Zstandard: чтение/запись нормализованных частот,
+ * таблицы декодирования и кодирования
+ */
+final class ZstdFse {
+
+    static final int MIN_TABLE_LOG = 5;
+
+    private ZstdFse() {
+    }
+
+    /**
+     * Таблица декодирования: для каждого состояния символ, число бит и база следующего состояния
+     */
+    static final class DecodeTable {
+        int tableLog;
+        byte[] symbol = new byte[0];
+        byte[] nbBits = new byte[0];
+        short[] newState = new short[0];
+
+        void ensure(int size) {
+            if (symbol.length < size) {
+                symbol = new byte[size];
+                nbBits = new byte[size];
+                newState = new short[size];
+            }
+        }
+    }
+
+    /**
+     * Таблица кодирования (аналог FSE_CTable из эталонной реализации)
+     */
+    static final class EncodeTable {
+        int tableLog;
+        short[] stateTable;
+        int[] deltaNbBits;
+        int[] deltaFindState;
+    }
+
+    // ------------------------------------------------------------------ декодирование
+
+    /**
+     * Читает заголовок с нормализованными частотами.
+     * @return число прочитанных байт; tableLogOut[0] - точность таблицы, maxSymbolOut[0] - последний символ
+     */
+    static int readNormalizedCounts(byte[] src, int start, int end, short[] norm, int maxSymbol,
+                                    int maxTableLog, int[] tableLogOut, int[] maxSymbolOut) throws IOException {
+        ForwardBits in = new ForwardBits(src, start, end);
+        int tableLog = in.read(4) + MIN_TABLE_LOG;
+        if (tableLog > maxTableLog) {
+            throw new IOException("Zstd: слишком большая таблица FSE (" + tableLog + ")");
+        }
+        int remaining = (1 << tableLog) + 1;
+        int threshold = 1 << tableLog;
+        int nbBits = tableLog + 1;
+        int symbol = 0;
+        boolean previous0 = false;
+
+        while (remaining > 1 && symbol <= maxSymbol) {
+            if (previous0) {
+                int n0 = symbol;
+                while (in.peek(2) == 3) {
+                    n0 += 3;
+                    in.skip(2);
+                }
+                n0 += in.read(2);
+                if (n0 > maxSymbol) {
+                    throw new IOException("Zstd: символ FSE вне диапазона");
+                }
+                while (symbol < n0) {
+                    norm[symbol++] = 0;
+                }
+                if (symbol > maxSymbol) {
+                    break;
+                }
+            }
+            int max = (2 * threshold - 1) - remaining;
+            int count;
+            int low = in.peek(nbBits - 1);
+            if (low < max) {
+                count = low;
+                in.skip(nbBits - 1);
+            } else {
+                count = in.peek(nbBits);
+                if (count >= threshold) {
+                    count -= max;
+                }
+                in.skip(nbBits);
+            }
+            count--;
+            remaining -= Math.abs(count);
+            norm[symbol++] = (short) count;
+            previous0 = count == 0;
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+        }
+        if (remaining != 1 || in.overrun()) {
+            throw new IOException("Zstd: повреждённый заголовок FSE");
+        }
+        for (int s = symbol; s <= maxSymbol; s++) {
+            norm[s] = 0;
+        }
+        tableLogOut[0] = tableLog;
+        maxSymbolOut[0] = symbol - 1;
+        return in.bytesConsumed();
+    }
+
+    static void buildDecodeTable(DecodeTable table, short[] norm, int maxSymbol, int tableLog) throws IOException {
+        int tableSize = 1 << tableLog;
+        table.ensure(tableSize);
+        table.tableLog = tableLog;
+        int[] symbolNext = new int[maxSymbol + 1];
+        int highThreshold = tableSize - 1;
+
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (norm[s] == -1) {
+                table.symbol[highThreshold--] = (byte) s;
+                symbolNext[s] = 1;
+            } else {
+                symbolNext[s] = norm[s];
+            }
+        }
+
+        int step = (tableSize >>> 1) + (tableSize >>> 3) + 3;
+        int mask = tableSize - 1;
+        int position = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            for (int i = 0; i < norm[s]; i++) {
+                table.symbol[position] = (byte) s;
+                do {
+                    position = (position + step) & mask;
+                } while (position > highThreshold);
+            }
+        }
+        if (position != 0) {
+            throw new IOException("Zstd: некорректное распределение FSE");
+        }
+
+        for (int u = 0; u < tableSize; u++) {
+            int s = table.symbol[u] & 0xFF;
+            int nextState = symbolNext[s]++;
+            int bits = tableLog - (31 - Integer.numberOfLeadingZeros(nextState));
+            table.nbBits[u] = (byte) bits;
+            table.newState[u] = (short) ((nextState << bits) - tableSize);
+        }
+    }
+
+    static void buildRleTable(DecodeTable table, int symbol) {
+        table.ensure(1);
+        table.tableLog = 0;
+        table.symbol[0] = (byte) symbol;
+        table.nbBits[0] = 0;
+        table.newState[0] = 0;
+    }
+
+    // ------------------------------------------------------------------ кодирование
+
+    /**
+     * Подбор точности таблицы по размеру данных (как FSE_optimalTableLog)
+     */
+    static int optimalTableLog(int maxTableLog, int srcSize, int maxSymbol) {
+        int maxBitsSrc = highBit(srcSize - 1) - 2;
+        int minBitsSrc = highBit(srcSize) + 1;
+        int minBitsSymbols = highBit(maxSymbol) + 2;
+        int minBits = Math.min(minBitsSrc, minBitsSymbols);
+        int tableLog = maxTableLog;
+        if (maxBitsSrc < tableLog) {
+            tableLog = maxBitsSrc;
+        }
+        if (minBits > tableLog) {
+            tableLog = minBits;
+        }
+        return Math.max(MIN_TABLE_LOG, Math.min(tableLog, maxTableLog));
+    }
+
+    /**
+     * Нормализует частоты так, чтобы сумма была 2^tableLog и у каждого встреченного символа было >= 1
+     */
+    static void normalizeCounts(short[] norm, int[] counts, int maxSymbol, int total, int tableLog) {
+        int tableSize = 1 << tableLog;
+        int largest = 0;
+        int distributed = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] == 0) {
+                norm[s] = 0;
+                continue;
+            }
+            int proba = (int) (((long) counts[s] * tableSize + total / 2) / total);
+            if (proba < 1) {
+                proba = 1;
+            }
+            norm[s] = (short) proba;
+            distributed += proba;
+            if (counts[s] > counts[largest]) {
+                largest = s;
+            }
+        }
+        int diff = tableSize - distributed;
+        if (norm[largest] + diff >= 1) {
+            norm[largest] += diff;
+            return;
+        }
+        // Редкий случай: самый частый символ не может забрать весь избыток
+        while (diff < 0) {
+            int best = -1;
+            for (int s = 0; s <= maxSymbol; s++) {
+                if (norm[s] > 1 && (best == -1 || norm[s] > norm[best])) {
+                    best = s;
+                }
+            }
+            norm[best]--;
+            diff++;
+        }
+    }
+
+    static void writeNormalizedCounts(BitOutput out, short[] norm, int maxSymbol, int tableLog) {
+        int tableSize = 1 << tableLog;
+        out.addBits(tableLog - MIN_TABLE_LOG, 4);
+        int remaining = tableSize + 1;
+        int threshold = tableSize;
+        int nbBits = tableLog + 1;
+        int symbol = 0;
+        boolean previous0 = false;
+
+        while (symbol <= maxSymbol && remaining > 1) {
+            if (previous0) {
+                int start = symbol;
+                while (norm[symbol] == 0) {
+                    symbol++;
+                }
+                while (symbol >= start + 3) {
+                    start += 3;
+                    out.addBits(3, 2);
+                }
+                out.addBits(symbol - start, 2);
+            }
+            int count = norm[symbol++];
+            int max = (2 * threshold - 1) - remaining;
+            remaining -= Math.abs(count);
+            count++;
+            if (count >= threshold) {
+                count += max;
+            }
+            out.addBits(count, count < max ? nbBits - 1 : nbBits);
+            previous0 = count == 1;
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+        }
+        out.alignToByte();
+    }
+
+    static EncodeTable buildEncodeTable(short[] norm, int maxSymbol, int tableLog) {
+        int tableSize = 1 << tableLog;
+        int[] cumul = new int[maxSymbol + 2];
+        byte[] tableSymbol = new byte[tableSize];
+        int highThreshold = tableSize - 1;
+
+        for (int s = 1; s <= maxSymbol + 1; s++) {
+            if (norm[s - 1] == -1) {
+                cumul[s] = cumul[s - 1] + 1;
+                tableSymbol[highThreshold--] = (byte) (s - 1);
+            } else {
+                cumul[s] = cumul[s - 1] + norm[s - 1];
+            }
+        }
+
+        int step = (tableSize >>> 1) + (tableSize >>> 3) + 3;
+        int mask = tableSize - 1;
+        int position = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            for (int i = 0; i < norm[s]; i++) {
+                tableSymbol[position] = (byte) s;
+                do {
+                    position = (position + step) & mask;
+                } while (position > highThreshold);
+            }
+        }
+
+        EncodeTable table = new EncodeTable();
+        table.tableLog = tableLog;
+        table.stateTable = new short[tableSize];
+        for (int u = 0; u < tableSize; u++) {
+            int s = tableSymbol[u] & 0xFF;
+            table.stateTable[cumul[s]++] = (short) (tableSize + u);
+        }
+
+        table.deltaNbBits = new int[maxSymbol + 1];
+        table.deltaFindState = new int[maxSymbol + 1];
+        int total = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            int n = norm[s];
+            if (n == 0) {
+                table.deltaNbBits[s] = ((tableLog + 1) << 16) - tableSize;
+            } else if (n == -1 || n == 1) {
+                table.deltaNbBits[s] = (tableLog << 16) - tableSize;
+                table.deltaFindState[s] = total - 1;
+                total++;
+            } else {
+                int maxBitsOut = tableLog - highBit(n - 1);
+                int minStatePlus = n << maxBitsOut;
+                table.deltaNbBits[s] = (maxBitsOut << 16) - minStatePlus;
+                table.deltaFindState[s] = total - n;
+                total += n;
+            }
+        }
+        return table;
+    }
+
+    static int initState(EncodeTable table, int symbol) {
+        int nbBitsOut = (table.deltaNbBits[symbol] + (1 << 15)) >>> 16;
+        int value = (nbBitsOut << 16) - table.deltaNbBits[symbol];
+        return table.stateTable[(value >> nbBitsOut) + table.deltaFindState[symbol]];
+    }
+
+    static int encodeSymbol(BitOutput out, EncodeTable table, int state, int symbol) {
+        int nbBitsOut = (state + table.deltaNbBits[symbol]) >>> 16;
+        out.addBits(state, nbBitsOut);
+        return table.stateTable[(state >> nbBitsOut) + table.deltaFindState[symbol]];
+    }
+
+    static void flushState(BitOutput out, EncodeTable table, int state) {
+        out.addBits(state, table.tableLog);
+    }
+
+    /**
+     * Оценка размера в битах при кодировании частот counts таблицей norm (null - символ не кодируется)
+     */
+    static long estimateBits(int[] counts, int maxSymbol, short[] norm, int tableLog) {
+        long bits = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] == 0) {
+                continue;
+            }
+            int n = s < norm.length ? norm[s] : 0;
+            if (n == 0) {
+                return Long.MAX_VALUE;
+            }
+            double p = (n < 0 ? 1 : n) / (double) (1 << tableLog);
+            bits += (long) Math.ceil(counts[s] * -Math.log(p) / Math.log(2));
+        }
+        return bits;
+    }
+
+    static int highBit(int v) {
+        return 31 - Integer.numberOfLeadingZeros(v);
+    }
+
+    /**
+     * Прямой (LSB-first) битовый поток для заголовков FSE; байты за концом читаются как 0
+     */
+    static final class ForwardBits {
+        private final byte[] src;
+        private final int start;
+        private final int end;
+        private long bitPos;
+
+        ForwardBits(byte[] src, int start, int end) {
+            this.src = src;
+            this.start = start;
+            this.end = end;
+        }
+
+        int peek(int n) {
+            int index = start + (int) (bitPos >>> 3);
+            long v = 0;
+            for (int i = 0; i < 5; i++) {
+                int b = index + i < end ? src[index + i] & 0xFF : 0;
+                v |= (long) b << (8 * i);
+            }
+            return (int) ((v >>> (bitPos & 7)) & ((1L << n) - 1));
+        }
+
+        int read(int n) {
+            int v = peek(n);
+            bitPos += n;
+            return v;
+        }
+
+        void skip(int n) {
+            bitPos += n;
+        }
+
+        boolean overrun() {
+            return start + bytesConsumed() > end;
+        }
+
+        int bytesConsumed() {
+            return (int) ((bitPos + 7) >>> 3);
+        }
+    }
+}
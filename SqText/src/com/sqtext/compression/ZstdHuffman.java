@@ -0,0 +1,302 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+
+/**
+ * Кодирование литералов Zstandard кодами Хаффмана (до 11 бит)
+ */
+final class ZstdHuffman {
+
+    static final int MAX_BITS = 11;
+    private static final int MAX_WEIGHT_TABLE_LOG = 6;
+
+    private ZstdHuffman() {
+    }
+
+    // ------------------------------------------------------------------ декодирование
+
+    static final class DecodeTable {
+        int maxBits;
+        final byte[] symbol = new byte[1 << MAX_BITS];
+        final byte[] nbBits = new byte[1 << MAX_BITS];
+        boolean present;
+    }
+
+    /**
+     * Читает описание дерева и строит таблицу декодирования.
+     * @return число прочитанных байт
+     */
+    static int readTable(DecodeTable table, byte[] src, int start, int end) throws IOException {
+        if (start >= end) {
+            throw new IOException("Zstd: нет описания дерева Хаффмана");
+        }
+        int header = src[start] & 0xFF;
+        int[] weights = new int[256];
+        int count;
+        int consumed;
+        if (header >= 128) {
+            count = header - 127;
+            consumed = 1 + (count + 1) / 2;
+            if (start + consumed > end) {
+                throw new IOException("Zstd: обрезанное дерево Хаффмана");
+            }
+            for (int i = 0; i < count; i++) {
+                int b = src[start + 1 + i / 2] & 0xFF;
+                weights[i] = (i & 1) == 0 ? b >>> 4 : b & 0xF;
+            }
+        } else {
+            consumed = 1 + header;
+            if (start + consumed > end) {
+                throw new IOException("Zstd: обрезанное дерево Хаффмана");
+            }
+            count = decodeWeights(src, start + 1, start + consumed, weights);
+        }
+
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            if (weights[i] > MAX_BITS) {
+                throw new IOException("Zstd: неверный вес Хаффмана");
+            }
+            if (weights[i] > 0) {
+                total += 1 << (weights[i] - 1);
+            }
+        }
+        if (total == 0) {
+            throw new IOException("Zstd: пустое дерево Хаффмана");
+        }
+        int maxBits = ZstdFse.highBit(total) + 1;
+        int rest = (1 << maxBits) - total;
+        if (maxBits > MAX_BITS || Integer.bitCount(rest) != 1) {
+            throw new IOException("Zstd: неполное дерево Хаффмана");
+        }
+        weights[count++] = ZstdFse.highBit(rest) + 1;
+
+        int position = 0;
+        for (int w = 1; w <= maxBits; w++) {
+            int length = 1 << (w - 1);
+            byte bits = (byte) (maxBits + 1 - w);
+            for (int s = 0; s < count; s++) {
+                if (weights[s] == w) {
+                    for (int i = 0; i < length; i++) {
+                        table.symbol[position + i] = (byte) s;
+                        table.nbBits[position + i] = bits;
+                    }
+                    position += length;
+                }
+            }
+        }
+        table.maxBits = maxBits;
+        table.present = true;
+        return consumed;
+    }
+
+    private static int decodeWeights(byte[] src, int start, int end, int[] weights) throws IOException {
+        short[] norm = new short[16];
+        int[] tableLog = new int[1];
+        int[] maxSymbol = new int[1];
+        int headerSize = ZstdFse.readNormalizedCounts(src, start, end, norm, 15,
+            MAX_WEIGHT_TABLE_LOG, tableLog, maxSymbol);
+        ZstdFse.DecodeTable fse = new ZstdFse.DecodeTable();
+        ZstdFse.buildDecodeTable(fse, norm, maxSymbol[0], tableLog[0]);
+
+        ZstdBitReader bits = new ZstdBitReader(src, start + headerSize, end);
+        int s1 = bits.readBits(fse.tableLog);
+        int s2 = bits.readBits(fse.tableLog);
+        int n = 0;
+        while (true) {
+            if (n > 253) {
+                throw new IOException("Zstd: слишком много весов Хаффмана");
+            }
+            weights[n++] = fse.symbol[s1];
+            s1 = fse.newState[s1] + bits.readBits(fse.nbBits[s1]);
+            if (bits.isOverflow()) {
+                weights[n++] = fse.symbol[s2];
+                break;
+            }
+            weights[n++] = fse.symbol[s2];
+            s2 = fse.newState[s2] + bits.readBits(fse.nbBits[s2]);
+            if (bits.isOverflow()) {
+                weights[n++] = fse.symbol[s1];
+                break;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Декодирует один поток Хаффмана ровно в length байт
+     */
+    static void decodeStream(DecodeTable table, byte[] src, int start, int end,
+                             byte[] out, int outOffset, int length, ZstdBitReader bits) throws IOException {
+        bits.init(src, start, end);
+        int maxBits = table.maxBits;
+        byte[] symbols = table.symbol;
+        byte[] nbBits = table.nbBits;
+        for (int i = 0; i < length; i++) {
+            int index = bits.peekBits(maxBits);
+            out[outOffset + i] = symbols[index];
+            bits.skipBits(nbBits[index]);
+        }
+        if (!bits.isComplete()) {
+            throw new IOException("Zstd: поток Хаффмана прочитан не полностью");
+        }
+    }
+
+    // ------------------------------------------------------------------ кодирование
+
+    /**
+     * Готовый код: длины и значения кодов для каждого байта, плюс описание дерева
+     */
+    static final class Code {
+        final int[] lengths = new int[256];
+        final int[] codes = new int[256];
+        byte[] description;
+    }
+
+    /**
+     * Строит код для частот counts. null - если код не получится (меньше двух символов
+     * или описание дерева не помещается)
+     */
+    static Code build(int[] counts) {
+        int maxSymbol = 255;
+        while (maxSymbol >= 0 && counts[maxSymbol] == 0) {
+            maxSymbol--;
+        }
+        int present = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] != 0) {
+                present++;
+            }
+        }
+        if (present < 2) {
+            return null;
+        }
+
+        Code code = new Code();
+        PrefixCodes.buildLengths(counts, maxSymbol + 1, MAX_BITS, code.lengths);
+
+        int maxLen = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            maxLen = Math.max(maxLen, code.lengths[s]);
+        }
+        int[] weights = new int[maxSymbol + 1];
+        for (int s = 0; s <= maxSymbol; s++) {
+            weights[s] = code.lengths[s] == 0 ? 0 : maxLen + 1 - code.lengths[s];
+        }
+
+        // Канонические значения кодов в том же порядке, в каком декодер заполняет таблицу
+        int position = 0;
+        for (int w = 1; w <= maxLen; w++) {
+            for (int s = 0; s <= maxSymbol; s++) {
+                if (weights[s] == w) {
+                    code.codes[s] = position >>> (w - 1);
+                    position += 1 << (w - 1);
+                }
+            }
+        }
+
+        code.description = describe(weights, maxSymbol);
+        return code.description == null ? null : code;
+    }
+
+    /**
+     * Пишет поток в обратном порядке символов: декодер читает его с конца
+     */
+    static void encodeStream(BitOutput out, Code code, byte[] src, int from, int to) {
+        int[] lengths = code.lengths;
+        int[] codes = code.codes;
+        for (int i = to - 1; i >= from; i--) {
+            int b = src[i] & 0xFF;
+            out.addBits(codes[b], lengths[b]);
+        }
+        out.closeWithMarker();
+    }
+
+    static long estimateBits(int[] counts, Code code) {
+        long bits = 0;
+        for (int s = 0; s < 256; s++) {
+            bits += (long) counts[s] * code.lengths[s];
+        }
+        return bits;
+    }
+
+    /**
+     * Описание дерева: веса всех символов, кроме последнего, сжатые FSE или по 4 бита
+     */
+    private static byte[] describe(int[] weights, int maxSymbol) {
+        byte[] compressed = compressWeights(weights, maxSymbol);
+        if (compressed != null && compressed.length < 128) {
+            byte[] result = new byte[1 + compressed.length];
+            result[0] = (byte) compressed.length;
+            System.arraycopy(compressed, 0, result, 1, compressed.length);
+            if (maxSymbol > 128 || result.length <= 1 + (maxSymbol + 1) / 2) {
+                return result;
+            }
+        }
+        if (maxSymbol > 128) {
+            return null;
+        }
+        byte[] direct = new byte[1 + (maxSymbol + 1) / 2];
+        direct[0] = (byte) (127 + maxSymbol);
+        for (int i = 0; i < maxSymbol; i++) {
+            direct[1 + i / 2] |= (byte) ((i & 1) == 0 ? weights[i] << 4 : weights[i]);
+        }
+        return direct;
+    }
+
+    private static byte[] compressWeights(int[] weights, int maxSymbol) {
+        int n = maxSymbol;
+        if (n <= 2) {
+            return null;
+        }
+        int[] counts = new int[16];
+        int maxWeight = 0;
+        for (int i = 0; i < n; i++) {
+            counts[weights[i]]++;
+            maxWeight = Math.max(maxWeight, weights[i]);
+        }
+        for (int w = 0; w <= maxWeight; w++) {
+            if (counts[w] == n) {
+                return null;
+            }
+        }
+        int tableLog = ZstdFse.optimalTableLog(MAX_WEIGHT_TABLE_LOG, n, maxWeight);
+        short[] norm = new short[16];
+        ZstdFse.normalizeCounts(norm, counts, maxWeight, n, tableLog);
+        ZstdFse.EncodeTable table = ZstdFse.buildEncodeTable(norm, maxWeight, tableLog);
+
+        BitOutput out = new BitOutput(64);
+        ZstdFse.writeNormalizedCounts(out, norm, maxWeight, tableLog);
+        int[] state = new int[2];
+        boolean[] started = new boolean[2];
+        for (int i = n - 1; i >= 0; i--) {
+            int st = i & 1;
+            if (!started[st]) {
+                state[st] = ZstdFse.initState(table, weights[i]);
+                started[st] = true;
+            } else {
+                state[st] = ZstdFse.encodeSymbol(out, table, state[st], weights[i]);
+            }
+        }
+        ZstdFse.flushState(out, table, state[1]);
+        ZstdFse.flushState(out, table, state[0]);
+        out.closeWithMarker();
+        byte[] result = out.toByteArray();
+
+        // Проверяем, что декодер восстановит ровно n весов (у FSE бывают граничные случаи)
+        try {
+            int[] check = new int[256];
+            if (decodeWeights(result, 0, result.length, check) != n) {
+                return null;
+            }
+            for (int i = 0; i < n; i++) {
+                if (check[i] != weights[i]) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.sqtext.gui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+import com.sqtext.compression.Progress;
+
+/**
+ * Фоновая операция окна: работа идет в потоке SwingWorker, прогресс (0-99) считается
+ * по байтам, которые обработали кодеки (см. Progress), результат, ошибка или отмена
+ * возвращаются в поток интерфейса. cancel(true) прерывает поток, и кодек бросает
+ * CancellationException на ближайшем блоке. SwingWorker вызывает done() сразу после
+ * cancel, поэтому onCancel откладывается, пока doInBackground действительно не вернется:
+ * иначе окно разблокировалось бы, пока старая операция еще работает
+ */
+class BackgroundJob<T> extends SwingWorker<T, Void> {
+
+    interface Task<T> {
+        T run() throws Exception;
+    }
+
+    private final long totalBytes;
+    private final Task<T> task;
+    private final Consumer<T> onSuccess;
+    private final Consumer<Throwable> onError;
+    private final Runnable onCancel;
+    // Под this: doInBackground идет; done() пришел по отмене, пока он шел; поток свободен
+    private boolean running;
+    private boolean cancelPending;
+    private boolean stopped;
+
+    BackgroundJob(long totalBytes, Task<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError, Runnable onCancel) {
+        this.totalBytes = totalBytes;
+        this.task = task;
+        this.onSuccess = onSuccess;
+        this.onError = onError;
+        this.onCancel = onCancel;
+    }
+
+    @Override
+    protected T doInBackground() throws Exception {
+        synchronized (this) {
+            if (stopped) {
+                return null;
+            }
+            running = true;
+        }
+        Progress progress = Progress.start(totalBytes,
+            (done, total) -> setProgress((int) Math.min(99, done * 100 / total)));
+        try {
+            return task.run();
+        } finally {
+            progress.close();
+            boolean cancelled;
+            synchronized (this) {
+                running = false;
+                stopped = true;
+                cancelled = cancelPending;
+            }
+            if (cancelled) {
+                SwingUtilities.invokeLater(onCancel);
+            }
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            synchronized (this) {
+                if (running) {
+                    // onCancel вызовет doInBackground, когда вернется
+                    cancelPending = true;
+                    return;
+                }
+                stopped = true;
+            }
+            onCancel.run();
+            return;
+        }
+        try {
+            onSuccess.accept(get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                onCancel.run();
+            } else {
+                onError.accept(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
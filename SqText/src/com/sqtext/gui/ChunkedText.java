@@ -0,0 +1,148 @@
+package com.sqtext.gui;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый текст, разбитый на куски по CHUNK символов: кусок из одних Latin-1
+ * символов хранится байтами (как компактная строка), остальные - символами, поэтому
+ * большой результат не требует одного огромного массива. Заодно при построении
+ * запоминаются начала строк - просмотр по ним переносит строки без прохода по тексту
+ */
+final class ChunkedText implements CharSequence {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    static final ChunkedText EMPTY = of("");
+
+    private final int length;
+    /** Для каждого куска заполнен ровно один из массивов */
+    private final byte[][] latin;
+    private final char[][] wide;
+    /** Начала строк: смещение первого символа после каждого '\n' (и 0) */
+    private final int[] lineStarts;
+    private final int lineCount;
+
+    private ChunkedText(int length, byte[][] latin, char[][] wide, int[] lineStarts, int lineCount) {
+        this.length = length;
+        this.latin = latin;
+        this.wide = wide;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Копирует текст по кускам; вызывается в фоновом потоке, исходную строку после
+     * этого можно отпустить
+     */
+    static ChunkedText of(CharSequence text) {
+        int length = text.length();
+        int chunks = (length + CHUNK - 1) >>> CHUNK_BITS;
+        byte[][] latin = new byte[chunks][];
+        char[][] wide = new char[chunks][];
+        int[] lineStarts = new int[16];
+        int lineCount = 1;
+        char[] buffer = new char[Math.min(CHUNK, length)];
+        for (int c = 0; c < chunks; c++) {
+            int start = c << CHUNK_BITS;
+            int size = Math.min(CHUNK, length - start);
+            boolean narrow = true;
+            for (int i = 0; i < size; i++) {
+                char ch = text.charAt(start + i);
+                buffer[i] = ch;
+                if (ch > 0xFF) {
+                    narrow = false;
+                } else if (ch == '\n') {
+                    if (lineCount == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                    }
+                    lineStarts[lineCount++] = start + i + 1;
+                }
+            }
+            if (narrow) {
+                byte[] bytes = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    bytes[i] = (byte) buffer[i];
+                }
+                latin[c] = bytes;
+            } else {
+                wide[c] = Arrays.copyOf(buffer, size);
+            }
+        }
+        return new ChunkedText(length, latin, wide, lineStarts, lineCount);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int c = index >>> CHUNK_BITS;
+        int i = index & (CHUNK - 1);
+        return latin[c] != null ? (char) (latin[c][i] & 0xFF) : wide[c][i];
+    }
+
+    /**
+     * Копирует символы [start, end) в dst с позиции dstBegin
+     */
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        while (start < end) {
+            int c = start >>> CHUNK_BITS;
+            int i = start & (CHUNK - 1);
+            int n = Math.min(end - start, CHUNK - i);
+            if (latin[c] != null) {
+                byte[] bytes = latin[c];
+                for (int k = 0; k < n; k++) {
+                    dst[dstBegin + k] = (char) (bytes[i + k] & 0xFF);
+                }
+            } else {
+                System.arraycopy(wide[c], i, dst, dstBegin, n);
+            }
+            start += n;
+            dstBegin += n;
+        }
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ")");
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        char[] buffer = new char[Math.min(CHUNK, end - start)];
+        for (int pos = start; pos < end; pos += buffer.length) {
+            int n = Math.min(buffer.length, end - pos);
+            getChars(pos, pos + n, buffer, 0);
+            sb.append(buffer, 0, n);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /** Конец строки без '\n' */
+    int getLineEnd(int line) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : length;
+    }
+
+    /** Номер строки, в которой стоит символ offset */
+    int lineOf(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.sqtext.gui;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTextArea;
+import javax.swing.SpinnerNumberModel;
+
+import com.sqtext.compression.SqzContainer;
+
+/**
+ * Постраничный просмотр большого контейнера .sqz: на каждую страницу распаковываются
+ * только блоки с ее строками, весь текст в память не загружается
+ */
+public class ContainerPager extends JDialog {
+    /** Контейнеры больше этого размера (в распакованном виде) открываются постранично */
+    public static final long PAGED_SIZE = 16L << 20;
+    private static final int PAGE_LINES = 500;
+    /** Длинные строки обрезаются: JTextArea плохо переносит мегабайтные строки */
+    private static final int MAX_LINE_CHARS = 10_000;
+
+    private final SqzContainer container;
+    private final long lineCount;
+    private long firstLine;
+
+    private JTextArea textArea;
+    private JLabel positionLabel;
+    private JSpinner lineSpinner;
+    private JButton prevButton, nextButton;
+
+    public ContainerPager(JFrame parent, Path file) throws IOException {
+        super(parent, "Просмотр: " + file.getFileName(), true);
+        this.container = SqzContainer.open(file);
+        long lines;
+        try {
+            lines = container.getLineCount();
+        } catch (IOException e) {
+            container.close();
+            throw e;
+        }
+        this.lineCount = lines;
+        setSize(900, 650);
+        setLocationRelativeTo(parent);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                try {
+                    container.close();
+                } catch (IOException ignored) {
+                    // файл только читался
+                }
+            }
+        });
+
+        initComponents();
+        showPage(0);
+    }
+
+    /**
+     * Нужен ли файлу постраничный просмотр: контейнер .sqz больше PAGED_SIZE
+     */
+    public static boolean isPaged(Path file) throws IOException {
+        if (!SqzContainer.isContainer(file)) {
+            return false;
+        }
+        try (SqzContainer container = SqzContainer.open(file)) {
+            return container.getUncompressedSize() > PAGED_SIZE;
+        }
+    }
+
+    private void initComponents() {
+        textArea = new JTextArea();
+        textArea.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        textArea.setEditable(false);
+
+        JButton firstButton = new JButton("⏮");
+        prevButton = new JButton("◀ Назад");
+        nextButton = new JButton("Вперед ▶");
+        JButton lastButton = new JButton("⏭");
+        lineSpinner = new JSpinner(new SpinnerNumberModel(1.0, 1.0, Math.max(1, lineCount), 1.0));
+        lineSpinner.setEditor(new JSpinner.NumberEditor(lineSpinner, "#"));
+        JButton goButton = new JButton("Перейти");
+        positionLabel = new JLabel();
+
+        firstButton.addActionListener(e -> showPage(0));
+        prevButton.addActionListener(e -> showPage(firstLine - PAGE_LINES));
+        nextButton.addActionListener(e -> showPage(firstLine + PAGE_LINES));
+        lastButton.addActionListener(e -> showPage(lineCount - PAGE_LINES));
+        goButton.addActionListener(e -> showPage(((Number) lineSpinner.getValue()).longValue() - 1));
+
+        JPanel navigation = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        navigation.add(firstButton);
+        navigation.add(prevButton);
+        navigation.add(nextButton);
+        navigation.add(lastButton);
+        navigation.add(new JLabel("Строка:"));
+        navigation.add(lineSpinner);
+        navigation.add(goButton);
+        navigation.add(positionLabel);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(5, 5));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        mainPanel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+        mainPanel.add(navigation, BorderLayout.SOUTH);
+        setContentPane(mainPanel);
+    }
+
+    private void showPage(long first) {
+        first = Math.max(0, Math.min(first, lineCount - 1));
+        try {
+            List<String> lines = container.readLines(first, PAGE_LINES);
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                if (line.length() > MAX_LINE_CHARS) {
+                    sb.append(line, 0, MAX_LINE_CHARS).append(" … (+")
+                        .append(line.length() - MAX_LINE_CHARS).append(" симв.)");
+                } else {
+                    sb.append(line);
+                }
+                sb.append('\n');
+            }
+            firstLine = first;
+            textArea.setText(sb.toString());
+            textArea.setCaretPosition(0);
+            positionLabel.setText(String.format("Строки %,d–%,d из %,d",
+                first + 1, first + lines.size(), lineCount));
+            prevButton.setEnabled(first > 0);
+            nextButton.setEnabled(first + lines.size() < lineCount);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Ошибка чтения контейнера: " + e.getMessage(),
+                "Ошибка", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.sqtext.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
@@ -11,15 +12,21 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
@@ -33,11 +40,23 @@ import javax.swing.JTextArea;
 import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
 
 import com.sqtext.compression.AdvancedCompressor;
+import com.sqtext.compression.AlgorithmOracle;
 import com.sqtext.compression.ChatCompressor;
+import com.sqtext.compression.ChunkStore;
+import com.sqtext.compression.DedupCompressor;
+import com.sqtext.compression.DeltaCompressor;
+import com.sqtext.compression.Envelope;
 import com.sqtext.compression.GZipCompressor;
 import com.sqtext.compression.NeuroCompressor;
+import com.sqtext.compression.Progress;
+import com.sqtext.compression.TextEncoding;
+import com.sqtext.compression.TokenEstimator;
+import com.sqtext.compression.WordCompressor;
 import com.sqtext.history.HistoryManager;
 import com.sqtext.settings.FontSettingsDialog;
 import com.sqtext.utils.FileUtils;
@@ -46,12 +65,24 @@ import com.sqtext.utils.FileUtils;
 public class MainWindow extends JFrame {
     // Компоненты
     private JTextArea inputArea;
-    private JTextArea outputArea;
+    /** Результат бывает многомегабайтной строкой: виртуальный просмотр вместо JTextArea */
+    private PayloadView outputArea;
     private JLabel statsLabel;
     private JComboBox<String> algorithmCombo;
+    private JComboBox<TextEncoding> encodingCombo;
     private JSpinner depthSpinner;
-    private JButton compressBtn, decompressBtn, copyBtn, clearBtn, historyBtn;
+    private JButton compressBtn, decompressBtn, copyBtn, clearBtn, historyBtn, statsBtn;
     private JProgressBar progressBar;
+    private JButton cancelBtn;
+    /** Текущая фоновая операция; одновременно идет только одна */
+    private BackgroundJob<JobResult> currentJob;
+    /** Автоопределение: пауза после ввода, номер правки текста и вердикт для него */
+    private static final int DETECT_DELAY_MS = 300;
+    private Timer detectTimer;
+    private SwingWorker<Boolean, Void> detectJob;
+    private long documentRevision;
+    private long detectedRevision = -1;
+    private boolean detectedCompressed;
     
     public MainWindow() {
         setTitle("SqText - Умное сжатие текста");
@@ -71,13 +102,16 @@ public class MainWindow extends JFrame {
         menuBar.add(settingsMenu);
         setJMenuBar(menuBar);
         
-        // Добавляем слушатель для автоопределения
+        // Добавляем слушатель для автоопределения: проверка после паузы в наборе
+        detectTimer = new Timer(DETECT_DELAY_MS, e -> autoDetectAndProcess());
+        detectTimer.setRepeats(false);
         inputArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             public void changedUpdate(javax.swing.event.DocumentEvent e) { autoDetect(); }
             public void removeUpdate(javax.swing.event.DocumentEvent e) { autoDetect(); }
             public void insertUpdate(javax.swing.event.DocumentEvent e) { autoDetect(); }
             private void autoDetect() {
-                autoDetectAndProcess();
+                documentRevision++;
+                detectTimer.restart();
             }
         });
     }
@@ -93,24 +127,41 @@ public class MainWindow extends JFrame {
     inputArea.setLineWrap(true);
     inputArea.setWrapStyleWord(true);
     
-    outputArea = new JTextArea();
+    outputArea = new PayloadView();
     outputArea.setFont(monospacedFont);
-    outputArea.setEditable(false);
-    outputArea.setLineWrap(true);
-    outputArea.setWrapStyleWord(true);
     
     // Выбор алгоритма с увеличенным шрифтом
     String[] algorithms = {
         "GZIP", 
         "Рекурсивный GZIP", 
         "Для нейросети (JSON)", 
+        "Для нейросети (словарь SqText)",
         "Ultra-Compact",
         "Smart (автовыбор)",
-        "Для чат-бота"
+        "Для чат-бота",
+        "Для чат-бота (меньше токенов)",
+        "Для чат-бота (словарь SqText)",
+        "Повторы (дедупликация)",
+        "Изменения (дельта)",
+        "Текст (словарь слов)"
     };
     algorithmCombo = new JComboBox<>(algorithms);
     algorithmCombo.setFont(largeFont);
     
+    // Кодировка сжатых данных в текст (для JSON-форматов)
+    encodingCombo = new JComboBox<>(TextEncoding.values());
+    encodingCombo.setFont(largeFont);
+    encodingCombo.setToolTipText("<html>Base64 понимают все; Z85 короче на 6%;<br>" +
+        "Base-122 экономит байты, Base32768 - символы</html>");
+    encodingCombo.setRenderer(new DefaultListCellRenderer() {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value,
+                int index, boolean isSelected, boolean cellHasFocus) {
+            Object title = value instanceof TextEncoding ? ((TextEncoding) value).getTitle() : value;
+            return super.getListCellRendererComponent(list, title, index, isSelected, cellHasFocus);
+        }
+    });
+    
     // Глубина рекурсии с увеличенным шрифтом
     depthSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 10, 1));
     JComponent editor = depthSpinner.getEditor();
@@ -124,11 +175,15 @@ public class MainWindow extends JFrame {
     copyBtn = new JButton("Копировать результат");
     clearBtn = new JButton("Очистить");
     historyBtn = new JButton("История");
+    statsBtn = new JButton("Статистика");
     
     // Прогресс-бар
     progressBar = new JProgressBar(0, 100);
     progressBar.setVisible(false);
     progressBar.setStringPainted(true);
+    cancelBtn = new JButton("Отмена");
+    cancelBtn.setVisible(false);
+    cancelBtn.addActionListener(e -> cancelJob());
     
     // Статистика с увеличенным шрифтом
     statsLabel = new JLabel("Готов к работе");
@@ -142,6 +197,7 @@ public class MainWindow extends JFrame {
     copyBtn.setFont(buttonFont);
     clearBtn.setFont(buttonFont);
     historyBtn.setFont(buttonFont);
+    statsBtn.setFont(buttonFont);
     
     // Назначаем горячие клавиши
     setupHotKeys();
@@ -152,6 +208,7 @@ public class MainWindow extends JFrame {
     copyBtn.addActionListener(e -> copyToClipboard());
     clearBtn.addActionListener(e -> clearAll());
     historyBtn.addActionListener(e -> showHistory());
+    statsBtn.addActionListener(e -> new StatisticsDialog(this).setVisible(true));
 }
     
     private void setupHotKeys() {
@@ -190,18 +247,20 @@ public class MainWindow extends JFrame {
     private void layoutComponents() {
         JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
         mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        mainPanel.add(progressBar, BorderLayout.SOUTH);
         // Панель управления
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         controlPanel.add(new JLabel("Алгоритм:"));
         controlPanel.add(algorithmCombo);
         controlPanel.add(new JLabel("Глубина:"));
         controlPanel.add(depthSpinner);
+        controlPanel.add(new JLabel("Кодировка:"));
+        controlPanel.add(encodingCombo);
         controlPanel.add(compressBtn);
         controlPanel.add(decompressBtn);
         controlPanel.add(copyBtn);
         controlPanel.add(clearBtn);
         controlPanel.add(historyBtn);
+        controlPanel.add(statsBtn);
         
         // Желтый квадратик справки
         JButton helpButton = new JButton("?");
@@ -228,12 +287,20 @@ public class MainWindow extends JFrame {
         
         mainPanel.add(controlPanel, BorderLayout.NORTH);
         mainPanel.add(splitPane, BorderLayout.CENTER);
-        mainPanel.add(statsLabel, BorderLayout.SOUTH);
+        
+        // Строка состояния: статистика, прогресс и отмена фоновой операции
+        JPanel statusPanel = new JPanel(new BorderLayout(10, 0));
+        JPanel progressPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        progressPanel.add(progressBar);
+        progressPanel.add(cancelBtn);
+        statusPanel.add(statsLabel, BorderLayout.CENTER);
+        statusPanel.add(progressPanel, BorderLayout.EAST);
+        mainPanel.add(statusPanel, BorderLayout.SOUTH);
         
         setContentPane(mainPanel);
     }
     
-    private JPanel createTextPanel(String title, JTextArea textArea, boolean isInputPanel) {
+    private JPanel createTextPanel(String title, JComponent textArea, boolean isInputPanel) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(BorderFactory.createTitledBorder(
             BorderFactory.createLineBorder(new Color(100, 100, 200), 2), 
@@ -278,11 +345,14 @@ public class MainWindow extends JFrame {
     
     // Основные методы
     private void compressText() {
-    	showProgress("Начинаем сжатие...", 10);
         String algorithm = (String) algorithmCombo.getSelectedItem();
         
         if ("Для нейросети (JSON)".equals(algorithm)) {
-            compressForNeuro();
+            compressForNeuro("GZIP");
+            return;
+        }
+        if ("Для нейросети (словарь SqText)".equals(algorithm)) {
+            compressForNeuro(NeuroCompressor.ALGORITHM_DICTIONARY);
             return;
         }
         
@@ -297,7 +367,27 @@ public class MainWindow extends JFrame {
             
         }
         if ("Для чат-бота".equals(algorithm)) {
-            compressForChat();
+            compressForChat(ChatCompressor.Mode.BYTES);
+            return;
+        }
+        if ("Для чат-бота (меньше токенов)".equals(algorithm)) {
+            compressForChat(ChatCompressor.Mode.TOKENS);
+            return;
+        }
+        if ("Для чат-бота (словарь SqText)".equals(algorithm)) {
+            compressForChat(ChatCompressor.Mode.DICTIONARY);
+            return;
+        }
+        if ("Повторы (дедупликация)".equals(algorithm)) {
+            compressDedup();
+            return;
+        }
+        if ("Изменения (дельта)".equals(algorithm)) {
+            compressDelta();
+            return;
+        }
+        if ("Текст (словарь слов)".equals(algorithm)) {
+            compressWords();
             return;
         }
         
@@ -310,145 +400,163 @@ public class MainWindow extends JFrame {
         }
         
         int depth = (Integer) depthSpinner.getValue();
+        boolean recursive = "Рекурсивный GZIP".equals(algorithm);
         
-        try {
+        runJob("Сжатие", "❌ Ошибка сжатия: ", Progress.utf8Length(text) * (recursive ? depth : 1), () -> {
             long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
             String compressed;
             int originalSize = text.getBytes("UTF-8").length;
             
-            if ("GZIP".equals(algorithm)) {
-                compressed = GZipCompressor.compress(text);
-            } else if ("Рекурсивный GZIP".equals(algorithm)) {
+            if (recursive) {
                 compressed = GZipCompressor.compressRecursive(text, depth);
             } else {
                 compressed = GZipCompressor.compress(text);
             }
             
             long endTime = System.currentTimeMillis();
+            recordHistory("COMPRESS", recursive ? "gzip-rec" : "gzip", text, compressed, startNanos);
             int compressedSize = compressed.getBytes("UTF-8").length;
             double ratio = (double) compressedSize / originalSize;
             long time = endTime - startTime;
             
-            outputArea.setText(compressed);
-            
             String stats = String.format("✅ Сжато: %d → %d байт (коэфф.: %.2f) за %d мс", 
-                originalSize, compressedSize, ratio, time);
-            statsLabel.setText(stats);
-            statsLabel.setForeground(new Color(0, 150, 0));
-            
-            // История
-            HistoryManager.HistoryEntry entry = new HistoryManager.HistoryEntry(
-                "COMPRESS", originalSize, compressedSize, time);
-            HistoryManager.addEntry(entry);
-            
-        } catch (Exception e) {
-            statsLabel.setText("❌ Ошибка сжатия: " + e.getMessage());
-            statsLabel.setForeground(Color.RED);
-            e.printStackTrace();
-            showProgress("Ошибка сжатия", 100);
-        }
-        showProgress("Сжатие завершено", 100);
+                originalSize, compressedSize, ratio, time) + tokenStats(text, compressed);
+            return new JobResult(compressed, stats);
+        });
     }
     
     private void decompressText() {
         String text = inputArea.getText().trim();
-     // Проверяем, это чат-формат?
-        if (ChatCompressor.isChatFormat(text)) {
-            try {
-                String decompressed = ChatCompressor.extractFromChat(text);
-                outputArea.setText(decompressed);
-                statsLabel.setText("✅ Распакован чат-формат");
-                statsLabel.setForeground(new Color(0, 150, 0));
-                return;
-            } catch (Exception e) {
-                statsLabel.setText("❌ Ошибка распаковки чат-формата: " + e.getMessage());
-                statsLabel.setForeground(Color.RED);
-                return;
-            }
-        }
         if (text.isEmpty()) {
             statsLabel.setText("⚠️ Введите текст для распаковки");
             statsLabel.setForeground(Color.ORANGE);
             return;
         }
         
-        // Ultra-Compact формат
-        if ((text.startsWith("{\"d\":\"") && text.endsWith("\"}")) ||
-            (text.startsWith("{\"a\":\"") && text.contains("\"d\":\""))) {
-            try {
-                String decompressed = AdvancedCompressor.decompressUltraCompact(text);
-                outputArea.setText(decompressed);
-                statsLabel.setText("✅ Распакован Ultra-Compact формат");
-                statsLabel.setForeground(new Color(0, 150, 0));
-                return;
-            } catch (Exception e) {
-                statsLabel.setText("❌ Ошибка распаковки Ultra-Compact: " + e.getMessage());
-                statsLabel.setForeground(Color.RED);
-                return;
-            }
-        }
-        
-        // JSON формат для нейросети
-        if (NeuroCompressor.isNeuroFormat(text)) {
-            try {
-                String decompressed = NeuroCompressor.decompressFromNeuro(text);
-                outputArea.setText(decompressed);
-                statsLabel.setText("✅ Распакован JSON формат нейросети");
-                statsLabel.setForeground(new Color(0, 150, 0));
-                return;
-            } catch (Exception e) {
-                statsLabel.setText("❌ Ошибка распаковки JSON формата: " + e.getMessage());
-                statsLabel.setForeground(Color.RED);
-                return;
-            }
+        // Форматы с JSON-конвертом: чат, нейросеть, Smart, Ultra-Compact
+        Envelope envelope = Envelope.tryParse(text);
+        if (envelope != null) {
+            String title = envelope.getFormat().getTitle();
+            runJob("Распаковка", "❌ Ошибка распаковки (" + title + "): ", text.length() * 3L / 4, () -> {
+                long startNanos = System.nanoTime();
+                String decompressed = envelope.decode();
+                recordHistory("DECOMPRESS", historyName(envelope), text, decompressed, startNanos);
+                return new JobResult(decompressed, "✅ Распакован " + title);
+            });
+            return;
         }
         
-        
         // Обычная распаковка
         int depth = (Integer) depthSpinner.getValue();
-        String algorithm = (String) algorithmCombo.getSelectedItem();
+        boolean recursive = "Рекурсивный GZIP".equals(algorithmCombo.getSelectedItem());
         
-        try {
+        // Объем работы - сжатые байты (Base64: 3 байта на 4 символа)
+        runJob("Распаковка", "❌ Ошибка распаковки: ", text.length() * 3L / 4, () -> {
             long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
             String decompressed;
             int compressedSize = text.getBytes("UTF-8").length;
             
-            if ("GZIP".equals(algorithm)) {
-                decompressed = GZipCompressor.decompress(text);
-            } else if ("Рекурсивный GZIP".equals(algorithm)) {
+            if (recursive) {
                 decompressed = GZipCompressor.decompressRecursive(text, depth);
             } else {
                 decompressed = GZipCompressor.decompress(text);
             }
             
             long endTime = System.currentTimeMillis();
+            recordHistory("DECOMPRESS", recursive ? "gzip-rec" : "gzip", text, decompressed, startNanos);
             int decompressedSize = decompressed.getBytes("UTF-8").length;
             double ratio = (double) compressedSize / decompressedSize;
             long time = endTime - startTime;
             
-            outputArea.setText(decompressed);
-            
             String stats = String.format("✅ Распаковано: %d → %d байт (коэфф.: %.2f) за %d мс", 
                 compressedSize, decompressedSize, ratio, time);
-            statsLabel.setText(stats);
-            statsLabel.setForeground(new Color(0, 150, 0));
-            
-            // История
-            HistoryManager.HistoryEntry entry = new HistoryManager.HistoryEntry(
-                "DECOMPRESS", compressedSize, decompressedSize, time);
-            HistoryManager.addEntry(entry);
-            
-        } catch (Exception e) {
-            statsLabel.setText("❌ Ошибка распаковки: " + e.getMessage());
-            statsLabel.setForeground(Color.RED);
-            e.printStackTrace();
+            return new JobResult(decompressed, stats);
+        });
+    }
+    
+    /**
+     * Результат фоновой операции: текст для поля результата и строка статистики.
+     * Текст раскладывается по кускам здесь же, в фоновом потоке
+     */
+    private static final class JobResult {
+        final ChunkedText output;
+        final String stats;
+        
+        JobResult(String output, String stats) {
+            this.output = ChunkedText.of(output);
+            this.stats = stats;
+        }
+    }
+    
+    /**
+     * Запускает операцию в фоне: окно не замирает, прогресс идет по обработанным байтам,
+     * кнопка "Отмена" прерывает операцию; результат выводится в потоке интерфейса
+     */
+    private void runJob(String title, String errorPrefix, long totalBytes, BackgroundJob.Task<JobResult> task) {
+        if (currentJob != null) {
+            statsLabel.setText("⏳ Дождитесь окончания операции или отмените ее");
+            statsLabel.setForeground(Color.ORANGE);
+            return;
+        }
+        BackgroundJob<JobResult> job = new BackgroundJob<>(totalBytes, task,
+            result -> {
+                setBusy(false);
+                outputArea.setText(result.output);
+                statsLabel.setText(result.stats);
+                statsLabel.setForeground(new Color(0, 150, 0));
+                showProgress(title + " завершено", 100);
+            },
+            error -> {
+                setBusy(false);
+                statsLabel.setText(errorPrefix + error.getMessage());
+                statsLabel.setForeground(Color.RED);
+                error.printStackTrace();
+                showProgress("Ошибка", 100);
+            },
+            () -> {
+                setBusy(false);
+                statsLabel.setText("⏹ Операция отменена");
+                statsLabel.setForeground(Color.ORANGE);
+                showProgress("Отменено", 100);
+            });
+        job.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && currentJob == job && !job.isCancelled()) {
+                showProgress(title + "... " + e.getNewValue() + "%", (Integer) e.getNewValue());
+            }
+        });
+        currentJob = job;
+        setBusy(true);
+        statsLabel.setText("⏳ " + title + "...");
+        statsLabel.setForeground(Color.BLUE);
+        showProgress(title + "...", 0);
+        job.execute();
+    }
+    
+    private void cancelJob() {
+        if (currentJob != null && currentJob.cancel(true)) {
+            // Кнопки вернутся, когда поток операции действительно остановится
+            cancelBtn.setEnabled(false);
+            statsLabel.setText("⏳ Отмена...");
+            statsLabel.setForeground(Color.ORANGE);
+        }
+    }
+    
+    private void setBusy(boolean busy) {
+        if (!busy) {
+            currentJob = null;
         }
+        compressBtn.setEnabled(!busy);
+        decompressBtn.setEnabled(!busy);
+        cancelBtn.setEnabled(busy);
+        cancelBtn.setVisible(busy);
     }
     
     // Дополнительные методы
     private void copyToClipboard() {
-        String text = outputArea.getText();
-        if (!text.isEmpty()) {
+        if (!outputArea.isEmpty()) {
+            String text = outputArea.getText();
             StringSelection selection = new StringSelection(text);
             Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
             clipboard.setContents(selection, null);
@@ -466,7 +574,7 @@ public class MainWindow extends JFrame {
         List<String> history = HistoryManager.getHistory();
         if (history.isEmpty()) {
             JOptionPane.showMessageDialog(this,
-                "История операций пуста\nФайл истории: sqtext_history.txt",
+                "История операций пуста\nФайл истории: " + HistoryManager.getHistoryFile(),
                 "История", JOptionPane.INFORMATION_MESSAGE);
         } else {
             StringBuilder sb = new StringBuilder();
@@ -488,11 +596,50 @@ public class MainWindow extends JFrame {
         }
     }
     
+    /**
+     * Определяет, сжат ли текст во входном поле. Копируются только начало и конец
+     * документа, проверка идет в фоне; вердикт запоминается для номера правки, а
+     * проверка устаревшей правки отменяется
+     */
     private void autoDetectAndProcess() {
-        String text = inputArea.getText().trim();
-        if (text.isEmpty()) return;
+        detectTimer.stop();
+        if (detectedRevision == documentRevision) {
+            showDetected(detectedCompressed);
+            return;
+        }
+        int length = inputArea.getDocument().getLength();
+        String head = documentText(0, Math.min(length, GZipCompressor.DETECT_WINDOW * 2));
+        if (head.trim().isEmpty() && head.length() == length) return;
+        String tail = length > head.length()
+            ? documentText(length - GZipCompressor.DETECT_WINDOW, GZipCompressor.DETECT_WINDOW)
+            : "";
         
-        boolean looksCompressed = GZipCompressor.isCompressed(text);
+        if (detectJob != null) {
+            detectJob.cancel(true);
+        }
+        long revision = documentRevision;
+        detectJob = new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() {
+                return GZipCompressor.looksCompressed(head, tail, length);
+            }
+            
+            @Override
+            protected void done() {
+                if (isCancelled() || revision != documentRevision) return;
+                try {
+                    detectedCompressed = get();
+                    detectedRevision = revision;
+                    showDetected(detectedCompressed);
+                } catch (InterruptedException | ExecutionException e) {
+                    // вердикта нет - подсказка остается прежней
+                }
+            }
+        };
+        detectJob.execute();
+    }
+    
+    private void showDetected(boolean looksCompressed) {
         if (looksCompressed) {
             statsLabel.setText("🔍 Обнаружен сжатый текст. Нажмите 'Распаковать'");
             statsLabel.setForeground(Color.BLUE);
@@ -503,8 +650,32 @@ public class MainWindow extends JFrame {
         }
     }
     
+    private String documentText(int offset, int length) {
+        try {
+            return inputArea.getDocument().getText(offset, length);
+        } catch (BadLocationException e) {
+            return "";
+        }
+    }
+    
     private void loadFileToInput() {
-        String content = FileUtils.readFile(this);
+        Path file = FileUtils.chooseFile(this);
+        if (file == null) {
+            return;
+        }
+        try {
+            if (ContainerPager.isPaged(file)) {
+                // Огромный архив целиком в поле ввода не грузим - листаем по страницам
+                new ContainerPager(this, file).setVisible(true);
+                return;
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Ошибка чтения файла: " + e.getMessage(),
+                "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String content = FileUtils.readFile(this, file);
         if (content != null) {
             inputArea.setText(content);
             autoDetectAndProcess();
@@ -523,8 +694,8 @@ public class MainWindow extends JFrame {
     }
     
     private void saveOutputToFile() {
-        String content = outputArea.getText();
-        if (!content.isEmpty()) {
+        if (!outputArea.isEmpty()) {
+            String content = outputArea.getText();
             boolean isCompressed = GZipCompressor.isCompressed(content);
             boolean saved = FileUtils.saveFile(this, content, isCompressed);
             if (saved) {
@@ -537,8 +708,10 @@ public class MainWindow extends JFrame {
         }
     }
     
-    private void compressForNeuro() {
-    	showProgress("Начинаем сжатие...", 10);
+    /**
+     * @param algorithm "GZIP" или NeuroCompressor.ALGORITHM_DICTIONARY (распаковка только в SqText)
+     */
+    private void compressForNeuro(String algorithm) {
         String text = inputArea.getText().trim();
         if (text.isEmpty()) {
             statsLabel.setText("⚠️ Введите текст для сжатия");
@@ -547,30 +720,22 @@ public class MainWindow extends JFrame {
         }
         
         int depth = (Integer) depthSpinner.getValue();
+        TextEncoding encoding = selectedEncoding();
         
-        try {
+        runJob("Сжатие", "❌ Ошибка создания JSON формата: ", Progress.utf8Length(text), () -> {
             long startTime = System.currentTimeMillis();
-            String compressed = NeuroCompressor.compressForNeuro(text, depth, "GZIP");
+            long startNanos = System.nanoTime();
+            String compressed = NeuroCompressor.compressForNeuro(text, depth, algorithm, encoding);
             long endTime = System.currentTimeMillis();
-            
-            outputArea.setText(compressed);
+            recordHistory("COMPRESS", "neuro", text, compressed, startNanos);
             
             String stats = String.format("✅ Сжато в JSON-формат для нейросети за %d мс", 
-                endTime - startTime);
-            statsLabel.setText(stats);
-            statsLabel.setForeground(new Color(0, 150, 0));
-            
-        } catch (Exception e) {
-            statsLabel.setText("❌ Ошибка создания JSON формата: " + e.getMessage());
-            statsLabel.setForeground(Color.RED);
-            e.printStackTrace();
-            showProgress("Ошибка сжатия", 100);
-        }
-        showProgress("Сжатие завершено", 100);
+                endTime - startTime) + tokenStats(text, compressed);
+            return new JobResult(compressed, stats);
+        });
     }
     
     private void compressUltraCompact() {
-    	showProgress("Начинаем сжатие...", 10);
         String text = inputArea.getText().trim();
         if (text.isEmpty()) {
             statsLabel.setText("⚠️ Введите текст для сжатия");
@@ -578,30 +743,23 @@ public class MainWindow extends JFrame {
             return;
         }
         
-        try {
+        TextEncoding encoding = selectedEncoding();
+        
+        runJob("Сжатие", "❌ Ошибка Ultra-Compact сжатия: ", Progress.utf8Length(text), () -> {
             long startTime = System.currentTimeMillis();
-            String compressed = AdvancedCompressor.compressUltraCompact(text);
+            long startNanos = System.nanoTime();
+            String compressed = AdvancedCompressor.compressUltraCompactV2(text, encoding);
             long endTime = System.currentTimeMillis();
-            
-            outputArea.setText(compressed);
+            recordHistory("COMPRESS", "ultra", text, compressed, startNanos);
             
             String stats = String.format("✅ Ultra-Compact сжатие: %d → %d байт за %d мс",
                 text.getBytes("UTF-8").length, compressed.getBytes("UTF-8").length, 
-                endTime - startTime);
-            statsLabel.setText(stats);
-            statsLabel.setForeground(new Color(0, 150, 0));
-            
-        } catch (Exception e) {
-            statsLabel.setText("❌ Ошибка Ultra-Compact сжатия: " + e.getMessage());
-            statsLabel.setForeground(Color.RED);
-            e.printStackTrace();
-            showProgress("Ошибка сжатия", 100);
-        }
-        showProgress("Сжатие завершено", 100);
+                endTime - startTime) + tokenStats(text, compressed);
+            return new JobResult(compressed, stats);
+        });
     }
     
     private void smartCompress() {
-    	showProgress("Начинаем сжатие...", 10);
         String text = inputArea.getText().trim();
         if (text.isEmpty()) {
             statsLabel.setText("⚠️ Введите текст для сжатия");
@@ -609,36 +767,80 @@ public class MainWindow extends JFrame {
             return;
         }
         
-        try {
+        runJob("Сжатие", "❌ Ошибка Smart сжатия: ", Progress.utf8Length(text), () -> {
             long startTime = System.currentTimeMillis();
-            String compressed = AdvancedCompressor.compressSmart(text);
+            long startNanos = System.nanoTime();
+            AlgorithmOracle.Decision decision = AlgorithmOracle.choose(text, AlgorithmOracle.DEFAULT_BUDGET_MILLIS);
+            // Русский текст перед кодеком переводится в однобайтовую кодовую страницу;
+            // короткий текст оракул уже сжал целиком - его проба и идет в конверт
+            String json = AdvancedCompressor.compressSmart(text, decision, TextEncoding.BASE64);
+            String compressed = Envelope.parse(json).getData().toString();
             long endTime = System.currentTimeMillis();
+            // В статистику - сам кодек: так Smart сравним с остальными по МБ/с
+            recordHistory("COMPRESS", decision.getAlgorithm().getName(), text, compressed, startNanos);
             
-            String json = "{\n";
-            json += "  \"format\": \"sqz-smart\",\n";
-            json += "  \"original\": " + text.length() + ",\n";
-            json += "  \"compressed\": " + compressed.length() + ",\n";
-            json += "  \"ratio\": " + String.format("%.2f", (double)compressed.length()/text.length()) + ",\n";
-            json += "  \"time_ms\": " + (endTime - startTime) + ",\n";
-            json += "  \"data\": \"" + compressed + "\"\n";
-            json += "}";
-            
-            outputArea.setText(json);
-            
-            String stats = String.format("✅ Smart сжатие: %d → %d байт (коэфф.: %.2f) за %d мс",
-                text.length(), compressed.length(),
+            String stats = String.format("✅ Smart сжатие (%s): %d → %d байт (коэфф.: %.2f, прогноз %.2f, %.1f МБ/с) за %d мс",
+                decision.getAlgorithm().getName(), text.length(), compressed.length(),
                 (double)compressed.length()/text.length(),
-                endTime - startTime);
-            statsLabel.setText(stats);
-            statsLabel.setForeground(new Color(0, 150, 0));
-            
-        } catch (Exception e) {
-            statsLabel.setText("❌ Ошибка Smart сжатия: " + e.getMessage());
-            statsLabel.setForeground(Color.RED);
-            e.printStackTrace();
-            showProgress("Ошибка сжатия", 100);
+                decision.getPredictedRatio(), decision.getPredictedMBps(),
+                endTime - startTime) + tokenStats(text, json);
+            return new JobResult(json, stats);
+        });
+    }
+    
+    /**
+     * Запись в историю: имя алгоритма, размеры в байтах UTF-8 и время в мкс - для окна статистики.
+     * Исходный текст запоминается как база для следующей дельты. Отмененная операция
+     * (поток прерван) не пишется: ее результат пользователь не увидит
+     */
+    private void recordHistory(String operation, String algorithm, String input, String output, long startNanos) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        HistoryManager.addEntry(new HistoryManager.HistoryEntry(operation, algorithm,
+            input.getBytes(StandardCharsets.UTF_8).length, output.getBytes(StandardCharsets.UTF_8).length, micros));
+        try {
+            DeltaCompressor.remember("COMPRESS".equals(operation) ? input : output);
+        } catch (IOException e) {
+            // без базы следующая дельта просто выйдет длиннее
         }
-        showProgress("Сжатие завершено", 100);
+    }
+    
+    private static String historyName(Envelope envelope) {
+        switch (envelope.getFormat()) {
+            case CHAT_V1: return "chat";
+            case SQZ: return "neuro";
+            case SQZ_SMART: return envelope.get("algorithm") != null ? envelope.get("algorithm") : "smart";
+            case SQZ_DEDUP: return "dedup";
+            case SQZ_DELTA: return "delta";
+            case SQZ_JAVA: return "java";
+            case SQZ_WORDS: return "words";
+            default: return "ultra";
+        }
+    }
+    
+    private TextEncoding selectedEncoding() {
+        return (TextEncoding) encodingCombo.getSelectedItem();
+    }
+    
+    /**
+     * Токены до и после по локальной оценке (см. TokenEstimator)
+     */
+    private String tokenStats(String original, String result) {
+        try {
+            TokenEstimator tokens = TokenEstimator.getDefault();
+            return " | токены: " + tokenCount(tokens, original) + " → " + tokenCount(tokens, result);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+    
+    /**
+     * Длинный текст считается по выборке - такое число помечено "≈"
+     */
+    private static String tokenCount(TokenEstimator tokens, String text) {
+        return (text.length() > TokenEstimator.EXACT_LIMIT ? "≈" : "") + tokens.estimate(text);
     }
     
     private void showFontSettings() {
@@ -684,8 +886,7 @@ public class MainWindow extends JFrame {
             new MainWindow().setVisible(true);
         });
     }
-    private void compressForChat() {
-    	showProgress("Начинаем сжатие...", 10);
+    private void compressForChat(ChatCompressor.Mode mode) {
         String text = inputArea.getText().trim();
         if (text.isEmpty()) {
             statsLabel.setText("⚠️ Введите текст для сжатия");
@@ -693,27 +894,112 @@ public class MainWindow extends JFrame {
             return;
         }
         
-        try {
+        TextEncoding encoding = selectedEncoding();
+        
+        runJob("Сжатие", "❌ Ошибка создания чат-формата: ", Progress.utf8Length(text), () -> {
             long startTime = System.currentTimeMillis();
-            String compressed = ChatCompressor.compress(text);
+            long startNanos = System.nanoTime();
+            String compressed = ChatCompressor.compress(text, mode, encoding);
             long endTime = System.currentTimeMillis();
-            
-            outputArea.setText(compressed);
+            recordHistory("COMPRESS", mode == ChatCompressor.Mode.TOKENS ? "chat-tok"
+                : mode == ChatCompressor.Mode.DICTIONARY ? "chat-dict" : "chat", text, compressed, startNanos);
             
             String stats = String.format("✅ Сжато для чат-бота: %d → %d байт за %d мс",
                 text.getBytes("UTF-8").length, 
                 compressed.getBytes("UTF-8").length, 
-                endTime - startTime);
-            statsLabel.setText(stats);
-            statsLabel.setForeground(new Color(0, 150, 0));
+                endTime - startTime) + tokenStats(text, compressed);
+            if (!ChatCompressor.isChatFormat(compressed)) {
+                stats += " (сжатие не окупается - выдан сам текст)";
+            }
+            return new JobResult(compressed, stats);
+        });
+    }
+    
+    /**
+     * Формат sqz-dedup: то, что уже отправлялось или принималось, уходит ссылками на фрагменты
+     */
+    private void compressDedup() {
+        String text = inputArea.getText().trim();
+        if (text.isEmpty()) {
+            statsLabel.setText("⚠️ Введите текст для сжатия");
+            statsLabel.setForeground(Color.ORANGE);
+            return;
+        }
+        
+        TextEncoding encoding = selectedEncoding();
+        
+        runJob("Сжатие", "❌ Ошибка дедупликации: ", Progress.utf8Length(text), () -> {
+            long startNanos = System.nanoTime();
+            String compressed = DedupCompressor.compress(text, ChunkStore.getDefault(), encoding);
+            recordHistory("COMPRESS", "dedup", text, compressed, startNanos);
+            
+            Envelope envelope = Envelope.parse(compressed);
+            String stats = String.format("✅ Сжато: %d → %d байт, повторов %s из %s фрагментов за %d мс",
+                text.getBytes("UTF-8").length,
+                compressed.getBytes("UTF-8").length,
+                envelope.get("reused"), envelope.get("chunks"),
+                (System.nanoTime() - startNanos) / 1_000_000) + tokenStats(text, compressed);
+            return new JobResult(compressed, stats);
+        });
+    }
+    
+    /**
+     * Формат sqz-delta: только правки к самой похожей из недавно сжатых или распакованных версий
+     */
+    private void compressDelta() {
+        String text = inputArea.getText().trim();
+        if (text.isEmpty()) {
+            statsLabel.setText("⚠️ Введите текст для сжатия");
+            statsLabel.setForeground(Color.ORANGE);
+            return;
+        }
+        
+        TextEncoding encoding = selectedEncoding();
+        
+        runJob("Сжатие", "❌ Ошибка дельта-сжатия: ", Progress.utf8Length(text), () -> {
+            long startNanos = System.nanoTime();
+            String compressed = DeltaCompressor.compress(text, encoding);
+            recordHistory("COMPRESS", "delta", text, compressed, startNanos);
             
-        } catch (Exception e) {
-            statsLabel.setText("❌ Ошибка создания чат-формата: " + e.getMessage());
-            statsLabel.setForeground(Color.RED);
-            e.printStackTrace();
-            showProgress("Ошибка сжатия", 100);
+            Envelope envelope = Envelope.parse(compressed);
+            String base = envelope.get("base") != null
+                ? "из прежней версии " + envelope.get("copied") + " байт"
+                : "похожей прежней версии нет";
+            String stats = String.format("✅ Сжато: %d → %d байт, %s за %d мс",
+                text.getBytes("UTF-8").length,
+                compressed.getBytes("UTF-8").length,
+                base,
+                (System.nanoTime() - startNanos) / 1_000_000) + tokenStats(text, compressed);
+            return new JobResult(compressed, stats);
+        });
+    }
+    
+    /**
+     * Формат sqz-words: частые слова заменены кодами словаря, результат жмет GZIP
+     */
+    private void compressWords() {
+        String text = inputArea.getText().trim();
+        if (text.isEmpty()) {
+            statsLabel.setText("⚠️ Введите текст для сжатия");
+            statsLabel.setForeground(Color.ORANGE);
+            return;
         }
-        showProgress("Сжатие завершено", 100);
+        
+        TextEncoding encoding = selectedEncoding();
+        
+        runJob("Сжатие", "❌ Ошибка сжатия по словарю слов: ", Progress.utf8Length(text), () -> {
+            long startNanos = System.nanoTime();
+            String compressed = WordCompressor.compress(text, encoding);
+            recordHistory("COMPRESS", "words", text, compressed, startNanos);
+            
+            Envelope envelope = Envelope.parse(compressed);
+            String stats = String.format("✅ Сжато: %d → %d байт, слов заменено %s, словарь документа %s за %d мс",
+                text.getBytes("UTF-8").length,
+                compressed.getBytes("UTF-8").length,
+                envelope.get("words"), envelope.get("dynamic"),
+                (System.nanoTime() - startNanos) / 1_000_000) + tokenStats(text, compressed);
+            return new JobResult(compressed, stats);
+        });
     }
  // Метод для показа прогресса:
     private void showProgress(String message, int value) {
@@ -747,6 +1033,7 @@ public class MainWindow extends JFrame {
         inputArea.setFont(newFont);
         outputArea.setFont(newFont);
         algorithmCombo.setFont(newFont);
+        encodingCombo.setFont(newFont);
         statsLabel.setFont(newBoldFont);
         
         // Обновляем кнопки
@@ -756,6 +1043,7 @@ public class MainWindow extends JFrame {
         copyBtn.setFont(buttonFont);
         clearBtn.setFont(buttonFont);
         historyBtn.setFont(buttonFont);
+        statsBtn.setFont(buttonFont);
         
         // Перерисовываем окно
         revalidate();
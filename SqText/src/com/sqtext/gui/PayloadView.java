@@ -0,0 +1,275 @@
+package com.sqtext.gui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+/**
+ * Просмотр большого результата вместо JTextArea: строки переносятся по числу колонок
+ * моноширинного шрифта, а рисуются только видимые ряды, поэтому вывод и прокрутка
+ * стомегабайтной строки Base64 не зависят от ее длины. Текст лежит в ChunkedText;
+ * мышью выделяется любой диапазон, Ctrl+C копирует выделение (без него - весь текст),
+ * Ctrl+A выделяет все
+ */
+public class PayloadView extends JComponent implements Scrollable {
+    private static final Color SELECTION = new Color(51, 153, 255, 110);
+
+    private ChunkedText text = ChunkedText.EMPTY;
+    /** Первый ряд каждой строки при текущем числе колонок; последний элемент - всего рядов */
+    private long[] rowStarts = {0, 1};
+    private int columns = -1;
+    private int charWidth;
+    private int lineHeight;
+    private int ascent;
+    private char[] rowBuffer = new char[0];
+    /** Выделение: от anchor до caret (смещения в тексте) */
+    private int anchor;
+    private int caret;
+
+    public PayloadView() {
+        setOpaque(true);
+        setFocusable(true);
+        setBackground(Color.WHITE);
+        setForeground(Color.BLACK);
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                requestFocusInWindow();
+                caret = offsetAt(e.getPoint());
+                if (!e.isShiftDown()) {
+                    anchor = caret;
+                }
+                repaint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                caret = offsetAt(e.getPoint());
+                scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+                repaint();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, InputEvent.CTRL_DOWN_MASK), "copy");
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_A, InputEvent.CTRL_DOWN_MASK), "selectAll");
+        getActionMap().put("copy", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String selected = anchor != caret ? getSelectedText() : getText();
+                if (!selected.isEmpty()) {
+                    Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(selected), null);
+                }
+            }
+        });
+        getActionMap().put("selectAll", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                anchor = 0;
+                caret = text.length();
+                repaint();
+            }
+        });
+    }
+
+    /**
+     * Показывает текст с начала; ChunkedText лучше строить в фоновом потоке
+     */
+    void setText(ChunkedText text) {
+        this.text = text;
+        anchor = 0;
+        caret = 0;
+        columns = -1;
+        revalidate();
+        repaint();
+        scrollRectToVisible(new Rectangle(0, 0, 1, 1));
+    }
+
+    public void setText(String text) {
+        setText(text == null || text.isEmpty() ? ChunkedText.EMPTY : ChunkedText.of(text));
+    }
+
+    /** Весь текст одной строкой (копия) */
+    public String getText() {
+        return text.toString();
+    }
+
+    public boolean isEmpty() {
+        return text.length() == 0;
+    }
+
+    public String getSelectedText() {
+        return text.subSequence(Math.min(anchor, caret), Math.max(anchor, caret));
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        FontMetrics metrics = getFontMetrics(font);
+        charWidth = Math.max(1, metrics.charWidth('W'));
+        lineHeight = Math.max(1, metrics.getHeight());
+        ascent = metrics.getAscent();
+        columns = -1;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Пересчитывает ряды, если изменилась ширина: один проход по строкам,
+     * символы текста не читаются
+     */
+    private void layoutRows(int width) {
+        Insets insets = getInsets();
+        int cols = Math.max(1, (width - insets.left - insets.right) / charWidth);
+        if (cols == columns) {
+            return;
+        }
+        columns = cols;
+        int lines = text.getLineCount();
+        if (rowStarts.length != lines + 1) {
+            rowStarts = new long[lines + 1];
+        }
+        long row = 0;
+        for (int line = 0; line < lines; line++) {
+            rowStarts[line] = row;
+            int length = text.getLineEnd(line) - text.getLineStart(line);
+            row += length == 0 ? 1 : (length + cols - 1) / cols;
+        }
+        rowStarts[lines] = row;
+    }
+
+    private int viewportWidth() {
+        return getParent() instanceof JViewport ? getParent().getWidth() : getWidth();
+    }
+
+    private long rowCount() {
+        return rowStarts[rowStarts.length - 1];
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        layoutRows(viewportWidth());
+        Insets insets = getInsets();
+        long height = rowCount() * lineHeight + insets.top + insets.bottom;
+        return new Dimension(charWidth * 20, (int) Math.min(Integer.MAX_VALUE / 2, height));
+    }
+
+    /** Строка, в которой лежит ряд row */
+    private int lineOfRow(long row) {
+        int index = Arrays.binarySearch(rowStarts, 0, rowStarts.length - 1, row);
+        if (index >= 0) {
+            // у каждой строки хотя бы один ряд, начала строго возрастают
+            return index;
+        }
+        return -index - 2;
+    }
+
+    private int offsetAt(Point point) {
+        layoutRows(viewportWidth());
+        Insets insets = getInsets();
+        long row = Math.max(0, Math.min(rowCount() - 1, (point.y - insets.top) / lineHeight));
+        int line = lineOfRow(row);
+        int start = text.getLineStart(line) + (int) ((row - rowStarts[line]) * columns);
+        int end = Math.min(text.getLineEnd(line), start + columns);
+        int column = Math.max(0, (point.x - insets.left + charWidth / 2) / charWidth);
+        return Math.min(end, start + column);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        layoutRows(viewportWidth());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.setFont(getFont());
+
+        Insets insets = getInsets();
+        long first = Math.max(0, (clip.y - insets.top) / lineHeight);
+        long last = Math.min(rowCount() - 1, (clip.y + clip.height - insets.top) / lineHeight);
+        if (first > last) {
+            return;
+        }
+        if (rowBuffer.length < columns) {
+            rowBuffer = new char[columns];
+        }
+        int selStart = Math.min(anchor, caret);
+        int selEnd = Math.max(anchor, caret);
+        int line = lineOfRow(first);
+        for (long row = first; row <= last; row++) {
+            while (row >= rowStarts[line + 1]) {
+                line++;
+            }
+            int start = text.getLineStart(line) + (int) ((row - rowStarts[line]) * columns);
+            int end = Math.min(text.getLineEnd(line), start + columns);
+            int y = insets.top + (int) (row * lineHeight);
+            if (selStart < end && selEnd > start) {
+                int from = Math.max(selStart, start) - start;
+                int to = Math.min(selEnd, end) - start;
+                g.setColor(SELECTION);
+                g.fillRect(insets.left + from * charWidth, y, (to - from) * charWidth, lineHeight);
+            }
+            int n = end - start;
+            text.getChars(start, end, rowBuffer, 0);
+            for (int i = 0; i < n; i++) {
+                if (rowBuffer[i] < ' ') {
+                    rowBuffer[i] = ' ';
+                }
+            }
+            g.setColor(getForeground());
+            g.drawChars(rowBuffer, 0, n, insets.left, y + ascent);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight : charWidth;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL
+            ? Math.max(lineHeight, visibleRect.height - lineHeight)
+            : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
\ No newline at end of file
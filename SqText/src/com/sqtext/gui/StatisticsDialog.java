@@ -0,0 +1,136 @@
+package com.sqtext.gui;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+import com.sqtext.history.HistoryManager;
+import com.sqtext.history.HistoryStats;
+import com.sqtext.history.LatencyHistogram;
+
+/**
+ * Статистика по журналу истории: перцентили времени, скорость и коэффициент сжатия
+ * по алгоритмам за выбранный период и для выбранного размера входа
+ */
+public class StatisticsDialog extends JDialog {
+    private static final String[] PERIODS = {"Последний час", "Сутки", "Неделя", "Месяц", "Все время"};
+    private static final long[] PERIOD_MILLIS = {3_600_000L, 86_400_000L, 7 * 86_400_000L, 30 * 86_400_000L, Long.MAX_VALUE};
+    private static final String[] COLUMNS = {
+        "Алгоритм", "Операций", "p50, мс", "p90, мс", "p99, мс", "p99.9, мс", "max, мс",
+        "МБ/с p50", "МБ/с p10", "Коэфф. p10", "Коэфф. p50", "Коэфф. p90", "Коэфф. общий"
+    };
+
+    private final HistoryStats stats;
+    private JComboBox<String> operationCombo;
+    private JComboBox<String> periodCombo;
+    private JComboBox<String> sizeCombo;
+    private DefaultTableModel model;
+    private JLabel totalLabel;
+
+    public StatisticsDialog(JFrame parent) {
+        super(parent, "Статистика операций", true);
+        this.stats = HistoryManager.getStats();
+        setSize(1000, 420);
+        setLocationRelativeTo(parent);
+
+        initComponents();
+        refresh();
+    }
+
+    private void initComponents() {
+        operationCombo = new JComboBox<>(new String[] {"Сжатие", "Распаковка"});
+        periodCombo = new JComboBox<>(PERIODS);
+        periodCombo.setSelectedIndex(2);
+        String[] sizes = new String[HistoryStats.sizeBucketCount() + 1];
+        sizes[0] = "Любой размер";
+        for (int i = 0; i < HistoryStats.sizeBucketCount(); i++) {
+            sizes[i + 1] = HistoryStats.sizeBucketTitle(i);
+        }
+        sizeCombo = new JComboBox<>(sizes);
+
+        operationCombo.addActionListener(e -> refresh());
+        periodCombo.addActionListener(e -> refresh());
+        sizeCombo.addActionListener(e -> refresh());
+
+        model = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        totalLabel = new JLabel();
+
+        JButton closeButton = new JButton("Закрыть");
+        closeButton.addActionListener(e -> dispose());
+
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filters.add(new JLabel("Операция:"));
+        filters.add(operationCombo);
+        filters.add(new JLabel("Период:"));
+        filters.add(periodCombo);
+        filters.add(new JLabel("Размер входа:"));
+        filters.add(sizeCombo);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(totalLabel, BorderLayout.CENTER);
+        bottom.add(closeButton, BorderLayout.EAST);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(5, 5));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        mainPanel.add(filters, BorderLayout.NORTH);
+        mainPanel.add(new JScrollPane(table), BorderLayout.CENTER);
+        mainPanel.add(bottom, BorderLayout.SOUTH);
+        setContentPane(mainPanel);
+    }
+
+    private void refresh() {
+        String operation = operationCombo.getSelectedIndex() == 0 ? "COMPRESS" : "DECOMPRESS";
+        long window = PERIOD_MILLIS[periodCombo.getSelectedIndex()];
+        long now = System.currentTimeMillis();
+        long from = window == Long.MAX_VALUE ? Long.MIN_VALUE : now - window;
+        List<HistoryStats.Summary> summaries = stats.query(operation, from, Long.MAX_VALUE, sizeCombo.getSelectedIndex() - 1);
+
+        model.setRowCount(0);
+        long total = 0;
+        for (HistoryStats.Summary s : summaries) {
+            LatencyHistogram latency = s.getLatencyMicros();
+            LatencyHistogram speed = s.getThroughputKBps();
+            LatencyHistogram ratio = s.getRatioPermille();
+            model.addRow(new Object[] {
+                s.getAlgorithm().isEmpty() ? "(не указан)" : s.getAlgorithm(),
+                s.getCount(),
+                millis(latency.getValueAtPercentile(50)),
+                millis(latency.getValueAtPercentile(90)),
+                millis(latency.getValueAtPercentile(99)),
+                millis(latency.getValueAtPercentile(99.9)),
+                millis(latency.getMax()),
+                // Скорость: p10 - "медленные" операции
+                String.format("%.1f", speed.getValueAtPercentile(50) / 1000.0),
+                String.format("%.1f", speed.getValueAtPercentile(10) / 1000.0),
+                String.format("%.3f", ratio.getValueAtPercentile(10) / 1000.0),
+                String.format("%.3f", ratio.getValueAtPercentile(50) / 1000.0),
+                String.format("%.3f", ratio.getValueAtPercentile(90) / 1000.0),
+                String.format("%.3f", s.getOverallRatio())
+            });
+            total += s.getCount();
+        }
+        totalLabel.setText(String.format("Операций в выборке: %d (всего в журнале: %d)", total, stats.size()));
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+}
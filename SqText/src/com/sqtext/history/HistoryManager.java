@@ -1,103 +1,443 @@
 package com.sqtext.history;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
 
+/**
+ * История операций - кольцевой журнал записей фиксированной длины в файле,
+ * отображенном в память. Запись - O(1): addEntry только ставит запись в очередь,
+ * фоновый поток дописывает накопившееся пачкой под блокировкой файла (несколько
+ * запущенных копий программы пишут в один журнал без потерь).
+ * <pre>
+ * заголовок (64): "SQHL" | версия (4) | емкость (4) | длина записи (4) |
+ *                 номер следующей записи (8) | номер первой записи после очистки (8)
+ * запись (48):    номер (8) | время, мс (8) | длительность, мкс (8) | размер до (4) |
+ *                 размер после (4) | операция (1) | интервал размера (1) |
+ *                 алгоритм, ASCII (10) | CRC32C (4)
+ * </pre>
+ * Запись с номером n лежит в ячейке n % емкость; старые записи затираются новыми
+ */
 public class HistoryManager {
-    private static final String HISTORY_FILE = "sqtext_history.txt";
-    private static final int MAX_ENTRIES = 100;
-    
+    private static final String HISTORY_FILE = "sqtext_history.log";
+    /** Текстовая история прежних версий: переносится в журнал при его создании */
+    private static final String LEGACY_HISTORY_FILE = "sqtext_history.txt";
+    private static final int CAPACITY = 10_000;
+    /** Сколько записей показывать по умолчанию */
+    private static final int DEFAULT_LIMIT = 100;
+
+    private static final byte[] MAGIC = {'S', 'Q', 'H', 'L'};
+    private static final int VERSION = 2;
+    private static final int ALGORITHM_OFFSET = 34;
+    private static final int ALGORITHM_LENGTH = 10;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+    private static final int NEXT_SEQ = 16;
+    private static final int FIRST_SEQ = 24;
+
+    private static final BlockingQueue<HistoryEntry> QUEUE = new LinkedBlockingQueue<>();
+    /** Один монитор на все обращения к журналу: FileLock не допускает пересечений внутри JVM */
+    private static final Object LOCK = new Object();
+    /** Поставлено в очередь, но еще не записано (под LOCK) */
+    private static int pending;
+
+    private static FileChannel channel;
+    private static MappedByteBuffer log;
+    private static int capacity;
+    private static Thread writer;
+
     public static class HistoryEntry {
         private LocalDateTime timestamp;
         private String operation; // "COMPRESS" или "DECOMPRESS"
+        private String algorithm; // "gzip", "zstd", "chat"...; пустая строка - не указан
         private int originalSize;
         private int resultSize;
         private double compressionRatio;
-        private long timeMs;
-        
+        private long timeMicros;
+
         public HistoryEntry(String operation, int originalSize, int resultSize, long timeMs) {
-            this.timestamp = LocalDateTime.now();
+            this(LocalDateTime.now(), operation, "", originalSize, resultSize, timeMs * 1000);
+        }
+
+        /**
+         * @param algorithm короткое имя (до 10 латинских символов) для статистики по алгоритмам
+         * @param timeMicros длительность в микросекундах
+         */
+        public HistoryEntry(String operation, String algorithm, int originalSize, int resultSize, long timeMicros) {
+            this(LocalDateTime.now(), operation, algorithm, originalSize, resultSize, timeMicros);
+        }
+
+        private HistoryEntry(LocalDateTime timestamp, String operation, String algorithm,
+                int originalSize, int resultSize, long timeMicros) {
+            this.timestamp = timestamp;
             this.operation = operation;
+            this.algorithm = algorithm;
             this.originalSize = originalSize;
             this.resultSize = resultSize;
-            this.timeMs = timeMs;
+            this.timeMicros = timeMicros;
             this.compressionRatio = (double) resultSize / originalSize;
         }
-        
+
         @Override
         public String toString() {
-            return String.format("[%s] %s: %d → %d байт (коэфф.: %.2f) за %d мс",
+            return String.format("[%s] %s%s: %d → %d байт (коэфф.: %.2f) за %d мс",
                 timestamp.format(DateTimeFormatter.ofPattern("dd.MM.yy HH:mm")),
                 operation.equals("COMPRESS") ? "Сжатие" : "Распаковка",
-                originalSize, resultSize, compressionRatio, timeMs);
+                algorithm.isEmpty() ? "" : " (" + algorithm + ")",
+                originalSize, resultSize, compressionRatio, getTimeMs());
         }
-        
+
         // Геттеры
         public LocalDateTime getTimestamp() { return timestamp; }
         public String getOperation() { return operation; }
         public int getOriginalSize() { return originalSize; }
         public int getResultSize() { return resultSize; }
         public double getCompressionRatio() { return compressionRatio; }
-        public long getTimeMs() { return timeMs; }
+        public long getTimeMs() { return timeMicros / 1000; }
+        public long getTimeMicros() { return timeMicros; }
+        public String getAlgorithm() { return algorithm; }
     }
-    
+
     /**
-     * Добавляет запись в историю
+     * Добавляет запись в историю: без ввода-вывода в вызывающем потоке
      */
     public static void addEntry(HistoryEntry entry) {
-        try {
-            List<String> lines = new ArrayList<>();
-            Path path = Paths.get(HISTORY_FILE);
-            
-            // Читаем существующие записи, если файл есть
-            if (Files.exists(path)) {
-                lines = Files.readAllLines(path);
+        synchronized (LOCK) {
+            pending++;
+            startWriter();
+        }
+        QUEUE.add(entry);
+    }
+
+    /**
+     * Последние операции, новые первыми (не больше 100)
+     */
+    public static List<String> getHistory() {
+        List<String> lines = new ArrayList<>();
+        for (HistoryEntry entry : getEntries(DEFAULT_LIMIT)) {
+            lines.add(entry.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Последние limit операций, новые первыми: читаются только эти записи журнала
+     */
+    public static List<HistoryEntry> getEntries(int limit) {
+        List<HistoryEntry> entries = new ArrayList<>();
+        synchronized (LOCK) {
+            awaitPending();
+            try {
+                if (!open()) {
+                    return entries;
+                }
+                FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+                try {
+                    long next = log.getLong(NEXT_SEQ);
+                    long first = Math.max(log.getLong(FIRST_SEQ), next - capacity);
+                    for (long seq = next - 1; seq >= first && entries.size() < limit; seq--) {
+                        HistoryEntry entry = readRecord(seq);
+                        if (entry != null) {
+                            entries.add(entry);
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка чтения истории: " + e.getMessage());
             }
-            
-            // Добавляем новую запись в начало
-            lines.add(0, entry.toString());
-            
-            // Ограничиваем количество записей
-            if (lines.size() > MAX_ENTRIES) {
-                lines = lines.subList(0, MAX_ENTRIES);
+        }
+        return entries;
+    }
+
+    /**
+     * Весь журнал (после последней очистки) в виде столбцов для статистики
+     */
+    public static HistoryStats getStats() {
+        HistoryStats.Builder builder = new HistoryStats.Builder();
+        synchronized (LOCK) {
+            awaitPending();
+            try {
+                if (open()) {
+                    FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+                    try {
+                        long next = log.getLong(NEXT_SEQ);
+                        long first = Math.max(log.getLong(FIRST_SEQ), Math.max(0, next - capacity));
+                        byte[] bytes = new byte[RECORD_SIZE];
+                        ByteBuffer record = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+                        for (long seq = first; seq < next; seq++) {
+                            log.get(slot(seq), bytes);
+                            if (record.getLong(0) == seq && record.getInt(RECORD_SIZE - 4) == crc(bytes)) {
+                                builder.add(record.getLong(8), record.getLong(16), record.getInt(24),
+                                    record.getInt(28), record.get(32), record.get(33), algorithm(bytes));
+                            }
+                        }
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка чтения истории: " + e.getMessage());
             }
-            
-            // Сохраняем
-            Files.write(path, lines);
-        } catch (IOException e) {
-            System.err.println("Ошибка сохранения истории: " + e.getMessage());
         }
+        return builder.build();
     }
-    
+
     /**
-     * Читает историю операций
+     * Очищает историю: записи не стираются, а отсекаются номером в заголовке
      */
-    public static List<String> getHistory() {
+    public static void clearHistory() {
+        synchronized (LOCK) {
+            awaitPending();
+            try {
+                if (open()) {
+                    FileLock lock = channel.lock();
+                    try {
+                        log.putLong(FIRST_SEQ, log.getLong(NEXT_SEQ));
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка удаления истории: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Путь к файлу журнала (для сообщений пользователю)
+     */
+    public static String getHistoryFile() {
+        return HISTORY_FILE;
+    }
+
+    // ------------------------------------------------------------------ запись
+
+    /** Вызывается под LOCK */
+    private static void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(HistoryManager::writeLoop, "sqtext-history");
+        writer.setDaemon(true);
+        writer.start();
+        // Очередь дописывается и при выходе из программы
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (LOCK) {
+                awaitPending();
+            }
+        }, "sqtext-history-flush"));
+    }
+
+    private static void writeLoop() {
+        List<HistoryEntry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            QUEUE.drainTo(batch);
+            synchronized (LOCK) {
+                try {
+                    if (open()) {
+                        append(batch);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Ошибка сохранения истории: " + e.getMessage());
+                }
+                pending -= batch.size();
+                LOCK.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Ждет, пока фоновый поток запишет очередь (вызывается под LOCK). Ограничено
+     * по времени: сбой записи не должен вешать интерфейс
+     */
+    private static void awaitPending() {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pending > 0) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return;
+            }
+            try {
+                LOCK.wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Вызывается под LOCK */
+    private static void append(List<HistoryEntry> batch) throws IOException {
+        FileLock lock = channel.lock();
         try {
-            Path path = Paths.get(HISTORY_FILE);
-            if (Files.exists(path)) {
-                return Files.readAllLines(path);
+            // Номер берется из файла: другой процесс мог дописать свои записи
+            long next = log.getLong(NEXT_SEQ);
+            for (HistoryEntry entry : batch) {
+                writeRecord(next++, entry);
             }
-        } catch (IOException e) {
-            System.err.println("Ошибка чтения истории: " + e.getMessage());
+            log.putLong(NEXT_SEQ, next);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private static void writeRecord(long seq, HistoryEntry entry) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(seq)
+            .putLong(entry.timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+            .putLong(entry.timeMicros)
+            .putInt(entry.originalSize)
+            .putInt(entry.resultSize)
+            .put(operationCode(entry.operation))
+            .put((byte) HistoryStats.sizeBucket(entry.originalSize));
+        byte[] name = entry.algorithm.getBytes(StandardCharsets.US_ASCII);
+        record.put(name, 0, Math.min(name.length, ALGORITHM_LENGTH));
+        record.putInt(RECORD_SIZE - 4, crc(record.array()));
+        log.put(slot(seq), record.array());
+    }
+
+    private static HistoryEntry readRecord(long seq) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        log.get(slot(seq), bytes);
+        ByteBuffer record = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (record.getLong(0) != seq || record.getInt(RECORD_SIZE - 4) != crc(bytes)) {
+            return null; // запись не дописана или повреждена
+        }
+        LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getLong(8)), ZoneId.systemDefault());
+        return new HistoryEntry(timestamp, record.get(32) == 0 ? "COMPRESS" : "DECOMPRESS", algorithm(bytes),
+            record.getInt(24), record.getInt(28), record.getLong(16));
+    }
+
+    private static String algorithm(byte[] record) {
+        int length = 0;
+        while (length < ALGORITHM_LENGTH && record[ALGORITHM_OFFSET + length] != 0) {
+            length++;
         }
-        return new ArrayList<>();
+        return new String(record, ALGORITHM_OFFSET, length, StandardCharsets.US_ASCII);
+    }
+
+    static byte operationCode(String operation) {
+        return (byte) ("COMPRESS".equals(operation) ? 0 : 1);
     }
-    
+
+    private static int slot(long seq) {
+        return HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+    }
+
+    private static int crc(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record, 0, RECORD_SIZE - 4);
+        return (int) crc.getValue();
+    }
+
+    // ------------------------------------------------------------------ файл
+
     /**
-     * Очищает историю
+     * Открывает (при необходимости создает) журнал; вызывается под LOCK
+     * @return false, если журнала нет и он не нужен (чтение до первой записи)
      */
-    public static void clearHistory() {
+    private static boolean open() throws IOException {
+        if (log != null) {
+            return true;
+        }
+        Path path = Paths.get(HISTORY_FILE);
+        boolean created = !Files.exists(path);
+        if (created && pending == 0 && !Files.exists(Paths.get(LEGACY_HISTORY_FILE))) {
+            return false;
+        }
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
         try {
-            Files.deleteIfExists(Paths.get(HISTORY_FILE));
-        } catch (IOException e) {
-            System.err.println("Ошибка удаления истории: " + e.getMessage());
+            boolean migrate = false;
+            FileLock lock = ch.lock();
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                if (ch.size() == 0) {
+                    header.put(MAGIC).putInt(VERSION).putInt(CAPACITY).putInt(RECORD_SIZE);
+                    ch.write(header.flip(), 0);
+                    migrate = true;
+                }
+                header.clear();
+                ch.read(header, 0);
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (header.get(i) != MAGIC[i]) {
+                        throw new IOException("Файл " + HISTORY_FILE + " - не журнал истории");
+                    }
+                }
+                int version = header.getInt(4);
+                if (version != VERSION || header.getInt(12) != RECORD_SIZE || header.getInt(8) <= 0) {
+                    throw new IOException("Неподдерживаемый формат журнала " + HISTORY_FILE);
+                }
+                capacity = header.getInt(8);
+                log = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+                log.order(ByteOrder.LITTLE_ENDIAN);
+                channel = ch;
+            } finally {
+                lock.release();
+            }
+            if (migrate) {
+                migrateLegacy();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log = null;
+            channel = null;
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Переносит записи из текстовой истории прежних версий (там новые - первыми)
+     */
+    private static void migrateLegacy() throws IOException {
+        Path legacy = Paths.get(LEGACY_HISTORY_FILE);
+        if (!Files.exists(legacy)) {
+            return;
+        }
+        Pattern line = Pattern.compile("\\[(.+?)] (Сжатие|Распаковка): (\\d+) → (\\d+) байт .* за (\\d+) мс");
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("dd.MM.yy HH:mm");
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (String text : Files.readAllLines(legacy, StandardCharsets.UTF_8)) {
+            Matcher m = line.matcher(text);
+            if (m.matches()) {
+                try {
+                    entries.add(new HistoryEntry(LocalDateTime.parse(m.group(1), format),
+                        "Сжатие".equals(m.group(2)) ? "COMPRESS" : "DECOMPRESS", "",
+                        Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4)), Long.parseLong(m.group(5)) * 1000));
+                } catch (RuntimeException ignored) {
+                    // строку не разобрать - пропускаем
+                }
+            }
         }
+        Collections.reverse(entries);
+        append(entries);
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package com.sqtext.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимок журнала истории по столбцам: каждое поле записи - свой массив примитивов,
+ * фильтр и агрегаты идут одним проходом без объектов на запись
+ */
+public final class HistoryStats {
+
+    private static final long[] SIZE_LIMITS = {1L << 10, 10L << 10, 100L << 10, 1L << 20, 10L << 20};
+    private static final String[] SIZE_TITLES = {
+        "до 1 КБ", "1–10 КБ", "10–100 КБ", "100 КБ–1 МБ", "1–10 МБ", "от 10 МБ"
+    };
+
+    private final int size;
+    private final long[] timestamps;
+    private final long[] micros;
+    private final int[] inputSizes;
+    private final int[] outputSizes;
+    private final byte[] operations;
+    private final byte[] sizeBuckets;
+    /** Номер алгоритма в algorithms: строки не хранятся в каждой строке таблицы */
+    private final short[] algorithmIds;
+    private final List<String> algorithms;
+
+    HistoryStats(int size, long[] timestamps, long[] micros, int[] inputSizes, int[] outputSizes,
+            byte[] operations, byte[] sizeBuckets, short[] algorithmIds, List<String> algorithms) {
+        this.size = size;
+        this.timestamps = timestamps;
+        this.micros = micros;
+        this.inputSizes = inputSizes;
+        this.outputSizes = outputSizes;
+        this.operations = operations;
+        this.sizeBuckets = sizeBuckets;
+        this.algorithmIds = algorithmIds;
+        this.algorithms = algorithms;
+    }
+
+    /** Итоги по одному алгоритму */
+    public static final class Summary {
+        private final String algorithm;
+        /** Длительность, мкс */
+        private final LatencyHistogram latency = new LatencyHistogram();
+        /** Скорость по входу, КБ/с */
+        private final LatencyHistogram throughput = new LatencyHistogram();
+        /** Коэффициент (выход / вход), тысячные */
+        private final LatencyHistogram ratio = new LatencyHistogram();
+        private long inputBytes;
+        private long outputBytes;
+
+        Summary(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public String getAlgorithm() { return algorithm; }
+        public long getCount() { return latency.getCount(); }
+        public LatencyHistogram getLatencyMicros() { return latency; }
+        public LatencyHistogram getThroughputKBps() { return throughput; }
+        public LatencyHistogram getRatioPermille() { return ratio; }
+        public long getInputBytes() { return inputBytes; }
+        public long getOutputBytes() { return outputBytes; }
+
+        /** Средний коэффициент по объему, а не по числу операций */
+        public double getOverallRatio() {
+            return inputBytes == 0 ? 0 : (double) outputBytes / inputBytes;
+        }
+    }
+
+    /** Число записей в снимке */
+    public int size() { return size; }
+
+    /** Алгоритмы, встречающиеся в журнале */
+    public List<String> getAlgorithms() {
+        return Collections.unmodifiableList(algorithms);
+    }
+
+    /**
+     * Итоги по алгоритмам за окно [fromMillis, toMillis)
+     * @param operation "COMPRESS", "DECOMPRESS" или null - все
+     * @param sizeBucket номер интервала размера входа (см. sizeBucket) или -1 - все
+     */
+    public List<Summary> query(String operation, long fromMillis, long toMillis, int sizeBucket) {
+        int op = operation == null ? -1 : HistoryManager.operationCode(operation);
+        Summary[] byAlgorithm = new Summary[algorithms.size()];
+        for (int i = 0; i < size; i++) {
+            if (timestamps[i] < fromMillis || timestamps[i] >= toMillis
+                    || (op >= 0 && operations[i] != op)
+                    || (sizeBucket >= 0 && sizeBuckets[i] != sizeBucket)) {
+                continue;
+            }
+            Summary summary = byAlgorithm[algorithmIds[i]];
+            if (summary == null) {
+                summary = new Summary(algorithms.get(algorithmIds[i]));
+                byAlgorithm[algorithmIds[i]] = summary;
+            }
+            long time = Math.max(1, micros[i]);
+            summary.latency.record(time);
+            // байт/мкс = МБ/с (десятичные); в КБ/с для целочисленной гистограммы
+            summary.throughput.record(inputSizes[i] * 1000L / time);
+            if (inputSizes[i] > 0) {
+                summary.ratio.record(outputSizes[i] * 1000L / inputSizes[i]);
+            }
+            summary.inputBytes += inputSizes[i];
+            summary.outputBytes += outputSizes[i];
+        }
+        List<Summary> result = new ArrayList<>();
+        for (Summary summary : byAlgorithm) {
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Номер интервала размера: до 1 КБ, 1–10 КБ, 10–100 КБ, 100 КБ–1 МБ, 1–10 МБ, от 10 МБ
+     */
+    public static int sizeBucket(long bytes) {
+        int bucket = 0;
+        while (bucket < SIZE_LIMITS.length && bytes >= SIZE_LIMITS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public static int sizeBucketCount() {
+        return SIZE_TITLES.length;
+    }
+
+    public static String sizeBucketTitle(int bucket) {
+        return SIZE_TITLES[bucket];
+    }
+
+    /**
+     * Сборка снимка: алгоритмы переводятся в номера по мере появления
+     */
+    static final class Builder {
+        private int size;
+        private long[] timestamps = new long[64];
+        private long[] micros = new long[64];
+        private int[] inputSizes = new int[64];
+        private int[] outputSizes = new int[64];
+        private byte[] operations = new byte[64];
+        private byte[] sizeBuckets = new byte[64];
+        private short[] algorithmIds = new short[64];
+        private final Map<String, Short> ids = new LinkedHashMap<>();
+
+        void add(long timestamp, long time, int input, int output, byte operation, byte bucket, String algorithm) {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = java.util.Arrays.copyOf(timestamps, capacity);
+                micros = java.util.Arrays.copyOf(micros, capacity);
+                inputSizes = java.util.Arrays.copyOf(inputSizes, capacity);
+                outputSizes = java.util.Arrays.copyOf(outputSizes, capacity);
+                operations = java.util.Arrays.copyOf(operations, capacity);
+                sizeBuckets = java.util.Arrays.copyOf(sizeBuckets, capacity);
+                algorithmIds = java.util.Arrays.copyOf(algorithmIds, capacity);
+            }
+            Short id = ids.get(algorithm);
+            if (id == null) {
+                id = (short) ids.size();
+                ids.put(algorithm, id);
+            }
+            timestamps[size] = timestamp;
+            micros[size] = time;
+            inputSizes[size] = input;
+            outputSizes[size] = output;
+            operations[size] = operation;
+            sizeBuckets[size] = bucket;
+            algorithmIds[size] = id;
+            size++;
+        }
+
+        HistoryStats build() {
+            return new HistoryStats(size, timestamps, micros, inputSizes, outputSizes,
+                operations, sizeBuckets, algorithmIds, new ArrayList<>(ids.keySet()));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.sqtext.history;
+
+/**
+ * Гистограмма в духе HdrHistogram: логарифмические интервалы, каждый поделен на 128
+ * равных частей, поэтому перцентиль считается с относительной ошибкой меньше 1%
+ * при фиксированной памяти и записи за O(1). Значения - неотрицательные целые
+ * (микросекунды, КБ/с, тысячные доли коэффициента)
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** До 2 * SUB_COUNT значения хранятся точно, дальше - 64 - SUB_BITS - 1 интервалов по SUB_COUNT */
+    private static final int SIZE = (64 - SUB_BITS) * SUB_COUNT + SUB_COUNT;
+
+    private final long[] counts = new long[SIZE];
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long getCount() { return count; }
+    public long getMin() { return count == 0 ? 0 : min; }
+    public long getMax() { return max; }
+    public double getMean() { return count == 0 ? 0 : sum / count; }
+
+    /**
+     * Значение, не больше которого percent процентов записей (верхняя граница интервала,
+     * но не больше максимума)
+     */
+    public long getValueAtPercentile(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, Math.max(min, highestEquivalent(i)));
+            }
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestEquivalent(int index) {
+        if (index < 2 * SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        long sub = index - (long) shift * SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
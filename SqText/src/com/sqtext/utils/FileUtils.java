@@ -4,18 +4,24 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import com.sqtext.compression.AdvancedCompressor;
+import com.sqtext.compression.GZipCompressor;
+import com.sqtext.compression.SqzContainer;
+
 public class FileUtils {
     
     /**
-     * Открывает диалог выбора файла и читает его содержимое
+     * Открывает диалог выбора файла
+     * @return выбранный файл или null, если выбор отменен
      */
-    public static String readFile(JFrame parent) {
+    public static Path chooseFile(JFrame parent) {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Выберите файл для загрузки");
         fileChooser.setAcceptAllFileFilterUsed(false);
@@ -45,32 +51,41 @@ public class FileUtils {
         
         int result = fileChooser.showOpenDialog(parent);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            try {
-                byte[] bytes = Files.readAllBytes(file.toPath());
-                
-                // Пытаемся определить кодировку
-                String content;
-                if (isBinary(bytes)) {
-                    // Для бинарных файлов используем Base64
-                    content = java.util.Base64.getEncoder().encodeToString(bytes);
-                    JOptionPane.showMessageDialog(parent,
-                        "Файл распознан как бинарный. Данные закодированы в Base64.",
-                        "Информация", JOptionPane.INFORMATION_MESSAGE);
-                } else {
-                    // Для текстовых файлов - UTF-8
-                    content = new String(bytes, StandardCharsets.UTF_8);
-                }
-                
-                return content;
-            } catch (IOException e) {
+            return fileChooser.getSelectedFile().toPath();
+        }
+        return null;
+    }
+    
+    /**
+     * Читает содержимое файла; контейнер .sqz распаковывается целиком
+     */
+    public static String readFile(JFrame parent, Path file) {
+        try {
+            if (SqzContainer.isContainer(file)) {
+                return readContainer(file);
+            }
+            byte[] bytes = Files.readAllBytes(file);
+            
+            // Пытаемся определить кодировку
+            String content;
+            if (isBinary(bytes)) {
+                // Для бинарных файлов используем Base64
+                content = java.util.Base64.getEncoder().encodeToString(bytes);
                 JOptionPane.showMessageDialog(parent,
-                    "Ошибка чтения файла: " + e.getMessage(),
-                    "Ошибка", JOptionPane.ERROR_MESSAGE);
-                return null;
+                    "Файл распознан как бинарный. Данные закодированы в Base64.",
+                    "Информация", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                // Для текстовых файлов - UTF-8
+                content = new String(bytes, StandardCharsets.UTF_8);
             }
+            
+            return content;
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(parent,
+                "Ошибка чтения файла: " + e.getMessage(),
+                "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
-        return null;
     }
     
     /**
@@ -100,7 +115,10 @@ public class FileUtils {
             }
             
             try {
-                if (isCompressed && content.startsWith("H4sIAAAAAAAA")) {
+                if (isCompressed && file.getName().endsWith(".sqz")) {
+                    // .sqz - двоичный контейнер с блоками и контрольными суммами, без Base64
+                    writeContainer(file.toPath(), GZipCompressor.decompress(content));
+                } else if (isCompressed && content.startsWith("H4sIAAAAAAAA")) {
                     // Для сжатых данных пишем как есть
                     Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
                 } else {
@@ -119,6 +137,45 @@ public class FileUtils {
         return false;
     }
     
+    /**
+     * Читает текст из контейнера .sqz: файл отображается в память, каждый блок
+     * сверяется с CRC32C из индекса
+     */
+    public static String readContainer(Path path) throws IOException {
+        try (SqzContainer container = SqzContainer.open(path)) {
+            return new String(container.readAll(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Размер данных контейнера без распаковки (из концовки файла)
+     */
+    public static long containerSize(Path path) throws IOException {
+        try (SqzContainer container = SqzContainer.open(path)) {
+            return container.getUncompressedSize();
+        }
+    }
+    
+    /**
+     * Записывает текст в контейнер .sqz (GZIP, блоки по 1 МБ)
+     */
+    public static void writeContainer(Path path, String text) throws IOException {
+        try (SqzContainer.Writer writer = new SqzContainer.Writer(path,
+                AdvancedCompressor.Algorithm.GZIP, 9, SqzContainer.DEFAULT_BLOCK_SIZE)) {
+            writer.write(text);
+        }
+    }
+    
+    /**
+     * Проверка целостности контейнера без распаковки: сверка CRC32C по индексу блоков
+     * @return номера поврежденных блоков
+     */
+    public static java.util.List<Integer> verifyContainer(Path path) throws IOException {
+        try (SqzContainer container = SqzContainer.open(path)) {
+            return container.verify();
+        }
+    }
+    
     /**
      * Проверяет, является ли файл бинарным
      */
@@ -0,0 +1,116 @@
+package com.sqtext.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Свойство JavaTransform: decode(encode(text)) == text для любого текста.
+ * Проверяются все файлы src/ (исходники как UTF-8, любые файлы - еще и побайтно
+ * как ISO-8859-1, чтобы разбор видел "не Java") и случайные срезы исходников,
+ * в которые вставлены кавычки, экранирование, маркеры комментариев и прочие
+ * края разбора. Исходники проходят и полный путь через конверт sqz-java.
+ *
+ *   test/run.sh                                   - все проверки
+ *   test/run.sh JavaTransformRoundTripTest 2000 42 - число срезов и seed
+ */
+public final class JavaTransformRoundTripTest {
+    /** Вставки на границах лексем: незакрытые литералы и комментарии, \r без \n, суррогаты */
+    private static final String[] PIECES = {
+        "\"", "'", "\\", "\\\"", "\\'", "\\\\", "\\u0022", "\\n", "\"\"\"", "\"\"\"\n",
+        "/*", "*/", "/**", "//", "/", "*", "\n", "\r", "\r\n", "\t", " ", "    ", "\u0000",
+        "0x1F", "1e-5", "0b1010L", "1_000", ".5f", "@Override", "'\\''", "\"/* \"", "// \"",
+        "é", "Ж", "имя", "😀", "\ud83d", "\ude00", "\u2028", "\ufeff"
+    };
+
+    private JavaTransformRoundTripTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int slices = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Path root = Paths.get(System.getProperty("sqtext.src", "src"));
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(Files::isRegularFile).sorted().forEach(files::add);
+        }
+        if (files.isEmpty()) {
+            throw new AssertionError("Нет файлов в " + root.toAbsolutePath());
+        }
+        StringBuilder sources = new StringBuilder();
+        int checked = 0;
+        for (Path file : files) {
+            byte[] bytes = Files.readAllBytes(file);
+            check(new String(bytes, StandardCharsets.ISO_8859_1), file + " (ISO-8859-1)");
+            checked++;
+            if (file.toString().endsWith(".java")) {
+                String text = new String(bytes, StandardCharsets.UTF_8);
+                check(text, file.toString());
+                checkEnvelope(text, file.toString());
+                sources.append(text);
+                checked++;
+            }
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < slices; i++) {
+            String text = slice(sources, random);
+            check(text, "срез " + i + " (seed " + seed + ")");
+        }
+        System.out.println("JavaTransform: " + checked + " файлов и " + slices + " срезов собраны без потерь (seed "
+            + seed + ")");
+    }
+
+    /**
+     * Случайный срез исходников (до 4 КБ) с 0..8 вставками и заменами из PIECES
+     */
+    private static String slice(CharSequence sources, Random random) {
+        int from = random.nextInt(sources.length());
+        int to = Math.min(sources.length(), from + random.nextInt(4096));
+        StringBuilder text = new StringBuilder(sources.subSequence(from, to));
+        for (int edits = random.nextInt(9); edits > 0; edits--) {
+            String piece = PIECES[random.nextInt(PIECES.length)];
+            int at = random.nextInt(text.length() + 1);
+            if (random.nextBoolean() && at < text.length()) {
+                text.replace(at, Math.min(text.length(), at + piece.length()), piece);
+            } else {
+                text.insert(at, piece);
+            }
+        }
+        return text.toString();
+    }
+
+    private static void check(String text, String name) throws IOException {
+        String decoded = JavaTransform.decode(JavaTransform.encode(text).toByteArray());
+        // Одиночный суррогат в UTF-8 не представим: таблицы имен и литералов хранят его как '?'
+        String expected = new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        if (!decoded.equals(text) && !decoded.equals(expected)) {
+            throw new AssertionError(name + ": текст собран с ошибкой с символа " + mismatch(decoded, expected)
+                + "\n---\n" + text);
+        }
+    }
+
+    private static void checkEnvelope(String text, String name) throws IOException {
+        String json = JavaCompressor.compress(text, TextEncoding.BASE64);
+        if (!Envelope.parse(json).decode().equals(text)) {
+            throw new AssertionError(name + ": конверт sqz-java распакован с ошибкой");
+        }
+    }
+
+    private static int mismatch(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return i;
+            }
+        }
+        return n;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+#!/bin/sh
+# Проверки SqText без системы сборки: исходники src/ и test/ компилируются в
+# test/target/, затем запускается main каждого класса *Test (или одного - по имени).
+#
+#   test/run.sh                                    - все проверки
+#   test/run.sh JavaTransformRoundTripTest 2000 42 - один класс со своими аргументами
+#
+# Код выхода не 0, если какая-то проверка не прошла.
+set -e
+
+TEST=$(cd "$(dirname "$0")" && pwd)
+PROJECT=$(dirname "$TEST")
+TARGET=$TEST/target
+
+rm -rf "$TARGET/classes"
+mkdir -p "$TARGET/classes"
+find "$PROJECT/src" "$TEST" -name '*.java' > "$TARGET/sources.txt"
+javac -encoding UTF-8 -d "$TARGET/classes" @"$TARGET/sources.txt"
+# Словари и прочие ресурсы лежат рядом с исходниками
+(cd "$PROJECT/src" && find . -type f ! -name '*.java') | while read -r file; do
+    mkdir -p "$TARGET/classes/$(dirname "$file")"
+    cp "$PROJECT/src/$file" "$TARGET/classes/$file"
+done
+
+run() {
+    java -Dsqtext.src="$PROJECT/src" -cp "$TARGET/classes" "$@"
+}
+
+if [ $# -gt 0 ]; then
+    name=$1
+    shift
+    class=$(cd "$TEST" && find . -name "$name.java" | sed 's|^\./||; s|\.java$||; s|/|.|g')
+    if [ -z "$class" ]; then
+        echo "Нет проверки $name" >&2
+        exit 2
+    fi
+    run "$class" "$@"
+    exit
+fi
+
+(cd "$TEST" && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g') | while read -r class; do
+    run "$class"
+done